@@ -28,6 +28,7 @@ import android.content.pm.PackageManager;
 import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Debug;
+import android.os.Looper;
 import android.text.method.LinkMovementMethod;
 import android.util.Log;
 import android.view.View;
@@ -36,8 +37,8 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
-import androidx.collection.LruCache;
 
+import com.google.firebase.crashlytics.FirebaseCrashlytics;
 import com.hippo.a7zip.A7Zip;
 import com.hippo.beerbelly.SimpleDiskCache;
 import com.hippo.conaco.Conaco;
@@ -65,6 +66,7 @@ import com.hippo.util.BitmapUtils;
 import com.hippo.util.ExceptionUtils;
 import com.hippo.util.IoThreadPoolExecutor;
 import com.hippo.util.ReadableTime;
+import com.hippo.util.StartupGraph;
 import com.hippo.yorozuya.FileUtils;
 import com.hippo.yorozuya.IntIdGenerator;
 import com.hippo.yorozuya.OSUtils;
@@ -80,6 +82,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -104,13 +107,23 @@ public class EhApplication extends RecordingApplication {
     private static final boolean DEBUG_PRINT_NATIVE_MEMORY = false;
     private static final boolean DEBUG_PRINT_IMAGE_COUNT = false;
     private static final long DEBUG_PRINT_INTERVAL = 3000L;
+    private static final boolean DEBUG_STARTUP = false;
+
+    public static final String STARTUP_DB = "db";
+    public static final String STARTUP_SPIDER_DEN = "spider_den";
+    public static final String STARTUP_IMAGE = "image";
+    public static final String STARTUP_DOWNLOAD_MANAGER = "download_manager";
+    public static final String STARTUP_A7ZIP = "a7zip";
+    public static final String STARTUP_ANALYTICS = "analytics";
 
     private static EhApplication instance;
 
     private final IntIdGenerator mIdGenerator = new IntIdGenerator();
     private final HashMap<Integer, Object> mGlobalStuffMap = new HashMap<>();
 
-    private final HashMap<String, Object> mTempCacheMap = new HashMap<>();
+    // Estimated bytes, at most 1/32 of heap
+    private final HandoffCache mTempCache = new HandoffCache(
+            Math.min(Runtime.getRuntime().maxMemory() / 32, 8 * 1024 * 1024));
 
     private EhCookieStore mEhCookieStore;
     private EhClient mEhClient;
@@ -120,8 +133,9 @@ public class EhApplication extends RecordingApplication {
     private Cache mOkHttpCache;
     private ImageBitmapHelper mImageBitmapHelper;
     private Conaco<ImageBitmap> mConaco;
-    private LruCache<Long, GalleryDetail> mGalleryDetailCache;
+    private GalleryDetailCache mGalleryDetailCache;
     private SimpleDiskCache mSpiderInfoCache;
+    private final Object mDownloadManagerLock = new Object();
     private DownloadManager mDownloadManager;
     private Hosts mHosts;
     private FavouriteStatusRouter mFavouriteStatusRouter;
@@ -138,6 +152,8 @@ public class EhApplication extends RecordingApplication {
 
     private final ExecutorService executorService = Executors.newCachedThreadPool();
 
+    private StartupGraph mStartup;
+
     public static EhApplication getInstance() {
         return instance;
     }
@@ -170,22 +186,41 @@ public class EhApplication extends RecordingApplication {
         ReadableTime.initialize(this);
         Html.initialize(this);
         AppConfig.initialize(this);
-        SpiderDen.initialize(this);
-        EhDB.initialize(this);
-        EhEngine.initialize();
         BitmapUtils.initialize(this);
-        Image.initialize(this);
-        // 实际作用不确定，但是与64位应用有冲突
-//        A7Zip.loadLibrary(A7ZipExtractLite.LIBRARY, libname -> ReLinker.loadLibrary(EhApplication.this, libname));
-        // 64位适配
-        A7Zip.initialize(this);
-        if (EhDB.needMerge()) {
-            EhDB.mergeOldDB(this);
-        }
 
-        if (Settings.getEnableAnalytics()) {
-            Analytics.start(this);
-        }
+        // The others are initialized in background, users await them before the first use
+        mStartup = new StartupGraph(executorService, (name, thread, duration, error) -> {
+            if (error != null) {
+                Log.e(TAG, "Startup task " + name + " failed", error);
+                FirebaseCrashlytics.getInstance().recordException(error);
+            } else if (DEBUG_STARTUP) {
+                Log.d(TAG, String.format(Locale.US, "Startup task %s takes %.1fms in %s",
+                        name, duration / 1000000.0f, thread));
+            }
+        });
+        mStartup.add(STARTUP_DB, () -> {
+            EhDB.initialize(this);
+            EhEngine.initialize();
+        }).add(STARTUP_SPIDER_DEN, () -> SpiderDen.initialize(this))
+                .add(STARTUP_IMAGE, () -> Image.initialize(this))
+                // Load all download info before the first getDownloadManager()
+                .add(STARTUP_DOWNLOAD_MANAGER, () -> getDownloadManager(this), STARTUP_DB)
+                // 实际作用不确定，但是与64位应用有冲突
+//                A7Zip.loadLibrary(A7ZipExtractLite.LIBRARY, libname -> ReLinker.loadLibrary(EhApplication.this, libname));
+                // 64位适配
+                .addLazy(STARTUP_A7ZIP, () -> A7Zip.initialize(this))
+                .addLazy(STARTUP_ANALYTICS, () -> {
+                    if (Settings.getEnableAnalytics()) {
+                        Analytics.start(this);
+                    }
+                });
+        mStartup.start();
+
+        // Analytics is not needed for the first frame
+        Looper.myQueue().addIdleHandler(() -> {
+            mStartup.startLazy(STARTUP_ANALYTICS);
+            return false;
+        });
 
         // Do io tasks in new thread
         new AsyncTask<Void, Void, Void>() {
@@ -234,6 +269,26 @@ public class EhApplication extends RecordingApplication {
         initialized = true;
     }
 
+    /**
+     * Wait for the startup task, it must be called before using the component
+     * initialized by it from other threads than the main thread.
+     *
+     * @param name one of {@code STARTUP_*}
+     */
+    public static void awaitStartup(@NonNull String name) {
+        EhApplication application = instance;
+        if (application != null && application.mStartup != null) {
+            application.mStartup.await(name);
+        }
+    }
+
+    @NonNull
+    public static String getStartupTimings() {
+        EhApplication application = instance;
+        return application != null && application.mStartup != null
+                ? application.mStartup.toString() : "";
+    }
+
     private void clearTempDir() {
         File dir = AppConfig.getTempDir();
         if (null != dir) {
@@ -275,6 +330,17 @@ public class EhApplication extends RecordingApplication {
         if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
             clearMemoryCache();
         }
+
+        // Values of visible scenes are still reachable from weak references
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            mTempCache.trim(0.0f);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mTempCache.trim(0.25f);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            mTempCache.trim(0.5f);
+        }
     }
 
     private void debugPrint() {
@@ -313,20 +379,20 @@ public class EhApplication extends RecordingApplication {
     }
 
     public String putTempCache(@NonNull String key,@NonNull Object o) {
-        mTempCacheMap.put(key, o);
+        mTempCache.put(key, o);
         return key;
     }
 
     public boolean containTempCache(@NonNull String key) {
-        return mTempCacheMap.containsKey(key);
+        return mTempCache.contains(key);
     }
 
     public Object getTempCache(@NonNull String key) {
-        return mTempCacheMap.get(key);
+        return mTempCache.get(key);
     }
 
     public Object removeTempCache(@NonNull String key) {
-        return mTempCacheMap.remove(key);
+        return mTempCache.remove(key);
     }
 
     public void removeGlobalStuff(Object o) {
@@ -363,6 +429,8 @@ public class EhApplication extends RecordingApplication {
     public static OkHttpClient getOkHttpClient(@NonNull Context context) {
         EhApplication application = ((EhApplication) context.getApplicationContext());
         if (application.mOkHttpClient == null) {
+            EhDns dns = new EhDns(application);
+            dns.prefetch();
 //            Dispatcher dispatcher = new Dispatcher();
 //            dispatcher.setMaxRequestsPerHost(4);
             OkHttpClient.Builder builder = new OkHttpClient.Builder()
@@ -374,7 +442,7 @@ public class EhApplication extends RecordingApplication {
                     .cache(getOkHttpCache(application))
 //                    .hostnameVerifier((hostname, session) -> true)
 //                    .dispatcher(dispatcher)
-                    .dns(new EhDns(application))
+                    .dns(dns)
                     .addNetworkInterceptor(sprocket -> {
                         try {
                             return sprocket.proceed(sprocket.request());
@@ -527,15 +595,21 @@ public class EhApplication extends RecordingApplication {
 
 
     @NonNull
-    public static LruCache<Long, GalleryDetail> getGalleryDetailCache(@NonNull Context context) {
+    public static GalleryDetailCache getGalleryDetailCache(@NonNull Context context) {
         EhApplication application = ((EhApplication) context.getApplicationContext());
         if (application.mGalleryDetailCache == null) {
-            // Max size 25, 3 min timeout
-            application.mGalleryDetailCache = new LruCache<>(25);
+            // Estimated bytes in memory, the rest is kept on disk
+            application.mGalleryDetailCache = new GalleryDetailCache(
+                    (int) Math.min(Runtime.getRuntime().maxMemory() / 32, 8 * 1024 * 1024),
+                    new SimpleDiskCache(new File(context.getCacheDir(), "gallery_detail"), 10 * 1024 * 1024)); // 10M
             getFavouriteStatusRouter().addListener((gid, slot) -> {
-                GalleryDetail gd = application.mGalleryDetailCache.get(gid);
+                GalleryDetail gd = application.mGalleryDetailCache.getIfPresent(gid);
                 if (gd != null) {
                     gd.favoriteSlot = slot;
+                    // Update disk copy
+                    application.mGalleryDetailCache.put(gid, gd);
+                } else {
+                    application.mGalleryDetailCache.remove(gid);
                 }
             });
         }
@@ -560,10 +634,13 @@ public class EhApplication extends RecordingApplication {
     @NonNull
     public static DownloadManager getDownloadManager(@NonNull Context context) {
         EhApplication application = ((EhApplication) context.getApplicationContext());
-        if (application.mDownloadManager == null) {
-            application.mDownloadManager = new DownloadManager(application);
+        // It may be being created in startup task
+        synchronized (application.mDownloadManagerLock) {
+            if (application.mDownloadManager == null) {
+                application.mDownloadManager = new DownloadManager(application);
+            }
+            return application.mDownloadManager;
         }
-        return application.mDownloadManager;
     }
 
     @NonNull
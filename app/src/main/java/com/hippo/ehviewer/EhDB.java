@@ -53,6 +53,7 @@ import com.hippo.ehviewer.dao.LocalFavoritesDao;
 import com.hippo.ehviewer.dao.QuickSearch;
 import com.hippo.ehviewer.dao.QuickSearchDao;
 import com.hippo.ehviewer.download.DownloadManager;
+import com.hippo.ehviewer.sync.GalleryTagsIndex;
 import com.hippo.util.ExceptionUtils;
 import com.hippo.util.SqlUtils;
 import com.hippo.yorozuya.IOUtils;
@@ -60,6 +61,7 @@ import com.hippo.yorozuya.ObjectUtils;
 import com.hippo.yorozuya.collect.SparseJLArray;
 
 import org.greenrobot.greendao.AbstractDao;
+import org.greenrobot.greendao.database.Database;
 import org.greenrobot.greendao.query.CloseableListIterator;
 import org.greenrobot.greendao.query.LazyList;
 import org.greenrobot.greendao.query.QueryBuilder;
@@ -71,8 +73,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
 public class EhDB {
 
@@ -80,7 +86,12 @@ public class EhDB {
 
     public static int MAX_HISTORY_COUNT = 100;
 
-    private static DaoSession sDaoSession;
+    // The default SQLITE_MAX_VARIABLE_NUMBER before SQLite 3.32
+    private static final int MAX_SQL_VARIABLES = 999;
+
+    private static volatile DaoSession sDaoSession;
+    // Opened in background, callers wait for it
+    private static final CountDownLatch sInitLatch = new CountDownLatch(1);
 
     private static boolean sHasOldDB;
     private static boolean sNewDB;
@@ -190,17 +201,55 @@ public class EhDB {
         }
     }
 
+    /**
+     * Open the database and merge the old one. It could be called in any thread,
+     * other methods block until it is done.
+     */
     public static void initialize(Context context) {
-        sHasOldDB = context.getDatabasePath("data").exists();
+        try {
+            sHasOldDB = context.getDatabasePath("data").exists();
+
+            DBOpenHelper helper = new DBOpenHelper(
+                    context.getApplicationContext(), "eh.db", null);
 
-        DBOpenHelper helper = new DBOpenHelper(
-                context.getApplicationContext(), "eh.db", null);
+            SQLiteDatabase db = helper.getWritableDatabase();
+            DaoMaster daoMaster = new DaoMaster(db);
 
-        SQLiteDatabase db = helper.getWritableDatabase();
-        DaoMaster daoMaster = new DaoMaster(db);
+            sDaoSession = daoMaster.newSession();
+            MAX_HISTORY_COUNT = Settings.getHistoryInfoSize();
 
-        sDaoSession = daoMaster.newSession();
-        MAX_HISTORY_COUNT = Settings.getHistoryInfoSize();
+            if (needMerge()) {
+                mergeOldDB(context);
+            }
+        } finally {
+            sInitLatch.countDown();
+        }
+    }
+
+    private static DaoSession getSession() {
+        DaoSession session = sDaoSession;
+        if (session != null && sInitLatch.getCount() == 0) {
+            return session;
+        }
+
+        boolean interrupted = false;
+        for (;;) {
+            try {
+                sInitLatch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        session = sDaoSession;
+        if (session == null) {
+            throw new IllegalStateException("Can't open database");
+        }
+        return session;
     }
 
     public static boolean needMerge() {
@@ -403,7 +452,7 @@ public class EhDB {
     }
 
     public static synchronized List<DownloadInfo> getAllDownloadInfo() {
-        DownloadsDao dao = sDaoSession.getDownloadsDao();
+        DownloadsDao dao = getSession().getDownloadsDao();
         List<DownloadInfo> list = dao.queryBuilder().orderDesc(DownloadsDao.Properties.Time).list();
         // Fix state
         for (DownloadInfo info: list) {
@@ -416,23 +465,33 @@ public class EhDB {
 
     // Insert or update
     public static synchronized void putDownloadInfo(DownloadInfo downloadInfo) {
-        DownloadsDao dao = sDaoSession.getDownloadsDao();
-        if (null != dao.load(downloadInfo.gid)) {
-            // Update
-            dao.update(downloadInfo);
-        } else {
-            // Insert
-            dao.insert(downloadInfo);
+        getSession().getDownloadsDao().insertOrReplace(downloadInfo);
+    }
+
+    /**
+     * Insert or update all in one transaction
+     */
+    public static synchronized void putDownloadInfo(Collection<DownloadInfo> downloadInfoList) {
+        if (downloadInfoList.isEmpty()) {
+            return;
         }
+        getSession().getDownloadsDao().insertOrReplaceInTx(downloadInfoList);
     }
 
     public static synchronized void removeDownloadInfo(long gid) {
-        sDaoSession.getDownloadsDao().deleteByKey(gid);
+        getSession().getDownloadsDao().deleteByKey(gid);
+    }
+
+    public static synchronized void removeDownloadInfo(Collection<Long> gids) {
+        if (gids.isEmpty()) {
+            return;
+        }
+        getSession().getDownloadsDao().deleteByKeyInTx(gids);
     }
 
     @Nullable
     public static synchronized String getDownloadDirname(long gid) {
-        DownloadDirnameDao dao = sDaoSession.getDownloadDirnameDao();
+        DownloadDirnameDao dao = getSession().getDownloadDirnameDao();
         DownloadDirname raw = dao.load(gid);
         if (raw != null) {
             return raw.getDirname();
@@ -445,7 +504,7 @@ public class EhDB {
      * Insert or update
      */
     public static synchronized void putDownloadDirname(long gid, String dirname) {
-        DownloadDirnameDao dao = sDaoSession.getDownloadDirnameDao();
+        DownloadDirnameDao dao = getSession().getDownloadDirnameDao();
         DownloadDirname raw = dao.load(gid);
         if (raw != null) { // Update
             raw.setDirname(dirname);
@@ -458,13 +517,30 @@ public class EhDB {
         }
     }
 
+    /**
+     * Insert or update all in one transaction
+     */
+    public static synchronized void putDownloadDirname(Collection<DownloadDirname> dirnames) {
+        if (dirnames.isEmpty()) {
+            return;
+        }
+        getSession().getDownloadDirnameDao().insertOrReplaceInTx(dirnames);
+    }
+
     public static synchronized void removeDownloadDirname(long gid) {
-        DownloadDirnameDao dao = sDaoSession.getDownloadDirnameDao();
+        DownloadDirnameDao dao = getSession().getDownloadDirnameDao();
         dao.deleteByKey(gid);
     }
 
+    public static synchronized void removeDownloadDirname(Collection<Long> gids) {
+        if (gids.isEmpty()) {
+            return;
+        }
+        getSession().getDownloadDirnameDao().deleteByKeyInTx(gids);
+    }
+
     public static synchronized void updateDownloadDirname(long removeGid,long newGid, String dirname) {
-        DownloadDirnameDao dao = sDaoSession.getDownloadDirnameDao();
+        DownloadDirnameDao dao = getSession().getDownloadDirnameDao();
         dao.deleteByKey(removeGid);
         DownloadDirname raw = dao.load(newGid);
         if (raw != null) { // Update
@@ -479,18 +555,18 @@ public class EhDB {
     }
 
     public static synchronized void clearDownloadDirname() {
-        DownloadDirnameDao dao = sDaoSession.getDownloadDirnameDao();
+        DownloadDirnameDao dao = getSession().getDownloadDirnameDao();
         dao.deleteAll();
     }
 
     @NonNull
     public static synchronized List<DownloadLabel> getAllDownloadLabelList() {
-        DownloadLabelDao dao = sDaoSession.getDownloadLabelDao();
+        DownloadLabelDao dao = getSession().getDownloadLabelDao();
         return dao.queryBuilder().orderAsc(DownloadLabelDao.Properties.Time).list();
     }
 
     public static synchronized DownloadLabel addDownloadLabel(String label) {
-        DownloadLabelDao dao = sDaoSession.getDownloadLabelDao();
+        DownloadLabelDao dao = getSession().getDownloadLabelDao();
 
         QueryBuilder<DownloadLabel> queryBuilder = dao.queryBuilder().where(DownloadLabelDao.Properties.Label.eq(label));
         List<DownloadLabel> result = queryBuilder.list();
@@ -508,7 +584,7 @@ public class EhDB {
     public static synchronized DownloadLabel addDownloadLabel(DownloadLabel raw) {
         // Reset id
         raw.setId(null);
-        DownloadLabelDao dao = sDaoSession.getDownloadLabelDao();
+        DownloadLabelDao dao = getSession().getDownloadLabelDao();
         DownloadLabel label = dao.load(raw.getId());
         if (label!=null){
             return label;
@@ -518,7 +594,7 @@ public class EhDB {
     }
 
     public static synchronized void updateDownloadLabel(DownloadLabel raw) {
-        DownloadLabelDao dao = sDaoSession.getDownloadLabelDao();
+        DownloadLabelDao dao = getSession().getDownloadLabelDao();
         dao.update(raw);
     }
 
@@ -531,7 +607,7 @@ public class EhDB {
         int offset = reverse ? toPosition : fromPosition;
         int limit = reverse ? fromPosition - toPosition + 1 : toPosition - fromPosition + 1;
 
-        DownloadLabelDao dao = sDaoSession.getDownloadLabelDao();
+        DownloadLabelDao dao = getSession().getDownloadLabelDao();
         List<DownloadLabel> list = dao.queryBuilder().orderAsc(DownloadLabelDao.Properties.Time)
                 .offset(offset).limit(limit).list();
 
@@ -548,12 +624,12 @@ public class EhDB {
     }
 
     public static synchronized void removeDownloadLabel(DownloadLabel raw) {
-        DownloadLabelDao dao = sDaoSession.getDownloadLabelDao();
+        DownloadLabelDao dao = getSession().getDownloadLabelDao();
         dao.delete(raw);
     }
 
     public static synchronized List<GalleryInfo> getAllLocalFavorites() {
-        LocalFavoritesDao dao = sDaoSession.getLocalFavoritesDao();
+        LocalFavoritesDao dao = getSession().getLocalFavoritesDao();
         List<LocalFavoriteInfo> list = dao.queryBuilder().orderDesc(LocalFavoritesDao.Properties.Time).list();
         List<GalleryInfo> result = new ArrayList<>();
         result.addAll(list);
@@ -562,7 +638,7 @@ public class EhDB {
 
     public static synchronized List<GalleryInfo> searchLocalFavorites(String query) {
         query = SqlUtils.sqlEscapeString("%" + query+ "%");
-        LocalFavoritesDao dao = sDaoSession.getLocalFavoritesDao();
+        LocalFavoritesDao dao = getSession().getLocalFavoritesDao();
         List<LocalFavoriteInfo> list = dao.queryBuilder().orderDesc(LocalFavoritesDao.Properties.Time)
                 .where(LocalFavoritesDao.Properties.Title.like(query)).list();
         List<GalleryInfo> result = new ArrayList<>();
@@ -572,7 +648,7 @@ public class EhDB {
 
     public static synchronized GalleryInfo searchLocalFavorites(long query) {
         //        query = SqlUtils.sqlEscapeString("%" + query+ "%");
-        LocalFavoritesDao dao = sDaoSession.getLocalFavoritesDao();
+        LocalFavoritesDao dao = getSession().getLocalFavoritesDao();
         List<LocalFavoriteInfo> list = dao.queryBuilder().orderDesc(LocalFavoritesDao.Properties.Time)
                 .where(LocalFavoritesDao.Properties.Gid.eq(query)).list();
         GalleryInfo result = list.get(0);
@@ -580,54 +656,77 @@ public class EhDB {
     }
 
     public static synchronized void removeLocalFavorites(long gid) {
-        sDaoSession.getLocalFavoritesDao().deleteByKey(gid);
+        getSession().getLocalFavoritesDao().deleteByKey(gid);
     }
 
     public static synchronized void removeLocalFavorites(long[] gidArray) {
-        LocalFavoritesDao dao = sDaoSession.getLocalFavoritesDao();
+        if (gidArray.length == 0) {
+            return;
+        }
+        List<Long> gids = new ArrayList<>(gidArray.length);
         for (long gid: gidArray) {
-            dao.deleteByKey(gid);
+            gids.add(gid);
         }
+        getSession().getLocalFavoritesDao().deleteByKeyInTx(gids);
     }
 
     public static synchronized boolean containLocalFavorites(long gid) {
-        LocalFavoritesDao dao = sDaoSession.getLocalFavoritesDao();
+        LocalFavoritesDao dao = getSession().getLocalFavoritesDao();
         return null != dao.load(gid);
     }
 
+    private static LocalFavoriteInfo toLocalFavoriteInfo(GalleryInfo galleryInfo, long time) {
+        if (galleryInfo instanceof LocalFavoriteInfo) {
+            return (LocalFavoriteInfo) galleryInfo;
+        } else {
+            LocalFavoriteInfo info = new LocalFavoriteInfo(galleryInfo);
+            info.time = time;
+            return info;
+        }
+    }
+
     public static synchronized void putLocalFavorite(GalleryInfo galleryInfo) {
-        LocalFavoritesDao dao = sDaoSession.getLocalFavoritesDao();
+        LocalFavoritesDao dao = getSession().getLocalFavoritesDao();
         if (null == dao.load(galleryInfo.gid)) {
-            LocalFavoriteInfo info;
-            if (galleryInfo instanceof LocalFavoriteInfo) {
-                info = (LocalFavoriteInfo) galleryInfo;
-            } else {
-                info = new LocalFavoriteInfo(galleryInfo);
-                info.time = System.currentTimeMillis();
-            }
-            dao.insert(info);
+            dao.insert(toLocalFavoriteInfo(galleryInfo, System.currentTimeMillis()));
         }
     }
 
-    public static synchronized void putLocalFavorites(List<GalleryInfo> galleryInfoList) {
+    /**
+     * Insert the ones not in local favorites in one transaction
+     */
+    public static synchronized void putLocalFavorites(List<? extends GalleryInfo> galleryInfoList) {
+        if (galleryInfoList.isEmpty()) {
+            return;
+        }
+        Set<Long> existing = loadExistingGids(LocalFavoritesDao.TABLENAME,
+                LocalFavoritesDao.Properties.Gid.columnName, galleryInfoList);
+        long time = System.currentTimeMillis();
+        List<LocalFavoriteInfo> list = new ArrayList<>();
         for (GalleryInfo gi: galleryInfoList) {
-            putLocalFavorite(gi);
+            // Also skip duplicate in the list
+            if (existing.add(gi.gid)) {
+                list.add(toLocalFavoriteInfo(gi, time));
+            }
+        }
+        if (!list.isEmpty()) {
+            getSession().getLocalFavoritesDao().insertInTx(list);
         }
     }
 
 
     public static synchronized List<BlackList> getAllBlackList(){
-        BlackListDao dao = sDaoSession.getBlackListDao();
+        BlackListDao dao = getSession().getBlackListDao();
         return dao.queryBuilder().orderAsc(BlackListDao.Properties.Add_time).list();
     }
 
     public static synchronized boolean inBlackList(String Badgayname){
-        BlackListDao dao = sDaoSession.getBlackListDao();
+        BlackListDao dao = getSession().getBlackListDao();
         return dao.queryRaw("where Badgayname ='" + Badgayname + "'").size() != 0;
     }
 
     public static synchronized void insertBlackList(BlackList blackList){
-        BlackListDao dao = sDaoSession.getBlackListDao();
+        BlackListDao dao = getSession().getBlackListDao();
         blackList.id = null;
         if (blackList.badgayname == null){
             return;
@@ -636,27 +735,27 @@ public class EhDB {
     }
 
     public static synchronized void updateBlackList(BlackList blackList){
-        BlackListDao dao = sDaoSession.getBlackListDao();
+        BlackListDao dao = getSession().getBlackListDao();
         dao.update(blackList);
     }
 
     public static synchronized void deleteBlackList(BlackList blackList){
-        BlackListDao dao = sDaoSession.getBlackListDao();
+        BlackListDao dao = getSession().getBlackListDao();
         dao.delete(blackList);
     }
 
     public static synchronized List<GalleryTags> getAllGalleryTags(){
-        GalleryTagsDao dao = sDaoSession.getGalleryTagsDao();
+        GalleryTagsDao dao = getSession().getGalleryTagsDao();
         return dao.queryBuilder().orderAsc(GalleryTagsDao.Properties.Gid).list();
     }
 
     public static synchronized boolean inGalleryTags(long gid){
-        GalleryTagsDao dao = sDaoSession.getGalleryTagsDao();
+        GalleryTagsDao dao = getSession().getGalleryTagsDao();
         return dao.queryRaw("where gid =" + gid ).size() != 0;
     }
 
     public static synchronized GalleryTags queryGalleryTags(long gid){
-        GalleryTagsDao dao = sDaoSession.getGalleryTagsDao();
+        GalleryTagsDao dao = getSession().getGalleryTagsDao();
         List<GalleryTags> list = dao.queryRaw("where gid =" + gid );
         if (list.isEmpty()){
             return null;
@@ -665,37 +764,37 @@ public class EhDB {
     }
 
     public static synchronized void insertGalleryTags(GalleryTags galleryTags){
-        GalleryTagsDao dao = sDaoSession.getGalleryTagsDao();
+        GalleryTagsDao dao = getSession().getGalleryTagsDao();
         galleryTags.create_time = new Date();
         galleryTags.update_time = galleryTags.create_time;
         dao.insert(galleryTags);
     }
 
     public static synchronized void updateGalleryTags(GalleryTags galleryTags){
-        GalleryTagsDao dao = sDaoSession.getGalleryTagsDao();
+        GalleryTagsDao dao = getSession().getGalleryTagsDao();
         galleryTags.update_time = new Date();
         dao.update(galleryTags);
     }
 
     public static synchronized void deleteGalleryTags(GalleryTags galleryTags){
-        GalleryTagsDao dao = sDaoSession.getGalleryTagsDao();
+        GalleryTagsDao dao = getSession().getGalleryTagsDao();
         dao.delete(galleryTags);
     }
 
     public static synchronized List<QuickSearch> getAllQuickSearch() {
-        QuickSearchDao dao = sDaoSession.getQuickSearchDao();
+        QuickSearchDao dao = getSession().getQuickSearchDao();
         return dao.queryBuilder().orderAsc(QuickSearchDao.Properties.Time).list();
     }
 
     public static synchronized void insertQuickSearch(QuickSearch quickSearch) {
-        QuickSearchDao dao = sDaoSession.getQuickSearchDao();
+        QuickSearchDao dao = getSession().getQuickSearchDao();
         quickSearch.id = null;
         quickSearch.time = System.currentTimeMillis();
         quickSearch.id = dao.insert(quickSearch);
     }
 
     public static synchronized void insertQuickSearchList(List<QuickSearch> quickSearchList) {
-        QuickSearchDao dao = sDaoSession.getQuickSearchDao();
+        QuickSearchDao dao = getSession().getQuickSearchDao();
         for (int i = 0; i < quickSearchList.size(); i++) {
             QuickSearch search = quickSearchList.get(i);
             search.id = null;
@@ -705,7 +804,7 @@ public class EhDB {
     }
 
     public static synchronized void takeOverQuickSearchList(List<QuickSearch> quickSearchList) {
-        QuickSearchDao dao = sDaoSession.getQuickSearchDao();
+        QuickSearchDao dao = getSession().getQuickSearchDao();
         List<QuickSearch> allList = dao.queryBuilder().orderAsc(QuickSearchDao.Properties.Time).list();
         for (int i = 0; i < quickSearchList.size(); i++) {
             QuickSearch newSearch = quickSearchList.get(i);
@@ -726,12 +825,12 @@ public class EhDB {
     }
 
     public static synchronized void updateQuickSearch(QuickSearch quickSearch) {
-        QuickSearchDao dao = sDaoSession.getQuickSearchDao();
+        QuickSearchDao dao = getSession().getQuickSearchDao();
         dao.update(quickSearch);
     }
 
     public static synchronized void deleteQuickSearch(QuickSearch quickSearch) {
-        QuickSearchDao dao = sDaoSession.getQuickSearchDao();
+        QuickSearchDao dao = getSession().getQuickSearchDao();
         dao.delete(quickSearch);
     }
 
@@ -744,7 +843,7 @@ public class EhDB {
         int offset = reverse ? toPosition : fromPosition;
         int limit = reverse ? fromPosition - toPosition + 1 : toPosition - fromPosition + 1;
 
-        QuickSearchDao dao = sDaoSession.getQuickSearchDao();
+        QuickSearchDao dao = getSession().getQuickSearchDao();
         List<QuickSearch> list = dao.queryBuilder().orderAsc(QuickSearchDao.Properties.Time)
                 .offset(offset).limit(limit).list();
 
@@ -761,11 +860,11 @@ public class EhDB {
     }
 
     public static synchronized LazyList<HistoryInfo> getHistoryLazyList() {
-        return sDaoSession.getHistoryDao().queryBuilder().orderDesc(HistoryDao.Properties.Time).listLazy();
+        return getSession().getHistoryDao().queryBuilder().orderDesc(HistoryDao.Properties.Time).listLazy();
     }
 
     public static synchronized void putHistoryInfo(GalleryInfo galleryInfo) {
-        HistoryDao dao = sDaoSession.getHistoryDao();
+        HistoryDao dao = getSession().getHistoryDao();
         HistoryInfo info = dao.load(galleryInfo.gid);
         if (null != info) {
             // Update time
@@ -787,45 +886,94 @@ public class EhDB {
         }
     }
 
+    /**
+     * Insert the ones not in history and trim history in one transaction
+     */
     public static synchronized void putHistoryInfo(List<HistoryInfo> historyInfoList) {
-        HistoryDao dao = sDaoSession.getHistoryDao();
+        if (historyInfoList.isEmpty()) {
+            return;
+        }
+        DaoSession session = getSession();
+        HistoryDao dao = session.getHistoryDao();
+        Set<Long> existing = loadExistingGids(HistoryDao.TABLENAME,
+                HistoryDao.Properties.Gid.columnName, historyInfoList);
+        List<HistoryInfo> newList = new ArrayList<>();
         for (HistoryInfo info: historyInfoList) {
-            if (null == dao.load(info.gid)) {
-                dao.insert(info);
+            if (existing.add(info.gid)) {
+                newList.add(info);
             }
         }
+        if (newList.isEmpty()) {
+            return;
+        }
 
-        List<HistoryInfo> list = dao.queryBuilder().orderDesc(HistoryDao.Properties.Time)
-                .limit(-1).offset(MAX_HISTORY_COUNT).list();
-        dao.deleteInTx(list);
+        session.runInTx(() -> {
+            dao.insertInTx(newList);
+            if (MAX_HISTORY_COUNT != -1) {
+                List<HistoryInfo> list = dao.queryBuilder().orderDesc(HistoryDao.Properties.Time)
+                        .limit(-1).offset(MAX_HISTORY_COUNT).list();
+                dao.deleteInTx(list);
+            }
+        });
+    }
+
+    /**
+     * Find which gids are already in the table. Gids are queried by
+     * {@code IN (...)} in chunks, no entity is created.
+     */
+    private static Set<Long> loadExistingGids(String table, String gidColumn,
+            List<? extends GalleryInfo> list) {
+        Set<Long> result = new HashSet<>();
+        Database db = getSession().getDatabase();
+        for (int start = 0, size = list.size(); start < size; start += MAX_SQL_VARIABLES) {
+            int end = Math.min(start + MAX_SQL_VARIABLES, size);
+            String[] args = new String[end - start];
+            StringBuilder sb = new StringBuilder();
+            sb.append("SELECT ").append(gidColumn).append(" FROM ").append(table)
+                    .append(" WHERE ").append(gidColumn).append(" IN (");
+            for (int i = start; i < end; i++) {
+                if (i != start) {
+                    sb.append(',');
+                }
+                sb.append('?');
+                args[i - start] = Long.toString(list.get(i).gid);
+            }
+            sb.append(')');
+            try (Cursor cursor = db.rawQuery(sb.toString(), args)) {
+                while (cursor.moveToNext()) {
+                    result.add(cursor.getLong(0));
+                }
+            }
+        }
+        return result;
     }
 
     public static synchronized void deleteHistoryInfo(HistoryInfo info) {
-        HistoryDao dao = sDaoSession.getHistoryDao();
+        HistoryDao dao = getSession().getHistoryDao();
         dao.delete(info);
     }
 
     public static synchronized void clearHistoryInfo() {
-        HistoryDao dao = sDaoSession.getHistoryDao();
+        HistoryDao dao = getSession().getHistoryDao();
         dao.deleteAll();
     }
 
     public static synchronized List<Filter> getAllFilter() {
-        return sDaoSession.getFilterDao().queryBuilder().list();
+        return getSession().getFilterDao().queryBuilder().list();
     }
 
     public static synchronized void addFilter(Filter filter) {
         filter.setId(null);
-        filter.setId(sDaoSession.getFilterDao().insert(filter));
+        filter.setId(getSession().getFilterDao().insert(filter));
     }
 
     public static synchronized void deleteFilter(Filter filter) {
-        sDaoSession.getFilterDao().delete(filter);
+        getSession().getFilterDao().delete(filter);
     }
 
     public static synchronized void triggerFilter(Filter filter) {
         filter.setEnable(!filter.enable);
-        sDaoSession.getFilterDao().update(filter);
+        getSession().getFilterDao().update(filter);
     }
 
     private static <T> boolean copyDao(AbstractDao<T, ?> from, AbstractDao<T, ?> to) {
@@ -852,14 +1000,14 @@ public class EhDB {
             try (SQLiteDatabase db = helper.getWritableDatabase()) {
                 DaoMaster daoMaster = new DaoMaster(db);
                 DaoSession exportSession = daoMaster.newSession();
-                if (!copyDao(sDaoSession.getDownloadsDao(), exportSession.getDownloadsDao())) return false;
-                if (!copyDao(sDaoSession.getDownloadLabelDao(), exportSession.getDownloadLabelDao())) return false;
-                if (!copyDao(sDaoSession.getDownloadDirnameDao(), exportSession.getDownloadDirnameDao())) return false;
-                if (!copyDao(sDaoSession.getHistoryDao(), exportSession.getHistoryDao())) return false;
-                if (!copyDao(sDaoSession.getQuickSearchDao(), exportSession.getQuickSearchDao())) return false;
-                if (!copyDao(sDaoSession.getLocalFavoritesDao(), exportSession.getLocalFavoritesDao())) return false;
-                if (!copyDao(sDaoSession.getBookmarksBao(), exportSession.getBookmarksBao())) return false;
-                if (!copyDao(sDaoSession.getFilterDao(), exportSession.getFilterDao())) return false;
+                if (!copyDao(getSession().getDownloadsDao(), exportSession.getDownloadsDao())) return false;
+                if (!copyDao(getSession().getDownloadLabelDao(), exportSession.getDownloadLabelDao())) return false;
+                if (!copyDao(getSession().getDownloadDirnameDao(), exportSession.getDownloadDirnameDao())) return false;
+                if (!copyDao(getSession().getHistoryDao(), exportSession.getHistoryDao())) return false;
+                if (!copyDao(getSession().getQuickSearchDao(), exportSession.getQuickSearchDao())) return false;
+                if (!copyDao(getSession().getLocalFavoritesDao(), exportSession.getLocalFavoritesDao())) return false;
+                if (!copyDao(getSession().getBookmarksBao(), exportSession.getBookmarksBao())) return false;
+                if (!copyDao(getSession().getFilterDao(), exportSession.getFilterDao())) return false;
             }
 
             // Copy export db to data dir
@@ -919,9 +1067,7 @@ public class EhDB {
             sendImportProgress(handler,50);
             // Download dirname
             List<DownloadDirname> downloadDirnameList = session.getDownloadDirnameDao().queryBuilder().list();
-            for (DownloadDirname dirname: downloadDirnameList) {
-                putDownloadDirname(dirname.getGid(), dirname.getDirname());
-            }
+            putDownloadDirname(downloadDirnameList);
             sendImportProgress(handler,90);
 
             // History
@@ -930,7 +1076,7 @@ public class EhDB {
 
             // QuickSearch
             List<QuickSearch> quickSearchList = session.getQuickSearchDao().queryBuilder().list();
-            List<QuickSearch> currentQuickSearchList = sDaoSession.getQuickSearchDao().queryBuilder().list();
+            List<QuickSearch> currentQuickSearchList = getSession().getQuickSearchDao().queryBuilder().list();
             for (QuickSearch quickSearch: quickSearchList) {
                 String name = quickSearch.name;
                 for (QuickSearch q: currentQuickSearchList) {
@@ -948,16 +1094,14 @@ public class EhDB {
 
             // LocalFavorites
             List<LocalFavoriteInfo> localFavoriteInfoList = session.getLocalFavoritesDao().queryBuilder().list();
-            for (LocalFavoriteInfo info: localFavoriteInfoList) {
-                putLocalFavorite(info);
-            }
+            putLocalFavorites(localFavoriteInfoList);
 
             // Bookmarks
             // TODO
 
             // Filter
             List<Filter> filterList = session.getFilterDao().queryBuilder().list();
-            List<Filter> currentFilterList = sDaoSession.getFilterDao().queryBuilder().list();
+            List<Filter> currentFilterList = getSession().getFilterDao().queryBuilder().list();
             for (Filter filter: filterList) {
                 if (!currentFilterList.contains(filter)) {
                     addFilter(filter);
@@ -965,7 +1109,7 @@ public class EhDB {
             }
 
             List<BlackList> blackList = session.getBlackListDao().queryBuilder().list();
-            List<BlackList> currentBlackList = sDaoSession.getBlackListDao().queryBuilder().list();
+            List<BlackList> currentBlackList = getSession().getBlackListDao().queryBuilder().list();
             for (BlackList black: blackList) {
                 if (!currentBlackList.contains(black)) {
                     insertBlackList(black);
@@ -973,12 +1117,13 @@ public class EhDB {
             }
 
             List<GalleryTags> galleryTagsList = session.getGalleryTagsDao().queryBuilder().list();
-            List<GalleryTags> currentGalleryTags = sDaoSession.getGalleryTagsDao().queryBuilder().list();
+            List<GalleryTags> currentGalleryTags = getSession().getGalleryTagsDao().queryBuilder().list();
             for (GalleryTags tags: galleryTagsList) {
                 if (!currentGalleryTags.contains(tags)) {
                     insertGalleryTags(tags);
                 }
             }
+            GalleryTagsIndex.invalidate();
 
             return null;
         } catch (Throwable e) {
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer;
+
+import android.os.Parcel;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+import androidx.annotation.WorkerThread;
+import androidx.collection.LruCache;
+
+import com.hippo.beerbelly.SimpleDiskCache;
+import com.hippo.ehviewer.client.data.GalleryComment;
+import com.hippo.ehviewer.client.data.GalleryCommentList;
+import com.hippo.ehviewer.client.data.GalleryDetail;
+import com.hippo.ehviewer.client.data.GalleryTagGroup;
+import com.hippo.ehviewer.client.data.PreviewSet;
+import com.hippo.streampipe.InputStreamPipe;
+import com.hippo.streampipe.OutputStreamPipe;
+import com.hippo.util.ExceptionUtils;
+import com.hippo.util.IoThreadPoolExecutor;
+import com.hippo.yorozuya.SimpleHandler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Two-tier cache of {@link GalleryDetail}.
+ * <p>
+ * Memory tier is sized by estimated bytes. Every put is also written to disk
+ * in background, a gallery viewed in {@link #DISK_EXPIRE_TIME} is read back
+ * from disk after process death without requesting and parsing it again.
+ * <p>
+ * Disk entry is magic (int), format version (int), app version code (int),
+ * time (long), api uid (long), api key, then deflated parcel of the detail.
+ * Parcel layout changes between app versions, so entries of other versions are ignored.
+ */
+public class GalleryDetailCache {
+
+    private static final String TAG = GalleryDetailCache.class.getSimpleName();
+
+    private static final int MAGIC = 0x45484744; // EHGD
+    private static final int FORMAT_VERSION = 1;
+
+    static final long DISK_EXPIRE_TIME = 60 * 60 * 1000; // 1 hour
+
+    public interface Callback {
+        /**
+         * @param gd {@code null} if it is not in cache
+         */
+        @UiThread
+        void onGet(@Nullable GalleryDetail gd);
+    }
+
+    private final LruCache<Long, GalleryDetail> mMemoryCache;
+    @Nullable
+    private final SimpleDiskCache mDiskCache;
+
+    public GalleryDetailCache(int memorySize, @Nullable SimpleDiskCache diskCache) {
+        mMemoryCache = new LruCache<Long, GalleryDetail>(memorySize) {
+            @Override
+            protected int sizeOf(@NonNull Long key, @NonNull GalleryDetail value) {
+                return (int) Math.min(estimateSize(value), Integer.MAX_VALUE);
+            }
+        };
+        mDiskCache = diskCache;
+    }
+
+    private static long sizeOf(@Nullable String str) {
+        return str == null ? 0 : 40 + 2L * str.length();
+    }
+
+    /**
+     * Rough heap size of the gallery detail.
+     */
+    static long estimateSize(@NonNull GalleryDetail gd) {
+        long size = 512;
+        size += sizeOf(gd.token) + sizeOf(gd.title) + sizeOf(gd.titleJpn) + sizeOf(gd.thumb)
+                + sizeOf(gd.uploader) + sizeOf(gd.posted) + sizeOf(gd.apiKey)
+                + sizeOf(gd.torrentUrl) + sizeOf(gd.archiveUrl) + sizeOf(gd.parent)
+                + sizeOf(gd.visible) + sizeOf(gd.language) + sizeOf(gd.size);
+
+        GalleryTagGroup[] tags = gd.tags;
+        if (tags != null) {
+            for (GalleryTagGroup group : tags) {
+                size += 48 + sizeOf(group.groupName);
+                for (int i = 0, n = group.size(); i < n; i++) {
+                    size += sizeOf(group.getTagAt(i));
+                }
+            }
+        }
+
+        GalleryCommentList commentList = gd.comments;
+        GalleryComment[] comments = commentList != null ? commentList.comments : null;
+        if (comments != null) {
+            for (GalleryComment comment : comments) {
+                size += 96 + sizeOf(comment.voteState) + sizeOf(comment.user) + sizeOf(comment.comment);
+            }
+        }
+
+        size += sizeOf(gd.previewSet);
+        if (gd.SpiderInfoPreviewSet != gd.previewSet) {
+            size += sizeOf(gd.SpiderInfoPreviewSet);
+        }
+        return size;
+    }
+
+    private static long sizeOf(@Nullable PreviewSet previewSet) {
+        if (previewSet == null) {
+            return 0;
+        }
+        long size = 64;
+        for (int i = 0, n = previewSet.size(); i < n; i++) {
+            // Page url, image url and image key, they are similar in length
+            size += 32 + 3 * sizeOf(previewSet.getPageUrlAt(i));
+        }
+        return size;
+    }
+
+    /**
+     * Look up memory tier, then disk tier. Disk tier is read and unparceled
+     * here, use {@link #getAsync(long, Callback)} in UI thread.
+     */
+    @Nullable
+    @WorkerThread
+    public GalleryDetail get(long gid) {
+        GalleryDetail gd = mMemoryCache.get(gid);
+        if (gd == null) {
+            gd = readFromDisk(gid);
+            if (gd != null) {
+                mMemoryCache.put(gid, gd);
+            }
+        }
+        return gd;
+    }
+
+    /**
+     * Only look up memory tier.
+     */
+    @Nullable
+    public GalleryDetail getIfPresent(long gid) {
+        return mMemoryCache.get(gid);
+    }
+
+    /**
+     * Like {@link #get(long)}, but disk tier is read in background.
+     * The callback is called at once if it is in memory tier.
+     */
+    @UiThread
+    public void getAsync(long gid, @NonNull Callback callback) {
+        GalleryDetail gd = mMemoryCache.get(gid);
+        if (gd != null || mDiskCache == null) {
+            callback.onGet(gd);
+            return;
+        }
+        IoThreadPoolExecutor.getInstance().execute(() -> {
+            GalleryDetail result = get(gid);
+            SimpleHandler.getInstance().post(() -> callback.onGet(result));
+        });
+    }
+
+    public void put(long gid, @NonNull GalleryDetail gd) {
+        mMemoryCache.put(gid, gd);
+        if (mDiskCache != null) {
+            IoThreadPoolExecutor.getInstance().execute(() -> writeToDisk(gid, gd));
+        }
+    }
+
+    public void remove(long gid) {
+        mMemoryCache.remove(gid);
+        if (mDiskCache != null) {
+            IoThreadPoolExecutor.getInstance().execute(() -> mDiskCache.remove(Long.toString(gid)));
+        }
+    }
+
+    /**
+     * Clear memory tier, disk tier is kept.
+     */
+    public void evictAll() {
+        mMemoryCache.evictAll();
+    }
+
+    public void trimToSize(int maxSize) {
+        mMemoryCache.trimToSize(maxSize);
+    }
+
+    public int maxSize() {
+        return mMemoryCache.maxSize();
+    }
+
+    @Nullable
+    private GalleryDetail readFromDisk(long gid) {
+        if (mDiskCache == null) {
+            return null;
+        }
+        InputStreamPipe pipe = mDiskCache.getInputStreamPipe(Long.toString(gid));
+        if (pipe == null) {
+            return null;
+        }
+
+        Parcel parcel = null;
+        try {
+            pipe.obtain();
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(pipe.open()));
+            if (dis.readInt() != MAGIC || dis.readInt() != FORMAT_VERSION
+                    || dis.readInt() != BuildConfig.VERSION_CODE) {
+                return null;
+            }
+            long time = dis.readLong();
+            long age = System.currentTimeMillis() - time;
+            if (age < 0 || age > DISK_EXPIRE_TIME) {
+                return null;
+            }
+            long apiUid = dis.readLong();
+            String apiKey = dis.readBoolean() ? dis.readUTF() : null;
+            int length = dis.readInt();
+            if (length <= 0) {
+                return null;
+            }
+            byte[] data = new byte[length];
+            Inflater inflater = new Inflater();
+            try {
+                new DataInputStream(new InflaterInputStream(dis, inflater)).readFully(data);
+            } finally {
+                inflater.end();
+            }
+
+            parcel = Parcel.obtain();
+            parcel.unmarshall(data, 0, length);
+            parcel.setDataPosition(0);
+            GalleryDetail gd = GalleryDetail.CREATOR.createFromParcel(parcel);
+            if (gd.gid != gid) {
+                return null;
+            }
+            // They are not in parcel
+            gd.apiUid = apiUid;
+            gd.apiKey = apiKey;
+            return gd;
+        } catch (Throwable e) {
+            ExceptionUtils.throwIfFatal(e);
+            Log.w(TAG, "Can't read gallery detail " + gid, e);
+            return null;
+        } finally {
+            if (parcel != null) {
+                parcel.recycle();
+            }
+            pipe.close();
+            pipe.release();
+        }
+    }
+
+    private void writeToDisk(long gid, GalleryDetail gd) {
+        writeToDisk(gid, gd, System.currentTimeMillis());
+    }
+
+    @WorkerThread
+    void writeToDisk(long gid, GalleryDetail gd, long time) {
+        if (mDiskCache == null) {
+            return;
+        }
+
+        byte[] data;
+        Parcel parcel = Parcel.obtain();
+        try {
+            gd.writeToParcel(parcel, 0);
+            data = parcel.marshall();
+        } catch (Throwable e) {
+            ExceptionUtils.throwIfFatal(e);
+            Log.w(TAG, "Can't marshall gallery detail " + gid, e);
+            return;
+        } finally {
+            parcel.recycle();
+        }
+
+        OutputStreamPipe pipe = mDiskCache.getOutputStreamPipe(Long.toString(gid));
+        try {
+            pipe.obtain();
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(pipe.open()));
+            dos.writeInt(MAGIC);
+            dos.writeInt(FORMAT_VERSION);
+            dos.writeInt(BuildConfig.VERSION_CODE);
+            dos.writeLong(time);
+            dos.writeLong(gd.apiUid);
+            dos.writeBoolean(gd.apiKey != null);
+            if (gd.apiKey != null) {
+                dos.writeUTF(gd.apiKey);
+            }
+            dos.writeInt(data.length);
+            Deflater deflater = new Deflater();
+            try {
+                DeflaterOutputStream dfos = new DeflaterOutputStream(dos, deflater);
+                dfos.write(data);
+                dfos.finish();
+            } finally {
+                deflater.end();
+            }
+            dos.flush();
+        } catch (IOException e) {
+            Log.w(TAG, "Can't write gallery detail " + gid, e);
+        } finally {
+            pipe.close();
+            pipe.release();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Cache to pass objects between scenes.
+ * <p>
+ * Values are held strongly in LRU order until the estimated size exceeds
+ * {@code maxSize}. Evicted values are only weakly held, so a value which is
+ * still used somewhere can be got again, others are left to GC.
+ */
+public class HandoffCache {
+
+    // Rough size of an object without known layout
+    static final int DEFAULT_OBJECT_SIZE = 1024;
+
+    private final Map<String, Entry> mStrongMap = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, WeakReference<Object>> mWeakMap = new HashMap<>();
+    private final long mMaxSize;
+    private long mSize;
+
+    private long mHitCount;
+    private long mWeakHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    private static final class Entry {
+        final Object value;
+        final long size;
+
+        Entry(Object value, long size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+
+    public HandoffCache(long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Estimate the size of the value in bytes. Override it for a better guess.
+     */
+    protected long sizeOf(@NonNull Object value) {
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return 16;
+        } else if (value instanceof CharSequence) {
+            return 40 + 2L * ((CharSequence) value).length();
+        } else if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        } else if (value instanceof int[]) {
+            return 16 + 4L * ((int[]) value).length;
+        } else if (value instanceof long[]) {
+            return 16 + 8L * ((long[]) value).length;
+        } else if (value instanceof Object[]) {
+            return 16 + (long) DEFAULT_OBJECT_SIZE * ((Object[]) value).length;
+        } else if (value instanceof Collection) {
+            return 32 + (long) DEFAULT_OBJECT_SIZE * ((Collection<?>) value).size();
+        } else if (value instanceof Map) {
+            return 32 + 2L * DEFAULT_OBJECT_SIZE * ((Map<?, ?>) value).size();
+        } else {
+            return DEFAULT_OBJECT_SIZE;
+        }
+    }
+
+    public synchronized void put(@NonNull String key, @NonNull Object value) {
+        mWeakMap.remove(key);
+        long size = Math.max(sizeOf(value), 1);
+        Entry old = mStrongMap.put(key, new Entry(value, size));
+        if (old != null) {
+            mSize -= old.size;
+        }
+        mSize += size;
+        trimToSize(mMaxSize);
+    }
+
+    @Nullable
+    public synchronized Object get(@NonNull String key) {
+        Entry entry = mStrongMap.get(key);
+        if (entry != null) {
+            mHitCount++;
+            return entry.value;
+        }
+
+        WeakReference<Object> reference = mWeakMap.remove(key);
+        Object value = reference != null ? reference.get() : null;
+        if (value != null) {
+            // Still alive, hold it again
+            mWeakHitCount++;
+            long size = Math.max(sizeOf(value), 1);
+            mStrongMap.put(key, new Entry(value, size));
+            mSize += size;
+            trimToSize(mMaxSize);
+            return value;
+        }
+
+        mMissCount++;
+        return null;
+    }
+
+    public synchronized boolean contains(@NonNull String key) {
+        if (mStrongMap.containsKey(key)) {
+            return true;
+        }
+        WeakReference<Object> reference = mWeakMap.get(key);
+        if (reference == null) {
+            return false;
+        } else if (reference.get() == null) {
+            mWeakMap.remove(key);
+            return false;
+        } else {
+            return true;
+        }
+    }
+
+    @Nullable
+    public synchronized Object remove(@NonNull String key) {
+        Entry entry = mStrongMap.remove(key);
+        WeakReference<Object> reference = mWeakMap.remove(key);
+        if (entry != null) {
+            mSize -= entry.size;
+            return entry.value;
+        }
+        return reference != null ? reference.get() : null;
+    }
+
+    /**
+     * Evict least recently used values until the size is not larger than {@code size}.
+     * Evicted values are still weakly held.
+     */
+    public synchronized void trimToSize(long size) {
+        Iterator<Map.Entry<String, Entry>> iterator = mStrongMap.entrySet().iterator();
+        while (mSize > size && iterator.hasNext()) {
+            Map.Entry<String, Entry> e = iterator.next();
+            iterator.remove();
+            mSize -= e.getValue().size;
+            mEvictionCount++;
+            mWeakMap.put(e.getKey(), new WeakReference<>(e.getValue().value));
+        }
+
+        // Drop the collected values
+        for (Iterator<WeakReference<Object>> it = mWeakMap.values().iterator(); it.hasNext(); ) {
+            if (it.next().get() == null) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Keep {@code fraction} of max size, 0 for releasing all strongly held values.
+     */
+    public void trim(float fraction) {
+        trimToSize((long) (mMaxSize * Math.max(0.0f, Math.min(fraction, 1.0f))));
+    }
+
+    public synchronized void clear() {
+        mStrongMap.clear();
+        mWeakMap.clear();
+        mSize = 0;
+    }
+
+    public synchronized long size() {
+        return mSize;
+    }
+
+    public long maxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized int count() {
+        return mStrongMap.size();
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount + mWeakHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        long total = mHitCount + mWeakHitCount + mMissCount;
+        float hitRate = total == 0 ? 0.0f : (float) (mHitCount + mWeakHitCount) / total;
+        return String.format(Locale.US,
+                "HandoffCache{size=%d/%d, count=%d, weak=%d, hit=%d, weakHit=%d, miss=%d, hitRate=%.2f, eviction=%d}",
+                mSize, mMaxSize, mStrongMap.size(), mWeakMap.size(), mHitCount, mWeakHitCount,
+                mMissCount, hitRate, mEvictionCount);
+    }
+}
@@ -31,6 +31,7 @@ public class ImageBitmapHelper implements ValueHelper<ImageBitmap> {
     @Override
     public ImageBitmap decode(@NonNull InputStreamPipe isPipe) {
         try {
+            EhApplication.awaitStartup(EhApplication.STARTUP_IMAGE);
             isPipe.obtain();
             return ImageBitmap.decode(isPipe.open());
         } catch (OutOfMemoryError e) {
@@ -57,6 +57,11 @@ public class Settings {
         fixDefaultValue();
     }
 
+    public static void registerOnSharedPreferenceChangeListener(
+            SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        sSettingsPre.registerOnSharedPreferenceChangeListener(listener);
+    }
+
     private static void fixDefaultValue() {
         // Enable builtin hosts if the country is CN
         if (!sSettingsPre.contains(KEY_BUILT_IN_HOSTS)) {
@@ -730,6 +735,17 @@ public class Settings {
         putIntToStr(KEY_MULTI_THREAD_DOWNLOAD, value);
     }
 
+    private static final String KEY_DOWNLOAD_CONCURRENCY = "download_concurrency";
+    private static final int DEFAULT_DOWNLOAD_CONCURRENCY = 2;
+
+    public static int getDownloadConcurrency() {
+        return getIntFromStr(KEY_DOWNLOAD_CONCURRENCY, DEFAULT_DOWNLOAD_CONCURRENCY);
+    }
+
+    public static void putDownloadConcurrency(int value) {
+        putIntToStr(KEY_DOWNLOAD_CONCURRENCY, value);
+    }
+
     private static final String KEY_PRELOAD_IMAGE = "preload_image";
     private static final int DEFAULT_PRELOAD_IMAGE = 5;
 
@@ -1032,6 +1048,13 @@ public class Settings {
         putBoolean(KEY_SAVE_PARSE_ERROR_BODY, value);
     }
 
+    private static final String KEY_STREAM_PARSE = "stream_parse";
+    private static final boolean DEFAULT_STREAM_PARSE = false;
+
+    public static boolean getStreamParse() {
+        return getBoolean(KEY_STREAM_PARSE, DEFAULT_STREAM_PARSE);
+    }
+
     private static final String KEY_SAVE_CRASH_LOG = "save_crash_log";
     private static final boolean DEFAULT_SAVE_CRASH_LOG = false;
 
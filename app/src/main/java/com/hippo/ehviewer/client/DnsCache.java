@@ -0,0 +1,235 @@
+/*
+ * Copyright 2018 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client;
+
+import androidx.annotation.NonNull;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Dns;
+
+/**
+ * Lookup result cache in front of a {@link Dns}.
+ * <p>
+ * Results are fresh in {@code ttl}, then they are still returned in
+ * {@code staleTtl} while a refresh runs in background. Failures are kept in
+ * {@code negativeTtl}. Concurrent lookups of the same host share one resolving.
+ */
+class DnsCache {
+
+    private static final int MAX_SIZE = 512;
+
+    private final long mTtl;
+    private final long mStaleTtl;
+    private final long mNegativeTtl;
+    private final Executor mExecutor;
+
+    private final Map<String, Entry> mEntries = new ConcurrentHashMap<>();
+    private final Map<String, FutureTask<Entry>> mPending = new ConcurrentHashMap<>();
+
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mStaleHitCount = new AtomicLong();
+    private final AtomicLong mNegativeHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mResolveCount = new AtomicLong();
+    private final AtomicLong mResolveTime = new AtomicLong();
+
+    private static final class Entry {
+        // Null for failure
+        final List<InetAddress> addresses;
+        final String error;
+        final long time;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(List<InetAddress> addresses, String error, long time) {
+            this.addresses = addresses;
+            this.error = error;
+            this.time = time;
+        }
+    }
+
+    /**
+     * @param executor runs background refreshes and prefetches
+     */
+    DnsCache(long ttl, long staleTtl, long negativeTtl, Executor executor) {
+        mTtl = ttl;
+        mStaleTtl = staleTtl;
+        mNegativeTtl = negativeTtl;
+        mExecutor = executor;
+    }
+
+    long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    @NonNull
+    public List<InetAddress> lookup(@NonNull String hostname, @NonNull Dns dns) throws UnknownHostException {
+        Entry entry = mEntries.get(hostname);
+        if (entry != null) {
+            long age = now() - entry.time;
+            if (entry.addresses == null) {
+                if (age < mNegativeTtl) {
+                    mNegativeHitCount.incrementAndGet();
+                    throw new UnknownHostException(entry.error);
+                }
+            } else if (age < mTtl) {
+                mHitCount.incrementAndGet();
+                return entry.addresses;
+            } else if (age < mTtl + mStaleTtl) {
+                mStaleHitCount.incrementAndGet();
+                if (entry.refreshing.compareAndSet(false, true)) {
+                    mExecutor.execute(() -> resolve(hostname, dns));
+                }
+                return entry.addresses;
+            }
+        }
+
+        mMissCount.incrementAndGet();
+        entry = resolve(hostname, dns);
+        if (entry.addresses == null) {
+            throw new UnknownHostException(entry.error);
+        }
+        return entry.addresses;
+    }
+
+    /**
+     * Resolve the hosts which are not in cache in background.
+     */
+    public void prefetch(@NonNull Collection<String> hostnames, @NonNull Dns dns) {
+        for (String hostname : hostnames) {
+            if (!mEntries.containsKey(hostname)) {
+                mExecutor.execute(() -> resolve(hostname, dns));
+            }
+        }
+    }
+
+    private Entry resolve(String hostname, Dns dns) {
+        FutureTask<Entry> task = new FutureTask<>(() -> doResolve(hostname, dns));
+        FutureTask<Entry> pending = mPending.putIfAbsent(hostname, task);
+        if (pending == null) {
+            pending = task;
+            try {
+                task.run();
+            } finally {
+                mPending.remove(hostname, task);
+            }
+        }
+
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Entry(null, "Interrupted when looking up " + hostname, now());
+        } catch (ExecutionException e) {
+            return new Entry(null, "Failed to look up " + hostname + ": " + e.getCause(), now());
+        }
+    }
+
+    private Entry doResolve(String hostname, Dns dns) {
+        long start = System.nanoTime();
+        Entry entry;
+        try {
+            List<InetAddress> addresses = dns.lookup(hostname);
+            if (addresses.isEmpty()) {
+                entry = new Entry(null, "No address for " + hostname, now());
+            } else {
+                entry = new Entry(Collections.unmodifiableList(addresses), null, now());
+            }
+        } catch (UnknownHostException e) {
+            entry = new Entry(null, e.getMessage(), now());
+        }
+        mResolveCount.incrementAndGet();
+        mResolveTime.addAndGet(System.nanoTime() - start);
+
+        if (entry.addresses == null) {
+            // Keep the last good result, it is better than nothing
+            Entry old = mEntries.get(hostname);
+            if (old != null && old.addresses != null && now() - old.time < mTtl + mStaleTtl) {
+                old.refreshing.set(false);
+                return old;
+            }
+        }
+
+        if (mEntries.size() >= MAX_SIZE) {
+            trim();
+        }
+        mEntries.put(hostname, entry);
+        return entry;
+    }
+
+    private void trim() {
+        long now = now();
+        for (Iterator<Entry> iterator = mEntries.values().iterator(); iterator.hasNext(); ) {
+            Entry entry = iterator.next();
+            long ttl = entry.addresses == null ? mNegativeTtl : mTtl + mStaleTtl;
+            if (now - entry.time >= ttl) {
+                iterator.remove();
+            }
+        }
+        if (mEntries.size() >= MAX_SIZE) {
+            mEntries.clear();
+        }
+    }
+
+    public void clear() {
+        mEntries.clear();
+    }
+
+    public long getHitCount() {
+        return mHitCount.get() + mStaleHitCount.get() + mNegativeHitCount.get();
+    }
+
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    public float getHitRate() {
+        long hit = getHitCount();
+        long total = hit + mMissCount.get();
+        return total == 0 ? 0.0f : (float) hit / total;
+    }
+
+    /**
+     * @return average time of resolving by the dns in milliseconds
+     */
+    public float getAverageResolveTime() {
+        long count = mResolveCount.get();
+        return count == 0 ? 0.0f : mResolveTime.get() / 1000000.0f / count;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "DnsCache{size=%d, hit=%d, stale=%d, negative=%d, miss=%d, hitRate=%.2f, resolve=%d, avgResolve=%.1fms}",
+                mEntries.size(), mHitCount.get(), mStaleHitCount.get(), mNegativeHitCount.get(),
+                mMissCount.get(), getHitRate(), mResolveCount.get(), getAverageResolveTime());
+    }
+}
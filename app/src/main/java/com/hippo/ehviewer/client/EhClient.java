@@ -28,6 +28,8 @@ import com.hippo.util.IoThreadPoolExecutor;
 import com.hippo.yorozuya.SimpleHandler;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -87,19 +89,23 @@ public class EhClient {
         }
     }
 
-    public class Task extends AsyncTask<Object, Void, Object> {
+    public class Task extends AsyncTask<Object, Object, Object> {
 
         private final int mMethod;
         private Callback mCallback;
         private EhConfig mEhConfig;
+        private final boolean mPartial;
 
         private final AtomicReference<Call> mCall = new AtomicReference<>();
         private final AtomicBoolean mStop = new AtomicBoolean();
+        // Calls running at the same time, guarded by itself
+        private final List<Call> mParallelCalls = new ArrayList<>();
 
         public Task(int method, Callback callback, EhConfig ehConfig) {
             mMethod = method;
             mCallback = callback;
             mEhConfig = ehConfig;
+            mPartial = callback instanceof PartialCallback;
         }
 
         // Called in Job thread
@@ -112,10 +118,33 @@ public class EhClient {
             }
         }
 
+        // Called in Job thread, for calls running at the same time
+        public void addCall(Call call) throws CancelledException {
+            synchronized (mParallelCalls) {
+                if (mStop.get()) {
+                    throw new CancelledException();
+                } else {
+                    mParallelCalls.add(call);
+                }
+            }
+        }
+
         public EhConfig getEhConfig() {
             return mEhConfig;
         }
 
+        // Called in Job thread
+        public boolean hasPartialCallback() {
+            return mPartial;
+        }
+
+        // Called in Job thread, the partial result is passed to PartialCallback in UI thread
+        public void publishPartial(Object partial) {
+            if (mPartial && !mStop.get()) {
+                publishProgress(partial);
+            }
+        }
+
         public void stop() {
             if (!mStop.get()) {
                 mStop.lazySet(true);
@@ -137,6 +166,13 @@ public class EhClient {
                     }
                 }
 
+                synchronized (mParallelCalls) {
+                    for (Call call : mParallelCalls) {
+                        call.cancel();
+                    }
+                    mParallelCalls.clear();
+                }
+
                 // Clear
                 mCallback = null;
                 mEhConfig = null;
@@ -210,6 +246,16 @@ public class EhClient {
             }
         }
 
+        @SuppressWarnings("unchecked")
+        @Override
+        protected void onProgressUpdate(Object... values) {
+            if (mCallback instanceof PartialCallback) {
+                for (Object value : values) {
+                    ((PartialCallback) mCallback).onPartial(value);
+                }
+            }
+        }
+
         @SuppressWarnings("unchecked")
         @Override
         protected void onPostExecute(Object result) {
@@ -241,4 +287,12 @@ public class EhClient {
 
         void onCancel();
     }
+
+    /**
+     * Callback which also gets the results published before the request is done.
+     */
+    public interface PartialCallback<E, P> extends Callback<E> {
+
+        void onPartial(P partial);
+    }
 }
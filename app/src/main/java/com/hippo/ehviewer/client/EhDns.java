@@ -21,20 +21,24 @@ package com.hippo.ehviewer.client;
  */
 
 import android.content.Context;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 
 import com.hippo.ehviewer.EhApplication;
 import com.hippo.ehviewer.Hosts;
 import com.hippo.ehviewer.Settings;
+import com.hippo.util.IoThreadPoolExecutor;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import okhttp3.Dns;
 import okhttp3.HttpUrl;
@@ -44,8 +48,21 @@ import okhttp3.dnsoverhttps.DnsOverHttps;
 
 public class EhDns implements Dns {
 
+    private static final String TAG = EhDns.class.getSimpleName();
+
     private static final Map<String, List<InetAddress>> builtInHosts;
 
+    // Hosts which are used soon after launch
+    private static final List<String> PREFETCH_HOSTS = Arrays.asList(
+            "e-hentai.org", "exhentai.org", "api.e-hentai.org", "ehgt.org", "s.exhentai.org",
+            "forums.e-hentai.org", "repo.e-hentai.org");
+
+    private static final DnsCache cache = new DnsCache(
+            TimeUnit.MINUTES.toMillis(5),
+            TimeUnit.HOURS.toMillis(1),
+            TimeUnit.SECONDS.toMillis(10),
+            IoThreadPoolExecutor.getInstance());
+
     static {
         Map<String, List<InetAddress>> map = new HashMap<>();
         if (Settings.getBuiltInHosts()){
@@ -96,14 +113,43 @@ public class EhDns implements Dns {
     }
 
 
+    /**
+     * Clear cached results, call it when hosts or dns settings are changed.
+     */
+    public static void clearCache() {
+        Log.i(TAG, "Clear " + cache);
+        cache.clear();
+    }
+
+    /**
+     * Resolve the hosts of the site in background.
+     */
+    public void prefetch() {
+        cache.prefetch(PREFETCH_HOSTS, this::lookupUncached);
+    }
+
+    /**
+     * Hit rate and resolve time of the cache, they are logged when the
+     * logcat is dumped.
+     */
+    @NonNull
+    public static String getCacheStats() {
+        return cache.toString();
+    }
+
     @NonNull
     @Override
     public List<InetAddress> lookup(@NonNull String hostname) throws UnknownHostException {
+        return cache.lookup(hostname, this::lookupUncached);
+    }
 
-        List<InetAddress> inetAddresses = (List<InetAddress>) hosts.get(hostname);
-        if (inetAddresses != null) {
-            return inetAddresses;
+    @NonNull
+    private List<InetAddress> lookupUncached(@NonNull String hostname) throws UnknownHostException {
+        InetAddress hostsAddress = hosts.get(hostname);
+        if (hostsAddress != null) {
+            return Collections.singletonList(hostsAddress);
         }
+        List<InetAddress> inetAddresses;
         if (Settings.getBuiltInHosts() || Settings.getBuiltEXHosts()) {
             inetAddresses = builtInHosts.get(hostname);
             if (inetAddresses != null) {
@@ -67,12 +67,16 @@ import com.hippo.yorozuya.AssertUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.FormBody;
 import okhttp3.Headers;
 import okhttp3.MediaType;
@@ -104,6 +108,10 @@ public class EhEngine {
 
     private static final Pattern PATTERN_NEED_HATH_CLIENT = Pattern.compile("(You must have a H@H client assigned to your account to use this feature\\.)");
 
+    // We can only request 25 items one time at most
+    private static final int MAX_API_REQUEST_SIZE = 25;
+    private static final int MAX_API_PARALLEL_REQUESTS = 4;
+
     public static EhFilter sEhFilter;
 
     public static void initialize() {
@@ -200,11 +208,13 @@ public class EhEngine {
     }
 
     private static void fillGalleryList(@Nullable EhClient.Task task, OkHttpClient okHttpClient, List<GalleryInfo> list, String url, boolean filter) throws Throwable {
+        EhFilter ehFilter = EhFilter.getInstance();
+
         // Filter title and uploader
         if (filter) {
             for (int i = 0, n = list.size(); i < n; i++) {
                 GalleryInfo info = list.get(i);
-                if (!sEhFilter.filterTitle(info) || !sEhFilter.filterUploader(info)) {
+                if (!ehFilter.filterTitle(info) || !ehFilter.filterUploader(info)) {
                     list.remove(i);
                     i--;
                     n--;
@@ -227,7 +237,7 @@ public class EhEngine {
             }
         }
 
-        boolean needApi = (filter && sEhFilter.needTags() && !hasTags) ||
+        boolean needApi = (filter && ehFilter.needTags() && !hasTags) ||
                 (Settings.getShowGalleryPages() && !hasPages) ||
                 hasRated;
         if (needApi) {
@@ -239,7 +249,7 @@ public class EhEngine {
             for (int i = 0, n = list.size(); i < n; i++) {
                 GalleryInfo info = list.get(i);
                 // Thumbnail mode need filter uploader again
-                if (!sEhFilter.filterUploader(info) || !sEhFilter.filterTag(info) || !sEhFilter.filterTagNamespace(info)) {
+                if (!ehFilter.filterUploader(info) || !ehFilter.filterTag(info) || !ehFilter.filterTagNamespace(info)) {
                     list.remove(i);
                     i--;
                     n--;
@@ -273,10 +283,29 @@ public class EhEngine {
             code = response.code();
             headers = response.headers();
             assert response.body() != null;
-            body = response.body().string();
-            result = GalleryListParser.parse(body);
+            // Show the galleries before api fill
+            GalleryListPublisher publisher = null != task && task.hasPartialCallback() ?
+                    new GalleryListPublisher(task) : null;
+            if (Settings.getStreamParse()) {
+                try (Reader reader = response.body().charStream()) {
+                    result = GalleryListParser.parse(reader, publisher);
+                }
+                if (null != publisher) {
+                    publisher.flush();
+                }
+            } else {
+                body = response.body().string();
+                result = GalleryListParser.parse(body);
+                if (null != publisher) {
+                    publisher.publish(result.galleryInfoList);
+                }
+            }
         } catch (Throwable e) {
             ExceptionUtils.throwIfFatal(e);
+            if (body == null && e instanceof ParseException) {
+                // Streaming parser keeps the head of the page
+                body = ((ParseException) e).getBody();
+            }
             throwException(call, code, headers, body, e);
             throw e;
         }
@@ -289,21 +318,31 @@ public class EhEngine {
     // At least, GalleryInfo contain valid gid and token
     public static List<GalleryInfo> fillGalleryListByApi(@Nullable EhClient.Task task, OkHttpClient okHttpClient,
                                                          List<GalleryInfo> galleryInfoList, String referer) throws Throwable {
-        // We can only request 25 items one time at most
-        final int MAX_REQUEST_SIZE = 25;
-        List<GalleryInfo> requestItems = new ArrayList<>(MAX_REQUEST_SIZE);
+        List<List<GalleryInfo>> requestItemsList = new ArrayList<>();
+        List<GalleryInfo> requestItems = null;
         for (int i = 0, size = galleryInfoList.size(); i < size; i++) {
-            requestItems.add(galleryInfoList.get(i));
-            if (requestItems.size() == MAX_REQUEST_SIZE || i == size - 1) {
-                doFillGalleryListByApi(task, okHttpClient, requestItems, referer);
-                requestItems.clear();
+            GalleryInfo gi = galleryInfoList.get(i);
+            // Skip the galleries which are just filled
+            if (GalleryApiCache.fill(gi)) {
+                continue;
+            }
+            if (requestItems == null || requestItems.size() == MAX_API_REQUEST_SIZE) {
+                requestItems = new ArrayList<>(MAX_API_REQUEST_SIZE);
+                requestItemsList.add(requestItems);
             }
+            requestItems.add(gi);
+        }
+
+        if (requestItemsList.size() == 1) {
+            doFillGalleryListByApi(task, okHttpClient, requestItemsList.get(0), referer);
+        } else if (requestItemsList.size() > 1) {
+            doFillGalleryListByApiParallel(task, okHttpClient, requestItemsList, referer);
         }
         return galleryInfoList;
     }
 
-    private static void doFillGalleryListByApi(@Nullable EhClient.Task task, OkHttpClient okHttpClient,
-                                               List<GalleryInfo> galleryInfoList, String referer) throws Throwable {
+    private static Call newGalleryApiCall(OkHttpClient okHttpClient,
+                                          List<GalleryInfo> galleryInfoList, String referer) throws Throwable {
         JSONObject json = new JSONObject();
         json.put("method", "gdata");
         JSONArray ja = new JSONArray();
@@ -322,7 +361,12 @@ public class EhEngine {
         Request request = new EhRequestBuilder(url, referer, origin)
                 .post(RequestBody.create(MEDIA_TYPE_JSON, json.toString()))
                 .build();
-        Call call = okHttpClient.newCall(request);
+        return okHttpClient.newCall(request);
+    }
+
+    private static void doFillGalleryListByApi(@Nullable EhClient.Task task, OkHttpClient okHttpClient,
+                                               List<GalleryInfo> galleryInfoList, String referer) throws Throwable {
+        Call call = newGalleryApiCall(okHttpClient, galleryInfoList, referer);
 
         // Put call
         if (null != task) {
@@ -332,13 +376,12 @@ public class EhEngine {
         String body = null;
         Headers headers = null;
         int code = -1;
-        try {
-            Response response = call.execute();
+        try (Response response = call.execute()) {
             code = response.code();
             headers = response.headers();
             assert response.body() != null;
             body = response.body().string();
-            GalleryApiParser.parse(body, galleryInfoList);
+            GalleryApiCache.put(GalleryApiParser.parse(body, galleryInfoList));
         } catch (Throwable e) {
             ExceptionUtils.throwIfFatal(e);
             throwException(call, code, headers, body, e);
@@ -346,6 +389,98 @@ public class EhEngine {
         }
     }
 
+    /**
+     * Run at most {@link #MAX_API_PARALLEL_REQUESTS} gdata requests at the same time.
+     * Each response is parsed in OkHttp thread when it arrives.
+     */
+    private static void doFillGalleryListByApiParallel(@Nullable EhClient.Task task, OkHttpClient okHttpClient,
+                                                       List<List<GalleryInfo>> requestItemsList, String referer) throws Throwable {
+        // Error of each call, null for success. Wrapped in array for queue can't hold null
+        final BlockingQueue<Throwable[]> results = new LinkedBlockingQueue<>();
+        List<Call> calls = new ArrayList<>(requestItemsList.size());
+        Throwable error = null;
+        int next = 0;
+        int running = 0;
+        try {
+            while (next < requestItemsList.size() || running > 0) {
+                // Do not start new call after error
+                while (error == null && running < MAX_API_PARALLEL_REQUESTS &&
+                        next < requestItemsList.size()) {
+                    final List<GalleryInfo> requestItems = requestItemsList.get(next++);
+                    Call call = newGalleryApiCall(okHttpClient, requestItems, referer);
+                    try {
+                        if (null != task) {
+                            task.addCall(call);
+                        }
+                    } catch (CancelledException e) {
+                        error = e;
+                        cancelCalls(calls);
+                        break;
+                    }
+                    call.enqueue(new Callback() {
+                        @Override
+                        public void onFailure(Call call, IOException e) {
+                            results.add(new Throwable[]{getApiError(call, -1, null, null, e)});
+                        }
+
+                        @Override
+                        public void onResponse(Call call, Response response) {
+                            Throwable t = null;
+                            String body = null;
+                            try {
+                                assert response.body() != null;
+                                body = response.body().string();
+                                GalleryApiCache.put(GalleryApiParser.parse(body, requestItems));
+                            } catch (Throwable e) {
+                                t = getApiError(call, response.code(), response.headers(), body, e);
+                            } finally {
+                                response.close();
+                            }
+                            results.add(new Throwable[]{t});
+                        }
+                    });
+                    calls.add(call);
+                    running++;
+                }
+
+                if (running == 0) {
+                    break;
+                }
+
+                // Wait for running calls even if error, they are writing gallery infos
+                Throwable t = results.take()[0];
+                running--;
+                if (t != null && error == null) {
+                    error = t;
+                    cancelCalls(calls);
+                }
+            }
+        } catch (InterruptedException e) {
+            cancelCalls(calls);
+            throw e;
+        }
+
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private static Throwable getApiError(Call call, int code, @Nullable Headers headers,
+                                         @Nullable String body, Throwable e) {
+        try {
+            throwException(call, code, headers, body, e);
+        } catch (Throwable t) {
+            return t;
+        }
+        return e;
+    }
+
+    private static void cancelCalls(List<Call> calls) {
+        for (Call call : calls) {
+            call.cancel();
+        }
+    }
+
     public static GalleryDetail getGalleryDetail(@Nullable EhClient.Task task, OkHttpClient okHttpClient,
                                                  String url) throws Throwable {
         String referer = EhUrl.getReferer();
@@ -1092,10 +1227,29 @@ public class EhEngine {
             }
             headers = response.headers();
             assert response.body() != null;
-            body = response.body().string();
-            result = GalleryListParser.parse(body);
+            // Show the galleries before api fill
+            GalleryListPublisher publisher = null != task && task.hasPartialCallback() ?
+                    new GalleryListPublisher(task) : null;
+            if (Settings.getStreamParse()) {
+                try (Reader reader = response.body().charStream()) {
+                    result = GalleryListParser.parse(reader, publisher);
+                }
+                if (null != publisher) {
+                    publisher.flush();
+                }
+            } else {
+                body = response.body().string();
+                result = GalleryListParser.parse(body);
+                if (null != publisher) {
+                    publisher.publish(result.galleryInfoList);
+                }
+            }
         } catch (Throwable e) {
             ExceptionUtils.throwIfFatal(e);
+            if (body == null && e instanceof ParseException) {
+                // Streaming parser keeps the head of the page
+                body = ((ParseException) e).getBody();
+            }
             throwException(call, code, headers, body, e);
             throw e;
         }
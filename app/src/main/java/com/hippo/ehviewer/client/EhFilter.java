@@ -38,18 +38,26 @@ public final class EhFilter {
     private final List<Filter> mUploaderFilterList = new ArrayList<>();
     private final List<Filter> mTagFilterList = new ArrayList<>();
     private final List<Filter> mTagNamespaceFilterList = new ArrayList<>();
+    // Rebuilt when filters change, filter methods only read it
+    private volatile FilterMatcher mMatcher = FilterMatcher.EMPTY;
 
     private static EhFilter sInstance;
 
-    public static EhFilter getInstance() {
+    public static synchronized EhFilter getInstance() {
         if (sInstance == null) {
-            sInstance = new EhFilter();
+            sInstance = new EhFilter(EhDB.getAllFilter());
         }
         return sInstance;
     }
 
-    private EhFilter() {
-        List<Filter> list = EhDB.getAllFilter();
+    /**
+     * Filter which is not backed by database, for tests.
+     */
+    static EhFilter create(List<Filter> list) {
+        return new EhFilter(list);
+    }
+
+    private EhFilter(List<Filter> list) {
         for (int i = 0, n = list.size(); i < n; i++) {
             Filter filter = list.get(i);
             switch (filter.mode) {
@@ -73,6 +81,37 @@ public final class EhFilter {
                     break;
             }
         }
+        updateMatcher();
+    }
+
+    private static boolean isEnabled(Filter filter) {
+        return Boolean.TRUE.equals(filter.enable);
+    }
+
+    // Must be called in synchronized(this) or constructor
+    private void updateMatcher() {
+        FilterMatcher.Builder builder = new FilterMatcher.Builder();
+        for (Filter filter : mTitleFilterList) {
+            if (isEnabled(filter)) {
+                builder.addTitle(filter.text);
+            }
+        }
+        for (Filter filter : mUploaderFilterList) {
+            if (isEnabled(filter)) {
+                builder.addUploader(filter.text);
+            }
+        }
+        for (Filter filter : mTagFilterList) {
+            if (isEnabled(filter)) {
+                builder.addTag(filter.text);
+            }
+        }
+        for (Filter filter : mTagNamespaceFilterList) {
+            if (isEnabled(filter)) {
+                builder.addTagNamespace(filter.text);
+            }
+        }
+        mMatcher = builder.build();
     }
 
     public List<Filter> getTitleFilterList() {
@@ -116,10 +155,12 @@ public final class EhFilter {
                 Log.d(TAG, "Unknown mode: " + filter.mode);
                 break;
         }
+        updateMatcher();
     }
 
     public synchronized void triggerFilter(Filter filter) {
         EhDB.triggerFilter(filter);
+        updateMatcher();
     }
 
     public synchronized void deleteFilter(Filter filter) {
@@ -142,101 +183,46 @@ public final class EhFilter {
                 Log.d(TAG, "Unknown mode: " + filter.mode);
                 break;
         }
+        updateMatcher();
     }
 
-    public synchronized boolean needTags() {
-        return 0 != mTagFilterList.size() || 0 != mTagNamespaceFilterList.size();
+    public boolean needTags() {
+        return mMatcher.hasTagFilter();
     }
 
-    public synchronized boolean filterTitle(GalleryInfo info) {
+    public boolean filterTitle(GalleryInfo info) {
         if (null == info) {
             return false;
         }
 
         // Title
         String title = info.title;
-        List<Filter> filters = mTitleFilterList;
-        if (null != title && filters.size() > 0) {
-            for (int i = 0, n = filters.size(); i < n; i++) {
-                if (filters.get(i).enable && title.toLowerCase().contains(filters.get(i).text)) {
-                    return false;
-                }
-            }
-        }
-
-        return true;
+        FilterMatcher matcher = mMatcher;
+        return null == title || !matcher.hasTitleFilter() ||
+                !matcher.matchTitle(title.toLowerCase());
     }
 
-    public synchronized boolean filterUploader(GalleryInfo info) {
+    public boolean filterUploader(GalleryInfo info) {
         if (null == info) {
             return false;
         }
 
         // Uploader
-        String uploader = info.uploader;
-        List<Filter> filters = mUploaderFilterList;
-        if (null != uploader && filters.size() > 0) {
-            for (int i = 0, n = filters.size(); i < n; i++) {
-                if (filters.get(i).enable && uploader.equals(filters.get(i).text)) {
-                    return false;
-                }
-            }
-        }
-
-        return true;
-    }
-
-    private boolean matchTag(String tag, String filter) {
-        if (null == tag || null == filter) {
-            return false;
-        }
-
-        String tagNamespace;
-        String tagName;
-        String filterNamespace;
-        String filterName;
-        int index = tag.indexOf(':');
-        if (index < 0) {
-            tagNamespace = null;
-            tagName = tag;
-        } else {
-            tagNamespace = tag.substring(0, index);
-            tagName = tag.substring(index + 1);
-        }
-        index = filter.indexOf(':');
-        if (index < 0) {
-            filterNamespace = null;
-            filterName = filter;
-        } else {
-            filterNamespace = filter.substring(0, index);
-            filterName = filter.substring(index + 1);
-        }
-
-        if (null != tagNamespace && null != filterNamespace &&
-                !tagNamespace.equals(filterNamespace)) {
-            return false;
-        }
-        if (!tagName.equals(filterName)) {
-            return false;
-        }
-
-        return true;
+        return !mMatcher.matchUploader(info.uploader);
     }
 
-    public synchronized boolean filterTag(GalleryInfo info) {
+    public boolean filterTag(GalleryInfo info) {
         if (null == info) {
             return false;
         }
 
         // Tag
         String[] tags = info.simpleTags;
-        List<Filter> filters = mTagFilterList;
-        if (null != tags && filters.size() > 0) {
-            for (String tag: tags) {
-                for (int i = 0, n = filters.size(); i < n; i++) {
-                    if (filters.get(i).enable && matchTag(tag, filters.get(i).text)) {
-                        return false;
-                    }
+        FilterMatcher matcher = mMatcher;
+        if (null != tags) {
+            for (String tag : tags) {
+                if (matcher.matchTag(tag)) {
+                    return false;
                 }
             }
         }
@@ -244,34 +230,17 @@ public final class EhFilter {
         return true;
     }
 
-    private boolean matchTagNamespace(String tag, String filter) {
-        if (null == tag || null == filter) {
-            return false;
-        }
-
-        String tagNamespace;
-        int index = tag.indexOf(':');
-        if (index >= 0) {
-            tagNamespace = tag.substring(0, index);
-            return tagNamespace.equals(filter);
-        } else {
-            return false;
-        }
-    }
-
-    public synchronized boolean filterTagNamespace(GalleryInfo info) {
+    public boolean filterTagNamespace(GalleryInfo info) {
         if (null == info) {
             return false;
         }
 
         String[] tags = info.simpleTags;
-        List<Filter> filters = mTagNamespaceFilterList;
-        if (null != tags && filters.size() > 0) {
-            for (String tag: tags) {
-                for (int i = 0, n = filters.size(); i < n; i++) {
-                    if (filters.get(i).enable && matchTagNamespace(tag, filters.get(i).text)) {
-                        return false;
-                    }
+        FilterMatcher matcher = mMatcher;
+        if (null != tags) {
+            for (String tag : tags) {
+                if (matcher.matchTagNamespace(tag)) {
+                    return false;
                 }
             }
         }
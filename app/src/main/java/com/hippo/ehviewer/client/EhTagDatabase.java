@@ -22,11 +22,11 @@ import android.util.Base64;
 import android.util.Pair;
 
 import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
 
 import com.hippo.ehviewer.AppConfig;
 import com.hippo.ehviewer.EhApplication;
 import com.hippo.ehviewer.R;
-import com.hippo.ehviewer.client.data.Tag;
 import com.hippo.util.ExceptionUtils;
 import com.hippo.util.IoThreadPoolExecutor;
 import com.hippo.util.TextUrl;
@@ -39,15 +39,19 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -57,6 +61,7 @@ import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 import okio.Buffer;
+import okio.BufferedSink;
 import okio.BufferedSource;
 import okio.ByteString;
 import okio.Okio;
@@ -66,119 +71,248 @@ import okio.Timeout;
 
 public class EhTagDatabase {
 
+    private static final int MAX_SUGGESTIONS = 40;
+    private static final int TRANSLATION_CACHE_SIZE = 256;
+
+    /*
+     * Compiled format, it is mapped to memory:
+     * magic (int), sha1 of data (20 bytes), entry count (int),
+     * entry offsets (int[count]), entries.
+     * Each entry is english + '\r' + base64 chinese + '\n', in the order of the data.
+     * The data is sorted by english, getTranslation() relies on it.
+     */
+    private static final int MAGIC = 0x45685444; // EhTD
+    private static final int SHA1_LENGTH = 20;
+    private static final int HEADER_SIZE = 4 + SHA1_LENGTH + 4;
+    private static final String COMPILED_SUFFIX = ".compiled";
+
     private final String name;
-    private final byte[] tags;
-    private final List<Tag> tagList;
+    private final ByteBuffer buffer;
+    private final int count;
+    // Decoded translations of recent tags
+    private final LruCache<String, String> translationCache = new LruCache<>(TRANSLATION_CACHE_SIZE);
+    // Built in background on the first suggest(), null if not ready
+    @Nullable
+    private volatile TagSuggestionIndex suggestionIndex;
+    private final AtomicBoolean suggestionIndexRequested = new AtomicBoolean();
 
+    /**
+     * Read the database from source to memory.
+     */
     public EhTagDatabase(String name, BufferedSource source) throws IOException {
+        this(name, ByteBuffer.wrap(compile(source, new byte[SHA1_LENGTH])));
+    }
+
+    private EhTagDatabase(String name, ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Bad magic");
+        }
+        int count = buffer.getInt(HEADER_SIZE - 4);
+        if (count < 0 || HEADER_SIZE + count * 4L > buffer.capacity()) {
+            throw new IOException("Bad entry count: " + count);
+        }
         this.name = name;
-        int totalBytes = source.readInt();
+        this.buffer = buffer;
+        this.count = count;
+    }
 
-        tags = new byte[totalBytes];
-        source.readFully(tags);
-        byte[] newByte = tags.clone();
-        String sourceString = new String(newByte, StandardCharsets.UTF_8);
+    /**
+     * Convert the data to compiled format.
+     */
+    private static byte[] compile(BufferedSource source, byte[] sha1) throws IOException {
+        int totalBytes = source.readInt();
+        byte[] data = new byte[totalBytes];
+        source.readFully(data);
+
+        int[] offsets = new int[1024];
+        int count = 0;
+        int start = 0;
+        while (start < totalBytes) {
+            int end = start;
+            boolean hasChinese = false;
+            while (end < totalBytes && data[end] != '\n') {
+                hasChinese |= data[end] == '\r';
+                end++;
+            }
+            // Skip bad line
+            if (hasChinese) {
+                if (count == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                offsets[count++] = start;
+            }
+            start = end + 1;
+        }
 
-        tagList = initTagList(sourceString);
+        Buffer buffer = new Buffer();
+        buffer.writeInt(MAGIC);
+        buffer.write(sha1, 0, SHA1_LENGTH);
+        buffer.writeInt(count);
+        int dataStart = HEADER_SIZE + count * 4;
+        for (int i = 0; i < count; i++) {
+            buffer.writeInt(dataStart + offsets[i]);
+        }
+        buffer.write(data);
+        return buffer.readByteArray();
     }
 
-    public String getTranslation(String tag) {
-        return search(tags, tag.getBytes(TextUrl.UTF_8));
+    /**
+     * Map the compiled file to memory.
+     *
+     * @return null if it's bad or not for the data of the sha1
+     */
+    @Nullable
+    static EhTagDatabase open(String name, File file, byte[] sha1) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            // The mapping is still valid after the channel is closed
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            EhTagDatabase db = new EhTagDatabase(name, buffer);
+            for (int i = 0; i < SHA1_LENGTH; i++) {
+                if (buffer.get(4 + i) != sha1[i]) {
+                    return null;
+                }
+            }
+            return db;
+        } catch (IOException e) {
+            return null;
+        }
     }
 
-    private List<Tag> initTagList(String sourceString) {
-        String[] tagStrings = sourceString.split("\n");
+    /**
+     * Open the compiled file of the data, compile it if it doesn't exist or is out of date.
+     */
+    @Nullable
+    static EhTagDatabase load(String name, File sha1File, File dataFile, File compiledFile) {
+        byte[] sha1 = getFileContent(sha1File, SHA1_LENGTH);
+        if (sha1 == null) {
+            return null;
+        }
 
-        List<Tag> initList = new ArrayList<>();
+        EhTagDatabase db = open(name, compiledFile, sha1);
+        if (db != null) {
+            return db;
+        }
 
-        for (String tagString : tagStrings) {
-            initList.add(parseTag(tagString));
+        File tempFile = new File(compiledFile.getPath() + ".tmp");
+        try (BufferedSource source = Okio.buffer(Okio.source(dataFile));
+             BufferedSink sink = Okio.buffer(Okio.sink(tempFile))) {
+            sink.write(compile(source, sha1));
+        } catch (IOException e) {
+            FileUtils.delete(tempFile);
+            return null;
+        }
+        FileUtils.delete(compiledFile);
+        if (!tempFile.renameTo(compiledFile)) {
+            FileUtils.delete(tempFile);
+            return null;
         }
 
-        return initList;
+        return open(name, compiledFile, sha1);
     }
 
-    private Tag parseTag(String source) {
-        String[] cArray = source.split("\r");
-        if (cArray.length == 2) {
-            String english;
-            String chinese = new String(Base64.decode(cArray[1], Base64.DEFAULT), StandardCharsets.UTF_8);
-            String[] eArray = cArray[0].split(":");
-            if (eArray.length == 2) {
-                String key = eArray[0] + ":";
-                english = (PREFIX_TO_NAMESPACE.containsKey(key) ? PREFIX_TO_NAMESPACE.get(key) : cArray[0]) + ":" + eArray[1];
-            } else {
-                english = cArray[0];
-            }
-            return new Tag(english, chinese);
+    private int getEntryStart(int index) {
+        return buffer.getInt(HEADER_SIZE + index * 4);
+    }
+
+    // Return the index of the first b from start, or the end of buffer
+    private int indexOf(int start, byte b) {
+        int limit = buffer.capacity();
+        while (start < limit && buffer.get(start) != b) {
+            start++;
         }
+        return start;
+    }
 
-        return new Tag(source, "null");
+    private byte[] getBytes(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return bytes;
     }
 
-    @Nullable
-    private String search(byte[] tags, byte[] tag) {
-        int low = 0;
-        int high = tags.length;
-        while (low < high) {
-            int start = (low + high) / 2;
-            // Look for the starting '\n'
-            while (start > -1 && tags[start] != '\n') {
-                start--;
+    // Compare the tag with english of the entry, byte by byte
+    private int compare(byte[] tag, int start) {
+        int limit = buffer.capacity();
+        for (int i = 0; ; i++) {
+            boolean entryEnd = start + i >= limit || buffer.get(start + i) == '\r';
+            if (i == tag.length) {
+                return entryEnd ? 0 : -1;
             }
-            start++;
-
-            // Look for the middle '\r'.
-            int middle = 1;
-            while (tags[start + middle] != '\r') {
-                middle++;
+            if (entryEnd) {
+                return 1;
             }
-
-            // Look for the ending '\n'
-            int end = middle + 1;
-            while (tags[start + end] != '\n') {
-                end++;
+            int compare = (tag[i] & 0xff) - (buffer.get(start + i) & 0xff);
+            if (compare != 0) {
+                return compare;
             }
+        }
+    }
 
-            int compare;
-            int tagIndex = 0;
-            int curIndex = start;
-
-            for (; ; ) {
-                int tagByte = tag[tagIndex] & 0xff;
-                int curByte = tags[curIndex] & 0xff;
-                compare = tagByte - curByte;
-                if (compare != 0) {
-                    break;
-                }
-
-                tagIndex++;
-                curIndex++;
-                if (tagIndex == tag.length && curIndex == start + middle) {
-                    break;
-                }
-                if (tagIndex == tag.length) {
-                    compare = -1;
-                    break;
-                }
-                if (curIndex == start + middle) {
-                    compare = 1;
-                    break;
-                }
-            }
+    @Nullable
+    public String getTranslation(String tag) {
+        String translation = translationCache.get(tag);
+        if (translation != null) {
+            return translation;
+        }
 
+        byte[] bytes = tag.getBytes(TextUrl.UTF_8);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int start = getEntryStart(mid);
+            int compare = compare(bytes, start);
             if (compare < 0) {
-                high = start - 1;
+                high = mid - 1;
             } else if (compare > 0) {
-                low = start + end + 1;
+                low = mid + 1;
             } else {
-                byte[] bytes = Base64.decode(tags, start + middle + 1, end - middle - 1, Base64.DEFAULT);
-                return new String(bytes, TextUrl.UTF_8);
+                int middle = start + bytes.length;
+                int end = indexOf(middle + 1, (byte) '\n');
+                translation = new String(Base64.decode(getBytes(middle + 1, end), Base64.DEFAULT),
+                        TextUrl.UTF_8);
+                translationCache.put(tag, translation);
+                return translation;
             }
         }
         return null;
     }
 
+    private static String getEnglish(String source) {
+        String[] eArray = source.split(":");
+        if (eArray.length == 2) {
+            String key = eArray[0] + ":";
+            return (PREFIX_TO_NAMESPACE.containsKey(key) ? PREFIX_TO_NAMESPACE.get(key) : source) + ":" + eArray[1];
+        } else {
+            return source;
+        }
+    }
+
+    /**
+     * Build the index for {@link #suggest(String)}. It takes a while, call it in background.
+     */
+    synchronized void buildSuggestionIndex() {
+        if (suggestionIndex != null) {
+            return;
+        }
+
+        TagSuggestionIndex.Builder builder = new TagSuggestionIndex.Builder();
+        for (int i = 0; i < count; i++) {
+            int start = getEntryStart(i);
+            int middle = indexOf(start, (byte) '\r');
+            int end = indexOf(middle + 1, (byte) '\n');
+            String english = new String(getBytes(start, middle), StandardCharsets.UTF_8);
+            String chinese = new String(Base64.decode(getBytes(middle + 1, end), Base64.DEFAULT),
+                    StandardCharsets.UTF_8);
+            builder.add(getEnglish(english), chinese);
+        }
+        suggestionIndex = builder.build();
+    }
 
     public static final Map<String, String> NAMESPACE_TO_PREFIX = new HashMap<>();
     public static final Map<String, String> PREFIX_TO_NAMESPACE = new HashMap<>();
@@ -368,18 +502,20 @@ public class EhTagDatabase {
                 // Check current sha1 and current data
                 File sha1File = new File(dir, sha1Name);
                 File dataFile = new File(dir, dataName);
+                File compiledFile = new File(dir, dataName + COMPILED_SUFFIX);
                 if (!checkData(sha1File, dataFile)) {
                     FileUtils.delete(sha1File);
                     FileUtils.delete(dataFile);
+                    FileUtils.delete(compiledFile);
                 }
 
                 // Read current EhTagDatabase
                 if (instance == null && dataFile.exists()) {
-                    try (BufferedSource source = Okio.buffer(Okio.source(dataFile))) {
-                        instance = new EhTagDatabase(dataName, source);
-                    } catch (IOException e) {
+                    instance = load(dataName, sha1File, dataFile, compiledFile);
+                    if (instance == null) {
                         FileUtils.delete(sha1File);
                         FileUtils.delete(dataFile);
+                        FileUtils.delete(compiledFile);
                     }
                 }
 
@@ -416,14 +552,14 @@ public class EhTagDatabase {
                 // Replace current sha1 and current data with new sha1 and new data
                 FileUtils.delete(sha1File);
                 FileUtils.delete(dataFile);
+                FileUtils.delete(compiledFile);
                 tempSha1File.renameTo(sha1File);
                 tempDataFile.renameTo(dataFile);
 
                 // Read new EhTagDatabase
-                try (BufferedSource source = Okio.buffer(Okio.source(dataFile))) {
-                    instance = new EhTagDatabase(dataName, source);
-                } catch (IOException e) {
-                    // Ignore
+                EhTagDatabase db = load(dataName, sha1File, dataFile, compiledFile);
+                if (db != null) {
+                    instance = db;
                 }
             } finally {
                 lock.unlock();
@@ -431,24 +567,34 @@ public class EhTagDatabase {
         });
     }
 
+    /**
+     * The index is built in background on the first call.
+     *
+     * @return pairs of chinese and english, empty if the index is not ready
+     */
     public List<Pair<String, String>> suggest(String keyword) {
-        return searchTag(tagList, keyword);
-    }
-
-    private List<Pair<String, String>> searchTag(List<Tag> tags, String keyword) {
-
-        List<Pair<String, String>> searchList = new ArrayList<>();
-        int total = 0;
-        for (Tag tag : tags) {
-            if (total >= 40) {
-                break;
-            }
-            if (tag.involve(keyword)) {
-                searchList.add(new Pair<>(tag.chinese, tag.english));
-                total++;
+        TagSuggestionIndex index = suggestionIndex;
+        if (index == null) {
+            if (!suggestionIndexRequested.getAndSet(true)) {
+                IoThreadPoolExecutor.getInstance().execute(() -> {
+                    try {
+                        buildSuggestionIndex();
+                    } finally {
+                        // Build again on next call if it fails
+                        if (suggestionIndex == null) {
+                            suggestionIndexRequested.set(false);
+                        }
+                    }
+                });
             }
+            return new ArrayList<>();
         }
 
+        int[] entries = index.search(keyword, MAX_SUGGESTIONS);
+        List<Pair<String, String>> searchList = new ArrayList<>(entries.length);
+        for (int entry : entries) {
+            searchList.add(new Pair<>(index.getChinese(entry), index.getEnglish(entry)));
+        }
         return searchList;
     }
 }
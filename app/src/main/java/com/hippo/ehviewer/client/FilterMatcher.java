@@ -0,0 +1,290 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable matcher of enabled filters, it is safe to use it in any thread.
+ * <p>
+ * Title filters are compiled into an Aho–Corasick automaton, so matching a title
+ * is linear in title length whatever the filter count is. Others are hash sets.
+ */
+final class FilterMatcher {
+
+    static final FilterMatcher EMPTY = new Builder().build();
+
+    // Aho–Corasick automaton of title filters, node 0 is root.
+    // Children of node i are childChars/childNodes[childStart[i], childStart[i + 1]),
+    // childChars in each range are sorted.
+    private final int[] mChildStart;
+    private final char[] mChildChars;
+    private final int[] mChildNodes;
+    private final int[] mFail;
+    // The node or one of its suffixes is the end of a filter
+    private final boolean[] mOutput;
+    // Goto of root for ascii, most of steps go back to root
+    private final int[] mRootNext = new int[128];
+
+    private final Set<String> mUploaders;
+    // Tag filters without namespace, match tag name in any namespace
+    private final Set<String> mTagNames;
+    // Tag filters with namespace, like "female:big breasts"
+    private final Set<String> mNamespaceTags;
+    // Names of mNamespaceTags, for tags without namespace
+    private final Set<String> mNamespaceTagNames;
+    private final Set<String> mTagNamespaces;
+
+    private FilterMatcher(Builder builder) {
+        mUploaders = builder.mUploaders;
+        mTagNames = builder.mTagNames;
+        mNamespaceTags = builder.mNamespaceTags;
+        mNamespaceTagNames = builder.mNamespaceTagNames;
+        mTagNamespaces = builder.mTagNamespaces;
+
+        // Build trie
+        List<TrieNode> nodes = new ArrayList<>();
+        TrieNode root = new TrieNode();
+        nodes.add(root);
+        for (String title : builder.mTitles) {
+            TrieNode node = root;
+            for (int i = 0, n = title.length(); i < n; i++) {
+                char c = title.charAt(i);
+                TrieNode child = node.getChild(c);
+                if (child == null) {
+                    child = new TrieNode();
+                    child.id = nodes.size();
+                    nodes.add(child);
+                    node.addChild(c, child);
+                }
+                node = child;
+            }
+            node.output = true;
+        }
+
+        // Flatten children, then set fail links in BFS order, so fail of each node is set before its children
+        int size = nodes.size();
+        mChildStart = new int[size + 1];
+        mChildChars = new char[size - 1];
+        mChildNodes = new int[size - 1];
+        mFail = new int[size];
+        mOutput = new boolean[size];
+        int childCount = 0;
+        for (int i = 0; i < size; i++) {
+            TrieNode node = nodes.get(i);
+            mChildStart[i] = childCount;
+            int[] order = node.sortedChildren();
+            for (int j : order) {
+                mChildChars[childCount] = node.childChars[j];
+                mChildNodes[childCount] = node.children.get(j).id;
+                childCount++;
+            }
+        }
+        mChildStart[size] = childCount;
+        for (char c = 0; c < mRootNext.length; c++) {
+            mRootNext[c] = Math.max(getChild(0, c), 0);
+        }
+
+        List<TrieNode> queue = new ArrayList<>();
+        queue.add(root);
+        for (int q = 0; q < queue.size(); q++) {
+            TrieNode node = queue.get(q);
+            mOutput[node.id] = node.output || mOutput[mFail[node.id]];
+            for (int j = 0, n = node.children.size(); j < n; j++) {
+                TrieNode child = node.children.get(j);
+                char c = node.childChars[j];
+                if (node == root) {
+                    mFail[child.id] = 0;
+                } else {
+                    mFail[child.id] = next(mFail[node.id], c);
+                }
+                queue.add(child);
+            }
+        }
+    }
+
+    private int getChild(int node, char c) {
+        int start = mChildStart[node];
+        int end = mChildStart[node + 1];
+        if (start == end) {
+            return -1;
+        }
+        int index = Arrays.binarySearch(mChildChars, start, end, c);
+        return index >= 0 ? mChildNodes[index] : -1;
+    }
+
+    // Goto function with fail links
+    private int next(int node, char c) {
+        for (;;) {
+            if (node == 0 && c < mRootNext.length) {
+                return mRootNext[c];
+            }
+            int child = getChild(node, c);
+            if (child != -1) {
+                return child;
+            }
+            if (node == 0) {
+                return 0;
+            }
+            node = mFail[node];
+        }
+    }
+
+    public boolean hasTitleFilter() {
+        return mChildStart[1] != 0;
+    }
+
+    public boolean hasTagFilter() {
+        return !mTagNames.isEmpty() || !mNamespaceTags.isEmpty() || !mTagNamespaces.isEmpty();
+    }
+
+    /**
+     * @param title lower case title
+     * @return true if the title contains any title filter
+     */
+    public boolean matchTitle(@Nullable String title) {
+        if (title == null || !hasTitleFilter()) {
+            return false;
+        }
+        int node = 0;
+        for (int i = 0, n = title.length(); i < n; i++) {
+            node = next(node, title.charAt(i));
+            if (mOutput[node]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean matchUploader(@Nullable String uploader) {
+        return uploader != null && mUploaders.contains(uploader);
+    }
+
+    public boolean matchTag(@Nullable String tag) {
+        if (tag == null || (mTagNames.isEmpty() && mNamespaceTags.isEmpty())) {
+            return false;
+        }
+        int index = tag.indexOf(':');
+        if (index < 0) {
+            return mTagNames.contains(tag) || mNamespaceTagNames.contains(tag);
+        } else {
+            return mNamespaceTags.contains(tag) || mTagNames.contains(tag.substring(index + 1));
+        }
+    }
+
+    public boolean matchTagNamespace(@Nullable String tag) {
+        if (tag == null || mTagNamespaces.isEmpty()) {
+            return false;
+        }
+        int index = tag.indexOf(':');
+        return index >= 0 && mTagNamespaces.contains(tag.substring(0, index));
+    }
+
+    private static class TrieNode {
+        int id;
+        boolean output;
+        char[] childChars = new char[0];
+        final List<TrieNode> children = new ArrayList<>(0);
+
+        @Nullable
+        TrieNode getChild(char c) {
+            for (int i = 0; i < childChars.length; i++) {
+                if (childChars[i] == c) {
+                    return children.get(i);
+                }
+            }
+            return null;
+        }
+
+        void addChild(char c, TrieNode child) {
+            childChars = Arrays.copyOf(childChars, childChars.length + 1);
+            childChars[childChars.length - 1] = c;
+            children.add(child);
+        }
+
+        int[] sortedChildren() {
+            Integer[] order = new Integer[childChars.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Character.compare(childChars[a], childChars[b]));
+            int[] result = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                result[i] = order[i];
+            }
+            return result;
+        }
+    }
+
+    static class Builder {
+
+        private final List<String> mTitles = new ArrayList<>();
+        private final Set<String> mUploaders = new HashSet<>();
+        private final Set<String> mTagNames = new HashSet<>();
+        private final Set<String> mNamespaceTags = new HashSet<>();
+        private final Set<String> mNamespaceTagNames = new HashSet<>();
+        private final Set<String> mTagNamespaces = new HashSet<>();
+
+        /**
+         * @param title lower case title
+         */
+        public Builder addTitle(String title) {
+            if (title != null && !title.isEmpty()) {
+                mTitles.add(title);
+            }
+            return this;
+        }
+
+        public Builder addUploader(String uploader) {
+            if (uploader != null) {
+                mUploaders.add(uploader);
+            }
+            return this;
+        }
+
+        public Builder addTag(String tag) {
+            if (tag == null) {
+                return this;
+            }
+            int index = tag.indexOf(':');
+            if (index < 0) {
+                mTagNames.add(tag);
+            } else {
+                mNamespaceTags.add(tag);
+                mNamespaceTagNames.add(tag.substring(index + 1));
+            }
+            return this;
+        }
+
+        public Builder addTagNamespace(String namespace) {
+            if (namespace != null) {
+                mTagNamespaces.add(namespace);
+            }
+            return this;
+        }
+
+        public FilterMatcher build() {
+            return new FilterMatcher(this);
+        }
+    }
+}
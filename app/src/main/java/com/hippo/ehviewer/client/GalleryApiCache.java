@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client;
+
+import android.os.SystemClock;
+
+import com.hippo.ehviewer.client.data.GalleryInfo;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Short-lived cache of gdata api results, refreshing a gallery list
+ * doesn't need to request the galleries which are just filled.
+ */
+final class GalleryApiCache {
+
+    private static final long EXPIRE_TIME = 5 * 60 * 1000; // 5 min
+    private static final int MAX_SIZE = 500;
+
+    private static final Map<Long, Entry> sCache = new LinkedHashMap<Long, Entry>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    private GalleryApiCache() {}
+
+    private static class Entry {
+        final GalleryInfo info;
+        final long time;
+
+        Entry(GalleryInfo info, long time) {
+            this.info = info;
+            this.time = time;
+        }
+    }
+
+    private static void copy(GalleryInfo from, GalleryInfo to) {
+        to.title = from.title;
+        to.titleJpn = from.titleJpn;
+        to.category = from.category;
+        to.thumb = from.thumb;
+        to.uploader = from.uploader;
+        to.posted = from.posted;
+        to.rating = from.rating;
+        to.simpleTags = from.simpleTags != null ? from.simpleTags.clone() : null;
+        to.pages = from.pages;
+        to.simpleLanguage = from.simpleLanguage;
+    }
+
+    /**
+     * Fill the gallery info with cached api result.
+     *
+     * @return false if it is not in cache or expired
+     */
+    static boolean fill(GalleryInfo gi) {
+        Entry entry;
+        synchronized (sCache) {
+            entry = sCache.get(gi.gid);
+            if (entry == null) {
+                return false;
+            }
+            if (SystemClock.elapsedRealtime() - entry.time > EXPIRE_TIME) {
+                sCache.remove(gi.gid);
+                return false;
+            }
+        }
+        if (entry.info.token == null || !entry.info.token.equals(gi.token)) {
+            return false;
+        }
+        copy(entry.info, gi);
+        return true;
+    }
+
+    static void put(List<GalleryInfo> galleryInfoList) {
+        long now = SystemClock.elapsedRealtime();
+        for (int i = 0, n = galleryInfoList.size(); i < n; i++) {
+            GalleryInfo gi = galleryInfoList.get(i);
+            GalleryInfo info = new GalleryInfo();
+            info.gid = gi.gid;
+            info.token = gi.token;
+            copy(gi, info);
+            synchronized (sCache) {
+                sCache.put(info.gid, new Entry(info, now));
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client;
+
+import androidx.annotation.NonNull;
+
+import com.hippo.ehviewer.client.data.GalleryInfo;
+import com.hippo.ehviewer.client.parser.GalleryListParser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Publishes parsed galleries to {@link EhClient.PartialCallback} before the
+ * gdata api fill. The first gallery is published at once, the others in batches.
+ * <p>
+ * Copies are published, so the api fill in job thread doesn't touch the
+ * galleries which are shown.
+ */
+final class GalleryListPublisher implements GalleryListParser.Callback {
+
+    private static final int BATCH_SIZE = 5;
+
+    interface Sink {
+        void publish(List<GalleryInfo> batch);
+    }
+
+    private final Sink mSink;
+    private final EhFilter mFilter;
+    private List<GalleryInfo> mBatch = new ArrayList<>(BATCH_SIZE);
+    private boolean mPublished;
+
+    GalleryListPublisher(@NonNull EhClient.Task task) {
+        this(task::publishPartial, EhFilter.getInstance());
+    }
+
+    GalleryListPublisher(@NonNull Sink sink, @NonNull EhFilter filter) {
+        mSink = sink;
+        mFilter = filter;
+    }
+
+    private boolean filter(GalleryInfo info) {
+        if (!mFilter.filterTitle(info) || !mFilter.filterUploader(info)) {
+            return false;
+        }
+        if (info.simpleTags == null) {
+            // Tags are only in some list modes, the others can't be shown
+            // until api fill if there are tag filters
+            return !mFilter.needTags();
+        }
+        return mFilter.filterTag(info) && mFilter.filterTagNamespace(info);
+    }
+
+    private void add(GalleryInfo info) {
+        GalleryInfo copy = info.copy();
+        copy.thumb = EhUrl.getFixedPreviewThumbUrl(copy.thumb);
+        mBatch.add(copy);
+    }
+
+    @Override
+    public void onGalleryInfo(@NonNull GalleryInfo info) {
+        if (filter(info)) {
+            add(info);
+            if (!mPublished || mBatch.size() >= BATCH_SIZE) {
+                flush();
+            }
+        }
+    }
+
+    void publish(List<GalleryInfo> list) {
+        for (int i = 0, n = list.size(); i < n; i++) {
+            GalleryInfo info = list.get(i);
+            if (filter(info)) {
+                add(info);
+            }
+        }
+        flush();
+    }
+
+    void flush() {
+        if (!mBatch.isEmpty()) {
+            mSink.publish(mBatch);
+            mBatch = new ArrayList<>(BATCH_SIZE);
+            mPublished = true;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client;
+
+import java.util.Arrays;
+
+/**
+ * Substring index of tag english and chinese names.
+ * <p>
+ * All names are kept in one char array. Every two adjacent chars of a name
+ * is a gram, the index maps each gram to entries which contain it. A keyword
+ * is searched in entries of its rarest gram only.
+ */
+final class TagSuggestionIndex {
+
+    // Between english and chinese of one entry
+    private static final char SEPARATOR = '\n';
+
+    private static final int MATCH_EXACT = 0;
+    private static final int MATCH_PREFIX = 1;
+    private static final int MATCH_CONTAIN = 2;
+
+    // Entry i is text[entryStart[i], entryStart[i + 1])
+    private final char[] mText;
+    private final int[] mEntryStart;
+    private final int mSize;
+
+    // Sorted grams, entries of gramKeys[i] are gramEntries[gramStart[i], gramStart[i + 1])
+    private final int[] mGramKeys;
+    private final int[] mGramStart;
+    private final int[] mGramEntries;
+
+    private TagSuggestionIndex(char[] text, int[] entryStart, int size) {
+        mText = text;
+        mEntryStart = entryStart;
+        mSize = size;
+
+        // Collect distinct (gram, entry) pairs
+        long[] pairs = new long[Math.max(text.length, 16)];
+        int pairCount = 0;
+        for (int entry = 0; entry < size; entry++) {
+            int begin = pairCount;
+            for (int i = entryStart[entry], end = entryStart[entry + 1] - 1; i < end; i++) {
+                char c1 = text[i];
+                char c2 = text[i + 1];
+                if (c1 == SEPARATOR || c2 == SEPARATOR) {
+                    continue;
+                }
+                pairs[pairCount++] = ((long) gram(c1, c2) << 32) | entry;
+            }
+            // Remove duplicate grams of this entry
+            Arrays.sort(pairs, begin, pairCount);
+            int count = begin;
+            for (int i = begin; i < pairCount; i++) {
+                if (i == begin || pairs[i] != pairs[i - 1]) {
+                    pairs[count++] = pairs[i];
+                }
+            }
+            pairCount = count;
+        }
+        Arrays.sort(pairs, 0, pairCount);
+
+        int keyCount = 0;
+        for (int i = 0; i < pairCount; i++) {
+            if (i == 0 || (pairs[i] >>> 32) != (pairs[i - 1] >>> 32)) {
+                keyCount++;
+            }
+        }
+        mGramKeys = new int[keyCount];
+        mGramStart = new int[keyCount + 1];
+        mGramEntries = new int[pairCount];
+        int key = -1;
+        for (int i = 0; i < pairCount; i++) {
+            int gram = (int) (pairs[i] >>> 32);
+            if (key == -1 || gram != mGramKeys[key]) {
+                key++;
+                mGramKeys[key] = gram;
+                mGramStart[key] = i;
+            }
+            mGramEntries[i] = (int) pairs[i];
+        }
+        mGramStart[keyCount] = pairCount;
+    }
+
+    private static int gram(char c1, char c2) {
+        return (c1 << 16) | c2;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    private int getSeparator(int entry) {
+        int i = mEntryStart[entry];
+        while (mText[i] != SEPARATOR) {
+            i++;
+        }
+        return i;
+    }
+
+    public String getEnglish(int entry) {
+        int start = mEntryStart[entry];
+        return new String(mText, start, getSeparator(entry) - start);
+    }
+
+    public String getChinese(int entry) {
+        int start = getSeparator(entry) + 1;
+        return new String(mText, start, mEntryStart[entry + 1] - start);
+    }
+
+    private boolean regionMatches(int offset, String keyword) {
+        for (int i = 0, n = keyword.length(); i < n; i++) {
+            if (mText[offset + i] != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Return the best match type of keyword in text[start, end), -1 for no match
+    private int match(int start, int end, String keyword) {
+        int length = keyword.length();
+        if (end - start < length) {
+            return -1;
+        }
+        if (regionMatches(start, keyword)) {
+            return end - start == length ? MATCH_EXACT : MATCH_PREFIX;
+        }
+        int result = -1;
+        for (int i = start + 1, n = end - length; i <= n; i++) {
+            if (regionMatches(i, keyword)) {
+                // Start of the part after namespace or space is also a prefix
+                char prev = mText[i - 1];
+                if (prev == ':' || prev == ' ') {
+                    return i + length == end ? MATCH_EXACT : MATCH_PREFIX;
+                }
+                result = MATCH_CONTAIN;
+            }
+        }
+        return result;
+    }
+
+    private int match(int entry, String keyword) {
+        int separator = getSeparator(entry);
+        int english = match(mEntryStart[entry], separator, keyword);
+        int chinese = match(separator + 1, mEntryStart[entry + 1], keyword);
+        if (english == -1) {
+            return chinese;
+        } else if (chinese == -1) {
+            return english;
+        } else {
+            return Math.min(english, chinese);
+        }
+    }
+
+    // Smaller is better: match type, then english length, then entry order
+    private long rank(int entry, int match) {
+        int length = Math.min(getSeparator(entry) - mEntryStart[entry], 0xffff);
+        return ((long) match << 48) | ((long) length << 32) | entry;
+    }
+
+    // Insert rank to the sorted top array, return the new count
+    private static int offer(long[] top, int count, long rank) {
+        if (count == top.length) {
+            if (rank >= top[count - 1]) {
+                return count;
+            }
+            count--;
+        }
+        int i = count;
+        while (i > 0 && top[i - 1] > rank) {
+            top[i] = top[i - 1];
+            i--;
+        }
+        top[i] = rank;
+        return count + 1;
+    }
+
+    /**
+     * Return entries which english or chinese contains the keyword.
+     * Exact matches come first, then prefix matches, then others.
+     * Shorter tags come first in the same kind.
+     */
+    public int[] search(String keyword, int limit) {
+        if (keyword == null || keyword.isEmpty() || limit <= 0 || mSize == 0) {
+            return new int[0];
+        }
+
+        long[] top = new long[limit];
+        int count = 0;
+
+        if (keyword.length() == 1) {
+            // No gram for one char, check all
+            for (int entry = 0; entry < mSize; entry++) {
+                int match = match(entry, keyword);
+                if (match != -1) {
+                    count = offer(top, count, rank(entry, match));
+                }
+            }
+        } else {
+            // Find the rarest gram
+            int best = -1;
+            int bestSize = Integer.MAX_VALUE;
+            for (int i = 0, n = keyword.length() - 1; i < n; i++) {
+                int index = Arrays.binarySearch(mGramKeys, gram(keyword.charAt(i), keyword.charAt(i + 1)));
+                if (index < 0) {
+                    // No entry contains it
+                    return new int[0];
+                }
+                int size = mGramStart[index + 1] - mGramStart[index];
+                if (size < bestSize) {
+                    best = index;
+                    bestSize = size;
+                }
+            }
+
+            for (int i = mGramStart[best], n = mGramStart[best + 1]; i < n; i++) {
+                int entry = mGramEntries[i];
+                int match = match(entry, keyword);
+                if (match != -1) {
+                    count = offer(top, count, rank(entry, match));
+                }
+            }
+        }
+
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = (int) top[i];
+        }
+        return result;
+    }
+
+    static class Builder {
+
+        private char[] mText = new char[1024];
+        private int mLength;
+        private int[] mEntryStart = new int[64];
+        private int mSize;
+
+        private void append(String str) {
+            int length = str.length();
+            if (mLength + length > mText.length) {
+                mText = Arrays.copyOf(mText, Math.max(mText.length * 2, mLength + length));
+            }
+            str.getChars(0, length, mText, mLength);
+            mLength += length;
+        }
+
+        public Builder add(String english, String chinese) {
+            if (mSize + 1 >= mEntryStart.length) {
+                mEntryStart = Arrays.copyOf(mEntryStart, mEntryStart.length * 2);
+            }
+            mEntryStart[mSize] = mLength;
+            append(english.replace(SEPARATOR, ' '));
+            append(String.valueOf(SEPARATOR));
+            append(chinese.replace(SEPARATOR, ' '));
+            mSize++;
+            return this;
+        }
+
+        public TagSuggestionIndex build() {
+            int[] entryStart = Arrays.copyOf(mEntryStart, mSize + 1);
+            entryStart[mSize] = mLength;
+            return new TagSuggestionIndex(Arrays.copyOf(mText, mLength), entryStart, mSize);
+        }
+    }
+}
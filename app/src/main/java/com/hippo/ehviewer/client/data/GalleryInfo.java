@@ -200,6 +200,35 @@ public class GalleryInfo implements Parcelable {
     public GalleryInfo() {
     }
 
+    /**
+     * Copy the fields, arrays and lists are shared as they are replaced but not modified.
+     */
+    public GalleryInfo copy() {
+        GalleryInfo info = new GalleryInfo();
+        info.gid = gid;
+        info.token = token;
+        info.title = title;
+        info.titleJpn = titleJpn;
+        info.thumb = thumb;
+        info.category = category;
+        info.posted = posted;
+        info.uploader = uploader;
+        info.rating = rating;
+        info.rated = rated;
+        info.simpleLanguage = simpleLanguage;
+        info.simpleTags = simpleTags;
+        info.pages = pages;
+        info.thumbWidth = thumbWidth;
+        info.thumbHeight = thumbHeight;
+        info.spanSize = spanSize;
+        info.spanIndex = spanIndex;
+        info.spanGroupIndex = spanGroupIndex;
+        info.favoriteSlot = favoriteSlot;
+        info.favoriteName = favoriteName;
+        info.tgList = tgList;
+        return info;
+    }
+
     protected GalleryInfo(Parcel in) {
         this.gid = in.readLong();
         this.token = in.readString();
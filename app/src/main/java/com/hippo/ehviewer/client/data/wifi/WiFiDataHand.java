@@ -5,6 +5,8 @@ import androidx.annotation.NonNull;
 import com.alibaba.fastjson.JSONObject;
 import com.google.firebase.crashlytics.FirebaseCrashlytics;
 
+import java.nio.charset.StandardCharsets;
+
 public class WiFiDataHand {
     public final static int ERROR = 0;
     public final static int RECEIVED = 1;
@@ -78,11 +80,25 @@ public class WiFiDataHand {
         return toJsonObject().toString();
     }
 
-    public String toSendString() {
-        return toJsonObject().toString() + ":END";
+    /**
+     * Payload of {@link com.hippo.ehviewer.client.wifi.WiFiFrame}.
+     */
+    public byte[] toBytes() {
+        return toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static WiFiDataHand fromBytes(byte[] bytes) {
+        return new WiFiDataHand(new String(bytes, StandardCharsets.UTF_8));
     }
 
-    public byte[] getSendBytes() {
-        return toSendString().getBytes();
+    /**
+     * Acknowledgement of this message, it carries the page info only.
+     */
+    public WiFiDataHand createReceived() {
+        WiFiDataHand received = new WiFiDataHand(RECEIVED);
+        received.dataType = dataType;
+        received.pageSize = pageSize;
+        received.pageIndex = pageIndex;
+        return received;
     }
 }
@@ -16,47 +16,153 @@
 
 package com.hippo.ehviewer.client.parser;
 
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import androidx.annotation.Nullable;
+
 import com.hippo.ehviewer.client.EhUtils;
 import com.hippo.ehviewer.client.data.GalleryInfo;
-
+import com.hippo.ehviewer.client.exception.EhException;
 import com.hippo.yorozuya.NumberUtils;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.List;
 
 public class GalleryApiParser {
 
-    public static void parse(String body, List<GalleryInfo> galleryInfoList) throws JSONException {
-        JSONObject jo = new JSONObject(body);
-        JSONArray ja = jo.getJSONArray("gmetadata");
+    public static List<GalleryInfo> parse(String body, List<GalleryInfo> galleryInfoList)
+            throws IOException, EhException {
+        return parse(new StringReader(body), galleryInfoList);
+    }
 
-        for (int i = 0, length = ja.length(); i < length; i++) {
-            JSONObject g = ja.getJSONObject(i);
-            long gid = g.getLong("gid");
-            GalleryInfo gi = getGalleryInfoByGid(galleryInfoList, gid);
-            if (gi == null) {
+    /**
+     * Read gdata api response from the reader, and fill the gallery infos in the list
+     * without holding the whole response.
+     *
+     * @return the filled gallery infos
+     */
+    public static List<GalleryInfo> parse(Reader in, List<GalleryInfo> galleryInfoList)
+            throws IOException, EhException {
+        List<GalleryInfo> result = new ArrayList<>(galleryInfoList.size());
+        JsonReader reader = new JsonReader(in);
+        try {
+            String error = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("gmetadata".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        GalleryInfo gi = parseGalleryInfo(reader, galleryInfoList);
+                        if (gi != null) {
+                            result.add(gi);
+                        }
+                    }
+                    reader.endArray();
+                } else if ("error".equals(name) && reader.peek() == JsonToken.STRING) {
+                    error = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (error != null) {
+                throw new EhException(error);
+            }
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+
+    @Nullable
+    private static GalleryInfo parseGalleryInfo(JsonReader reader, List<GalleryInfo> galleryInfoList)
+            throws IOException {
+        // The gid might not be the first one, read to a temp info
+        GalleryInfo temp = new GalleryInfo();
+        boolean hasGid = false;
+        boolean hasError = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
                 continue;
             }
-            gi.title = ParserUtils.trim(g.getString("title"));
-            gi.titleJpn = ParserUtils.trim(g.getString("title_jpn"));
-            gi.category = EhUtils.getCategory(g.getString("category"));
-            gi.thumb = EhUtils.handleThumbUrlResolution(g.getString("thumb"));
-            gi.uploader = g.getString("uploader");
-            gi.posted = ParserUtils.formatDate(ParserUtils.parseLong(g.getString("posted"), 0) * 1000);
-            gi.rating = NumberUtils.parseFloatSafely(g.getString("rating"), 0.0f);
-            // tags
-            JSONArray tagJa = g.getJSONArray("tags");
-            int tagLength = tagJa.length();
-            String[] tags = new String[tagLength];
-            for (int j = 0; j < tagLength; j++) {
-                tags[j] = tagJa.getString(j);
+            switch (name) {
+                case "gid":
+                    temp.gid = reader.nextLong();
+                    hasGid = true;
+                    break;
+                case "error":
+                    // Invalid gid or token
+                    reader.skipValue();
+                    hasError = true;
+                    break;
+                case "title":
+                    temp.title = ParserUtils.trim(reader.nextString());
+                    break;
+                case "title_jpn":
+                    temp.titleJpn = ParserUtils.trim(reader.nextString());
+                    break;
+                case "category":
+                    temp.category = EhUtils.getCategory(reader.nextString());
+                    break;
+                case "thumb":
+                    temp.thumb = EhUtils.handleThumbUrlResolution(reader.nextString());
+                    break;
+                case "uploader":
+                    temp.uploader = reader.nextString();
+                    break;
+                case "posted":
+                    temp.posted = ParserUtils.formatDate(ParserUtils.parseLong(reader.nextString(), 0) * 1000);
+                    break;
+                case "rating":
+                    temp.rating = NumberUtils.parseFloatSafely(reader.nextString(), 0.0f);
+                    break;
+                case "tags": {
+                    List<String> tags = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        tags.add(reader.nextString());
+                    }
+                    reader.endArray();
+                    temp.simpleTags = tags.toArray(new String[tags.size()]);
+                    break;
+                }
+                case "filecount":
+                    temp.pages = NumberUtils.parseIntSafely(reader.nextString(), 0);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
             }
-            gi.simpleTags = tags;
-            gi.pages = NumberUtils.parseIntSafely(g.getString("filecount"), 0);
-            gi.generateSLang();
         }
+        reader.endObject();
+
+        if (!hasGid || hasError) {
+            return null;
+        }
+        GalleryInfo gi = getGalleryInfoByGid(galleryInfoList, temp.gid);
+        if (gi == null) {
+            return null;
+        }
+        gi.title = temp.title;
+        gi.titleJpn = temp.titleJpn;
+        gi.category = temp.category;
+        gi.thumb = temp.thumb;
+        gi.uploader = temp.uploader;
+        gi.posted = temp.posted;
+        gi.rating = temp.rating;
+        gi.simpleTags = temp.simpleTags != null ? temp.simpleTags : new String[0];
+        gi.pages = temp.pages;
+        gi.generateSLang();
+        return gi;
     }
 
     private static GalleryInfo getGalleryInfoByGid(List<GalleryInfo> galleryInfoList, long gid) {
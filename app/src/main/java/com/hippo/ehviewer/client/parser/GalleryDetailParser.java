@@ -68,8 +68,8 @@ public class GalleryDetailParser {
 
     private static final Pattern PATTERN_ERROR = Pattern.compile("<div class=\"d\">\n<p>([^<]+)</p>");
     private static final Pattern PATTERN_DETAIL = Pattern.compile("var gid = (\\d+);.+?var token = \"([a-f0-9]+)\";.+?var apiuid = ([\\-\\d]+);.+?var apikey = \"([a-f0-9]+)\";", Pattern.DOTALL);
-    private static final Pattern PATTERN_TORRENT = Pattern.compile("<a[^<>]*onclick=\"return popUp\\('([^']+)'[^)]+\\)\">Torrent Download \\((\\d+)\\)</a>");
-    private static final Pattern PATTERN_ARCHIVE = Pattern.compile("<a[^<>]*onclick=\"return popUp\\('([^']+)'[^)]+\\)\">Archive Download</a>");
+    private static final Pattern PATTERN_POPUP = Pattern.compile("return popUp\\('([^']+)'");
+    private static final Pattern PATTERN_TORRENT_COUNT = Pattern.compile("Torrent Download \\((\\d+)\\)");
     private static final Pattern PATTERN_COVER = Pattern.compile("width:(\\d+)px; height:(\\d+)px.+?url\\((.+?)\\)");
     private static final Pattern PATTERN_TAG_GROUP = Pattern.compile("<tr><td[^<>]+>([\\w\\s]+):</td><td>(?:<div[^<>]+><a[^<>]+>[\\w\\s]+</a></div>)+</td></tr>");
     private static final Pattern PATTERN_TAG = Pattern.compile("<div[^<>]+><a[^<>]+>([\\w\\s]+)</a></div>");
@@ -77,6 +77,7 @@ public class GalleryDetailParser {
     private static final Pattern PATTERN_PAGES = Pattern.compile("<tr><td[^<>]*>Length:</td><td[^<>]*>([\\d,]+) pages</td></tr>");
     private static final Pattern PATTERN_PREVIEW_PAGES = Pattern.compile("<td[^>]+><a[^>]+>([\\d,]+)</a></td><td[^>]+>(?:<a[^>]+>)?&gt;(?:</a>)?</td>");
     private static final Pattern PATTERN_NORMAL_PREVIEW = Pattern.compile("<div class=\"gdtm\"[^<>]*><div[^<>]*width:(\\d+)[^<>]*height:(\\d+)[^<>]*\\((.+?)\\)[^<>]*-(\\d+)px[^<>]*><a[^<>]*href=\"(.+?)\"[^<>]*><img alt=\"([\\d,]+)\"");
+    private static final Pattern PATTERN_NORMAL_PREVIEW_STYLE = Pattern.compile("width:(\\d+)[^;]*;\\s*height:(\\d+)[^(]*\\((.+?)\\)\\s*-(\\d+)px");
     private static final Pattern PATTERN_LARGE_PREVIEW = Pattern.compile("<div class=\"gdtl\".+?<a href=\"(.+?)\"><img alt=\"([\\d,]+)\".+?src=\"(.+?)\"");
     private static final Pattern PATTERN_ARCHIVE_DOWNLOAD = Pattern.compile("onclick=\"return popUp('(.*)',480,320)\">Archive Download</a>");
 
@@ -94,55 +95,183 @@ public class GalleryDetailParser {
     private static final String PINING_STRING =
             "<p>This gallery is pining for the fjords.</p>";
 
+    /**
+     * Elements of detail page, collected in one traversal of the document
+     * instead of searching the document for each of them.
+     */
+    private static final class DetailPage implements NodeVisitor {
+        Element gm;
+        Element gd1;
+        Element gn;
+        Element gj;
+        Element gdc;
+        Element gdn;
+        Element gdd;
+        Element ratingCount;
+        Element ratingLabel;
+        Element gdf;
+        Element gnd;
+        Element taglist;
+        Element cdiv;
+        Element ptt;
+        Element gdt;
+        Element torrent;
+        Element archive;
+        // The script with gid, token, apiuid and apikey
+        String script;
+        final List<Element> comments = new ArrayList<>();
+        final List<Element> largePreviews = new ArrayList<>();
+        final List<Element> normalPreviews = new ArrayList<>();
+        // Depth of #cdiv and #gdt while inside them, -1 for outside
+        private int cdivDepth = -1;
+        private int gdtDepth = -1;
+
+        static DetailPage collect(Document document) {
+            DetailPage page = new DetailPage();
+            NodeTraversor.traverse(page, document);
+            return page;
+        }
+
+        @Override
+        public void head(@NonNull Node node, int depth) {
+            if (!(node instanceof Element)) {
+                return;
+            }
+            Element e = (Element) node;
+
+            String id = e.id();
+            if (!id.isEmpty()) {
+                switch (id) {
+                    case "gd1": gd1 = e; break;
+                    case "gn": gn = e; break;
+                    case "gj": gj = e; break;
+                    case "gdc": gdc = e; break;
+                    case "gdn": gdn = e; break;
+                    case "gdd": gdd = e; break;
+                    case "rating_count": ratingCount = e; break;
+                    case "rating_label": ratingLabel = e; break;
+                    case "gdf": gdf = e; break;
+                    case "gnd": gnd = e; break;
+                    case "taglist": taglist = e; break;
+                    case "cdiv":
+                        cdiv = e;
+                        if (cdivDepth < 0) {
+                            cdivDepth = depth;
+                        }
+                        break;
+                    case "gdt":
+                        gdt = e;
+                        if (gdtDepth < 0) {
+                            gdtDepth = depth;
+                        }
+                        break;
+                }
+            }
+
+            if (e.hasClass("gm")) {
+                // cdiv is also gm, take the first one
+                if (gm == null) {
+                    gm = e;
+                }
+            } else if (e.hasClass("ptt")) {
+                if (ptt == null) {
+                    ptt = e;
+                }
+            } else if (cdivDepth >= 0 && e.hasClass("c1")) {
+                comments.add(e);
+            } else if (gdtDepth >= 0 && e.hasClass("gdtl")) {
+                largePreviews.add(e);
+            } else if (gdtDepth >= 0 && e.hasClass("gdtm")) {
+                normalPreviews.add(e);
+            }
+
+            switch (e.normalName()) {
+                case "script":
+                    if (script == null) {
+                        String data = e.data();
+                        if (data.contains("var gid")) {
+                            script = data;
+                        }
+                    }
+                    break;
+                case "a":
+                    if (e.attr("onclick").startsWith("return popUp(")) {
+                        String text = e.text();
+                        if (text.startsWith("Torrent Download")) {
+                            torrent = e;
+                        } else if (text.startsWith("Archive Download")) {
+                            archive = e;
+                        }
+                    }
+                    break;
+            }
+        }
+
+        @Override
+        public void tail(@NonNull Node node, int depth) {
+            if (!(node instanceof Element)) {
+                return;
+            }
+            if (depth == cdivDepth) {
+                cdivDepth = -1;
+            }
+            if (depth == gdtDepth) {
+                gdtDepth = -1;
+            }
+        }
+    }
+
     /**
      * 画廊详情页数据处理
+     * <p>
+     * The document is traversed once, all fields of gallery detail including
+     * the ones for spider info are read from the collected elements.
      *
      * @param body 传入原始画廊html数据
      * @return 返回从html数据中提取的有用数据
      * @throws EhException
      */
     public static GalleryDetail parse(String body) throws EhException {
-        if (body.contains(OFFENSIVE_STRING)) {
-            throw new OffensiveException();
-        }
-
-        if (body.contains(PINING_STRING)) {
-            throw new PiningException();
-        }
+        Document document = Jsoup.parse(body);
+        DetailPage page = DetailPage.collect(document);
 
-        // Error info
-        Matcher m = PATTERN_ERROR.matcher(body);
-        if (m.find()) {
-            throw new EhException(m.group(1));
+        if (page.gm == null) {
+            // Not a gallery, find out why
+            if (body.contains(OFFENSIVE_STRING)) {
+                throw new OffensiveException();
+            }
+            if (body.contains(PINING_STRING)) {
+                throw new PiningException();
+            }
+            Matcher m = PATTERN_ERROR.matcher(body);
+            if (m.find()) {
+                throw new EhException(m.group(1));
+            }
+            throw new ParseException("Can't parse gallery detail", body);
         }
 
-
         GalleryDetail galleryDetail = new GalleryDetail();
-//        GalleryDetail galleryDetailOld = new GalleryDetail();
-//        galleryDetail.body = body;
-//
-        Document document = Jsoup.parse(body);
-        parseDetail(galleryDetail, document, body);
-        galleryDetail.tags = parseTagGroups(document);       //获取标签列表
-        galleryDetail.comments = parseComments(document);    //获取评论内容
-        galleryDetail.previewPages = parsePreviewPages(document, body);  //获取画廊图片数量
-        galleryDetail.previewSet = parsePreviewSet(document, body);//获取画廊浏览参数（如：之前有观看则从上次看到的位置开始）
-        galleryDetail.SpiderInfoPages = parsePages(body);
-        galleryDetail.SpiderInfoPreviewPages = parsePreviewPages(body);
-        galleryDetail.SpiderInfoPreviewSet = parsePreviewSet(body);
-//        parseDetail(galleryDetailOld, document, body);
-//        galleryDetailOld.tags = parseTagGroups(document);       //获取标签列表
-//        galleryDetailOld.comments = parseComments(document);    //获取评论内容
-//        galleryDetailOld.previewPages = parsePreviewPages(document, body);  //获取画廊图片数量
-//        galleryDetailOld.previewSet = parsePreviewSet(document, body);//获取画廊浏览参数（如：之前有观看则从上次看到的位置开始）
-//
-//        galleryDetail.oldDetail = galleryDetailOld;
+        parseDetail(galleryDetail, page, body);
+        galleryDetail.tags = parseTagGroups(page.taglist);       //获取标签列表
+        galleryDetail.comments = parseComments(page.cdiv, page.comments);    //获取评论内容
+        galleryDetail.previewPages = parsePreviewPages(page.ptt, body);  //获取画廊图片数量
+        galleryDetail.previewSet = parsePreviewSet(page, body);//获取画廊浏览参数（如：之前有观看则从上次看到的位置开始）
+
+        // Spider info reads the same values
+        if (galleryDetail.SpiderInfoPages < 0) {
+            throw new ParseException("Parse pages error", body);
+        }
+        if (galleryDetail.previewSet.size() == 0) {
+            throw new ParseException("Can't parse preview", body);
+        }
+        galleryDetail.SpiderInfoPreviewPages = galleryDetail.previewPages;
+        galleryDetail.SpiderInfoPreviewSet = galleryDetail.previewSet;
         return galleryDetail;
     }
 
     @SuppressWarnings("ConstantConditions")
-    private static void parseDetail(GalleryDetail gd, Document d, String body) throws ParseException {
-        Matcher matcher = PATTERN_DETAIL.matcher(body);
+    private static void parseDetail(GalleryDetail gd, DetailPage page, String body) throws ParseException {
+        Matcher matcher = PATTERN_DETAIL.matcher(page.script != null ? page.script : body);
         if (matcher.find()) {
             gd.gid = NumberUtils.parseLongSafely(matcher.group(1), -1L);
             gd.token = matcher.group(2);
@@ -155,27 +284,30 @@ public class GalleryDetailParser {
             throw new ParseException("Can't parse gallery detail", body);
         }
 
-        matcher = PATTERN_TORRENT.matcher(body);
-        if (matcher.find()) {
-            gd.torrentUrl = StringUtils.unescapeXml(StringUtils.trim(matcher.group(1)));
-            gd.torrentCount = NumberUtils.parseIntSafely(matcher.group(2), 0);
-        } else {
-            gd.torrentCount = 0;
-            gd.torrentUrl = "";
+        gd.torrentCount = 0;
+        gd.torrentUrl = "";
+        if (page.torrent != null) {
+            matcher = PATTERN_POPUP.matcher(page.torrent.attr("onclick"));
+            if (matcher.find()) {
+                gd.torrentUrl = StringUtils.trim(matcher.group(1));
+                matcher = PATTERN_TORRENT_COUNT.matcher(page.torrent.text());
+                if (matcher.find()) {
+                    gd.torrentCount = NumberUtils.parseIntSafely(matcher.group(1), 0);
+                }
+            }
         }
 
-        matcher = PATTERN_ARCHIVE.matcher(body);
-        if (matcher.find()) {
-            gd.archiveUrl = StringUtils.unescapeXml(StringUtils.trim(matcher.group(1)));
-        } else {
-            gd.archiveUrl = "";
+        gd.archiveUrl = "";
+        if (page.archive != null) {
+            matcher = PATTERN_POPUP.matcher(page.archive.attr("onclick"));
+            if (matcher.find()) {
+                gd.archiveUrl = StringUtils.trim(matcher.group(1));
+            }
         }
 
         try {
-            Element gm = JsoupUtils.getElementByClass(d, "gm");
-
             // Thumb url
-            Element gd1 = gm.getElementById("gd1");
+            Element gd1 = page.gd1;
             try {
                 gd.thumb = parseCoverStyle(StringUtils.trim(gd1.child(0).attr("style")));
             } catch (Throwable e) {
@@ -184,7 +316,7 @@ public class GalleryDetailParser {
             }
 
             // Title
-            Element gn = gm.getElementById("gn");
+            Element gn = page.gn;
             if (null != gn) {
                 gd.title = StringUtils.trim(gn.text());
             } else {
@@ -192,7 +324,7 @@ public class GalleryDetailParser {
             }
 
             // Jpn title
-            Element gj = gm.getElementById("gj");
+            Element gj = page.gj;
             if (null != gj) {
                 gd.titleJpn = StringUtils.trim(gj.text());
             } else {
@@ -200,7 +332,7 @@ public class GalleryDetailParser {
             }
 
             // Category
-            Element gdc = gm.getElementById("gdc");
+            Element gdc = page.gdc;
             try {
                 Element ce = JsoupUtils.getElementByClass(gdc, "cn");
                 if (ce == null) {
@@ -213,19 +345,20 @@ public class GalleryDetailParser {
             }
 
             // Uploader
-            Element gdn = gm.getElementById("gdn");
+            Element gdn = page.gdn;
             if (null != gdn) {
                 gd.uploader = StringUtils.trim(gdn.text());
             } else {
                 gd.uploader = "";
             }
 
-            Element gdd = gm.getElementById("gdd");
+            Element gdd = page.gdd;
             gd.posted = "";
             gd.parent = "";
             gd.visible = "";
             gd.size = "";
             gd.pages = 0;
+            gd.SpiderInfoPages = -1;
             gd.favoriteCount = 0;
             try {
                 Elements es = gdd.child(0).child(0).children();
@@ -238,7 +371,7 @@ public class GalleryDetailParser {
             }
 
             // Rating count
-            Element rating_count = gm.getElementById("rating_count");
+            Element rating_count = page.ratingCount;
             if (null != rating_count) {
                 gd.ratingCount = NumberUtils.parseIntSafely(
                         StringUtils.trim(rating_count.text()), 0);
@@ -247,7 +380,7 @@ public class GalleryDetailParser {
             }
 
             // Rating
-            Element rating_label = gm.getElementById("rating_label");
+            Element rating_label = page.ratingLabel;
             if (null != rating_label) {
                 String ratingStr = StringUtils.trim(rating_label.text());
                 if ("Not Yet Rated".equals(ratingStr)) {
@@ -265,7 +398,7 @@ public class GalleryDetailParser {
             }
 
             // isFavorited
-            Element gdf = gm.getElementById("gdf");
+            Element gdf = page.gdf;
             gd.isFavorited = null != gdf && !StringUtils.trim(gdf.text()).equals("Add to Favorites");
             if (gdf != null) {
                 final String favoriteName = StringUtils.trim(gdf.text());
@@ -280,7 +413,7 @@ public class GalleryDetailParser {
             throw new ParseException("Can't parse gallery detail", body);
         }
         try {
-            Element updateElement = d.getElementById("gnd");
+            Element updateElement = page.gnd;
             List<NewVersion> versionList = new ArrayList<>();
             List<TextNode> textNodes = updateElement.textNodes();
             for (int i = 0; i < updateElement.childrenSize(); i++) {
@@ -343,11 +476,9 @@ public class GalleryDetailParser {
             gd.size = value;
         } else if (key.startsWith("Length")) {
             int index = value.indexOf(' ');
-            if (index >= 0) {
-                gd.pages = NumberUtils.parseIntSafely(value.substring(0, index), 1);
-            } else {
-                gd.pages = 1;
-            }
+            int pages = index >= 0 ? ParserUtils.parseInt(value.substring(0, index), -1) : -1;
+            gd.pages = pages >= 0 ? pages : 1;
+            gd.SpiderInfoPages = pages;
         } else if (key.startsWith("Favorited")) {
             switch (value) {
                 case "Never":
@@ -402,8 +533,12 @@ public class GalleryDetailParser {
      */
     @NonNull
     public static GalleryTagGroup[] parseTagGroups(Document document) {
+        return parseTagGroups(document.getElementById("taglist"));
+    }
+
+    @NonNull
+    private static GalleryTagGroup[] parseTagGroups(Element taglist) {
         try {
-            Element taglist = document.getElementById("taglist");
             Elements tagGroups = taglist.child(0).child(0).children();
             return parseTagGroups(tagGroups);
         } catch (Throwable e) {
@@ -533,10 +668,13 @@ public class GalleryDetailParser {
      */
     @NonNull
     public static GalleryCommentList parseComments(Document document) {
-        try {
-            Element cdiv = document.getElementById("cdiv");
-            Elements c1s = cdiv.getElementsByClass("c1");
+        Element cdiv = document.getElementById("cdiv");
+        return parseComments(cdiv, cdiv != null ? cdiv.getElementsByClass("c1") : null);
+    }
 
+    @NonNull
+    private static GalleryCommentList parseComments(Element cdiv, List<Element> c1s) {
+        try {
             List<GalleryComment> list = new ArrayList<>(c1s.size());
             for (int i = 0, n = c1s.size(); i < n; i++) {
                 GalleryComment comment = parseComment(c1s.get(i));
@@ -598,14 +736,22 @@ public class GalleryDetailParser {
      * Parse preview pages with html parser
      */
     public static int parsePreviewPages(Document document, String body) throws ParseException {
+        return parsePreviewPages(document.getElementsByClass("ptt").first(), body);
+    }
+
+    private static int parsePreviewPages(Element ptt, String body) throws ParseException {
+        int previewPages = -1;
         try {
-            Elements elements = document.getElementsByClass("ptt").first().child(0).child(0).children();
-            return Integer.parseInt(elements.get(elements.size() - 2).text());
+            Elements elements = ptt.child(0).child(0).children();
+            previewPages = ParserUtils.parseInt(elements.get(elements.size() - 2).text(), -1);
         } catch (Throwable e) {
             ExceptionUtils.throwIfFatal(e);
             e.printStackTrace();
+        }
+        if (previewPages <= 0) {
             throw new ParseException("Can't parse preview pages", body);
         }
+        return previewPages;
     }
 
     /**
@@ -644,10 +790,18 @@ public class GalleryDetailParser {
     }
 
     public static PreviewSet parsePreviewSet(Document d, String body) throws ParseException {
+        return parsePreviewSet(DetailPage.collect(d), body);
+    }
+
+    private static PreviewSet parsePreviewSet(DetailPage page, String body) {
         PreviewSet previewSet;
         try {
-            previewSet = parseLargePreviewSet(d, body);
+            previewSet = parseLargePreviewSet(page.largePreviews, body);
             if (previewSet == null) {
+                previewSet = parseNormalPreviewSet(page.normalPreviews);
+            }
+            if (previewSet == null) {
+                // Html is not like what we know, try regex at last
                 previewSet = parseNormalPreviewSet(body);
             }
             if (previewSet == null) {
@@ -671,13 +825,11 @@ public class GalleryDetailParser {
     }
 
     /**
-     * Parse large previews with regular expressions
+     * Parse large previews with html parser
      */
-    private static LargePreviewSet parseLargePreviewSet(Document d, String body) throws ParseException {
+    private static LargePreviewSet parseLargePreviewSet(List<Element> gdtls, String body) throws ParseException {
         try {
             LargePreviewSet largePreviewSet = new LargePreviewSet();
-            Element gdt = d.getElementById("gdt");
-            Elements gdtls = gdt.getElementsByClass("gdtl");
             int n = gdtls.size();
             if (n <= 0) {
                 return null;
@@ -729,6 +881,43 @@ public class GalleryDetailParser {
         return largePreviewSet;
     }
 
+    /**
+     * Parse normal previews with html parser
+     *
+     * @return {@code null} if no preview
+     */
+    @Nullable
+    private static NormalPreviewSet parseNormalPreviewSet(List<Element> gdtms) {
+        NormalPreviewSet normalPreviewSet = new NormalPreviewSet();
+        for (int i = 0, n = gdtms.size(); i < n; i++) {
+            try {
+                Element div = gdtms.get(i).child(0);
+                Matcher m = PATTERN_NORMAL_PREVIEW_STYLE.matcher(div.attr("style"));
+                if (!m.find()) {
+                    continue;
+                }
+                Element a = div.child(0);
+                int position = ParserUtils.parseInt(a.child(0).attr("alt"), 0) - 1;
+                if (position < 0) {
+                    continue;
+                }
+                int width = ParserUtils.parseInt(m.group(1), 0);
+                int height = ParserUtils.parseInt(m.group(2), 0);
+                if (width <= 0 || height <= 0) {
+                    continue;
+                }
+                String imageUrl = StringUtils.trim(m.group(3));
+                int xOffset = ParserUtils.parseInt(m.group(4), 0);
+                String pageUrl = StringUtils.trim(a.attr("href"));
+                normalPreviewSet.addItem(position, imageUrl, xOffset, 0, width, height, pageUrl);
+            } catch (Throwable e) {
+                ExceptionUtils.throwIfFatal(e);
+                // Skip this one
+            }
+        }
+        return normalPreviewSet.size() > 0 ? normalPreviewSet : null;
+    }
+
     /**
      * Parse normal previews with regular expressions
      */
@@ -20,6 +20,7 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.hippo.ehviewer.EhDB;
 import com.hippo.ehviewer.client.EhUtils;
@@ -32,16 +33,26 @@ import com.hippo.util.ExceptionUtils;
 import com.hippo.util.JsoupUtils;
 import com.hippo.yorozuya.NumberUtils;
 
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.ccil.cowan.tagsoup.ElementType;
+import org.ccil.cowan.tagsoup.HTMLSchema;
+import org.ccil.cowan.tagsoup.Parser;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
 public class GalleryListParser {
 
@@ -55,6 +66,8 @@ public class GalleryListParser {
     private static final Pattern PATTERN_NEXT_EX_PAGE = Pattern.compile("next=(\\d+)");
     private static final Pattern PATTERN_RESULT_COUNT_PAGE = Pattern.compile("Found .* results");
 
+    private static final int ERROR_BODY_LENGTH = 64 * 1024;
+
     private static final String[][] FAVORITE_SLOT_RGB = new String[][]{
             new String[]{"0", "0", "0"},
             new String[]{"240", "0", "0"},
@@ -90,92 +103,103 @@ public class GalleryListParser {
         }
     }
 
-    public static Result parse(@NonNull String body) throws Exception {
-        Result result = new Result();
-        Document d = Jsoup.parse(body);
+    public interface Callback {
+        /**
+         * Called in parsing thread as soon as the row of the gallery is parsed.
+         */
+        void onGalleryInfo(@NonNull GalleryInfo info);
+    }
 
-        try {
-            Element ptt = d.getElementsByClass("ptt").first();
-            if (ptt == null) {
-                Element searchNav = d.getElementsByClass("searchnav").first();
-                result.pages = -1;
-                result.nextPage = -1;
-
-                assert searchNav != null;
-                Element element = searchNav.getElementById("uFirst");
-                if (element!=null){
-                    result.firstHref = element.attr("href");
-                }else {
-                    result.firstHref = "";
-                }
-                element = searchNav.getElementById("uprev");
-                if (element!=null){
-                    result.prevHref = element.attr("href");
-                }else {
-                    result.prevHref = "";
-                }
-                element = searchNav.getElementById("unext");
-                if (element!=null){
-                    result.nextHref = element.attr("href");
-                }else {
-                    result.nextHref = "";
-                }
-                element = searchNav.getElementById("ulast");
-                if (element!=null){
-                    result.lastHref = element.attr("href");
-                }else {
-                    result.lastHref = "";
-                }
+    private static void parsePageIndex(Document d, Result result) {
+        Element ptt = d.getElementsByClass("ptt").first();
+        if (ptt == null) {
+            Element searchNav = d.getElementsByClass("searchnav").first();
+            result.pages = -1;
+            result.nextPage = -1;
+
+            assert searchNav != null;
+            Element element = searchNav.getElementById("uFirst");
+            if (element!=null){
+                result.firstHref = element.attr("href");
+            }else {
+                result.firstHref = "";
+            }
+            element = searchNav.getElementById("uprev");
+            if (element!=null){
+                result.prevHref = element.attr("href");
+            }else {
+                result.prevHref = "";
+            }
+            element = searchNav.getElementById("unext");
+            if (element!=null){
+                result.nextHref = element.attr("href");
+            }else {
+                result.nextHref = "";
+            }
+            element = searchNav.getElementById("ulast");
+            if (element!=null){
+                result.lastHref = element.attr("href");
+            }else {
+                result.lastHref = "";
+            }
 
-                element = d.getElementsByClass("searchtext").first();
-
-                if (element!=null){
-                    String text = element.text();
-                    Matcher matcher = PATTERN_RESULT_COUNT_PAGE.matcher(text);
-                    if (matcher.find()){
-                        String findString = matcher.group();
-                        String[] resultArr = findString.split(" ");
-                        if (resultArr.length>3){
-                            switch (resultArr[1]){
-                                case "thousands":
-                                    result.resultCount = "1,000+";
-                                    break;
-                                case "about":
-                                    result.resultCount = resultArr[2]+"+";
-                                    break;
-                                default:
-                                    StringBuilder buffer = new StringBuilder();
-                                    for (int i=1;i<resultArr.length-1;i++){
-                                        buffer.append(resultArr[i]);
-                                    }
-                                    result.resultCount = buffer.toString();
-                                    break;
-                            }
-                        }else if(resultArr.length == 3){
-                            result.resultCount = resultArr[1];
-                        }else{
-                            result.resultCount = "";
+            element = d.getElementsByClass("searchtext").first();
+
+            if (element!=null){
+                String text = element.text();
+                Matcher matcher = PATTERN_RESULT_COUNT_PAGE.matcher(text);
+                if (matcher.find()){
+                    String findString = matcher.group();
+                    String[] resultArr = findString.split(" ");
+                    if (resultArr.length>3){
+                        switch (resultArr[1]){
+                            case "thousands":
+                                result.resultCount = "1,000+";
+                                break;
+                            case "about":
+                                result.resultCount = resultArr[2]+"+";
+                                break;
+                            default:
+                                StringBuilder buffer = new StringBuilder();
+                                for (int i=1;i<resultArr.length-1;i++){
+                                    buffer.append(resultArr[i]);
+                                }
+                                result.resultCount = buffer.toString();
+                                break;
                         }
+                    }else if(resultArr.length == 3){
+                        result.resultCount = resultArr[1];
+                    }else{
+                        result.resultCount = "";
                     }
-                }else {
-                    result.resultCount = "";
                 }
+            }else {
+                result.resultCount = "";
+            }
 
-            } else {
-                Elements es = ptt.child(0).child(0).children();
-                result.pages = Integer.parseInt(es.get(es.size() - 2).text().trim());
-                Element e = es.get(es.size() - 1);
+        } else {
+            Elements es = ptt.child(0).child(0).children();
+            result.pages = Integer.parseInt(es.get(es.size() - 2).text().trim());
+            Element e = es.get(es.size() - 1);
+            if (e != null) {
+                e = e.children().first();
                 if (e != null) {
-                    e = e.children().first();
-                    if (e != null) {
-                        String href = e.attr("href");
-                        Matcher matcher = PATTERN_NEXT_PAGE.matcher(href);
-                        if (matcher.find()) {
-                            result.nextPage = NumberUtils.parseIntSafely(matcher.group(1), 0);
-                        }
+                    String href = e.attr("href");
+                    Matcher matcher = PATTERN_NEXT_PAGE.matcher(href);
+                    if (matcher.find()) {
+                        result.nextPage = NumberUtils.parseIntSafely(matcher.group(1), 0);
                     }
                 }
             }
+        }
+    }
+
+    public static Result parse(@NonNull String body) throws Exception {
+        Result result = new Result();
+        Document d = Jsoup.parse(body);
+
+        try {
+            parsePageIndex(d, result);
         } catch (Throwable e) {
             ExceptionUtils.throwIfFatal(e);
             result.noWatchedTags = body.contains("<p>You do not have any watched tags");
@@ -231,6 +255,54 @@ public class GalleryListParser {
         return result;
     }
 
+    /**
+     * Parse gallery list while reading it. Only the page index and the row being
+     * parsed are kept as DOM, each gallery is passed to the callback as soon as its
+     * row ends, so it is available before the page finishes downloading.
+     */
+    public static Result parse(@NonNull Reader reader, @Nullable Callback callback) throws Exception {
+        HeadReader head = new HeadReader(reader, ERROR_BODY_LENGTH);
+        StreamHandler handler = new StreamHandler(callback);
+        try {
+            Parser parser = new Parser();
+            parser.setProperty(Parser.schemaProperty, SchemaHolder.SCHEMA);
+            parser.setFeature(Parser.namespacesFeature, false);
+            parser.setFeature(Parser.defaultAttributesFeature, false);
+            parser.setContentHandler(handler);
+            parser.parse(new InputSource(head));
+        } catch (SAXException e) {
+            throw new ParseException("Can't parse gallery list", head.getHead(), e);
+        }
+
+        Result result = new Result();
+        Document d = handler.document;
+        try {
+            parsePageIndex(d, result);
+        } catch (Throwable e) {
+            ExceptionUtils.throwIfFatal(e);
+            result.noWatchedTags = handler.noWatchedTags;
+            if (handler.noHits) {
+                result.pages = 0;
+                //noinspection unchecked
+                result.galleryInfoList = Collections.EMPTY_LIST;
+                return result;
+            } else if (d.getElementsByClass("ptt").isEmpty()) {
+                result.pages = 1;
+            } else {
+                result.pages = Integer.MAX_VALUE;
+            }
+        }
+
+        if (!handler.hasItg || (handler.list.isEmpty() && TextUtils.isEmpty(handler.emptyMessage))) {
+            throw new ParseException("Can't parse gallery list", head.getHead());
+        }
+        result.galleryInfoList = handler.list;
+
+        new GalleryListTagsSyncTask(result.galleryInfoList).execute();
+
+        return result;
+    }
+
     private static String parseRating(String ratingStyle) {
         Matcher m = PATTERN_RATING.matcher(ratingStyle);
         int num1 = Integer.MIN_VALUE;
@@ -453,4 +525,194 @@ public class GalleryListParser {
         return gi;
     }
 
+    private static class SchemaHolder {
+        private static final HTMLSchema SCHEMA = new HTMLSchema();
+
+        static {
+            // Title links wrap divs, they would be closed at the first div as HTML 4
+            ElementType a = SCHEMA.getElementType("a");
+            a.setModel(a.model() | SCHEMA.getElementType("div").memberOf());
+        }
+    }
+
+    /**
+     * Keeps the first chars it reads, for the body of {@link ParseException}.
+     * Error pages are short, they are kept whole.
+     */
+    private static final class HeadReader extends FilterReader {
+
+        private final StringBuilder mHead = new StringBuilder();
+        private final int mLimit;
+
+        HeadReader(Reader in, int limit) {
+            super(in);
+            mLimit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c != -1 && mHead.length() < mLimit) {
+                mHead.append((char) c);
+            }
+            return c;
+        }
+
+        @Override
+        public int read(@NonNull char[] cbuf, int off, int len) throws IOException {
+            int n = super.read(cbuf, off, len);
+            if (n > 0 && mHead.length() < mLimit) {
+                mHead.append(cbuf, off, Math.min(n, mLimit - mHead.length()));
+            }
+            return n;
+        }
+
+        String getHead() {
+            return mHead.toString();
+        }
+    }
+
+    /**
+     * Builds the rows of itg and the page index elements from SAX events,
+     * everything else is dropped.
+     */
+    private static final class StreamHandler extends DefaultHandler {
+
+        final Document document = Document.createShell("");
+        final List<GalleryInfo> list = new ArrayList<>();
+        boolean hasItg;
+        boolean noHits;
+        boolean noWatchedTags;
+        // Text of the first cell of the second row, it is the message of empty list
+        String emptyMessage;
+
+        @Nullable
+        private final Callback mCallback;
+        private int mDepth;
+        private int mItgDepth = -1;
+        private String mItgClass;
+        private int mRowIndex;
+        // The element being built and the depth of its root
+        @Nullable
+        private Element mCurrent;
+        private int mCaptureDepth = -1;
+        private boolean mInRow;
+        @Nullable
+        private StringBuilder mParagraph;
+
+        StreamHandler(@Nullable Callback callback) {
+            mCallback = callback;
+        }
+
+        private static boolean hasClass(@Nullable String classAttr, String className) {
+            if (classAttr == null) {
+                return false;
+            }
+            for (String s : classAttr.split("\\s+")) {
+                if (s.equals(className)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static Element newElement(String name, Attributes atts) {
+            Element element = new Element(name);
+            for (int i = 0, n = atts.getLength(); i < n; i++) {
+                element.attr(atts.getQName(i), atts.getValue(i));
+            }
+            return element;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes atts) {
+            mDepth++;
+            if (mCurrent != null) {
+                if ("tr".equals(qName) && "table".equals(mCurrent.tagName())) {
+                    // Jsoup puts rows in tbody, the row parsing code expects it
+                    Element tbody = new Element("tbody");
+                    mCurrent.appendChild(tbody);
+                    mCurrent = tbody;
+                }
+                Element element = newElement(qName, atts);
+                mCurrent.appendChild(element);
+                mCurrent = element;
+                return;
+            }
+
+            String classAttr = atts.getValue("class");
+            if (mItgDepth != -1) {
+                if (!"tbody".equals(qName) && !"thead".equals(qName)) {
+                    mCurrent = newElement(qName, atts);
+                    mCaptureDepth = mDepth;
+                    mInRow = true;
+                }
+            } else if (!hasItg && hasClass(classAttr, "itg")) {
+                hasItg = true;
+                mItgDepth = mDepth;
+                mItgClass = classAttr;
+            } else if (hasClass(classAttr, "ptt") || hasClass(classAttr, "searchnav") ||
+                    hasClass(classAttr, "searchtext")) {
+                mCurrent = newElement(qName, atts);
+                mCaptureDepth = mDepth;
+                document.body().appendChild(mCurrent);
+            } else if ("p".equals(qName)) {
+                mParagraph = new StringBuilder();
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (mCurrent != null) {
+                if ("table".equals(qName) && "tbody".equals(mCurrent.tagName())) {
+                    // Close the tbody added in startElement
+                    mCurrent = mCurrent.parent();
+                }
+                if (mDepth == mCaptureDepth) {
+                    if (mInRow) {
+                        onRow(mCurrent);
+                        mInRow = false;
+                    }
+                    mCurrent = null;
+                    mCaptureDepth = -1;
+                } else {
+                    mCurrent = mCurrent.parent();
+                }
+            } else if (mDepth == mItgDepth) {
+                mItgDepth = -1;
+            } else if (mParagraph != null && "p".equals(qName)) {
+                String text = mParagraph.toString().trim();
+                if (text.endsWith("No hits found")) {
+                    noHits = true;
+                } else if (text.startsWith("You do not have any watched tags")) {
+                    noWatchedTags = true;
+                }
+                mParagraph = null;
+            }
+            mDepth--;
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (mCurrent != null) {
+                mCurrent.appendText(new String(ch, start, length));
+            } else if (mParagraph != null) {
+                mParagraph.append(ch, start, length);
+            }
+        }
+
+        private void onRow(Element row) {
+            GalleryInfo gi = parseGalleryInfo(row);
+            if (gi != null) {
+                list.add(gi);
+                if (mCallback != null) {
+                    mCallback.onGalleryInfo(gi);
+                }
+            } else if (mRowIndex == 1 && "itg gltc".equalsIgnoreCase(mItgClass) && row.childrenSize() > 0) {
+                emptyMessage = row.child(0).text();
+            }
+            mRowIndex++;
+        }
+    }
+
 }
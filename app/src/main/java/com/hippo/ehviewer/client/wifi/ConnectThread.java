@@ -9,7 +9,8 @@ import android.util.Log;
 import com.google.firebase.crashlytics.FirebaseCrashlytics;
 import com.hippo.ehviewer.client.data.wifi.WiFiDataHand;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -36,10 +37,15 @@ public class ConnectThread extends Thread {
 
     public static final int DATA_TYPE_FAVORITE_INFO = 1004;
     public static final String FAVORITE_INFO_DATA_KEY = "favorite_info";
+
+    // Download infos with their files, files are sent by GalleryTransferServer
+    public static final int DATA_TYPE_DOWNLOAD_FILES = 1005;
+    public static final String DOWNLOAD_FILES_PORT_KEY = "download_files_port";
     private final Socket socket;
     private final Handler handler;
     private final int connectKind;
     private OutputStream outputStream;
+    private final Object writeLock = new Object();
     Context context;
 
     private boolean processed = true;
@@ -62,8 +68,12 @@ public class ConnectThread extends Thread {
         }
         handler.sendEmptyMessage(DEVICE_CONNECTED);
         try {
-            InputStream inputStream = socket.getInputStream();
-            outputStream = socket.getOutputStream();
+            InputStream inputStream = new BufferedInputStream(socket.getInputStream());
+            synchronized (writeLock) {
+                if (outputStream == null) {
+                    outputStream = new BufferedOutputStream(socket.getOutputStream());
+                }
+            }
 
             while (!isInterrupted()) {
                 //获取数据流
@@ -71,6 +81,10 @@ public class ConnectThread extends Thread {
                 if (close) {
                     break;
                 }
+                if (wiFiDataHand == null && socket.isClosed()) {
+                    handler.sendEmptyMessage(DEVICE_DISCONNECTED);
+                    break;
+                }
                 if (wiFiDataHand != null) {
                     if (connectKind == IS_CLIENT) {
                         solveTheData(wiFiDataHand);
@@ -102,27 +116,28 @@ public class ConnectThread extends Thread {
         if (wiFiDataHand.messageType != WiFiDataHand.SEND) {
             return;
         }
+        // Pass the object, the data may be large
         Message message = Message.obtain();
         message.what = GET_MSG;
-        Bundle bundle = new Bundle();
-        bundle.putString("MSG", wiFiDataHand.toString());
-        message.setData(bundle);
+        message.obj = wiFiDataHand;
         handler.sendMessage(message);
     }
 
 
     /**
-     * 发送数据
+     * 发送数据，每条消息是一个 {@link WiFiFrame}
      */
     public void sendData(WiFiDataHand dataHand) {
         try {
-            if (outputStream == null) {
-                outputStream = socket.getOutputStream();
+            byte[] payload = dataHand.toBytes();
+            // Frames from different threads must not be interleaved
+            synchronized (writeLock) {
+                if (outputStream == null) {
+                    outputStream = new BufferedOutputStream(socket.getOutputStream());
+                }
+                WiFiFrame.write(outputStream, payload);
             }
-            Log.i("ConnectThread", "发送数据:" + (outputStream == null));
-            outputStream.write(dataHand.getSendBytes());
-            outputStream.flush();
-            Log.i("ConnectThread", "发送消息：" + dataHand);
+            Log.i("ConnectThread", "发送消息：" + dataHand.dataType + " " + dataHand.pageIndex + "/" + dataHand.pageSize);
         } catch (IOException e) {
             e.printStackTrace();
             Message message = Message.obtain();
@@ -136,33 +151,27 @@ public class ConnectThread extends Thread {
 
     public void dataProcessed(WiFiDataHand response) {
         processed = true;
-        WiFiDataHand wiFiDataHand = new WiFiDataHand(WiFiDataHand.RECEIVED);
-        wiFiDataHand.setData(response.getData());
+        WiFiDataHand wiFiDataHand = response.createReceived();
         new Thread(()-> sendData(wiFiDataHand)).start();
     }
 
     private WiFiDataHand isToResponse(InputStream inputStream) {
         try {
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            byte[] bytes = new byte[1024];
-            String result = "";
-            for (int length; (length = inputStream.read(bytes)) != -1; ) {
-                outputStream.write(bytes, 0, length);
-                result = outputStream.toString("UTF-8");
-                if (result.endsWith("}:END")) {
-                    result = result.substring(0, result.length() - 4);
-                    break;
-                }
-            }
-            if (result.isEmpty()) {
+            byte[] payload = WiFiFrame.read(inputStream);
+            if (payload == null) {
+                // The other side closed the connection
+                socket.close();
                 return null;
             }
-            return new WiFiDataHand(result);
+            return WiFiDataHand.fromBytes(payload);
         } catch (Throwable throwable) {
             FirebaseCrashlytics.getInstance().recordException(throwable);
-            if (socket.isClosed()) {
-                interrupt();
+            // Can't find the next frame in a broken stream
+            try {
+                socket.close();
+            } catch (IOException ignore) {
             }
+            interrupt();
             return null;
         }
     }
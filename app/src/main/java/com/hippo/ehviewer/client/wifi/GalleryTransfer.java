@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client.wifi;
+
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+
+import com.hippo.unifile.UniFile;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Protocol of gallery file transfer.
+ * <p>
+ * Receiver opens some connections for one gallery, sends a request
+ * {@link WiFiFrame} on each of them. Sender sends the pages of that stream
+ * which receiver doesn't have, one entry for each file, then an end entry.
+ * <p>
+ * Entry header is type (byte), page index (int), file length (long),
+ * filename length (short) and UTF-8 filename, file content follows.
+ */
+final class GalleryTransfer {
+
+    static final byte TYPE_END = 0;
+    static final byte TYPE_PAGE = 1;
+    static final byte TYPE_SPIDER_INFO = 2;
+
+    static final int HEADER_LENGTH = 15;
+    static final int MAX_FILENAME_LENGTH = 255;
+
+    // Request keys
+    static final String KEY_GID = "gid";
+    static final String KEY_STREAM = "stream";
+    static final String KEY_STREAM_COUNT = "stream_count";
+    static final String KEY_EXISTS = "exists";
+    static final String KEY_SPIDER_INFO = "spider_info";
+
+    static final String PART_SUFFIX = ".part";
+
+    // No progress in it, the connection is closed
+    static final int TIMEOUT = 30 * 1000;
+    // Bytes of one file channel transfer, progress is checked between them
+    static final long TRANSFER_CHUNK = 256 * 1024;
+
+    private GalleryTransfer() {}
+
+    /**
+     * @return the file if it is a local file, channel can be used on it
+     */
+    @Nullable
+    static File toFile(UniFile file) {
+        Uri uri = file.getUri();
+        if ("file".equals(uri.getScheme()) && uri.getPath() != null) {
+            return new File(uri.getPath());
+        }
+        return null;
+    }
+
+    /**
+     * Closes the channel if there is no progress in the timeout, then the
+     * blocked read or write throws. Blocking socket channels ignore SO_TIMEOUT.
+     */
+    static final class Watchdog implements Closeable {
+
+        private static Timer sTimer;
+
+        private final Channel mChannel;
+        private final long mTimeoutNanos;
+        private volatile long mLastProgress = System.nanoTime();
+        private final TimerTask mTask = new TimerTask() {
+            @Override
+            public void run() {
+                if (System.nanoTime() - mLastProgress > mTimeoutNanos) {
+                    cancel();
+                    try {
+                        mChannel.close();
+                    } catch (IOException e) {
+                        // Ignore
+                    }
+                }
+            }
+        };
+
+        private static synchronized Timer getTimer() {
+            if (sTimer == null) {
+                sTimer = new Timer("GalleryTransferWatchdog", true);
+            }
+            return sTimer;
+        }
+
+        Watchdog(Channel channel, long timeout) {
+            mChannel = channel;
+            mTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+            long period = Math.max(timeout / 4, 1);
+            getTimer().schedule(mTask, period, period);
+        }
+
+        void progress() {
+            mLastProgress = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            mTask.cancel();
+        }
+    }
+
+    static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) == -1) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
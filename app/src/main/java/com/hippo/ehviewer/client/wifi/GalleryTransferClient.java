@@ -0,0 +1,227 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client.wifi;
+
+import static com.hippo.ehviewer.client.wifi.GalleryTransfer.HEADER_LENGTH;
+import static com.hippo.ehviewer.client.wifi.GalleryTransfer.MAX_FILENAME_LENGTH;
+import static com.hippo.ehviewer.client.wifi.GalleryTransfer.PART_SUFFIX;
+import static com.hippo.ehviewer.client.wifi.GalleryTransfer.TIMEOUT;
+import static com.hippo.ehviewer.client.wifi.GalleryTransfer.TRANSFER_CHUNK;
+import static com.hippo.ehviewer.client.wifi.GalleryTransfer.TYPE_END;
+import static com.hippo.ehviewer.client.wifi.GalleryTransfer.TYPE_PAGE;
+import static com.hippo.ehviewer.client.wifi.GalleryTransfer.TYPE_SPIDER_INFO;
+
+import android.util.SparseArray;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.hippo.ehviewer.client.data.GalleryInfo;
+import com.hippo.ehviewer.spider.SpiderDen;
+import com.hippo.ehviewer.spider.SpiderQueen;
+import com.hippo.unifile.UniFile;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Receives files of a gallery from {@link GalleryTransferServer}.
+ * <p>
+ * Pages are split into some streams by page index, each stream has its own connection.
+ * Pages which are already in download dir are skipped, so an interrupted transfer
+ * continues from where it stops.
+ */
+public final class GalleryTransferClient {
+
+    public static final int DEFAULT_STREAM_COUNT = 3;
+
+    private GalleryTransferClient() {}
+
+    /**
+     * Receive files of the gallery to its download dir. It blocks until all streams end.
+     *
+     * @return the count of received files
+     */
+    public static int receive(String host, int port, GalleryInfo info, int streamCount) throws IOException {
+        UniFile dir = SpiderDen.getGalleryDownloadDir(info);
+        if (dir == null || !dir.ensureDir()) {
+            throw new IOException("Can't create download dir");
+        }
+
+        SparseArray<UniFile> files = SpiderDen.buildImageFileIndex(dir);
+        JSONArray exists = new JSONArray();
+        if (files != null) {
+            for (int i = 0, n = files.size(); i < n; i++) {
+                exists.add(files.keyAt(i));
+            }
+        }
+        boolean needSpiderInfo = dir.findFile(SpiderQueen.SPIDER_INFO_FILENAME) == null;
+
+        AtomicInteger count = new AtomicInteger();
+        IOException[] error = new IOException[1];
+        Thread[] threads = new Thread[streamCount];
+        for (int i = 0; i < streamCount; i++) {
+            byte[] payload = createRequest(info.gid, i, streamCount, exists, needSpiderInfo);
+            threads[i] = new Thread(() -> {
+                try {
+                    count.addAndGet(receiveStream(host, port, dir, payload));
+                } catch (IOException e) {
+                    synchronized (error) {
+                        error[0] = e;
+                    }
+                }
+            }, "GalleryTransferClient-" + i);
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                for (Thread t : threads) {
+                    t.interrupt();
+                }
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted", e);
+            }
+        }
+        synchronized (error) {
+            if (error[0] != null) {
+                throw error[0];
+            }
+        }
+        return count.get();
+    }
+
+    static byte[] createRequest(long gid, int stream, int streamCount, JSONArray exists,
+            boolean needSpiderInfo) {
+        JSONObject request = new JSONObject();
+        request.put(GalleryTransfer.KEY_GID, gid);
+        request.put(GalleryTransfer.KEY_STREAM, stream);
+        request.put(GalleryTransfer.KEY_STREAM_COUNT, streamCount);
+        request.put(GalleryTransfer.KEY_EXISTS, exists);
+        request.put(GalleryTransfer.KEY_SPIDER_INFO, needSpiderInfo);
+        return request.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static int receiveStream(String host, int port, UniFile dir, byte[] request) throws IOException {
+        int count = 0;
+        try (SocketChannel channel = SocketChannel.open();
+             GalleryTransfer.Watchdog watchdog = new GalleryTransfer.Watchdog(channel, TIMEOUT)) {
+            channel.socket().connect(new InetSocketAddress(host, port), TIMEOUT);
+            WiFiFrame.write(Channels.newOutputStream(channel), request);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            ByteBuffer buffer = ByteBuffer.allocate(32 * 1024);
+            for (;;) {
+                header.clear();
+                GalleryTransfer.readFully(channel, header);
+                watchdog.progress();
+                header.flip();
+                byte type = header.get();
+                int index = header.getInt();
+                long length = header.getLong();
+                int nameLength = header.getShort() & 0xffff;
+                if (type == TYPE_END) {
+                    return count;
+                }
+                if (nameLength > MAX_FILENAME_LENGTH || length < 0) {
+                    throw new IOException("Bad entry header");
+                }
+                ByteBuffer nameBuffer = ByteBuffer.allocate(nameLength);
+                GalleryTransfer.readFully(channel, nameBuffer);
+                String name = new String(nameBuffer.array(), StandardCharsets.UTF_8);
+
+                // Never write files other than pages and spider info
+                boolean valid;
+                if (type == TYPE_PAGE) {
+                    valid = SpiderDen.parseImageFilename(name) == index;
+                } else {
+                    valid = type == TYPE_SPIDER_INFO && SpiderQueen.SPIDER_INFO_FILENAME.equals(name);
+                }
+                if (!valid) {
+                    throw new IOException("Bad entry: " + name);
+                }
+
+                receiveFile(channel, watchdog, dir, name, length, buffer);
+                count++;
+            }
+        }
+    }
+
+    private static void receiveFile(SocketChannel channel, GalleryTransfer.Watchdog watchdog,
+            UniFile dir, String name, long length, ByteBuffer buffer) throws IOException {
+        // Write to part file first, a broken file is not treated as a downloaded page
+        String partName = name + PART_SUFFIX;
+        UniFile part = dir.createFile(partName);
+        if (part == null) {
+            throw new IOException("Can't create file: " + partName);
+        }
+
+        // Remove part file if failed or cancelled
+        boolean done = false;
+        try {
+            File f = GalleryTransfer.toFile(part);
+            if (f != null) {
+                try (FileOutputStream fos = new FileOutputStream(f)) {
+                    FileChannel fileChannel = fos.getChannel();
+                    for (long position = 0; position < length; ) {
+                        long n = fileChannel.transferFrom(channel, position,
+                                Math.min(length - position, TRANSFER_CHUNK));
+                        if (n <= 0) {
+                            throw new IOException("Connection closed");
+                        }
+                        position += n;
+                        watchdog.progress();
+                    }
+                }
+            } else {
+                try (OutputStream os = part.openOutputStream()) {
+                    for (long remain = length; remain > 0; ) {
+                        buffer.clear();
+                        buffer.limit((int) Math.min(buffer.capacity(), remain));
+                        GalleryTransfer.readFully(channel, buffer);
+                        os.write(buffer.array(), 0, buffer.limit());
+                        remain -= buffer.limit();
+                        watchdog.progress();
+                    }
+                }
+            }
+
+            UniFile old = dir.findFile(name);
+            if (old != null) {
+                old.delete();
+            }
+            if (!part.renameTo(name)) {
+                throw new IOException("Can't rename file: " + partName);
+            }
+            done = true;
+        } finally {
+            if (!done) {
+                part.delete();
+            }
+        }
+    }
+}
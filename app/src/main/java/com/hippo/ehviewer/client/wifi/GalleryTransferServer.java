@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client.wifi;
+
+import static com.hippo.ehviewer.client.wifi.GalleryTransfer.HEADER_LENGTH;
+import static com.hippo.ehviewer.client.wifi.GalleryTransfer.TIMEOUT;
+import static com.hippo.ehviewer.client.wifi.GalleryTransfer.TRANSFER_CHUNK;
+import static com.hippo.ehviewer.client.wifi.GalleryTransfer.TYPE_END;
+import static com.hippo.ehviewer.client.wifi.GalleryTransfer.TYPE_PAGE;
+import static com.hippo.ehviewer.client.wifi.GalleryTransfer.TYPE_SPIDER_INFO;
+
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.google.firebase.crashlytics.FirebaseCrashlytics;
+import com.hippo.ehviewer.client.data.GalleryInfo;
+import com.hippo.ehviewer.spider.SpiderDen;
+import com.hippo.ehviewer.spider.SpiderQueen;
+import com.hippo.unifile.UniFile;
+import com.hippo.util.IoThreadPoolExecutor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sends files of download dirs to {@link GalleryTransferClient}.
+ * <p>
+ * Local files are sent by {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+ * the data doesn't go through java heap.
+ */
+public class GalleryTransferServer extends Thread {
+
+    private static final String TAG = GalleryTransferServer.class.getSimpleName();
+
+    private final int port;
+    private volatile ServerSocketChannel serverChannel;
+
+    // Only these galleries can be sent
+    private final Map<Long, UniFile> dirs = new HashMap<>();
+
+    public GalleryTransferServer(int port) {
+        setName("GalleryTransferServer");
+        this.port = port;
+    }
+
+    /**
+     * Allow the gallery to be sent.
+     */
+    public void addGallery(GalleryInfo info) {
+        UniFile dir = SpiderDen.getGalleryDownloadDir(info);
+        if (dir != null && dir.isDirectory()) {
+            addGallery(info.gid, dir);
+        }
+    }
+
+    void addGallery(long gid, UniFile dir) {
+        synchronized (dirs) {
+            dirs.put(gid, dir);
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.socket().bind(new InetSocketAddress(port));
+            while (!isInterrupted()) {
+                SocketChannel channel = serverChannel.accept();
+                IoThreadPoolExecutor.getInstance().execute(() -> serve(channel));
+            }
+        } catch (IOException e) {
+            // Closed
+            Log.i(TAG, "Stop: " + e.getMessage());
+        } finally {
+            closeConnect();
+        }
+    }
+
+    void serve(SocketChannel channel) {
+        try (SocketChannel c = channel;
+             GalleryTransfer.Watchdog watchdog = new GalleryTransfer.Watchdog(c, TIMEOUT)) {
+            byte[] payload = WiFiFrame.read(Channels.newInputStream(c));
+            if (payload == null) {
+                return;
+            }
+            JSONObject request = JSONObject.parseObject(new String(payload, StandardCharsets.UTF_8));
+            long gid = request.getLongValue(GalleryTransfer.KEY_GID);
+            int stream = request.getIntValue(GalleryTransfer.KEY_STREAM);
+            int streamCount = Math.max(request.getIntValue(GalleryTransfer.KEY_STREAM_COUNT), 1);
+            Set<Integer> exists = new HashSet<>();
+            JSONArray array = request.getJSONArray(GalleryTransfer.KEY_EXISTS);
+            if (array != null) {
+                for (int i = 0, n = array.size(); i < n; i++) {
+                    exists.add(array.getIntValue(i));
+                }
+            }
+
+            UniFile dir;
+            synchronized (dirs) {
+                dir = dirs.get(gid);
+            }
+            SparseArray<UniFile> files = dir != null ? SpiderDen.buildImageFileIndex(dir) : null;
+            if (files != null) {
+                if (stream == 0 && request.getBooleanValue(GalleryTransfer.KEY_SPIDER_INFO)) {
+                    UniFile spiderInfo = dir.findFile(SpiderQueen.SPIDER_INFO_FILENAME);
+                    if (spiderInfo != null) {
+                        sendFile(c, watchdog, TYPE_SPIDER_INFO, -1, spiderInfo);
+                    }
+                }
+                for (int i = 0, n = files.size(); i < n; i++) {
+                    int index = files.keyAt(i);
+                    if (index % streamCount == stream && !exists.contains(index)) {
+                        sendFile(c, watchdog, TYPE_PAGE, index, files.valueAt(i));
+                    }
+                }
+            }
+            writeHeader(c, TYPE_END, -1, 0, "");
+        } catch (Throwable e) {
+            Log.w(TAG, "Serve failed", e);
+            FirebaseCrashlytics.getInstance().recordException(e);
+        }
+    }
+
+    private static void writeHeader(SocketChannel channel, byte type, int index, long length,
+            String name) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH + nameBytes.length);
+        header.put(type).putInt(index).putLong(length).putShort((short) nameBytes.length).put(nameBytes);
+        header.flip();
+        GalleryTransfer.writeFully(channel, header);
+    }
+
+    private static void sendFile(SocketChannel channel, GalleryTransfer.Watchdog watchdog,
+            byte type, int index, UniFile file) throws IOException {
+        File f = GalleryTransfer.toFile(file);
+        if (f != null) {
+            try (FileInputStream fis = new FileInputStream(f)) {
+                FileChannel fileChannel = fis.getChannel();
+                long length = fileChannel.size();
+                writeHeader(channel, type, index, length, file.getName());
+                for (long position = 0; position < length; ) {
+                    long n = fileChannel.transferTo(position,
+                            Math.min(length - position, TRANSFER_CHUNK), channel);
+                    if (n <= 0) {
+                        throw new IOException("File is truncated: " + f);
+                    }
+                    position += n;
+                    watchdog.progress();
+                }
+            }
+        } else {
+            // Document file, copy it
+            long length = file.length();
+            writeHeader(channel, type, index, length, file.getName());
+            try (InputStream is = file.openInputStream()) {
+                ByteBuffer buffer = ByteBuffer.allocate(32 * 1024);
+                for (long remain = length; remain > 0; ) {
+                    int n = is.read(buffer.array(), 0, (int) Math.min(buffer.capacity(), remain));
+                    if (n == -1) {
+                        throw new IOException("File is truncated: " + file.getUri());
+                    }
+                    buffer.clear();
+                    buffer.limit(n);
+                    GalleryTransfer.writeFully(channel, buffer);
+                    remain -= n;
+                    watchdog.progress();
+                }
+            }
+        }
+    }
+
+    public void closeConnect() {
+        interrupt();
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
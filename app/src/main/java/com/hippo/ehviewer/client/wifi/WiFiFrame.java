@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client.wifi;
+
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Length-prefixed frame of wifi sync.
+ * <p>
+ * A frame is magic (int), flags (byte), payload length (int) and payload.
+ * Reader knows how many bytes to read from the header, so it never scans
+ * or decodes the data before the whole payload is received.
+ */
+public final class WiFiFrame {
+
+    static final int MAGIC = 0x45574946; // EWIF
+    static final int FLAG_GZIP = 0x01;
+
+    // Both compressed and uncompressed payload
+    static final int MAX_LENGTH = 32 * 1024 * 1024;
+    static final int COMPRESS_THRESHOLD = 4 * 1024;
+
+    private static final int HEADER_LENGTH = 9;
+
+    private WiFiFrame() {}
+
+    public static void write(OutputStream os, byte[] payload) throws IOException {
+        if (payload.length > MAX_LENGTH) {
+            throw new IOException("Frame is too large: " + payload.length);
+        }
+
+        int flags = 0;
+        byte[] body = payload;
+        if (payload.length >= COMPRESS_THRESHOLD) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(payload.length / 4);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(baos)) {
+                gzip.write(payload);
+            }
+            if (baos.size() < payload.length) {
+                flags |= FLAG_GZIP;
+                body = baos.toByteArray();
+            }
+        }
+
+        // Write header and body in one go
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(HEADER_LENGTH + body.length);
+        DataOutputStream dos = new DataOutputStream(frame);
+        dos.writeInt(MAGIC);
+        dos.writeByte(flags);
+        dos.writeInt(body.length);
+        dos.write(body);
+        frame.writeTo(os);
+        os.flush();
+    }
+
+    /**
+     * @return the payload, {@code null} if the stream ends before next frame
+     */
+    @Nullable
+    public static byte[] read(InputStream is) throws IOException {
+        int first = is.read();
+        if (first == -1) {
+            return null;
+        }
+        DataInputStream dis = new DataInputStream(is);
+        int magic = (first << 24) | (dis.readUnsignedByte() << 16) | dis.readUnsignedShort();
+        if (magic != MAGIC) {
+            throw new IOException("Bad frame magic: " + Integer.toHexString(magic));
+        }
+        int flags = dis.readUnsignedByte();
+        int length = dis.readInt();
+        if (length < 0 || length > MAX_LENGTH) {
+            throw new IOException("Bad frame length: " + length);
+        }
+        byte[] body = new byte[length];
+        dis.readFully(body);
+
+        if ((flags & FLAG_GZIP) == 0) {
+            return body;
+        }
+        return gunzip(body);
+    }
+
+    private static byte[] gunzip(byte[] body) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(body.length * 4);
+        byte[] buffer = new byte[8 * 1024];
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            for (int n; (n = gzip.read(buffer)) != -1; ) {
+                if (baos.size() + n > MAX_LENGTH) {
+                    throw new IOException("Frame is too large");
+                }
+                baos.write(buffer, 0, n);
+            }
+        } catch (EOFException e) {
+            throw new IOException("Bad gzip frame", e);
+        }
+        return baos.toByteArray();
+    }
+}
@@ -57,10 +57,12 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
-public class DownloadManager implements SpiderQueen.OnSpiderListener {
+public class DownloadManager {
 
     private static final String TAG = DownloadManager.class.getSimpleName();
 
+    public static final int MAX_CONCURRENCY = 4;
+
     private final Context mContext;
 
     // All download info list
@@ -78,16 +80,12 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
     // Store download info wait to start
     private final LinkedList<DownloadInfo> mWaitList;
 
-    private final SpeedReminder mSpeedReminder;
-
     @Nullable
     private DownloadListener mDownloadListener;
     private final List<DownloadInfoListener> mDownloadInfoListeners;
 
-    @Nullable
-    private DownloadInfo mCurrentTask;
-    @Nullable
-    private SpiderQueen mCurrentSpider;
+    // Store download task which is downloading
+    private final LinkedList<DownloadTask> mActiveTasks;
 
     private final ConcurrentPool<NotifyTask> mNotifyTaskPool = new ConcurrentPool<>(5);
 
@@ -143,7 +141,7 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
         }
 
         mWaitList = new LinkedList<>();
-        mSpeedReminder = new SpeedReminder();
+        mActiveTasks = new LinkedList<>();
         mDownloadInfoListeners = new ArrayList<>();
     }
 
@@ -249,11 +247,22 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
         return mAllInfoMap.get(gid);
     }
 
+    @Nullable
+    private DownloadTask getActiveTask(long gid) {
+        for (DownloadTask task : mActiveTasks) {
+            if (task.info.gid == gid) {
+                return task;
+            }
+        }
+        return null;
+    }
+
     @Nullable
     public DownloadInfo getNoneDownloadInfo(long gid) {
-        if (mCurrentTask != null && mCurrentTask.gid == gid) {
-            // Stop current
-            stopCurrentDownloadInternal();
+        DownloadTask task = getActiveTask(gid);
+        if (task != null) {
+            // Stop it
+            stopTaskInternal(task);
         } else {
             // Remove wait
             for (Iterator<DownloadInfo> iterator = mWaitList.iterator(); iterator.hasNext(); ) {
@@ -291,18 +300,15 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
     }
 
     private void ensureDownload() {
-        if (mCurrentTask != null) {
-            // Only one download
-            return;
-        }
+        int concurrency = MathUtils.clamp(Settings.getDownloadConcurrency(), 1, MAX_CONCURRENCY);
 
-        // Get download from wait list
-        if (!mWaitList.isEmpty()) {
+        // Get download from wait list until all slots are used
+        while (mActiveTasks.size() < concurrency && !mWaitList.isEmpty()) {
             DownloadInfo info = mWaitList.removeFirst();
             SpiderQueen spider = SpiderQueen.obtainSpiderQueen(mContext, info, SpiderQueen.MODE_DOWNLOAD);
-            mCurrentTask = info;
-            mCurrentSpider = spider;
-            spider.addOnSpiderListener(this);
+            DownloadTask task = new DownloadTask(info, spider);
+            mActiveTasks.add(task);
+            spider.addOnSpiderListener(task);
             info.state = DownloadInfo.STATE_DOWNLOAD;
             info.speed = -1;
             info.remaining = -1;
@@ -313,7 +319,7 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
             // Update in DB
             EhDB.putDownloadInfo(info);
             // Start speed count
-            mSpeedReminder.start();
+            task.speedReminder.start();
             // Notify start downloading
             if (mDownloadListener != null) {
                 mDownloadListener.onStart(info);
@@ -329,8 +335,8 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
     }
 
     void startDownload(GalleryInfo galleryInfo, @Nullable String label) {
-        if (mCurrentTask != null && mCurrentTask.gid == galleryInfo.gid) {
-            // It is current task
+        if (getActiveTask(galleryInfo.gid) != null) {
+            // It is downloading
             return;
         }
 
@@ -392,7 +398,7 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
     }
 
     void startRangeDownload(LongList gidList) {
-        boolean update = false;
+        List<DownloadInfo> changed = new ArrayList<>();
         boolean downloadOrder = Settings.getDownloadOrder();
         if (downloadOrder) {
             for (int i = 0, n = gidList.size(); i < n; i++) {
@@ -406,13 +412,11 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
                 if (info.state == DownloadInfo.STATE_NONE ||
                         info.state == DownloadInfo.STATE_FAILED ||
                         info.state == DownloadInfo.STATE_FINISH) {
-                    update = true;
                     // Set state DownloadInfo.STATE_WAIT
                     info.state = DownloadInfo.STATE_WAIT;
                     // Add to wait list
                     mWaitList.add(info);
-                    // Update in DB
-                    EhDB.putDownloadInfo(info);
+                    changed.add(info);
                 }
             }
         } else {
@@ -427,19 +431,19 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
                 if (info.state == DownloadInfo.STATE_NONE ||
                         info.state == DownloadInfo.STATE_FAILED ||
                         info.state == DownloadInfo.STATE_FINISH) {
-                    update = true;
                     // Set state DownloadInfo.STATE_WAIT
                     info.state = DownloadInfo.STATE_WAIT;
                     // Add to wait list
                     mWaitList.add(info);
-                    // Update in DB
-                    EhDB.putDownloadInfo(info);
+                    changed.add(info);
                 }
             }
         }
 
 
-        if (update) {
+        if (!changed.isEmpty()) {
+            // Update in DB
+            EhDB.putDownloadInfo(changed);
             // Notify Listener
             for (DownloadInfoListener l : mDownloadInfoListeners) {
                 l.onUpdateAll();
@@ -450,7 +454,7 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
     }
 
     void startAllDownload() {
-        boolean update = false;
+        List<DownloadInfo> changed = new ArrayList<>();
         // Start all STATE_NONE and STATE_FAILED item
         LinkedList<DownloadInfo> allInfoList = mAllInfoList;
         LinkedList<DownloadInfo> waitList = mWaitList;
@@ -458,31 +462,29 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
         if (downloadOrder) {
             for (DownloadInfo info : allInfoList) {
                 if (info.state == DownloadInfo.STATE_NONE || info.state == DownloadInfo.STATE_FAILED) {
-                    update = true;
                     // Set state DownloadInfo.STATE_WAIT
                     info.state = DownloadInfo.STATE_WAIT;
                     // Add to wait list
                     waitList.add(info);
-                    // Update in DB
-                    EhDB.putDownloadInfo(info);
+                    changed.add(info);
                 }
             }
         } else {
             for (DownloadInfo info : allInfoList) {
                 if (info.state == DownloadInfo.STATE_NONE || info.state == DownloadInfo.STATE_FAILED) {
-                    update = true;
                     // Set state DownloadInfo.STATE_WAIT
                     info.state = DownloadInfo.STATE_WAIT;
                     // Add to wait list
                     waitList.addFirst(info);
-                    // Update in DB
-                    EhDB.putDownloadInfo(info);
+                    changed.add(info);
                 }
             }
         }
 
 
-        if (update) {
+        if (!changed.isEmpty()) {
+            // Update in DB
+            EhDB.putDownloadInfo(changed);
             // Notify Listener
             for (DownloadInfoListener l : mDownloadInfoListeners) {
                 l.onUpdateAll();
@@ -493,6 +495,7 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
     }
 
     public void addDownload(List<DownloadInfo> downloadInfoList) {
+        List<DownloadInfo> added = new ArrayList<>();
         for (DownloadInfo info : downloadInfoList) {
             if (containDownloadInfo(info.gid)) {
                 // Contain
@@ -524,10 +527,12 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
             mAllInfoList.add(info);
             mAllInfoMap.put(info.gid, info);
 
-            // Save to
-            EhDB.putDownloadInfo(info);
+            added.add(info);
         }
 
+        // Save to
+        EhDB.putDownloadInfo(added);
+
         // Sort all download list
         Collections.sort(mAllInfoList, DATE_DESC_COMPARATOR);
 
@@ -627,14 +632,19 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
         }
     }
 
+    /**
+     * Stop all downloading tasks, the next ones in wait list will start
+     */
     void stopCurrentDownload() {
-        DownloadInfo info = stopCurrentDownloadInternal();
-        if (info != null) {
+        List<DownloadInfo> infoList = stopActiveDownloadInternal();
+        if (!infoList.isEmpty()) {
             // Update listener
-            List<DownloadInfo> list = getInfoListForLabel(info.label);
-            if (list != null) {
-                for (DownloadInfoListener l : mDownloadInfoListeners) {
-                    l.onUpdate(info, list, mWaitList);
+            for (DownloadInfo info : infoList) {
+                List<DownloadInfo> list = getInfoListForLabel(info.label);
+                if (list != null) {
+                    for (DownloadInfoListener l : mDownloadInfoListeners) {
+                        l.onUpdate(info, list, mWaitList);
+                    }
                 }
             }
             // Ensure download
@@ -658,13 +668,13 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
         // Stop all in wait list
         for (DownloadInfo info : mWaitList) {
             info.state = DownloadInfo.STATE_NONE;
-            // Update in DB
-            EhDB.putDownloadInfo(info);
         }
+        // Update in DB
+        EhDB.putDownloadInfo(mWaitList);
         mWaitList.clear();
 
-        // Stop current
-        stopCurrentDownloadInternal();
+        // Stop downloading
+        stopActiveDownloadInternal();
 
         // Notify mDownloadInfoListener
         for (DownloadInfoListener l : mDownloadInfoListeners) {
@@ -704,6 +714,7 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
     public void deleteRangeDownload(LongList gidList) {
         stopRangeDownloadInternal(gidList);
 
+        List<Long> removed = new ArrayList<>(gidList.size());
         for (int i = 0, n = gidList.size(); i < n; i++) {
             long gid = gidList.get(i);
             DownloadInfo info = mAllInfoMap.get(gid);
@@ -712,8 +723,7 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
                 continue;
             }
 
-            // Remove from DB
-            EhDB.removeDownloadInfo(info.gid);
+            removed.add(info.gid);
 
             // Remove from all info map
             mAllInfoList.remove(info);
@@ -726,6 +736,9 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
             }
         }
 
+        // Remove from DB
+        EhDB.removeDownloadInfo(removed);
+
         // Update listener
         for (DownloadInfoListener l : mDownloadInfoListeners) {
             l.onReload();
@@ -782,10 +795,11 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
     // Update listener
     // No ensureDownload
     private DownloadInfo stopDownloadInternal(long gid) {
-        // Check current task
-        if (mCurrentTask != null && mCurrentTask.gid == gid) {
-            // Stop current
-            return stopCurrentDownloadInternal();
+        // Check downloading task
+        DownloadTask task = getActiveTask(gid);
+        if (task != null) {
+            // Stop it
+            return stopTaskInternal(task);
         }
 
         for (Iterator<DownloadInfo> iterator = mWaitList.iterator(); iterator.hasNext(); ) {
@@ -805,21 +819,26 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
 
     // Update in DB
     // Update mDownloadListener
-    private DownloadInfo stopCurrentDownloadInternal() {
-        DownloadInfo info = mCurrentTask;
-        SpiderQueen spider = mCurrentSpider;
-        // Release spider
-        if (spider != null) {
-            spider.removeOnSpiderListener(DownloadManager.this);
-            SpiderQueen.releaseSpiderQueen(spider, SpiderQueen.MODE_DOWNLOAD);
+    @NonNull
+    private List<DownloadInfo> stopActiveDownloadInternal() {
+        List<DownloadInfo> infoList = new ArrayList<>(mActiveTasks.size());
+        while (!mActiveTasks.isEmpty()) {
+            infoList.add(stopTaskInternal(mActiveTasks.getFirst()));
         }
-        mCurrentTask = null;
-        mCurrentSpider = null;
+        return infoList;
+    }
+
+    // Update in DB
+    // Update mDownloadListener
+    private DownloadInfo stopTaskInternal(@NonNull DownloadTask task) {
+        DownloadInfo info = task.info;
+        SpiderQueen spider = task.spider;
+        mActiveTasks.remove(task);
+        // Release spider
+        spider.removeOnSpiderListener(task);
+        SpiderQueen.releaseSpiderQueen(spider, SpiderQueen.MODE_DOWNLOAD);
         // Stop speed reminder
-        mSpeedReminder.stop();
-        if (info == null) {
-            return null;
-        }
+        task.speedReminder.stop();
 
         // Update state
         info.state = DownloadInfo.STATE_NONE;
@@ -841,13 +860,16 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
                 stopDownloadInternal(gidList.get(i));
             }
         } else {
-            // Check current task
-            if (mCurrentTask != null && gidList.contains(mCurrentTask.gid)) {
-                // Stop current
-                stopCurrentDownloadInternal();
+            // Check downloading tasks
+            for (DownloadTask task : new ArrayList<>(mActiveTasks)) {
+                if (gidList.contains(task.info.gid)) {
+                    // Stop it
+                    stopTaskInternal(task);
+                }
             }
 
             // Check all in wait list
+            List<DownloadInfo> changed = new ArrayList<>();
             for (Iterator<DownloadInfo> iterator = mWaitList.iterator(); iterator.hasNext(); ) {
                 DownloadInfo info = iterator.next();
                 if (gidList.contains(info.gid)) {
@@ -855,10 +877,11 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
                     iterator.remove();
                     // Update state
                     info.state = DownloadInfo.STATE_NONE;
-                    // Update in DB
-                    EhDB.putDownloadInfo(info);
+                    changed.add(info);
                 }
             }
+            // Update in DB
+            EhDB.putDownloadInfo(changed);
         }
     }
 
@@ -877,6 +900,7 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
             return;
         }
 
+        List<DownloadInfo> changed = new ArrayList<>(list.size());
         for (DownloadInfo info : list) {
             if (ObjectUtils.equal(info.label, label)) {
                 continue;
@@ -891,11 +915,12 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
             srcList.remove(info);
             dstList.add(info);
             info.label = label;
-            Collections.sort(dstList, DATE_DESC_COMPARATOR);
-
-            // Save to DB
-            EhDB.putDownloadInfo(info);
+            changed.add(info);
         }
+        Collections.sort(dstList, DATE_DESC_COMPARATOR);
+
+        // Save to DB
+        EhDB.putDownloadInfo(changed);
 
         for (DownloadInfoListener l : mDownloadInfoListeners) {
             l.onReload();
@@ -958,9 +983,9 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
         // Update info label
         for (DownloadInfo info : list) {
             info.label = to;
-            // Update in DB
-            EhDB.putDownloadInfo(info);
         }
+        // Update in DB
+        EhDB.putDownloadInfo(list);
         // Put list back with new label
         mMap.put(to, list);
 
@@ -994,10 +1019,10 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
         // Update info label
         for (DownloadInfo info : list) {
             info.label = null;
-            // Update in DB
-            EhDB.putDownloadInfo(info);
             mDefaultInfoList.add(info);
         }
+        // Update in DB
+        EhDB.putDownloadInfo(list);
 
         // Sort
         Collections.sort(mDefaultInfoList, DATE_DESC_COMPARATOR);
@@ -1009,77 +1034,95 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
     }
 
     boolean isIdle() {
-        return mCurrentTask == null && mWaitList.isEmpty();
+        return mActiveTasks.isEmpty() && mWaitList.isEmpty();
     }
 
-    @Override
-    public void onGetPages(int pages) {
-        NotifyTask task = mNotifyTaskPool.pop();
-        if (task == null) {
-            task = new NotifyTask();
+    /**
+     * @return infos of the galleries which are downloading now
+     */
+    List<DownloadInfo> getActiveDownloadInfoList() {
+        List<DownloadInfo> list = new ArrayList<>(mActiveTasks.size());
+        for (DownloadTask task : mActiveTasks) {
+            list.add(task.info);
         }
-        task.setOnGetPagesData(pages);
-        SimpleHandler.getInstance().post(task);
+        return list;
     }
 
-    @Override
-    public void onGet509(int index) {
+    private NotifyTask obtainNotifyTask(DownloadTask downloadTask) {
         NotifyTask task = mNotifyTaskPool.pop();
         if (task == null) {
             task = new NotifyTask();
         }
-        task.setOnGet509Data(index);
-        SimpleHandler.getInstance().post(task);
+        task.mTask = downloadTask;
+        return task;
     }
 
-    @Override
-    public void onPageDownload(int index, long contentLength, long receivedSize, int bytesRead) {
-        NotifyTask task = mNotifyTaskPool.pop();
-        if (task == null) {
-            task = new NotifyTask();
+    /**
+     * A downloading gallery, it listens to its own spider
+     */
+    private class DownloadTask implements SpiderQueen.OnSpiderListener {
+
+        final DownloadInfo info;
+        final SpiderQueen spider;
+        final SpeedReminder speedReminder;
+
+        DownloadTask(DownloadInfo info, SpiderQueen spider) {
+            this.info = info;
+            this.spider = spider;
+            this.speedReminder = new SpeedReminder(this);
         }
-        task.setOnPageDownloadData(index, contentLength, receivedSize, bytesRead);
-        SimpleHandler.getInstance().post(task);
-    }
 
-    @Override
-    public void onPageSuccess(int index, int finished, int downloaded, int total) {
-        NotifyTask task = mNotifyTaskPool.pop();
-        if (task == null) {
-            task = new NotifyTask();
+        @Override
+        public void onGetPages(int pages) {
+            NotifyTask task = obtainNotifyTask(this);
+            task.setOnGetPagesData(pages);
+            SimpleHandler.getInstance().post(task);
         }
-        task.setOnPageSuccessData(index, finished, downloaded, total);
-        SimpleHandler.getInstance().post(task);
-    }
 
-    @Override
-    public void onPageFailure(int index, String error, int finished, int downloaded, int total) {
-        NotifyTask task = mNotifyTaskPool.pop();
-        if (task == null) {
-            task = new NotifyTask();
+        @Override
+        public void onGet509(int index) {
+            NotifyTask task = obtainNotifyTask(this);
+            task.setOnGet509Data(index);
+            SimpleHandler.getInstance().post(task);
         }
-        task.setOnPageFailureDate(index, error, finished, downloaded, total);
-        SimpleHandler.getInstance().post(task);
-    }
 
-    @Override
-    public void onFinish(int finished, int downloaded, int total) {
-        NotifyTask task = mNotifyTaskPool.pop();
-        if (task == null) {
-            task = new NotifyTask();
+        @Override
+        public void onPageDownload(int index, long contentLength, long receivedSize, int bytesRead) {
+            NotifyTask task = obtainNotifyTask(this);
+            task.setOnPageDownloadData(index, contentLength, receivedSize, bytesRead);
+            SimpleHandler.getInstance().post(task);
         }
-        task.setOnFinishDate(finished, downloaded, total);
-        SimpleHandler.getInstance().post(task);
-    }
 
-    @Override
-    public void onGetImageSuccess(int index, Image image) {
-        // Ignore
-    }
+        @Override
+        public void onPageSuccess(int index, int finished, int downloaded, int total) {
+            NotifyTask task = obtainNotifyTask(this);
+            task.setOnPageSuccessData(index, finished, downloaded, total);
+            SimpleHandler.getInstance().post(task);
+        }
+
+        @Override
+        public void onPageFailure(int index, String error, int finished, int downloaded, int total) {
+            NotifyTask task = obtainNotifyTask(this);
+            task.setOnPageFailureDate(index, error, finished, downloaded, total);
+            SimpleHandler.getInstance().post(task);
+        }
 
-    @Override
-    public void onGetImageFailure(int index, String error) {
-        // Ignore
+        @Override
+        public void onFinish(int finished, int downloaded, int total) {
+            NotifyTask task = obtainNotifyTask(this);
+            task.setOnFinishDate(finished, downloaded, total);
+            SimpleHandler.getInstance().post(task);
+        }
+
+        @Override
+        public void onGetImageSuccess(int index, Image image) {
+            // Ignore
+        }
+
+        @Override
+        public void onGetImageFailure(int index, String error) {
+            // Ignore
+        }
     }
 
     private class NotifyTask implements Runnable {
@@ -1091,6 +1134,7 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
         public static final int TYPE_ON_PAGE_FAILURE = 4;
         public static final int TYPE_ON_FINISH = 5;
 
+        private DownloadTask mTask;
         private int mType;
         private int mPages;
         private int mIndex;
@@ -1147,12 +1191,15 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
 
         @Override
         public void run() {
+            DownloadTask downloadTask = mTask;
+            mTask = null;
+            // The task might be stopped
+            boolean active = downloadTask != null && mActiveTasks.contains(downloadTask);
+
             switch (mType) {
                 case TYPE_ON_GET_PAGES: {
-                    DownloadInfo info = mCurrentTask;
-                    if (info == null) {
-                        Log.e(TAG, "Current task is null, but it should not be");
-                    } else {
+                    if (active) {
+                        DownloadInfo info = downloadTask.info;
                         info.total = mPages;
                         List<DownloadInfo> list = getInfoListForLabel(info.label);
                         if (list != null) {
@@ -1170,15 +1217,15 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
                     break;
                 }
                 case TYPE_ON_PAGE_DOWNLOAD: {
-                    mSpeedReminder.onDownload(mIndex, mContentLength, mReceivedSize, mBytesRead);
+                    if (active) {
+                        downloadTask.speedReminder.onDownload(mIndex, mContentLength, mReceivedSize, mBytesRead);
+                    }
                     break;
                 }
                 case TYPE_ON_PAGE_SUCCESS: {
-                    mSpeedReminder.onDone(mIndex);
-                    DownloadInfo info = mCurrentTask;
-                    if (info == null) {
-                        Log.e(TAG, "Current task is null, but it should not be");
-                    } else {
+                    if (active) {
+                        downloadTask.speedReminder.onDone(mIndex);
+                        DownloadInfo info = downloadTask.info;
                         info.finished = mFinished;
                         info.downloaded = mDownloaded;
                         info.total = mTotal;
@@ -1195,11 +1242,9 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
                     break;
                 }
                 case TYPE_ON_PAGE_FAILURE: {
-                    mSpeedReminder.onDone(mIndex);
-                    DownloadInfo info = mCurrentTask;
-                    if (info == null) {
-                        Log.e(TAG, "Current task is null, but it should not be");
-                    } else {
+                    if (active) {
+                        downloadTask.speedReminder.onDone(mIndex);
+                        DownloadInfo info = downloadTask.info;
                         info.finished = mFinished;
                         info.downloaded = mDownloaded;
                         info.total = mTotal;
@@ -1213,24 +1258,20 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
                     break;
                 }
                 case TYPE_ON_FINISH: {
-                    mSpeedReminder.onFinish();
-                    // Download done
-                    DownloadInfo info = mCurrentTask;
-                    mCurrentTask = null;
-                    SpiderQueen spider = mCurrentSpider;
-                    mCurrentSpider = null;
-                    // Release spider
-                    if (spider != null) {
-                        spider.removeOnSpiderListener(DownloadManager.this);
-                        SpiderQueen.releaseSpiderQueen(spider, SpiderQueen.MODE_DOWNLOAD);
-                    }
-                    // Check null
-                    if (info == null || spider == null) {
-                        Log.e(TAG, "Current stuff is null, but it should not be");
+                    if (!active) {
+                        // It has been stopped
                         break;
                     }
+                    // Download done
+                    mActiveTasks.remove(downloadTask);
+                    DownloadInfo info = downloadTask.info;
+                    SpiderQueen spider = downloadTask.spider;
+                    // Release spider
+                    spider.removeOnSpiderListener(downloadTask);
+                    SpiderQueen.releaseSpiderQueen(spider, SpiderQueen.MODE_DOWNLOAD);
                     // Stop speed count
-                    mSpeedReminder.stop();
+                    downloadTask.speedReminder.onFinish();
+                    downloadTask.speedReminder.stop();
                     // Update state
                     info.finished = mFinished;
                     info.downloaded = mDownloaded;
@@ -1266,6 +1307,8 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
 
     class SpeedReminder implements Runnable {
 
+        private final DownloadTask mTask;
+
         private boolean mStop = true;
 
         private long mBytesRead;
@@ -1274,6 +1317,10 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
         private final SparseIJArray mContentLengthMap = new SparseIJArray();
         private final SparseIJArray mReceivedSizeMap = new SparseIJArray();
 
+        SpeedReminder(DownloadTask task) {
+            mTask = task;
+        }
+
         public void start() {
             if (mStop) {
                 mStop = false;
@@ -1310,8 +1357,8 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
 
         @Override
         public void run() {
-            DownloadInfo info = mCurrentTask;
-            if (info != null) {
+            DownloadInfo info = mTask.info;
+            if (!mStop) {
                 long newSpeed = mBytesRead / 2;
                 if (oldSpeed != -1) {
                     newSpeed = (long) MathUtils.lerp(oldSpeed, newSpeed, 0.75f);
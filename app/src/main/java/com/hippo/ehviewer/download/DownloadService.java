@@ -48,6 +48,7 @@ import com.hippo.yorozuya.collect.SparseJBArray;
 import com.hippo.yorozuya.collect.SparseJLArray;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.List;
 @SuppressLint("UnspecifiedImmutableFlag")
 public class DownloadService extends Service implements DownloadManager.DownloadListener {
 
@@ -81,6 +82,8 @@ public class DownloadService extends Service implements DownloadManager.Download
     private NotificationDelay mDownloadingDelay;
     private NotificationDelay mDownloadedDelay;
     private NotificationDelay m509Delay;
+    // Gid the downloading notification opens, -1 for download list, -2 for not set
+    private long mDownloadingGid = -2;
 
 
     private final static SparseJBArray sItemStateArray = new SparseJBArray();
@@ -305,63 +308,106 @@ public class DownloadService extends Service implements DownloadManager.Download
 
     @Override
     public void onStart(DownloadInfo info) {
-        if (mNotifyManager == null) {
+        updateDownloading();
+    }
+
+    private void setDownloadingContentIntent(long gid) {
+        if (mDownloadingGid == gid) {
             return;
         }
-
-        ensureDownloadingBuilder();
+        mDownloadingGid = gid;
 
         Bundle bundle = new Bundle();
-        bundle.putLong(DownloadsScene.KEY_GID, info.gid);
+        if (gid != -1) {
+            bundle.putLong(DownloadsScene.KEY_GID, gid);
+        }
         Intent activityIntent = new Intent(this, MainActivity.class);
         activityIntent.setAction(StageActivity.ACTION_START_SCENE);
         activityIntent.putExtra(StageActivity.KEY_SCENE_NAME, DownloadsScene.class.getName());
         activityIntent.putExtra(StageActivity.KEY_SCENE_ARGS, bundle);
         PendingIntent piActivity = PendingIntent.getActivity(DownloadService.this, 0,
                 activityIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+        mDownloadingBuilder.setContentIntent(piActivity);
+    }
 
-        mDownloadingBuilder.setContentTitle(EhUtils.getSuitableTitle(info))
-                .setContentText(null)
-                .setContentInfo(null)
-                .setProgress(0, 0, true)
-                .setContentIntent(piActivity);
-
-        mDownloadingDelay.startForeground();
+    private String getSpeedText(long speed) {
+        return FileUtils.humanReadableByteCount(Math.max(speed, 0), false) + "/S";
     }
 
-    private void onUpdate(DownloadInfo info) {
-        if (mNotifyManager == null) {
+    /**
+     * One notification for all downloading galleries, it is removed when none is left.
+     */
+    private void updateDownloading() {
+        if (mNotifyManager == null || mDownloadManager == null) {
             return;
         }
-        ensureDownloadingBuilder();
 
-        long speed = info.speed;
-        if (speed < 0) {
-            speed = 0;
+        List<DownloadInfo> list = mDownloadManager.getActiveDownloadInfoList();
+        if (list.isEmpty()) {
+            if (null != mDownloadingDelay) {
+                mDownloadingDelay.cancel();
+            }
+            return;
         }
-        String text = FileUtils.humanReadableByteCount(speed, false) + "/S";
-        long remaining = info.remaining;
-        if (remaining >= 0) {
-            text = getString(R.string.download_speed_text_2, text, ReadableTime.getShortTimeInterval(remaining));
+
+        ensureDownloadingBuilder();
+
+        if (list.size() == 1) {
+            DownloadInfo info = list.get(0);
+            String text = null;
+            if (info.speed >= 0) {
+                text = getSpeedText(info.speed);
+                long remaining = info.remaining;
+                if (remaining >= 0) {
+                    text = getString(R.string.download_speed_text_2, text, ReadableTime.getShortTimeInterval(remaining));
+                } else {
+                    text = getString(R.string.download_speed_text, text);
+                }
+            }
+            boolean unknown = info.total == -1 || info.finished == -1;
+            setDownloadingContentIntent(info.gid);
+            mDownloadingBuilder.setContentTitle(EhUtils.getSuitableTitle(info))
+                    .setContentText(text)
+                    .setContentInfo(unknown ? null : info.finished + "/" + info.total)
+                    .setStyle(null)
+                    .setProgress(unknown ? 0 : info.total, unknown ? 0 : info.finished, unknown);
         } else {
-            text = getString(R.string.download_speed_text, text);
+            long speed = 0;
+            int total = 0;
+            int finished = 0;
+            NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle();
+            for (DownloadInfo info : list) {
+                speed += Math.max(info.speed, 0);
+                String title = EhUtils.getSuitableTitle(info);
+                if (info.total > 0 && info.finished >= 0) {
+                    total += info.total;
+                    finished += info.finished;
+                    style.addLine(info.finished + "/" + info.total + "  " + title);
+                } else {
+                    style.addLine(title);
+                }
+            }
+            String title = getString(R.string.stat_downloading_title_multi, list.size());
+            style.setBigContentTitle(title);
+            setDownloadingContentIntent(-1);
+            mDownloadingBuilder.setContentTitle(title)
+                    .setContentText(getString(R.string.download_speed_text, getSpeedText(speed)))
+                    .setContentInfo(null)
+                    .setStyle(style)
+                    .setProgress(total, finished, total == 0);
         }
-        mDownloadingBuilder.setContentTitle(EhUtils.getSuitableTitle(info))
-                .setContentText(text)
-                .setContentInfo(info.total == -1 || info.finished == -1 ? null : info.finished + "/" + info.total)
-                .setProgress(info.total, info.finished, false);
 
         mDownloadingDelay.startForeground();
     }
 
     @Override
     public void onDownload(DownloadInfo info) {
-        onUpdate(info);
+        updateDownloading();
     }
 
     @Override
     public void onGetPage(DownloadInfo info) {
-        onUpdate(info);
+        updateDownloading();
     }
 
     @Override
@@ -370,9 +416,8 @@ public class DownloadService extends Service implements DownloadManager.Download
             return;
         }
 
-        if (null != mDownloadingDelay) {
-            mDownloadingDelay.cancel();
-        }
+        // Other galleries might be still downloading
+        updateDownloading();
 
         ensureDownloadedBuilder();
 
@@ -470,9 +515,7 @@ public class DownloadService extends Service implements DownloadManager.Download
             return;
         }
 
-        if (null != mDownloadingDelay) {
-            mDownloadingDelay.cancel();
-        }
+        updateDownloading();
 
         checkStopSelf();
     }
@@ -23,6 +23,7 @@ import com.hippo.a7zip.InArchive;
 import com.hippo.a7zip.PropID;
 import com.hippo.a7zip.PropType;
 import com.hippo.a7zip.SeekableInputStream;
+import com.hippo.ehviewer.EhApplication;
 import com.hippo.unifile.UniRandomAccessFile;
 
 import java.io.Closeable;
@@ -83,6 +84,8 @@ class A7ZipArchive implements Closeable {
     }
 
     static A7ZipArchive create(UniRandomAccessFile file) throws ArchiveException {
+        // Native library is loaded on first use
+        EhApplication.awaitStartup(EhApplication.STARTUP_A7ZIP);
         SeekableInputStream store = new UniRandomAccessFileInStream(file);
         InArchive archive = InArchive.open(store);
         if ((archive.getArchivePropertyType(PropID.ENCRYPTED) == PropType.BOOL && archive.getArchiveBooleanProperty(PropID.ENCRYPTED))
@@ -22,6 +22,7 @@ import android.os.Process;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import com.hippo.a7zip.ArchiveException;
+import com.hippo.ehviewer.EhApplication;
 import com.hippo.ehviewer.GetText;
 import com.hippo.ehviewer.R;
 import com.hippo.lib.glgallery.GalleryPageView;
@@ -258,7 +259,8 @@ public class ArchiveGalleryProvider extends GalleryProvider2 {
         }
 
         try {
-          Image image = Image.decode(stream, true);
+          EhApplication.awaitStartup(EhApplication.STARTUP_IMAGE);
+          Image image = getImageDecoder().decode(index, stream);
           if (image != null) {
             notifyPageSucceed(index, image);
           } else {
@@ -45,6 +45,7 @@ public class EhGalleryProvider extends GalleryProvider2 implements SpiderQueen.O
 
         mSpiderQueen = SpiderQueen.obtainSpiderQueen(mContext, mGalleryInfo, SpiderQueen.MODE_READ);
         mSpiderQueen.addOnSpiderListener(this);
+        mSpiderQueen.setImageDecoder(getImageDecoder());
     }
 
     @Override
@@ -53,6 +54,7 @@ public class EhGalleryProvider extends GalleryProvider2 implements SpiderQueen.O
 
         if (mSpiderQueen != null) {
             mSpiderQueen.removeOnSpiderListener(this);
+            mSpiderQueen.setImageDecoder(null);
             // Activity recreate may called, so wait 3000s
             SimpleHandler.getInstance().postDelayed(new ReleaseTask(mSpiderQueen), 3000);
             mSpiderQueen = null;
@@ -30,6 +30,8 @@ import com.hippo.ehviewer.Settings;
 import com.hippo.ehviewer.client.EhEngine;
 import com.hippo.ehviewer.client.EhUrl;
 import com.hippo.ehviewer.client.data.GalleryInfo;
+import com.hippo.ehviewer.dao.DownloadDirname;
+import com.hippo.ehviewer.dao.DownloadInfo;
 import com.hippo.ehviewer.download.DownloadManager;
 import com.hippo.ehviewer.spider.SpiderInfo;
 import com.hippo.ehviewer.spider.SpiderQueen;
@@ -154,17 +156,28 @@ public class RestoreDownloadPreference extends TaskPreference {
                     Toast.makeText(mApplication, R.string.settings_download_restore_not_found, Toast.LENGTH_SHORT).show();
                 } else {
                     int count = 0;
+                    long time = System.currentTimeMillis();
+                    List<DownloadInfo> infos = new ArrayList<>();
+                    List<DownloadDirname> dirnames = new ArrayList<>();
                     for (int i = 0, n = list.size(); i < n; i++) {
                         RestoreItem item = list.get(i);
                         // Avoid failed gallery info
                         if (null != item.title) {
-                            // Put to download
-                            mManager.addDownload(item, null);
-                            // Put download dir to DB
-                            EhDB.putDownloadDirname(item.gid, item.dirname);
+                            DownloadInfo info = new DownloadInfo(item);
+                            info.state = DownloadInfo.STATE_NONE;
+                            info.time = time;
+                            infos.add(info);
+                            DownloadDirname dirname = new DownloadDirname();
+                            dirname.setGid(item.gid);
+                            dirname.setDirname(item.dirname);
+                            dirnames.add(dirname);
                             count++;
                         }
                     }
+                    // Put download dirs to DB first, download info is shown after it
+                    EhDB.putDownloadDirname(dirnames);
+                    // Put to download in one transaction
+                    mManager.addDownload(infos);
                     Toast.makeText(mApplication,
                             mApplication.getString(R.string.settings_download_restore_successfully, count),
                             Toast.LENGTH_SHORT).show();
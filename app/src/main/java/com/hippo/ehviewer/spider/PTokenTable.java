@@ -0,0 +1,240 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.spider;
+
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Page index to pToken table.
+ * <p>
+ * A pToken is a short lowercase hex string, it is packed with its length into
+ * one long in an array indexed by page, no object is created for it until
+ * {@link #get(int)}. Other strings are kept as they are.
+ * <p>
+ * The api is the part of {@link android.util.SparseArray} which spider uses.
+ * It is not thread-safe.
+ */
+public final class PTokenTable implements Cloneable {
+
+    // Values which are not packed hex
+    private static final long EMPTY = -1L;
+    private static final long FAILED = -2L;
+    private static final long OTHER = -3L;
+
+    private static final int MAX_HEX_LENGTH = 14;
+    private static final int LENGTH_SHIFT = 56;
+    private static final long VALUE_MASK = (1L << LENGTH_SHIFT) - 1;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private long[] mValues;
+    @Nullable
+    private Map<Integer, String> mOthers;
+    private int mSize;
+
+    // Keys in order, built on demand for keyAt() and valueAt()
+    @Nullable
+    private int[] mKeys;
+
+    public PTokenTable() {
+        this(0);
+    }
+
+    /**
+     * @param capacity usually the page count
+     */
+    public PTokenTable(int capacity) {
+        mValues = new long[Math.max(capacity, 0)];
+        Arrays.fill(mValues, EMPTY);
+    }
+
+    static long pack(String pToken) {
+        if (SpiderInfo.TOKEN_FAILED.equals(pToken)) {
+            return FAILED;
+        }
+        int length = pToken.length();
+        if (length == 0 || length > MAX_HEX_LENGTH) {
+            return OTHER;
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = pToken.charAt(i);
+            int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (c >= 'a' && c <= 'f') {
+                digit = c - 'a' + 10;
+            } else {
+                return OTHER;
+            }
+            value = (value << 4) | digit;
+        }
+        return ((long) length << LENGTH_SHIFT) | value;
+    }
+
+    static String unpack(long packed) {
+        int length = (int) (packed >>> LENGTH_SHIFT);
+        long value = packed & VALUE_MASK;
+        char[] chars = new char[length];
+        for (int i = length - 1; i >= 0; i--) {
+            chars[i] = HEX[(int) (value & 0xf)];
+            value >>>= 4;
+        }
+        return new String(chars);
+    }
+
+    private void ensureCapacity(int key) {
+        if (key >= mValues.length) {
+            int oldLength = mValues.length;
+            mValues = Arrays.copyOf(mValues, Math.max(key + 1, oldLength + (oldLength >> 1)));
+            Arrays.fill(mValues, oldLength, mValues.length, EMPTY);
+        }
+    }
+
+    public void put(int key, String value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key: " + key);
+        }
+        if (value == null) {
+            remove(key);
+            return;
+        }
+
+        ensureCapacity(key);
+        long old = mValues[key];
+        long packed = pack(value);
+        if (old == EMPTY) {
+            mSize++;
+            mKeys = null;
+        } else if (old == OTHER && packed != OTHER) {
+            mOthers.remove(key);
+        }
+        if (packed == OTHER) {
+            if (mOthers == null) {
+                mOthers = new HashMap<>();
+            }
+            mOthers.put(key, value);
+        }
+        mValues[key] = packed;
+    }
+
+    /**
+     * Same as {@link #put(int, String)}, for the code which fills SparseArray in key order.
+     */
+    public void append(int key, String value) {
+        put(key, value);
+    }
+
+    @Nullable
+    public String get(int key) {
+        if (key < 0 || key >= mValues.length) {
+            return null;
+        }
+        long packed = mValues[key];
+        if (packed == EMPTY) {
+            return null;
+        } else if (packed == FAILED) {
+            return SpiderInfo.TOKEN_FAILED;
+        } else if (packed == OTHER) {
+            return mOthers.get(key);
+        } else {
+            return unpack(packed);
+        }
+    }
+
+    public boolean contains(int key) {
+        return key >= 0 && key < mValues.length && mValues[key] != EMPTY;
+    }
+
+    public void remove(int key) {
+        if (!contains(key)) {
+            return;
+        }
+        if (mValues[key] == OTHER) {
+            mOthers.remove(key);
+        }
+        mValues[key] = EMPTY;
+        mSize--;
+        mKeys = null;
+    }
+
+    public void clear() {
+        Arrays.fill(mValues, EMPTY);
+        mOthers = null;
+        mSize = 0;
+        mKeys = null;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    private int[] keys() {
+        int[] keys = mKeys;
+        if (keys == null) {
+            keys = new int[mSize];
+            for (int i = 0, j = 0, n = mValues.length; i < n && j < keys.length; i++) {
+                if (mValues[i] != EMPTY) {
+                    keys[j++] = i;
+                }
+            }
+            mKeys = keys;
+        }
+        return keys;
+    }
+
+    /**
+     * @return the key of the {@code index}th entry in ascending key order
+     */
+    public int keyAt(int index) {
+        return keys()[index];
+    }
+
+    public String valueAt(int index) {
+        return get(keyAt(index));
+    }
+
+    /**
+     * @return the index for {@link #keyAt(int)}, or a negative number if not found
+     */
+    public int indexOfKey(int key) {
+        if (!contains(key)) {
+            return -1;
+        }
+        return Arrays.binarySearch(keys(), key);
+    }
+
+    public void removeAt(int index) {
+        remove(keyAt(index));
+    }
+
+    @Override
+    public PTokenTable clone() {
+        try {
+            PTokenTable clone = (PTokenTable) super.clone();
+            clone.mValues = mValues.clone();
+            clone.mOthers = mOthers != null ? new HashMap<>(mOthers) : null;
+            return clone;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.spider;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * FIFO queue of page indexes without duplicate.
+ * <p>
+ * Membership is kept in a bitset indexed by page index, so {@link #contains(int)},
+ * {@link #remove(int)} and {@link #isEmpty()} are lock-free and O(1), and
+ * {@link #add(int)} only takes the lock when the index is new. Removed indexes
+ * stay in the order array and are skipped by {@link #poll()}.
+ */
+final class PageRequestQueue {
+
+    public static final int INVALID_INDEX = -1;
+    // Index out of it is always invalid for a gallery
+    public static final int MAX_INDEX = 1 << 18;
+
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // Bitset, chunks are created when needed
+    private final AtomicReferenceArray<AtomicLongArray> mChunks =
+            new AtomicReferenceArray<>(MAX_INDEX >>> CHUNK_SHIFT);
+    private final AtomicInteger mSize = new AtomicInteger();
+
+    // Ring buffer of index in the order of adding, guarded by itself
+    private final Object mOrderLock = new Object();
+    private int[] mOrder = new int[16];
+    private int mHead;
+    private int mCount;
+
+    private AtomicLongArray getChunk(int index, boolean create) {
+        int chunkIndex = index >>> CHUNK_SHIFT;
+        AtomicLongArray chunk = mChunks.get(chunkIndex);
+        if (chunk == null && create) {
+            chunk = new AtomicLongArray(CHUNK_SIZE >>> 6);
+            if (!mChunks.compareAndSet(chunkIndex, null, chunk)) {
+                chunk = mChunks.get(chunkIndex);
+            }
+        }
+        return chunk;
+    }
+
+    private static boolean isValid(int index) {
+        return index >= 0 && index < MAX_INDEX;
+    }
+
+    // Set the bit, return true if it is changed
+    private boolean setBit(int index) {
+        AtomicLongArray chunk = getChunk(index, true);
+        int word = (index & CHUNK_MASK) >>> 6;
+        long mask = 1L << (index & 63);
+        for (;;) {
+            long old = chunk.get(word);
+            if ((old & mask) != 0) {
+                return false;
+            }
+            if (chunk.compareAndSet(word, old, old | mask)) {
+                return true;
+            }
+        }
+    }
+
+    // Clear the bit, return true if it is changed
+    private boolean clearBit(int index) {
+        AtomicLongArray chunk = getChunk(index, false);
+        if (chunk == null) {
+            return false;
+        }
+        int word = (index & CHUNK_MASK) >>> 6;
+        long mask = 1L << (index & 63);
+        for (;;) {
+            long old = chunk.get(word);
+            if ((old & mask) == 0) {
+                return false;
+            }
+            if (chunk.compareAndSet(word, old, old & ~mask)) {
+                return true;
+            }
+        }
+    }
+
+    public boolean contains(int index) {
+        if (!isValid(index)) {
+            return false;
+        }
+        AtomicLongArray chunk = getChunk(index, false);
+        return chunk != null &&
+                (chunk.get((index & CHUNK_MASK) >>> 6) & (1L << (index & 63))) != 0;
+    }
+
+    public boolean isEmpty() {
+        return mSize.get() <= 0;
+    }
+
+    public int size() {
+        return Math.max(mSize.get(), 0);
+    }
+
+    /**
+     * @return false if the index is invalid or already in the queue
+     */
+    public boolean add(int index) {
+        if (!isValid(index) || !setBit(index)) {
+            return false;
+        }
+        mSize.incrementAndGet();
+
+        synchronized (mOrderLock) {
+            if (mCount == mOrder.length) {
+                int[] order = new int[mOrder.length * 2];
+                for (int i = 0; i < mCount; i++) {
+                    order[i] = mOrder[(mHead + i) % mOrder.length];
+                }
+                mOrder = order;
+                mHead = 0;
+            }
+            mOrder[(mHead + mCount) % mOrder.length] = index;
+            mCount++;
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the index is not in the queue
+     */
+    public boolean remove(int index) {
+        if (!isValid(index) || !clearBit(index)) {
+            return false;
+        }
+        mSize.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * @return the head index, {@link #INVALID_INDEX} for empty
+     */
+    public int poll() {
+        if (isEmpty()) {
+            return INVALID_INDEX;
+        }
+
+        synchronized (mOrderLock) {
+            while (mCount > 0) {
+                int index = mOrder[mHead];
+                mHead = (mHead + 1) % mOrder.length;
+                mCount--;
+                // Skip removed index
+                if (clearBit(index)) {
+                    mSize.decrementAndGet();
+                    return index;
+                }
+            }
+        }
+        return INVALID_INDEX;
+    }
+
+    public void clear() {
+        synchronized (mOrderLock) {
+            while (mCount > 0) {
+                int index = mOrder[mHead];
+                mHead = (mHead + 1) % mOrder.length;
+                mCount--;
+                if (clearBit(index)) {
+                    mSize.decrementAndGet();
+                }
+            }
+        }
+    }
+}
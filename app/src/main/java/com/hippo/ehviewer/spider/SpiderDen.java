@@ -18,11 +18,13 @@ package com.hippo.ehviewer.spider;
 
 import android.content.Context;
 import android.graphics.BitmapFactory;
+import android.util.SparseArray;
 import android.webkit.MimeTypeMap;
 
 import androidx.annotation.Nullable;
 
 import com.hippo.beerbelly.SimpleDiskCache;
+import com.hippo.ehviewer.EhApplication;
 import com.hippo.ehviewer.EhDB;
 import com.hippo.ehviewer.Settings;
 import com.hippo.ehviewer.client.EhCacheKeyFactory;
@@ -50,7 +52,11 @@ public final class SpiderDen {
     @Nullable
     private final UniFile mDownloadDir;
     private volatile int mMode = SpiderQueen.MODE_READ;
-
+    // Page index to image file in download dir, built from one listing.
+    // Null if not built yet.
+    @Nullable
+    private SparseArray<UniFile> mImageFileIndex;
+    private final Object mImageFileIndexLock = new Object();
 
     private long mGid;
 
@@ -122,6 +128,7 @@ public final class SpiderDen {
     }
 
     public SpiderDen(GalleryInfo galleryInfo) {
+        EhApplication.awaitStartup(EhApplication.STARTUP_SPIDER_DEN);
         mGid = galleryInfo.gid;
         mDownloadDir = getGalleryDownloadDir(galleryInfo);
     }
@@ -135,6 +142,8 @@ public final class SpiderDen {
 
         if (mode == SpiderQueen.MODE_DOWNLOAD) {
             ensureDownloadDir();
+            // Files might be changed when the gallery is not downloading
+            invalidateImageFileIndex();
         }
     }
 
@@ -190,6 +199,108 @@ public final class SpiderDen {
         return null;
     }
 
+    /**
+     * @return the page index of the image filename, -1 if it is not a image filename
+     */
+    public static int parseImageFilename(String filename) {
+        if (filename == null) {
+            return -1;
+        }
+        int dot = filename.lastIndexOf('.');
+        if (dot <= 0) {
+            return -1;
+        }
+        String extension = filename.substring(dot);
+        if (!Utilities.contain(GalleryProvider2.SUPPORT_IMAGE_EXTENSIONS, extension)) {
+            return -1;
+        }
+        int index = -1;
+        try {
+            index = Integer.parseInt(filename.substring(0, dot)) - 1;
+        } catch (NumberFormatException e) {
+            // Ignore
+        }
+        // Make sure it is exactly the same as the generated one
+        if (index < 0 || !filename.equals(generateImageFilename(index, extension))) {
+            return -1;
+        }
+        return index;
+    }
+
+    private static int getExtensionOrder(String filename) {
+        String[] extensions = GalleryProvider2.SUPPORT_IMAGE_EXTENSIONS;
+        for (int i = 0, n = extensions.length; i < n; i++) {
+            if (filename.endsWith(extensions[i])) {
+                return i;
+            }
+        }
+        return extensions.length;
+    }
+
+    /**
+     * Build the index from one listing of download dir.
+     *
+     * @return null if can't list download dir
+     */
+    @Nullable
+    public static SparseArray<UniFile> buildImageFileIndex(UniFile dir) {
+        UniFile[] files = dir.listFiles();
+        if (files == null) {
+            return null;
+        }
+
+        SparseArray<UniFile> fileIndex = new SparseArray<>(files.length);
+        for (UniFile file : files) {
+            String filename = file.getName();
+            int index = parseImageFilename(filename);
+            if (index < 0) {
+                continue;
+            }
+            // Keep the same extension priority as findImageFile()
+            UniFile old = fileIndex.get(index);
+            if (old == null || getExtensionOrder(filename) < getExtensionOrder(old.getName())) {
+                fileIndex.put(index, file);
+            }
+        }
+        return fileIndex;
+    }
+
+    private void invalidateImageFileIndex() {
+        synchronized (mImageFileIndexLock) {
+            mImageFileIndex = null;
+        }
+    }
+
+    private void putImageFileIndex(int index, UniFile file) {
+        synchronized (mImageFileIndexLock) {
+            if (mImageFileIndex != null) {
+                mImageFileIndex.put(index, file);
+            }
+        }
+    }
+
+    private void removeImageFileIndex(int index) {
+        synchronized (mImageFileIndexLock) {
+            if (mImageFileIndex != null) {
+                mImageFileIndex.remove(index);
+            }
+        }
+    }
+
+    @Nullable
+    private UniFile findImageFileInDownloadDir(UniFile dir, int index) {
+        synchronized (mImageFileIndexLock) {
+            if (mImageFileIndex == null) {
+                mImageFileIndex = buildImageFileIndex(dir);
+            }
+            if (mImageFileIndex != null) {
+                return mImageFileIndex.get(index);
+            }
+        }
+        // Can't list download dir, find it directly
+        return findImageFile(dir, index);
+    }
+
     private boolean containInDownloadDir(int index) {
         UniFile dir = getDownloadDir();
         if (dir == null) {
@@ -197,7 +308,7 @@ public final class SpiderDen {
         }
 
         // Find image file in download dir
-        return findImageFile(dir, index) != null;
+        return findImageFileInDownloadDir(dir, index) != null;
     }
 
     /**
@@ -250,6 +361,7 @@ public final class SpiderDen {
             }
             os = file.openOutputStream();
             IOUtils.copy(pipe.open(), os);
+            putImageFileIndex(index, file);
             return true;
         } catch (IOException e) {
             return false;
@@ -293,6 +405,7 @@ public final class SpiderDen {
                 result |= file.delete();
             }
         }
+        removeImageFileIndex(index);
         return result;
     }
 
@@ -325,6 +438,7 @@ public final class SpiderDen {
         extension = fixExtension('.' + extension);
         UniFile file = dir.createFile(generateImageFilename(index, extension));
         if (file != null) {
+            putImageFileIndex(index, file);
             return new UniFileOutputStreamPipe(file);
         } else {
             return null;
@@ -366,7 +480,7 @@ public final class SpiderDen {
         }
 
         for (int i = 0; i < 2; i++) {
-            UniFile file = findImageFile(dir, index);
+            UniFile file = findImageFileInDownloadDir(dir, index);
             if (file != null) {
                 return new UniFileInputStreamPipe(file);
             } else if (!copyFromCacheToDownloadDir(index)) {
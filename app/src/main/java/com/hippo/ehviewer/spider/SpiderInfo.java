@@ -20,10 +20,11 @@ import static com.hippo.ehviewer.spider.SpiderDen.getGalleryDownloadDir;
 import static com.hippo.ehviewer.spider.SpiderQueen.SPIDER_INFO_BACKUP_FILENAME;
 import static com.hippo.ehviewer.spider.SpiderQueen.SPIDER_INFO_FILENAME;
 
+import android.content.ContentResolver;
 import android.content.Context;
+import android.net.Uri;
 import android.text.TextUtils;
 import android.util.Log;
-import android.util.SparseArray;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -37,15 +38,22 @@ import com.hippo.ehviewer.client.parser.GalleryDetailParser;
 import com.hippo.ehviewer.client.parser.GalleryPageUrlParser;
 import com.hippo.streampipe.OutputStreamPipe;
 import com.hippo.unifile.UniFile;
+import com.hippo.unifile.UniRandomAccessFile;
 import com.hippo.util.ExceptionUtils;
 import com.hippo.yorozuya.IOUtils;
 import com.hippo.yorozuya.NumberUtils;
 import com.google.firebase.crashlytics.FirebaseCrashlytics;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 public class SpiderInfo {
 
@@ -54,6 +62,21 @@ public class SpiderInfo {
     private static final String VERSION_STR = "VERSION";
     private static final int VERSION = 2;
 
+    /*
+     * Binary format: a fixed size header, then the pToken log.
+     * Header is magic (int), version (int), start page (int), gid (long),
+     * preview pages (int), preview per page (int), pages (int),
+     * token length (byte) and token, zero padded to HEADER_SIZE.
+     * A pToken record is page index (int), pToken length (byte) and pToken.
+     */
+    private static final int MAGIC = 0x45485349; // EHSI
+    private static final int VERSION_BINARY = 3;
+    private static final int HEADER_SIZE = 64;
+    private static final int START_PAGE_OFFSET = 8;
+    private static final int MAX_TOKEN_LENGTH = 31;
+    private static final int RECORD_HEADER_SIZE = 5;
+    private static final int COMPACT_SLACK = 64;
+
     static final String TOKEN_FAILED = "failed";
 
     public int startPage = 0;
@@ -62,24 +85,59 @@ public class SpiderInfo {
     public int pages = -1;
     public int previewPages = -1;
     public int previewPerPage = -1;
-    public SparseArray<String> pTokenMap = null;
+    public PTokenTable pTokenMap = null;
 
+    // What is in the file mSavedUri, null if unknown
+    @Nullable
+    private PTokenTable mSavedPTokens;
+    @Nullable
+    private Uri mSavedUri;
+    private byte[] mSavedHeader;
+    private long mSavedLength;
+    private int mSavedRecords;
+
+    /**
+     * Read spider info from the file. Local file is memory mapped.
+     * The returned spider info remembers the file, later {@link #save(UniFile)}
+     * on the same file only appends new pTokens.
+     */
     public static SpiderInfo read(@Nullable UniFile file) {
         if (file == null) {
             return null;
         }
 
-        InputStream is = null;
         try {
-            is = file.openInputStream();
-            return read(is);
+            ByteBuffer buffer;
+            File f = toFile(file);
+            if (f != null) {
+                try (FileInputStream fis = new FileInputStream(f)) {
+                    FileChannel channel = fis.getChannel();
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+            } else {
+                try (InputStream is = file.openInputStream()) {
+                    buffer = ByteBuffer.wrap(IOUtils.getAllByte(is));
+                }
+            }
+            SpiderInfo spiderInfo = read(buffer);
+            if (spiderInfo != null && spiderInfo.mSavedPTokens != null) {
+                spiderInfo.mSavedUri = file.getUri();
+            }
+            return spiderInfo;
         } catch (IOException e) {
             return null;
-        } finally {
-            IOUtils.closeQuietly(is);
         }
     }
 
+    @Nullable
+    private static File toFile(UniFile file) {
+        Uri uri = file.getUri();
+        if (ContentResolver.SCHEME_FILE.equals(uri.getScheme()) && uri.getPath() != null) {
+            return new File(uri.getPath());
+        }
+        return null;
+    }
+
     private static int getStartPage(String str) {
         if (null == str) {
             return 0;
@@ -111,21 +169,99 @@ public class SpiderInfo {
     }
 
     @Nullable
-    @SuppressWarnings("InfiniteLoopStatement")
     public static SpiderInfo read(@Nullable InputStream is) {
         if (null == is) {
             return null;
         }
 
-        SpiderInfo spiderInfo = null;
         try {
-            spiderInfo = new SpiderInfo();
+            return read(ByteBuffer.wrap(IOUtils.getAllByte(is)));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Nullable
+    private static SpiderInfo read(ByteBuffer buffer) {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        SpiderInfo spiderInfo;
+        if (buffer.remaining() >= HEADER_SIZE && buffer.getInt(buffer.position()) == MAGIC) {
+            spiderInfo = readBinary(buffer);
+        } else {
+            spiderInfo = readText(buffer);
+        }
+
+        if (spiderInfo == null || spiderInfo.gid == -1 || spiderInfo.token == null ||
+                spiderInfo.pages == -1 || spiderInfo.pTokenMap == null) {
+            return null;
+        } else {
+            return spiderInfo;
+        }
+    }
+
+    @Nullable
+    private static SpiderInfo readBinary(ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.getInt(); // Magic
+        if (buffer.getInt() != VERSION_BINARY) {
+            return null;
+        }
+        SpiderInfo spiderInfo = new SpiderInfo();
+        spiderInfo.startPage = Math.max(buffer.getInt(), 0);
+        spiderInfo.gid = buffer.getLong();
+        spiderInfo.previewPages = buffer.getInt();
+        spiderInfo.previewPerPage = buffer.getInt();
+        spiderInfo.pages = buffer.getInt();
+        int tokenLength = buffer.get() & 0xff;
+        if (spiderInfo.pages <= 0 || tokenLength > MAX_TOKEN_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[MAX_TOKEN_LENGTH];
+        buffer.get(bytes, 0, tokenLength);
+        spiderInfo.token = new String(bytes, 0, tokenLength, StandardCharsets.US_ASCII);
+        buffer.position(start + HEADER_SIZE);
+
+        // PToken log, later record wins. A broken tail is a record which was being appended.
+        PTokenTable pTokenMap = new PTokenTable(spiderInfo.pages);
+        int records = 0;
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int index = buffer.getInt();
+            int length = buffer.get() & 0xff;
+            if (buffer.remaining() < length) {
+                break;
+            }
+            buffer.get(bytes, 0, Math.min(length, bytes.length));
+            if (length > bytes.length) {
+                buffer.position(buffer.position() + length - bytes.length);
+                continue;
+            }
+            if (index >= 0 && index < spiderInfo.pages && length > 0) {
+                pTokenMap.put(index, new String(bytes, 0, length, StandardCharsets.US_ASCII));
+            }
+            records++;
+        }
+        spiderInfo.pTokenMap = pTokenMap;
+
+        spiderInfo.mSavedPTokens = pTokenMap.clone();
+        spiderInfo.mSavedLength = buffer.position() - start;
+        spiderInfo.mSavedRecords = records;
+        spiderInfo.mSavedHeader = spiderInfo.encodeHeader();
+        return spiderInfo;
+    }
+
+    /**
+     * Legacy text format, one value in a line and one pToken in a line.
+     */
+    @Nullable
+    private static SpiderInfo readText(ByteBuffer buffer) {
+        SpiderInfo spiderInfo = new SpiderInfo();
+        try {
             // Get version
-            String line = IOUtils.readAsciiLine(is);
+            String line = readAsciiLine(buffer);
             int version = getVersion(line);
             if (version == VERSION) {
                 // Read next line
-                line = IOUtils.readAsciiLine(is);
+                line = readAsciiLine(buffer);
             } else if (version == 1) {
                 // pass
             } else {
@@ -135,30 +271,29 @@ public class SpiderInfo {
             // Start page
             spiderInfo.startPage = getStartPage(line);
             // Gid
-            spiderInfo.gid = Long.parseLong(IOUtils.readAsciiLine(is));
+            spiderInfo.gid = Long.parseLong(readAsciiLine(buffer));
             // Token
-            spiderInfo.token = IOUtils.readAsciiLine(is);
+            spiderInfo.token = readAsciiLine(buffer);
             // Deprecated, mode, skip it
-            IOUtils.readAsciiLine(is);
+            readAsciiLine(buffer);
             // Preview pages
-            spiderInfo.previewPages = Integer.parseInt(IOUtils.readAsciiLine(is));
+            spiderInfo.previewPages = Integer.parseInt(readAsciiLine(buffer));
             // Preview pre page
-            line = IOUtils.readAsciiLine(is);
+            line = readAsciiLine(buffer);
             if (version == 1) {
                 // Skip it
             } else {
                 spiderInfo.previewPerPage = Integer.parseInt(line);
             }
             // Pages
-            spiderInfo.pages = Integer.parseInt(IOUtils.readAsciiLine(is));
+            spiderInfo.pages = Integer.parseInt(readAsciiLine(buffer));
             // Check pages
             if (spiderInfo.pages <= 0) {
                 return null;
             }
             // PToken
-            spiderInfo.pTokenMap = new SparseArray<>(spiderInfo.pages);
-            while (true) { // EOFException will raise
-                line = IOUtils.readAsciiLine(is);
+            spiderInfo.pTokenMap = new PTokenTable(spiderInfo.pages);
+            while ((line = readAsciiLine(buffer)) != null) {
                 int pos = line.indexOf(" ");
                 if (pos > 0) {
                     int index = Integer.parseInt(line.substring(0, pos));
@@ -170,59 +305,221 @@ public class SpiderInfo {
                     Log.e(TAG, "Can't parse index and pToken, index = " + pos);
                 }
             }
-        } catch (IOException | NumberFormatException e) {
+        } catch (NumberFormatException e) {
             // Ignore
         }
+        return spiderInfo;
+    }
 
-        if (spiderInfo == null || spiderInfo.gid == -1 || spiderInfo.token == null ||
-                spiderInfo.pages == -1 || spiderInfo.pTokenMap == null) {
+    /**
+     * @return the line without line terminator, {@code null} if no line
+     */
+    @Nullable
+    private static String readAsciiLine(ByteBuffer buffer) {
+        if (!buffer.hasRemaining()) {
             return null;
-        } else {
-            return spiderInfo;
         }
+        StringBuilder sb = new StringBuilder(16);
+        while (buffer.hasRemaining()) {
+            char c = (char) (buffer.get() & 0xff);
+            if (c == '\n') {
+                break;
+            }
+            sb.append(c);
+        }
+        int length = sb.length();
+        if (length > 0 && sb.charAt(length - 1) == '\r') {
+            sb.setLength(length - 1);
+        }
+        return sb.toString();
+    }
+
+    private static boolean isValidPToken(String pToken) {
+        return !TextUtils.isEmpty(pToken) && !TOKEN_FAILED.equals(pToken) &&
+                pToken.length() <= MAX_TOKEN_LENGTH;
     }
 
+    private byte[] encodeHeader() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION_BINARY);
+        header.putInt(Math.max(startPage, 0)); // Avoid negative
+        header.putLong(gid);
+        header.putInt(previewPages);
+        header.putInt(previewPerPage);
+        header.putInt(pages);
+        byte[] tokenBytes = token != null ? token.getBytes(StandardCharsets.US_ASCII) : new byte[0];
+        int tokenLength = Math.min(tokenBytes.length, MAX_TOKEN_LENGTH);
+        header.put((byte) tokenLength);
+        header.put(tokenBytes, 0, tokenLength);
+        return header.array();
+    }
+
+    private static boolean equalsExceptStartPage(byte[] header1, byte[] header2) {
+        if (header1 == null || header2 == null || header1.length != header2.length) {
+            return false;
+        }
+        for (int i = 0; i < header1.length; i++) {
+            if ((i < START_PAGE_OFFSET || i >= START_PAGE_OFFSET + 4) && header1[i] != header2[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void putRecord(ByteBuffer buffer, int index, String pToken) {
+        byte[] bytes = pToken.getBytes(StandardCharsets.US_ASCII);
+        buffer.putInt(index);
+        buffer.put((byte) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static int getRecordSize(String pToken) {
+        return RECORD_HEADER_SIZE + pToken.length();
+    }
+
+    /**
+     * Write the whole spider info in compact binary format.
+     */
     public void write(@NonNull OutputStream os) {
-        OutputStreamWriter writer = null;
         try {
-            writer = new OutputStreamWriter(os);
-            writer.write(VERSION_STR);
-            writer.write(Integer.toString(VERSION));
-            writer.write("\n");
-            writer.write(String.format("%08x", Math.max(startPage, 0))); // Avoid negative
-            writer.write("\n");
-            writer.write(Long.toString(gid));
-            writer.write("\n");
-            writer.write(token);
-            writer.write("\n");
-            writer.write("1");
-            writer.write("\n");
-            writer.write(Integer.toString(previewPages));
-            writer.write("\n");
-            writer.write(Integer.toString(previewPerPage));
-            writer.write("\n");
-            writer.write(Integer.toString(pages));
-            writer.write("\n");
-            for (int i = 0; i < pTokenMap.size(); i++) {
-                int key = pTokenMap.keyAt(i);
-                String value = pTokenMap.valueAt(i);
-                if (TOKEN_FAILED.equals(value) || TextUtils.isEmpty(value)) {
-                    continue;
-                }
-                writer.write(Integer.toString(key));
-                writer.write(" ");
-                writer.write(value);
-                writer.write("\n");
-            }
-            writer.flush();
+            writeCompacted(os, false);
         } catch (IOException e) {
             // Ignore
         } finally {
-            IOUtils.closeQuietly(writer);
             IOUtils.closeQuietly(os);
         }
     }
 
+    /**
+     * @param remember true if the output stream is the file which {@link #save(UniFile)} writes to
+     */
+    private synchronized void writeCompacted(@NonNull OutputStream os, boolean remember) throws IOException {
+        PTokenTable saved = new PTokenTable(pages);
+        int size = HEADER_SIZE;
+        for (int i = 0, n = pTokenMap.size(); i < n; i++) {
+            String value = pTokenMap.valueAt(i);
+            if (isValidPToken(value)) {
+                saved.append(pTokenMap.keyAt(i), value);
+                size += getRecordSize(value);
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        byte[] header = encodeHeader();
+        buffer.put(header);
+        for (int i = 0, n = saved.size(); i < n; i++) {
+            putRecord(buffer, saved.keyAt(i), saved.valueAt(i));
+        }
+        os.write(buffer.array(), 0, buffer.position());
+        os.flush();
+
+        if (!remember) {
+            return;
+        }
+        mSavedPTokens = saved;
+        mSavedLength = size;
+        mSavedRecords = saved.size();
+        mSavedHeader = header;
+    }
+
+    /**
+     * Save spider info to the file. If the file is the one which this spider info
+     * is read from or saved to, only the header and new pTokens are written.
+     * The pToken log is compacted if it has too many overwritten records.
+     */
+    public synchronized void save(@NonNull UniFile file) {
+        if (mSavedPTokens != null && file.getUri().equals(mSavedUri)) {
+            try {
+                if (append(file)) {
+                    return;
+                }
+            } catch (Throwable e) {
+                ExceptionUtils.throwIfFatal(e);
+                // Rewrite it
+            }
+        }
+
+        OutputStream os = null;
+        try {
+            mSavedPTokens = null;
+            os = file.openOutputStream();
+            writeCompacted(os, true);
+            mSavedUri = file.getUri();
+        } catch (Throwable e) {
+            ExceptionUtils.throwIfFatal(e);
+            mSavedUri = null;
+        } finally {
+            IOUtils.closeQuietly(os);
+        }
+    }
+
+    /**
+     * @return false if the file should be rewritten
+     */
+    private boolean append(@NonNull UniFile file) throws IOException {
+        PTokenTable saved = mSavedPTokens;
+        PTokenTable newPTokens = new PTokenTable();
+        int size = 0;
+        for (int i = 0, n = pTokenMap.size(); i < n; i++) {
+            int key = pTokenMap.keyAt(i);
+            String value = pTokenMap.valueAt(i);
+            if (isValidPToken(value) && !value.equals(saved.get(key))) {
+                newPTokens.append(key, value);
+                size += getRecordSize(value);
+            }
+        }
+
+        byte[] header = encodeHeader();
+        boolean headerChanged = !Arrays.equals(header, mSavedHeader);
+        // Only start page could be changed in place, pTokens of other gallery must be dropped
+        if (headerChanged && !equalsExceptStartPage(header, mSavedHeader)) {
+            return false;
+        }
+        if (!headerChanged && newPTokens.size() == 0) {
+            return true;
+        }
+        // Too many dead records, compact it
+        int records = mSavedRecords + newPTokens.size();
+        if (records > 2 * pTokenMap.size() + COMPACT_SLACK) {
+            return false;
+        }
+
+        UniRandomAccessFile raf = file.createRandomAccessFile("rw");
+        if (raf == null) {
+            return false;
+        }
+        try {
+            // Changed by others
+            if (raf.length() != mSavedLength) {
+                return false;
+            }
+            if (newPTokens.size() > 0) {
+                ByteBuffer buffer = ByteBuffer.allocate(size);
+                for (int i = 0, n = newPTokens.size(); i < n; i++) {
+                    putRecord(buffer, newPTokens.keyAt(i), newPTokens.valueAt(i));
+                }
+                raf.seek(mSavedLength);
+                raf.write(buffer.array(), 0, size);
+            }
+            // Header is fixed size, write it after records, readers always see a valid log
+            if (headerChanged) {
+                raf.seek(0);
+                raf.write(header, 0, header.length);
+            }
+        } finally {
+            raf.close();
+        }
+
+        for (int i = 0, n = newPTokens.size(); i < n; i++) {
+            saved.put(newPTokens.keyAt(i), newPTokens.valueAt(i));
+        }
+        mSavedLength += size;
+        mSavedRecords = records;
+        mSavedHeader = header;
+        return true;
+    }
+
     public void updateSpiderInfo(SpiderInfo newInfo){
         this.pages = newInfo.pages;
         this.gid = newInfo.gid;
@@ -235,11 +532,8 @@ public class SpiderInfo {
         UniFile downloadDir = spiderDen.getDownloadDir();
         if (downloadDir != null) {
             UniFile file = downloadDir.createFile(SPIDER_INFO_FILENAME);
-            try {
-                write(file.openOutputStream());
-            } catch (Throwable e) {
-                ExceptionUtils.throwIfFatal(e);
-                // Ignore
+            if (file != null) {
+                save(file);
             }
             // Read from cache
             OutputStreamPipe pipe = EhApplication.getSpiderInfoCache(context).getOutputStreamPipe(Long.toString(gid));
@@ -319,7 +613,7 @@ public class SpiderInfo {
             spiderInfo.token = info.token;
 //            spiderInfo.pages = GalleryDetailParser.parsePages(info.body);
             spiderInfo.pages = info.SpiderInfoPages;
-            spiderInfo.pTokenMap = new SparseArray<>(spiderInfo.pages);
+            spiderInfo.pTokenMap = new PTokenTable(spiderInfo.pages);
             readPreviews(info, 0, spiderInfo);
             return spiderInfo;
         } catch (ParseException e) {
@@ -23,9 +23,9 @@ import android.content.Context;
 import android.graphics.BitmapFactory;
 import android.os.AsyncTask;
 import android.os.Process;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
-import android.util.SparseArray;
 import android.webkit.MimeTypeMap;
 
 import androidx.annotation.IntDef;
@@ -50,8 +50,8 @@ import com.hippo.ehviewer.client.parser.GalleryPageApiParser;
 import com.hippo.ehviewer.client.parser.GalleryPageParser;
 import com.hippo.ehviewer.client.parser.GalleryPageUrlParser;
 import com.hippo.ehviewer.gallery.GalleryProvider2;
-import com.hippo.lib.glgallery.GalleryPageView;
 import com.hippo.lib.glgallery.GalleryProvider;
+import com.hippo.lib.glgallery.PageImageDecoder;
 import com.hippo.image.Image;
 import com.hippo.streampipe.InputStreamPipe;
 import com.hippo.streampipe.OutputStreamPipe;
@@ -66,7 +66,6 @@ import com.hippo.yorozuya.StringUtils;
 import com.hippo.yorozuya.Utilities;
 import com.hippo.yorozuya.collect.SparseJLArray;
 import com.hippo.yorozuya.thread.PriorityThread;
-import com.hippo.yorozuya.thread.PriorityThreadFactory;
 import com.google.firebase.crashlytics.FirebaseCrashlytics;
 
 import java.io.BufferedInputStream;
@@ -76,15 +75,16 @@ import java.io.OutputStream;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.atomic.AtomicReference;
 
 import okhttp3.Call;
@@ -116,6 +116,16 @@ public final class SpiderQueen implements Runnable {
             "/509s.gif"
     };
     private static final SparseJLArray<SpiderQueen> sQueenMap = new SparseJLArray<>();
+    // Min interval between two progress notifications of one page
+    private static final long PROGRESS_INTERVAL = 100;
+    private static final int TRANSFER_BUFFER_SIZE = 32 * 1024;
+    // Worker threads are shared by all queens, so do transfer buffers
+    private static final ThreadLocal<byte[]> sTransferBuffer = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[TRANSFER_BUFFER_SIZE];
+        }
+    };
     @NonNull
     private final OkHttpClient mHttpClient;
     @NonNull
@@ -128,27 +138,32 @@ public final class SpiderQueen implements Runnable {
     private final SpiderDen mSpiderDen;
     private final Object mQueenLock = new Object();
     private final Thread[] mDecodeThreadArray = new Thread[DECODE_THREAD_NUM];
-    private final int[] mDecodeIndexArray = new int[DECODE_THREAD_NUM];
-    private final Queue<Integer> mDecodeRequestQueue = new LinkedList<>();
+    // Pages in decode queue or being decoded, a page is only added to the queue
+    // if it is added here, and removed from here when it is decoded or canceled
+    private final Set<Integer> mDecodePages =
+            Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final PageRequestQueue mDecodeRequestQueue = new PageRequestQueue();
+    private final Object mDecodeLock = new Object();
     private final Object mWorkerLock = new Object();
     private final Object mPTokenLock = new Object();
     private final AtomicReference<SpiderInfo> mSpiderInfo = new AtomicReference<>();
     private final Queue<Integer> mRequestPTokenQueue = new ConcurrentLinkedQueue<>();
     private final Object mPageStateLock = new Object();
     // Store request page. The index may be invalid
-    private final Queue<Integer> mRequestPageQueue = new LinkedList<>();
+    private final PageRequestQueue mRequestPageQueue = new PageRequestQueue();
     // Store preload page. The index may be invalid
-    private final Queue<Integer> mRequestPageQueue2 = new LinkedList<>();
+    private final PageRequestQueue mRequestPageQueue2 = new PageRequestQueue();
     // Store force request page. The index may be invalid
-    private final Queue<Integer> mForceRequestPageQueue = new LinkedList<>();
+    private final PageRequestQueue mForceRequestPageQueue = new PageRequestQueue();
     private final AtomicInteger mDownloadedPages = new AtomicInteger(0);
     private final AtomicInteger mFinishedPages = new AtomicInteger(0);
     private final Object showKeyLock = new Object();
     // Store page error
     private final ConcurrentHashMap<Integer, String> mPageErrorMap = new ConcurrentHashMap<>();
-    // Store page download percent
-    private final ConcurrentHashMap<Integer, Float> mPagePercentMap = new ConcurrentHashMap<>();
     private final List<OnSpiderListener> mSpiderListeners = new ArrayList<>();
+    // Threads of SpiderScheduler which are working for this queen
+    private final Set<Thread> mWorkerThreads = new HashSet<>();
+    private final SpiderWorker mSpiderWorker;
     private final int mWorkerMaxCount;
     private final int mPreloadNumber;
     private final int mDownloadDelay;
@@ -157,12 +172,15 @@ public final class SpiderQueen implements Runnable {
     // It mQueenThread is null, failed or stopped
     @Nullable
     private volatile Thread mQueenThread;
-    private ThreadPoolExecutor mWorkerPoolExecutor;
-    private int mWorkerCount;
     private volatile int[] mPageStateArray;
+    // Received size and content length of downloading pages, 2 slots for each page
+    private volatile AtomicLongArray mPageProgressArray;
     // For download, when it go to mPageStateArray.size(), done
-    private volatile int mDownloadPage = -1;
+    private final AtomicInteger mDownloadPage = new AtomicInteger(-1);
     private final AtomicReference<String> showKey = new AtomicReference<>();
+    // Decoder of the reader, null for full size
+    @Nullable
+    private volatile PageImageDecoder mImageDecoder;
 
     private SpiderQueen(EhApplication application, @NonNull GalleryInfo galleryInfo) {
         mHttpClient = EhApplication.getOkHttpClient(application);
@@ -170,17 +188,11 @@ public final class SpiderQueen implements Runnable {
         mSpiderInfoCache = EhApplication.getSpiderInfoCache(application);
         mGalleryInfo = galleryInfo;
         mSpiderDen = new SpiderDen(mGalleryInfo);
+        mSpiderWorker = new SpiderWorker();
 
-        mWorkerMaxCount = MathUtils.clamp(Settings.getMultiThreadDownload(), 1, 10);
+        mWorkerMaxCount = MathUtils.clamp(Settings.getMultiThreadDownload(), 1, SpiderScheduler.MAX_WORKERS);
         mPreloadNumber = MathUtils.clamp(Settings.getPreloadImage(), 0, 100);
 
-        for (int i = 0; i < DECODE_THREAD_NUM; i++) {
-            mDecodeIndexArray[i] = GalleryPageView.INVALID_INDEX;
-        }
-
-        mWorkerPoolExecutor = new ThreadPoolExecutor(mWorkerMaxCount, mWorkerMaxCount,
-                0, TimeUnit.SECONDS, new LinkedBlockingDeque<>(),
-                new PriorityThreadFactory(SpiderWorker.class.getSimpleName(), Process.THREAD_PRIORITY_BACKGROUND));
         mDownloadDelay = Settings.getDownloadDelay();
     }
 
@@ -244,15 +256,6 @@ public final class SpiderQueen implements Runnable {
         }
     }
 
-    public static boolean contain(int[] array, int value) {
-        for (int v : array) {
-            if (v == value) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     public void addOnSpiderListener(OnSpiderListener listener) {
         synchronized (mSpiderListeners) {
             mSpiderListeners.add(listener);
@@ -265,6 +268,10 @@ public final class SpiderQueen implements Runnable {
         }
     }
 
+    public void setImageDecoder(@Nullable PageImageDecoder decoder) {
+        mImageDecoder = decoder;
+    }
+
     private void notifyGetPages(int pages) {
         synchronized (mSpiderListeners) {
             for (OnSpiderListener listener : mSpiderListeners) {
@@ -289,6 +296,36 @@ public final class SpiderQueen implements Runnable {
         }
     }
 
+    private void setPageProgress(int index, long contentLength, long receivedSize) {
+        AtomicLongArray progressArray = mPageProgressArray;
+        if (progressArray != null && index >= 0 && index * 2 < progressArray.length()) {
+            progressArray.lazySet(index * 2, receivedSize);
+            progressArray.lazySet(index * 2 + 1, contentLength);
+        }
+    }
+
+    private void clearPageProgress() {
+        AtomicLongArray progressArray = mPageProgressArray;
+        if (progressArray != null) {
+            for (int i = 0, n = progressArray.length(); i < n; i++) {
+                progressArray.lazySet(i, 0);
+            }
+        }
+    }
+
+    @Nullable
+    private Float getPagePercent(int index) {
+        AtomicLongArray progressArray = mPageProgressArray;
+        if (progressArray == null || index < 0 || index * 2 >= progressArray.length()) {
+            return null;
+        }
+        long contentLength = progressArray.get(index * 2 + 1);
+        if (contentLength <= 0) {
+            return null;
+        }
+        return (float) progressArray.get(index * 2) / contentLength;
+    }
+
     private void notifyPageSuccess(int index) {
         int size = -1;
         int[] temp = mPageStateArray;
@@ -359,15 +396,10 @@ public final class SpiderQueen implements Runnable {
 
         // Update download page
         boolean intoDownloadMode = false;
-        synchronized (mRequestPageQueue) {
-            if (mode == MODE_DOWNLOAD) {
-                if (mDownloadPage < 0) {
-                    mDownloadPage = 0;
-                    intoDownloadMode = true;
-                }
-            } else {
-                mDownloadPage = -1;
-            }
+        if (mode == MODE_DOWNLOAD) {
+            intoDownloadMode = mDownloadPage.compareAndSet(-1, 0);
+        } else {
+            mDownloadPage.set(-1);
         }
 
         if (intoDownloadMode && mPageStateArray != null) {
@@ -383,7 +415,7 @@ public final class SpiderQueen implements Runnable {
                 mDownloadedPages.lazySet(0);
                 mFinishedPages.lazySet(0);
                 mPageErrorMap.clear();
-                mPagePercentMap.clear();
+                clearPageProgress();
             }
             // Ensure download workers
             ensureWorkers();
@@ -475,19 +507,47 @@ public final class SpiderQueen implements Runnable {
         }
     }
 
-    private void tryToEnsureWorkers() {
-        boolean startWorkers = false;
-        synchronized (mRequestPageQueue) {
-            if (mPageStateArray != null &&
-                    (!mForceRequestPageQueue.isEmpty() ||
-                            !mRequestPageQueue.isEmpty() ||
-                            !mRequestPageQueue2.isEmpty() ||
-                            mDownloadPage >= 0 && mDownloadPage < mPageStateArray.length)) {
-                startWorkers = true;
+    /**
+     * @return the highest priority of pages wait to download,
+     * {@link SpiderScheduler#PRIORITY_NONE} for nothing to do
+     */
+    int getPendingPriority() {
+        int[] pageStateArray = mPageStateArray;
+        if (mQueenThread == null || pageStateArray == null) {
+            return SpiderScheduler.PRIORITY_NONE;
+        }
+        int downloadPage = mDownloadPage.get();
+        if (!mForceRequestPageQueue.isEmpty()) {
+            return SpiderScheduler.PRIORITY_FORCE_READ;
+        } else if (!mRequestPageQueue.isEmpty()) {
+            return SpiderScheduler.PRIORITY_READ;
+        } else if (!mRequestPageQueue2.isEmpty()) {
+            return SpiderScheduler.PRIORITY_READ_AHEAD;
+        } else if (downloadPage >= 0 && downloadPage < pageStateArray.length) {
+            return SpiderScheduler.PRIORITY_DOWNLOAD;
+        } else {
+            return SpiderScheduler.PRIORITY_NONE;
+        }
+    }
+
+    private int nextDownloadPage(int size) {
+        for (;;) {
+            int page = mDownloadPage.get();
+            if (page < 0 || page >= size) {
+                return PageRequestQueue.INVALID_INDEX;
+            }
+            if (mDownloadPage.compareAndSet(page, page + 1)) {
+                return page;
             }
         }
+    }
 
-        if (startWorkers) {
+    int getWorkerMaxCount() {
+        return mWorkerMaxCount;
+    }
+
+    private void tryToEnsureWorkers() {
+        if (getPendingPriority() != SpiderScheduler.PRIORITY_NONE) {
             ensureWorkers();
         }
     }
@@ -497,11 +557,9 @@ public final class SpiderQueen implements Runnable {
             return;
         }
 
-        synchronized (mRequestPageQueue) {
-            mRequestPageQueue.remove(index);
-        }
-        synchronized (mDecodeRequestQueue) {
-            mDecodeRequestQueue.remove(index);
+        mRequestPageQueue.remove(index);
+        if (mDecodeRequestQueue.remove(index)) {
+            mDecodePages.remove(index);
         }
     }
 
@@ -527,29 +585,27 @@ public final class SpiderQueen implements Runnable {
         }
 
         // Add to request
-        synchronized (mRequestPageQueue) {
-            if (state == STATE_NONE) {
-                if (force) {
-                    mForceRequestPageQueue.add(index);
-                } else {
-                    mRequestPageQueue.add(index);
-                }
+        if (state == STATE_NONE) {
+            if (force) {
+                mForceRequestPageQueue.add(index);
+            } else {
+                mRequestPageQueue.add(index);
             }
+        }
 
-            // Add next some pages to request queue
-            if (addNeighbor) {
-                mRequestPageQueue2.clear();
-                int[] pageStateArray = mPageStateArray;
-                int size;
-                if (pageStateArray != null) {
-                    size = pageStateArray.length;
-                } else {
-                    size = Integer.MAX_VALUE;
-                }
-                for (int i = index + 1, n = index + 1 + mPreloadNumber; i < n && i < size; i++) {
-                    if (STATE_NONE == getPageState(i)) {
-                        mRequestPageQueue2.add(i);
-                    }
+        // Add next some pages to request queue
+        if (addNeighbor) {
+            mRequestPageQueue2.clear();
+            int[] pageStateArray = mPageStateArray;
+            int size;
+            if (pageStateArray != null) {
+                size = pageStateArray.length;
+            } else {
+                size = Integer.MAX_VALUE;
+            }
+            for (int i = index + 1, n = index + 1 + mPreloadNumber; i < n && i < size; i++) {
+                if (STATE_NONE == getPageState(i)) {
+                    mRequestPageQueue2.add(i);
                 }
             }
         }
@@ -562,7 +618,7 @@ public final class SpiderQueen implements Runnable {
                 result = null;
                 break;
             case STATE_DOWNLOADING:
-                result = mPagePercentMap.get(index);
+                result = getPagePercent(index);
                 break;
             case STATE_FAILED:
                 String error = mPageErrorMap.get(index);
@@ -572,10 +628,14 @@ public final class SpiderQueen implements Runnable {
                 result = error;
                 break;
             case STATE_FINISHED:
-                synchronized (mDecodeRequestQueue) {
-                    if (!contain(mDecodeIndexArray, index) && !mDecodeRequestQueue.contains(index)) {
-                        mDecodeRequestQueue.add(index);
-                        mDecodeRequestQueue.notify();
+                // The set makes the check and the add one step
+                if (mDecodePages.add(index)) {
+                    if (mDecodeRequestQueue.add(index)) {
+                        synchronized (mDecodeLock) {
+                            mDecodeLock.notify();
+                        }
+                    } else {
+                        mDecodePages.remove(index);
                     }
                 }
                 result = null;
@@ -588,23 +648,47 @@ public final class SpiderQueen implements Runnable {
     }
 
     private void ensureWorkers() {
-        synchronized (mWorkerLock) {
-            if (null == mWorkerPoolExecutor) {
-                Log.e(TAG, "Try to start worker after stopped");
-                return;
+        if (mQueenThread == null) {
+            Log.e(TAG, "Try to start worker after stopped");
+            return;
+        }
+
+        SpiderScheduler.schedule(this);
+    }
+
+    /**
+     * Called by {@link SpiderScheduler} in worker thread, download one page.
+     *
+     * @return false if the queen can't work now
+     */
+    boolean runWorker() {
+        Thread thread = Thread.currentThread();
+        synchronized (mWorkerThreads) {
+            if (mQueenThread == null) {
+                // Stopped
+                return false;
             }
+            mWorkerThreads.add(thread);
+        }
 
-           try {
-               for (; mWorkerCount < mWorkerMaxCount; mWorkerCount++) {
-                   mWorkerPoolExecutor.execute(new SpiderWorker());
-               }
-           }catch (OutOfMemoryError outOfMemoryError){
-               FirebaseCrashlytics.getInstance().recordException(outOfMemoryError);
-               notifyFinish();
-           }
+        try {
+            return mSpiderDen.isReady() && !thread.isInterrupted() && mSpiderWorker.runInternal();
+        } finally {
+            synchronized (mWorkerThreads) {
+                mWorkerThreads.remove(thread);
+            }
+            // The thread is shared, clear interrupted state
+            Thread.interrupted();
         }
     }
 
+    /**
+     * Called by {@link SpiderScheduler} when no worker is working for this queen.
+     */
+    void onWorkersIdle() {
+        notifyFinish();
+    }
+
     public boolean save(int index, @NonNull UniFile file) {
         int state = getPageState(index);
         if (STATE_FINISHED != state) {
@@ -802,7 +886,7 @@ public final class SpiderQueen implements Runnable {
             String body = response.body().string();
 
             spiderInfo.pages = GalleryDetailParser.parsePages(body);
-            spiderInfo.pTokenMap = new SparseArray<>(spiderInfo.pages);
+            spiderInfo.pTokenMap = new PTokenTable(spiderInfo.pages);
             readPreviews(body, 0, spiderInfo);
             return spiderInfo;
         } catch (Throwable e) {
@@ -861,11 +945,9 @@ public final class SpiderQueen implements Runnable {
         UniFile downloadDir = mSpiderDen.getDownloadDir();
         if (downloadDir != null) {
             UniFile file = downloadDir.createFile(SPIDER_INFO_FILENAME);
-            try {
-                spiderInfo.write(file.openOutputStream());
-            } catch (Throwable e) {
-                ExceptionUtils.throwIfFatal(e);
-                // Ignore
+            if (file != null) {
+                // Only new pTokens are appended
+                spiderInfo.save(file);
             }
         }
 
@@ -917,6 +999,7 @@ public final class SpiderQueen implements Runnable {
 
         // Setup page state
         synchronized (mPageStateLock) {
+            mPageProgressArray = new AtomicLongArray(spiderInfo.pages * 2);
             mPageStateArray = new int[spiderInfo.pages];
         }
 
@@ -928,7 +1011,7 @@ public final class SpiderQueen implements Runnable {
 
         // Start decoder
         for (int i = 0; i < DECODE_THREAD_NUM; i++) {
-            Thread decoderThread = new PriorityThread(new SpiderDecoder(i),
+            Thread decoderThread = new PriorityThread(new SpiderDecoder(),
                     "SpiderDecoder-" + i, Process.THREAD_PRIORITY_DEFAULT);
             mDecodeThreadArray[i] = decoderThread;
             decoderThread.start();
@@ -993,7 +1076,9 @@ public final class SpiderQueen implements Runnable {
         runInternal();
 
         // Set mQueenThread null
-        mQueenThread = null;
+        synchronized (mWorkerThreads) {
+            mQueenThread = null;
+        }
 
         // Interrupt decoder
         for (Thread decoderThread : mDecodeThreadArray) {
@@ -1003,9 +1088,11 @@ public final class SpiderQueen implements Runnable {
         }
 
         // Interrupt all workers
-        synchronized (mWorkerLock) {
-            mWorkerPoolExecutor.shutdownNow();
-            mWorkerPoolExecutor = null;
+        SpiderScheduler.unregister(this);
+        synchronized (mWorkerThreads) {
+            for (Thread workerThread : mWorkerThreads) {
+                workerThread.interrupt();
+            }
         }
         notifyFinish();
 
@@ -1043,7 +1130,7 @@ public final class SpiderQueen implements Runnable {
             if (state == STATE_DOWNLOADING) {
                 mPageErrorMap.remove(index);
             } else if (state == STATE_FINISHED || state == STATE_FAILED) {
-                mPagePercentMap.remove(index);
+                setPageProgress(index, 0, 0);
             }
 
             // Get default error
@@ -1057,8 +1144,10 @@ public final class SpiderQueen implements Runnable {
 
         // Notify listeners
         if (state == STATE_FAILED) {
+            SpiderScheduler.onPageDone(this, false);
             notifyPageFailure(index, error);
         } else if (state == STATE_FINISHED) {
+            SpiderScheduler.onPageDone(this, true);
             notifyPageSuccess(index);
         }
     }
@@ -1125,7 +1214,7 @@ public final class SpiderQueen implements Runnable {
         }
     }
 
-    private class SpiderWorker implements Runnable {
+    private class SpiderWorker {
 
         private final long mGid;
 
@@ -1373,8 +1462,11 @@ public final class SpiderQueen implements Runnable {
                         osPipe.obtain();
                         OutputStream os = osPipe.open();
 
-                        final byte[] data = new byte[1024 * 4];
+                        final byte[] data = sTransferBuffer.get();
                         long receivedSize = 0;
+                        // Bytes read since last notification
+                        int pendingBytes = 0;
+                        long lastNotifyTime = 0;
 
                         while (!Thread.currentThread().isInterrupted()) {
                             int bytesRead = is.read(data);
@@ -1384,12 +1476,19 @@ public final class SpiderQueen implements Runnable {
                             }
                             os.write(data, 0, bytesRead);
                             receivedSize += bytesRead;
+                            pendingBytes += bytesRead;
                             // Update page percent
-                            if (contentLength > 0) {
-                                mPagePercentMap.put(index, (float) receivedSize / contentLength);
+                            setPageProgress(index, contentLength, receivedSize);
+                            // Notify listener, at most once in a interval
+                            long now = SystemClock.uptimeMillis();
+                            if (now - lastNotifyTime >= PROGRESS_INTERVAL) {
+                                notifyPageDownload(index, contentLength, receivedSize, pendingBytes);
+                                pendingBytes = 0;
+                                lastNotifyTime = now;
                             }
-                            // Notify listener
-                            notifyPageDownload(index, contentLength, receivedSize, bytesRead);
+                        }
+                        if (pendingBytes > 0) {
+                            notifyPageDownload(index, contentLength, receivedSize, pendingBytes);
                         }
                         os.flush();
 
@@ -1513,27 +1612,23 @@ public final class SpiderQueen implements Runnable {
             int index;
             // From force request
             boolean force = false;
-            synchronized (mRequestPageQueue) {
-                if (!mForceRequestPageQueue.isEmpty()) {
-                    index = mForceRequestPageQueue.remove();
-                    force = true;
-                } else if (!mRequestPageQueue.isEmpty()) {
-                    index = mRequestPageQueue.remove();
-                } else if (!mRequestPageQueue2.isEmpty()) {
-                    index = mRequestPageQueue2.remove();
-                } else if (mDownloadPage >= 0 && mDownloadPage < size) {
-                    index = mDownloadPage;
-                    mDownloadPage++;
-                } else {
-                    // No index any more, stop
-                    return false;
-                }
+            if ((index = mForceRequestPageQueue.poll()) != PageRequestQueue.INVALID_INDEX) {
+                force = true;
+            } else if ((index = mRequestPageQueue.poll()) != PageRequestQueue.INVALID_INDEX) {
+                // Request
+            } else if ((index = mRequestPageQueue2.poll()) != PageRequestQueue.INVALID_INDEX) {
+                // Preload
+            } else if ((index = nextDownloadPage(size)) != PageRequestQueue.INVALID_INDEX) {
+                // Download
+            } else {
+                // No index any more, stop
+                return false;
+            }
 
-                // Check out of range
-                if (index < 0 || index >= size) {
-                    // Invalid index
-                    return true;
-                }
+            // Check out of range
+            if (index < 0 || index >= size) {
+                // Invalid index
+                return true;
             }
 
             synchronized (mPageStateLock) {
@@ -1565,7 +1660,7 @@ public final class SpiderQueen implements Runnable {
                     if (i >= 0) {
                         String pToken = spiderInfo.pTokenMap.valueAt(i);
                         if (SpiderInfo.TOKEN_FAILED.equals(pToken)) {
-                            spiderInfo.pTokenMap.remove(i);
+                            spiderInfo.pTokenMap.removeAt(i);
                         }
                     }
                 }
@@ -1790,52 +1885,10 @@ public final class SpiderQueen implements Runnable {
 
             return false;
         }
-
-        @Override
-        @SuppressWarnings("StatementWithEmptyBody")
-        public void run() {
-            if (DEBUG_LOG) {
-                Log.i(TAG, Thread.currentThread().getName() + ": start");
-            }
-
-            while (mSpiderDen.isReady() && !Thread.currentThread().isInterrupted() && runInternal())
-                ;
-
-            boolean finish;
-            // Clear in spider worker array
-            synchronized (mWorkerLock) {
-                mWorkerCount--;
-                if (mWorkerCount < 0) {
-                    Log.e(TAG, "WTF, mWorkerCount < 0, not thread safe or something wrong");
-                    mWorkerCount = 0;
-                }
-                finish = mWorkerCount <= 0;
-            }
-
-            if (finish) {
-                notifyFinish();
-            }
-
-            if (DEBUG_LOG) {
-                Log.i(TAG, Thread.currentThread().getName() + ": end");
-            }
-        }
     }
 
     private class SpiderDecoder implements Runnable {
 
-        private final int mThreadIndex;
-
-        public SpiderDecoder(int index) {
-            mThreadIndex = index;
-        }
-
-        private void resetDecodeIndex() {
-            synchronized (mDecodeRequestQueue) {
-                mDecodeIndexArray[mThreadIndex] = GalleryPageView.INVALID_INDEX;
-            }
-        }
-
         @Override
         public void run() {
             if (DEBUG_LOG) {
@@ -1844,30 +1897,29 @@ public final class SpiderQueen implements Runnable {
 
             while (!Thread.currentThread().isInterrupted()) {
                 int index;
-                synchronized (mDecodeRequestQueue) {
-                    if (mDecodeRequestQueue.isEmpty()) {
+                synchronized (mDecodeLock) {
+                    index = mDecodeRequestQueue.poll();
+                    if (index == PageRequestQueue.INVALID_INDEX) {
                         try {
-                            mDecodeRequestQueue.wait();
+                            mDecodeLock.wait();
                         } catch (InterruptedException e) {
                             // Interrupted
                             break;
                         }
                         continue;
                     }
-                    index = mDecodeRequestQueue.remove();
-                    mDecodeIndexArray[mThreadIndex] = index;
                 }
 
                 // Check index valid
                 if (index < 0 || index >= mPageStateArray.length) {
-                    resetDecodeIndex();
+                    mDecodePages.remove(index);
                     notifyGetImageFailure(index, GetText.getString(R.string.error_out_of_range));
                     continue;
                 }
 
                 InputStreamPipe pipe = mSpiderDen.openInputStreamPipe(index);
                 if (pipe == null) {
-                    resetDecodeIndex();
+                    mDecodePages.remove(index);
                     // Can't find the file, it might be removed from cache,
                     // Reset it state and request it
                     updatePageState(index, STATE_NONE, null);
@@ -1891,7 +1943,13 @@ public final class SpiderQueen implements Runnable {
                 }
 
                 if (is != null) {
-                    image = Image.decode(is, true);
+                    EhApplication.awaitStartup(EhApplication.STARTUP_IMAGE);
+                    PageImageDecoder decoder = mImageDecoder;
+                    if (decoder != null) {
+                        image = decoder.decode(index, is);
+                    } else {
+                        image = Image.decode(is, true);
+                    }
                     if (image == null) {
                         error = GetText.getString(R.string.error_decoding_failed);
                     }
@@ -1904,7 +1962,7 @@ public final class SpiderQueen implements Runnable {
                     notifyGetImageFailure(index, error);
                 }
 
-                resetDecodeIndex();
+                mDecodePages.remove(index);
             }
 
             if (DEBUG_LOG) {
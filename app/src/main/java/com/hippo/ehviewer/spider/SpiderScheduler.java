@@ -0,0 +1,306 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.spider;
+
+import android.content.SharedPreferences;
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.firebase.crashlytics.FirebaseCrashlytics;
+import com.hippo.ehviewer.Settings;
+import com.hippo.yorozuya.MathUtils;
+import com.hippo.yorozuya.thread.PriorityThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide page fetch scheduler. It owns all worker threads of all {@link SpiderQueen}.
+ * <p>
+ * Every worker task downloads one page for one queen. When a worker is free,
+ * the queen with the highest pending priority gets it. Background work
+ * (read-ahead and download) can't use more than the limit, some workers are
+ * kept for reading. Among queens which have the same priority, the worker
+ * goes to the queen with the least workers by its progress score, so a
+ * queen which keeps finishing pages gets more workers, a queen stuck on 509
+ * or slow H@H nodes gets less.
+ * <p>
+ * Queens are never called with the lock of the scheduler held, their
+ * pending priorities are read before the lock is taken.
+ */
+final class SpiderScheduler {
+
+    public static final int PRIORITY_NONE = -1;
+    public static final int PRIORITY_DOWNLOAD = 0;
+    public static final int PRIORITY_READ_AHEAD = 1;
+    public static final int PRIORITY_READ = 2;
+    public static final int PRIORITY_FORCE_READ = 3;
+
+    public static final int MAX_WORKERS = 10;
+    // Workers only for read and force read
+    private static final int READ_RESERVED_WORKERS = 2;
+
+    private static final int MIN_SCORE = 1;
+    private static final int MAX_SCORE = 8;
+
+    private static final Object sLock = new Object();
+    private static final List<Slot> sSlotList = new ArrayList<>();
+    private static int sRunningCount;
+    private static int sBackgroundRunningCount;
+
+    // Cached, it is read for every page
+    private static volatile int sLimit;
+    // Held here, preferences only keep weak references to listeners
+    private static final SharedPreferences.OnSharedPreferenceChangeListener sLimitListener =
+            (sharedPreferences, key) -> sLimit = computeLimit();
+
+    private static final ThreadPoolExecutor sExecutor;
+
+    static {
+        int threads = MAX_WORKERS + READ_RESERVED_WORKERS;
+        sExecutor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new PriorityThreadFactory("SpiderWorker", Process.THREAD_PRIORITY_BACKGROUND));
+        sExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private SpiderScheduler() {}
+
+    static final class Slot {
+        final SpiderQueen queen;
+        int running;
+        int score = MIN_SCORE;
+        // The queen can't work now, skip it until it asks for workers again
+        boolean stalled;
+        boolean removed;
+        // Read from the queen before dispatch
+        int priority = PRIORITY_NONE;
+        int maxCount;
+
+        Slot(SpiderQueen queen) {
+            this.queen = queen;
+        }
+    }
+
+    private static class PageTask implements Runnable {
+
+        private final Slot mSlot;
+        private final boolean mBackground;
+
+        PageTask(Slot slot, boolean background) {
+            mSlot = slot;
+            mBackground = background;
+        }
+
+        @Override
+        public void run() {
+            boolean working = false;
+            try {
+                working = mSlot.queen.runWorker();
+            } finally {
+                onPageTaskEnd(mSlot, mBackground, working);
+            }
+        }
+    }
+
+    private static int computeLimit() {
+        return MathUtils.clamp(Settings.getMultiThreadDownload() *
+                Math.max(Settings.getDownloadConcurrency(), 1), 1, MAX_WORKERS);
+    }
+
+    private static int getLimit() {
+        int limit = sLimit;
+        if (limit == 0) {
+            Settings.registerOnSharedPreferenceChangeListener(sLimitListener);
+            limit = computeLimit();
+            sLimit = limit;
+        }
+        return limit;
+    }
+
+    private static boolean isBackground(int priority) {
+        return priority <= PRIORITY_READ_AHEAD;
+    }
+
+    // Must be called in synchronized(sLock)
+    @Nullable
+    private static Slot findSlot(SpiderQueen queen) {
+        for (int i = 0, n = sSlotList.size(); i < n; i++) {
+            Slot slot = sSlotList.get(i);
+            if (slot.queen == queen) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Call it in synchronized(sLock) for the slots of the scheduler.
+     *
+     * @return the slot which gets the next worker, null if no slot can get it
+     */
+    @Nullable
+    static Slot pick(List<Slot> slots, int running, int backgroundRunning, int limit) {
+        if (running >= limit + READ_RESERVED_WORKERS) {
+            return null;
+        }
+        Slot best = null;
+        int bestPriority = PRIORITY_NONE;
+        for (int i = 0, n = slots.size(); i < n; i++) {
+            Slot slot = slots.get(i);
+            if (slot.removed || slot.stalled || slot.running >= slot.maxCount) {
+                continue;
+            }
+            int priority = slot.priority;
+            if (priority == PRIORITY_NONE ||
+                    (isBackground(priority) && backgroundRunning >= limit)) {
+                continue;
+            }
+            if (priority > bestPriority || (priority == bestPriority &&
+                    // slot.running / slot.score < best.running / best.score
+                    slot.running * best.score < best.running * slot.score)) {
+                best = slot;
+                bestPriority = priority;
+            }
+        }
+        return best;
+    }
+
+    // Must not be called in synchronized(sLock)
+    private static void dispatch() {
+        Slot[] slots;
+        synchronized (sLock) {
+            slots = sSlotList.toArray(new Slot[0]);
+        }
+        if (slots.length == 0) {
+            return;
+        }
+
+        // Ask queens without lock
+        int limit = getLimit();
+        int[] priorities = new int[slots.length];
+        int[] maxCounts = new int[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            priorities[i] = slots[i].queen.getPendingPriority();
+            maxCounts[i] = slots[i].queen.getWorkerMaxCount();
+        }
+
+        synchronized (sLock) {
+            for (int i = 0; i < slots.length; i++) {
+                slots[i].priority = priorities[i];
+                slots[i].maxCount = maxCounts[i];
+            }
+
+            for (;;) {
+                Slot best = pick(sSlotList, sRunningCount, sBackgroundRunningCount, limit);
+                if (best == null) {
+                    break;
+                }
+
+                boolean background = isBackground(best.priority);
+                try {
+                    sExecutor.execute(new PageTask(best, background));
+                } catch (OutOfMemoryError e) {
+                    // Can't create thread
+                    FirebaseCrashlytics.getInstance().recordException(e);
+                    break;
+                }
+                best.running++;
+                sRunningCount++;
+                if (background) {
+                    sBackgroundRunningCount++;
+                }
+            }
+        }
+    }
+
+    private static void onPageTaskEnd(Slot slot, boolean background, boolean working) {
+        boolean idle;
+        boolean stalled;
+        synchronized (sLock) {
+            slot.running--;
+            sRunningCount--;
+            if (background) {
+                sBackgroundRunningCount--;
+            }
+            if (!working) {
+                slot.stalled = true;
+            }
+            idle = slot.running == 0 && !slot.removed;
+            stalled = slot.stalled;
+        }
+
+        // Do not call queen with lock
+        idle = idle && (stalled || slot.queen.getPendingPriority() == PRIORITY_NONE);
+        dispatch();
+        if (idle) {
+            slot.queen.onWorkersIdle();
+        }
+    }
+
+    /**
+     * The queen has pages to download, start workers for it if possible.
+     */
+    static void schedule(@NonNull SpiderQueen queen) {
+        synchronized (sLock) {
+            Slot slot = findSlot(queen);
+            if (slot == null) {
+                slot = new Slot(queen);
+                sSlotList.add(slot);
+            }
+            slot.stalled = false;
+        }
+        dispatch();
+    }
+
+    /**
+     * Record page result of the queen, it affects the share of the queen.
+     */
+    static void onPageDone(@NonNull SpiderQueen queen, boolean success) {
+        synchronized (sLock) {
+            Slot slot = findSlot(queen);
+            if (slot == null) {
+                return;
+            }
+            if (success) {
+                slot.score = Math.min(slot.score + 1, MAX_SCORE);
+            } else {
+                slot.score = Math.max(slot.score / 2, MIN_SCORE);
+            }
+        }
+    }
+
+    /**
+     * Remove the queen, no more worker will be started for it.
+     */
+    static void unregister(@NonNull SpiderQueen queen) {
+        synchronized (sLock) {
+            Slot slot = findSlot(queen);
+            if (slot == null) {
+                return;
+            }
+            sSlotList.remove(slot);
+            slot.removed = true;
+        }
+        dispatch();
+    }
+}
@@ -6,12 +6,10 @@ import android.os.Looper;
 
 import androidx.annotation.Nullable;
 
-import com.hippo.ehviewer.EhDB;
 import com.hippo.ehviewer.R;
 import com.hippo.ehviewer.callBack.DownloadSearchCallback;
 import com.hippo.ehviewer.client.EhUtils;
 import com.hippo.ehviewer.dao.DownloadInfo;
-import com.hippo.ehviewer.dao.GalleryTags;
 import com.hippo.ehviewer.download.DownloadManager;
 
 import java.util.ArrayList;
@@ -240,11 +238,15 @@ public class DownloadListInfosExecutor {
         }
         List<DownloadInfo> cache = new ArrayList<>();
 
+        String[] searchTags = mSearchKey.split("  ");
+        // Galleries which have all the tags, sorted
+        long[] gids = GalleryTagsIndex.getInstance().search(searchTags);
+
         for (int i = 0; i < mList.size(); i++) {
             DownloadInfo info = mList.get(i);
             if (EhUtils.judgeSuitableTitle(info, mSearchKey)) {
                 cache.add(info);
-            } else if (matchTag(mSearchKey, info)) {
+            } else if (matchTag(searchTags, gids, info)) {
                 cache.add(info);
             }
         }
@@ -252,67 +254,17 @@ public class DownloadListInfosExecutor {
         return cache;
     }
 
-    private boolean matchTag(String mSearchKey, DownloadInfo info) {
-        if (info.tgList == null || info.tgList.isEmpty()) {
-            info.tgList = searchTagList(info.gid);
-        }
-        if (info.tgList == null) {
-            return false;
-        }
-
-        String[] searchTags = mSearchKey.split("  ");
-
-        boolean result = true;
-        for (String searchTag : searchTags) {
-            if (!info.tgList.contains(searchTag)) {
-                result = false;
-                break;
+    private boolean matchTag(String[] searchTags, long[] gids, DownloadInfo info) {
+        // Tags from gallery list page
+        if (info.tgList != null && !info.tgList.isEmpty()) {
+            for (String searchTag : searchTags) {
+                if (!info.tgList.contains(searchTag)) {
+                    return false;
+                }
             }
+            return true;
         }
 
-
-        return result;
-    }
-
-    private ArrayList<String> searchTagList(long gid) {
-        GalleryTags tags = EhDB.queryGalleryTags(gid);
-
-        if (tags == null) {
-            return null;
-        }
-
-        ArrayList<String> tagList = new ArrayList<>();
-
-        tagList.addAll(parserList("artist", tags.artist));
-        tagList.addAll(parserList("rows", tags.rows));
-        tagList.addAll(parserList("cosplayer", tags.cosplayer));
-        tagList.addAll(parserList("character", tags.character));
-        tagList.addAll(parserList("female", tags.female));
-        tagList.addAll(parserList("group", tags.group));
-        tagList.addAll(parserList("language", tags.language));
-        tagList.addAll(parserList("male", tags.male));
-        tagList.addAll(parserList("misc", tags.misc));
-        tagList.addAll(parserList("mixed", tags.mixed));
-        tagList.addAll(parserList("other", tags.other));
-        tagList.addAll(parserList("parody", tags.parody));
-        tagList.addAll(parserList("reclass", tags.reclass));
-
-        return tagList;
-    }
-
-    private ArrayList<String> parserList(String name, String content) {
-        if (name == null || content == null) {
-            return new ArrayList<>();
-        }
-        ArrayList<String> list = new ArrayList<>();
-
-        String[] tagNames = content.split(",");
-
-        for (String s : tagNames) {
-            list.add(name + ":" + s);
-        }
-
-        return list;
+        return Arrays.binarySearch(gids, info.gid) >= 0;
     }
-
 }
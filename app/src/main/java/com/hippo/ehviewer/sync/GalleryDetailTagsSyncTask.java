@@ -32,6 +32,7 @@ public class GalleryDetailTagsSyncTask extends Thread{
             }else{
                 EhDB.insertGalleryTags(galleryTags);
             }
+            GalleryTagsIndex.getInstance().put(galleryTags);
         }catch (Exception e){
             Log.e(TAG,e.toString());
         }
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.sync;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.hippo.ehviewer.EhDB;
+import com.hippo.ehviewer.dao.GalleryTags;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory inverted index from "namespace:tag" to gid of {@link GalleryTags}.
+ * <p>
+ * It is loaded from database by one query when it is used first time,
+ * then {@link #put(GalleryTags)} keeps it up to date. Writes which skip it,
+ * like importing a database, call {@link #invalidate()}.
+ */
+public final class GalleryTagsIndex {
+
+    private static final String[] NAMESPACES = {
+            "artist", "rows", "cosplayer", "character", "female", "group", "language",
+            "male", "misc", "mixed", "other", "parody", "reclass"
+    };
+
+    private static final long[] EMPTY = new long[0];
+
+    private static volatile GalleryTagsIndex sInstance;
+
+    // All fields are guarded by this
+    private boolean mLoaded;
+    // Gid to internal id, ids are never reused
+    private final Map<Long, Integer> mIdMap = new HashMap<>();
+    private long[] mGids = new long[64];
+    private String[][] mTags = new String[64][];
+    private int mIdCount;
+    // Tag to sorted ids
+    private final Map<String, Posting> mPostings = new HashMap<>();
+
+    public static GalleryTagsIndex getInstance() {
+        if (sInstance == null) {
+            synchronized (GalleryTagsIndex.class) {
+                if (sInstance == null) {
+                    sInstance = new GalleryTagsIndex();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    GalleryTagsIndex() {
+    }
+
+    /**
+     * Drop the index, the next one is loaded from database again.
+     * It takes no lock, so it can be called in EhDB.
+     */
+    public static void invalidate() {
+        sInstance = null;
+    }
+
+    private static final class Posting {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                return;
+            }
+            index = -index - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            ids[index] = id;
+            size++;
+        }
+
+        void remove(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index < 0) {
+                return;
+            }
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+
+    /**
+     * Convert GalleryTags to "namespace:tag" list.
+     */
+    @NonNull
+    public static List<String> getTagList(@NonNull GalleryTags tags) {
+        String[] contents = {
+                tags.artist, tags.rows, tags.cosplayer, tags.character, tags.female, tags.group,
+                tags.language, tags.male, tags.misc, tags.mixed, tags.other, tags.parody, tags.reclass
+        };
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < NAMESPACES.length; i++) {
+            String content = contents[i];
+            if (content == null) {
+                continue;
+            }
+            for (String tag : content.split(",")) {
+                list.add(NAMESPACES[i] + ":" + tag);
+            }
+        }
+        return list;
+    }
+
+    private synchronized void ensureLoaded() {
+        if (mLoaded) {
+            return;
+        }
+        List<GalleryTags> list = EhDB.getAllGalleryTags();
+        for (int i = 0, n = list.size(); i < n; i++) {
+            GalleryTags tags = list.get(i);
+            putInternal(tags.gid, getTagList(tags));
+        }
+        mLoaded = true;
+    }
+
+    /**
+     * Update tags of the gallery. Call it after the tags are written to database.
+     */
+    public void put(@NonNull GalleryTags tags) {
+        List<String> tagList = getTagList(tags);
+        synchronized (this) {
+            // It will be read from database when loading
+            if (mLoaded) {
+                putInternal(tags.gid, tagList);
+            }
+        }
+    }
+
+    synchronized void putInternal(long gid, Collection<String> tags) {
+        Integer id = mIdMap.get(gid);
+        if (id == null) {
+            id = mIdCount++;
+            if (id == mGids.length) {
+                mGids = Arrays.copyOf(mGids, id * 2);
+                mTags = Arrays.copyOf(mTags, id * 2);
+            }
+            mGids[id] = gid;
+            mIdMap.put(gid, id);
+        }
+
+        // Remove old tags
+        String[] oldTags = mTags[id];
+        if (oldTags != null) {
+            for (String tag : oldTags) {
+                Posting posting = mPostings.get(tag);
+                if (posting != null) {
+                    posting.remove(id);
+                    if (posting.size == 0) {
+                        mPostings.remove(tag);
+                    }
+                }
+            }
+        }
+
+        Set<String> newTags = new LinkedHashSet<>(tags);
+        mTags[id] = newTags.toArray(new String[newTags.size()]);
+        for (String tag : newTags) {
+            Posting posting = mPostings.get(tag);
+            if (posting == null) {
+                posting = new Posting();
+                mPostings.put(tag, posting);
+            }
+            posting.add(id);
+        }
+    }
+
+    /**
+     * Find galleries which have all the tags.
+     *
+     * @return sorted gids
+     */
+    @NonNull
+    public long[] search(@Nullable String[] tags) {
+        ensureLoaded();
+        return searchInternal(tags);
+    }
+
+    synchronized long[] searchInternal(@Nullable String[] tags) {
+        if (tags == null || tags.length == 0) {
+            return EMPTY;
+        }
+
+        Posting[] postings = new Posting[tags.length];
+        for (int i = 0; i < tags.length; i++) {
+            Posting posting = mPostings.get(tags[i]);
+            if (posting == null) {
+                return EMPTY;
+            }
+            postings[i] = posting;
+        }
+        // Check the shortest one in others
+        Arrays.sort(postings, (a, b) -> Integer.compare(a.size, b.size));
+
+        Posting shortest = postings[0];
+        long[] result = new long[shortest.size];
+        int count = 0;
+        for (int i = 0; i < shortest.size; i++) {
+            int id = shortest.ids[i];
+            boolean all = true;
+            for (int j = 1; j < postings.length; j++) {
+                if (!postings[j].contains(id)) {
+                    all = false;
+                    break;
+                }
+            }
+            if (all) {
+                result[count++] = mGids[id];
+            }
+        }
+
+        result = Arrays.copyOf(result, count);
+        Arrays.sort(result);
+        return result;
+    }
+}
@@ -45,6 +45,7 @@ import com.hippo.easyrecyclerview.LinearDividerItemDecoration;
 import com.hippo.ehviewer.EhApplication;
 import com.hippo.ehviewer.Hosts;
 import com.hippo.ehviewer.R;
+import com.hippo.ehviewer.client.EhDns;
 import com.hippo.ripple.Ripple;
 import com.hippo.yorozuya.LayoutUtils;
 import java.util.List;
@@ -225,6 +226,7 @@ public class HostsActivity extends ToolbarActivity
 
       HostsActivity activity = (HostsActivity) dialog.getOwnerActivity();
       activity.hosts.put(hostString, ipString);
+      EhDns.clearCache();
       activity.notifyHostsChanges();
 
       dialog.dismiss();
@@ -236,6 +238,7 @@ public class HostsActivity extends ToolbarActivity
 
       HostsActivity activity = (HostsActivity) dialog.getOwnerActivity();
       activity.hosts.delete(hostString);
+      EhDns.clearCache();
       activity.notifyHostsChanges();
 
       dialog.dismiss();
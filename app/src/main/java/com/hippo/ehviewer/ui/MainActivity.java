@@ -31,6 +31,7 @@ import android.net.ConnectivityManager;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.Message;
 import android.os.PersistableBundle;
 import android.text.TextUtils;
@@ -427,7 +428,11 @@ public final class MainActivity extends StageActivity
             onRestore(savedInstanceState);
         }
 
-        EhTagDatabase.update(this);
+        // Tag translations are not needed for the first frame
+        Looper.myQueue().addIdleHandler(() -> {
+            EhTagDatabase.update(this);
+            return false;
+        });
     }
 
     private void initUserImage() {
@@ -24,6 +24,7 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.util.Log;
 import android.preference.Preference;
 import android.preference.PreferenceFragment;
 import android.widget.Toast;
@@ -35,17 +36,23 @@ import com.hippo.ehviewer.AppConfig;
 import com.hippo.ehviewer.EhApplication;
 import com.hippo.ehviewer.EhDB;
 import com.hippo.ehviewer.R;
+import com.hippo.ehviewer.Settings;
+import com.hippo.ehviewer.client.EhDns;
 import com.hippo.ehviewer.ui.wifi.WiFiClientActivity;
 import com.hippo.ehviewer.ui.wifi.WiFiServerActivity;
 import com.hippo.ehviewer.widget.ProgressHelper;
 import com.hippo.util.LogCat;
 import com.hippo.util.ReadableTime;
+import com.hippo.yorozuya.SimpleHandler;
 
 import java.io.File;
 import java.util.Arrays;
 
 public class AdvancedFragment extends PreferenceFragment
         implements Preference.OnPreferenceClickListener, Preference.OnPreferenceChangeListener {
+
+    private static final String TAG = AdvancedFragment.class.getSimpleName();
+
     public static final int DB_LOADING = 0;
     public static final int DB_LOAD_FINISH = 1;
 
@@ -83,6 +90,9 @@ public class AdvancedFragment extends PreferenceFragment
         clientData.setOnPreferenceClickListener(this);
 
         appLanguage.setOnPreferenceChangeListener(this);
+        findPreference(Settings.KEY_DOH).setOnPreferenceChangeListener(this);
+        findPreference(Settings.KEY_BUILT_IN_HOSTS).setOnPreferenceChangeListener(this);
+        findPreference(Settings.KEY_BUILT_EX_HOSTS).setOnPreferenceChangeListener(this);
     }
 
     @Override
@@ -136,6 +146,7 @@ public class AdvancedFragment extends PreferenceFragment
         File file = null;
         File dir = AppConfig.getExternalLogcatDir();
         if (dir != null) {
+            Log.i(TAG, EhDns.getCacheStats());
             file = new File(dir, "logcat-" + ReadableTime.getFilenamableTime(System.currentTimeMillis()) + ".txt");
             ok = LogCat.save(file);
         } else {
@@ -192,6 +203,11 @@ public class AdvancedFragment extends PreferenceFragment
         if (KEY_APP_LANGUAGE.equals(key)) {
             ((EhApplication) getActivity().getApplication()).recreate();
             return true;
+        } else if (Settings.KEY_DOH.equals(key) || Settings.KEY_BUILT_IN_HOSTS.equals(key)
+                || Settings.KEY_BUILT_EX_HOSTS.equals(key)) {
+            // Resolve hosts again with the new settings, they are saved after return
+            SimpleHandler.getInstance().post(EhDns::clearCache);
+            return true;
         }
         return false;
     }
@@ -1402,14 +1402,16 @@ public class DownloadsScene extends ToolbarScene
             Settings.putRemoveImageFiles(checked);
             if (checked) {
                 UniFile[] files = new UniFile[mDownloadInfoList.size()];
+                List<Long> gids = new ArrayList<>(mDownloadInfoList.size());
                 int i = 0;
                 for (DownloadInfo info : mDownloadInfoList) {
-                    // Remove download path
-                    EhDB.removeDownloadDirname(info.gid);
+                    gids.add(info.gid);
                     // Put file
                     files[i] = getGalleryDownloadDir(info);
                     i++;
                 }
+                // Remove download path
+                EhDB.removeDownloadDirname(gids);
                 // Delete file
                 deleteFileAsync(files);
             }
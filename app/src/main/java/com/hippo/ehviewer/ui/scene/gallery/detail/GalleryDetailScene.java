@@ -66,6 +66,7 @@ import com.hippo.drawerlayout.DrawerLayout;
 import com.hippo.ehviewer.AppConfig;
 import com.hippo.ehviewer.EhApplication;
 import com.hippo.ehviewer.EhDB;
+import com.hippo.ehviewer.GalleryDetailCache;
 import com.hippo.ehviewer.R;
 import com.hippo.ehviewer.Settings;
 import com.hippo.ehviewer.UrlOpener;
@@ -761,8 +762,8 @@ public class GalleryDetailScene extends BaseScene implements View.OnClickListene
             return false;
         }
 
-        // Get from cache
-        mGalleryDetail = EhApplication.getGalleryDetailCache(context).get(gid);
+        // Get from memory cache
+        mGalleryDetail = EhApplication.getGalleryDetailCache(context).getIfPresent(gid);
         if (mGalleryDetail != null) {
             return true;
         }
@@ -773,8 +774,41 @@ public class GalleryDetailScene extends BaseScene implements View.OnClickListene
             return true;
         }
 
-        // Do request
-        return request();
+        // Read disk cache, do request if it is not there
+        return requestFromCache(gid);
+    }
+
+    private boolean requestFromCache(long gid) {
+        Context context = getEHContext();
+        MainActivity activity = getActivity2();
+        String url = getGalleryDetailUrl();
+
+        if (null == context || null == activity || null == url) {
+            return false;
+        }
+
+        EhApplication application = (EhApplication) context.getApplicationContext();
+        GetGalleryDetailListener callback = new GetGalleryDetailListener(context,
+                activity.getStageId(), getTag(), GetGalleryDetailListener.RESULT_DETAIL);
+        int requestId = application.putGlobalStuff(callback);
+        mRequestId = requestId;
+        EhApplication.getGalleryDetailCache(context).getAsync(gid, gd -> {
+            if (!application.containGlobalStuff(requestId)) {
+                // Canceled
+                return;
+            }
+            if (gd != null) {
+                callback.onCached(gd);
+                return;
+            }
+            EhRequest request = new EhRequest()
+                    .setMethod(EhClient.METHOD_GET_GALLERY_DETAIL)
+                    .setArgs(url)
+                    .setCallback(callback);
+            EhApplication.getEhClient(application).execute(request);
+        });
+
+        return true;
     }
 
     private boolean request(String url, int resultMode) {
@@ -1933,6 +1967,10 @@ public class GalleryDetailScene extends BaseScene implements View.OnClickListene
         if (mGalleryDetail != null) {
             mGalleryDetail.rating = result.rating;
             mGalleryDetail.ratingCount = result.ratingCount;
+            Context context = getEHContext();
+            if (context != null) {
+                EhApplication.getGalleryDetailCache(context).put(mGalleryDetail.gid, mGalleryDetail);
+            }
         }
 
         // Update UI
@@ -2497,10 +2535,15 @@ public class GalleryDetailScene extends BaseScene implements View.OnClickListene
                 scene.onRateGallerySuccess(result);
             } else {
                 // Update rating in cache
-                GalleryDetail gd = EhApplication.getGalleryDetailCache(getApplication()).get(mGid);
+                GalleryDetailCache cache = EhApplication.getGalleryDetailCache(getApplication());
+                GalleryDetail gd = cache.getIfPresent(mGid);
                 if (gd != null) {
                     gd.rating = result.rating;
                     gd.ratingCount = result.ratingCount;
+                    cache.put(mGid, gd);
+                } else {
+                    // Do not read disk tier in UI thread, drop the old rating
+                    cache.remove(mGid);
                 }
             }
         }
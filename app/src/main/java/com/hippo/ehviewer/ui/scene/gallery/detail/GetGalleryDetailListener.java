@@ -49,6 +49,17 @@ public class GetGalleryDetailListener extends EhCallback<GalleryDetailScene, Gal
         }
     }
 
+    /**
+     * Gallery detail is read from cache, it is not requested.
+     */
+    public void onCached(GalleryDetail result) {
+        getApplication().removeGlobalStuff(this);
+        GalleryDetailScene scene = getScene();
+        if (scene != null) {
+            scene.onGetGalleryDetailSuccess(result);
+        }
+    }
+
     @Override
     public void onFailure(Exception e) {
         getApplication().removeGlobalStuff(this);
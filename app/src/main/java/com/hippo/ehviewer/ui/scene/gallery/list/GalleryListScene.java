@@ -1860,6 +1860,13 @@ public final class GalleryListScene extends BaseScene
         }
     }
 
+    private void onGetGalleryListPartial(List<GalleryInfo> partial, int taskId) {
+        if (mHelper != null && mSearchBarMover != null &&
+                mHelper.isCurrentTask(taskId)) {
+            mHelper.onGetPartialPageData(taskId, partial);
+        }
+    }
+
     private void onGetGalleryListSuccess(GalleryListParser.Result result, int taskId) {
         if (mHelper != null && mSearchBarMover != null &&
                 mHelper.isCurrentTask(taskId)) {
@@ -2062,6 +2069,13 @@ public final class GalleryListScene extends BaseScene
             }
         }
 
+        @Override
+        protected void notifyItemRangeChanged(int positionStart, int itemCount) {
+            if (null != mAdapter) {
+                mAdapter.notifyItemRangeChanged(positionStart, itemCount);
+            }
+        }
+
         @Override
         public void onShowView(View hiddenView, View shownView) {
             if (null != mSearchBarMover) {
@@ -2086,7 +2100,8 @@ public final class GalleryListScene extends BaseScene
         }
     }
 
-    private static class GetGalleryListListener extends EhCallback<GalleryListScene, GalleryListParser.Result> {
+    private static class GetGalleryListListener extends EhCallback<GalleryListScene, GalleryListParser.Result>
+            implements EhClient.PartialCallback<GalleryListParser.Result, List<GalleryInfo>> {
 
         private final int mTaskId;
 
@@ -2095,6 +2110,14 @@ public final class GalleryListScene extends BaseScene
             mTaskId = taskId;
         }
 
+        @Override
+        public void onPartial(List<GalleryInfo> partial) {
+            GalleryListScene scene = getScene();
+            if (scene != null) {
+                scene.onGetGalleryListPartial(partial, mTaskId);
+            }
+        }
+
         @Override
         public void onSuccess(GalleryListParser.Result result) {
             GalleryListScene scene = getScene();
@@ -1,11 +1,13 @@
 package com.hippo.ehviewer.ui.wifi;
 
+import static com.hippo.ehviewer.client.wifi.ConnectThread.DATA_TYPE_DOWNLOAD_FILES;
 import static com.hippo.ehviewer.client.wifi.ConnectThread.DATA_TYPE_DOWNLOAD_INFO;
 import static com.hippo.ehviewer.client.wifi.ConnectThread.DATA_TYPE_DOWNLOAD_LABEL;
 import static com.hippo.ehviewer.client.wifi.ConnectThread.DATA_TYPE_FAVORITE_INFO;
 import static com.hippo.ehviewer.client.wifi.ConnectThread.DATA_TYPE_QUICK_SEARCH;
 import static com.hippo.ehviewer.client.wifi.ConnectThread.DEVICE_CONNECTED;
 import static com.hippo.ehviewer.client.wifi.ConnectThread.DEVICE_DISCONNECTED;
+import static com.hippo.ehviewer.client.wifi.ConnectThread.DOWNLOAD_FILES_PORT_KEY;
 import static com.hippo.ehviewer.client.wifi.ConnectThread.DOWNLOAD_INFO_DATA_KEY;
 import static com.hippo.ehviewer.client.wifi.ConnectThread.DOWNLOAD_LABEL_KEY;
 import static com.hippo.ehviewer.client.wifi.ConnectThread.FAVORITE_INFO_DATA_KEY;
@@ -40,9 +42,11 @@ import com.alibaba.fastjson.JSONObject;
 import com.hippo.ehviewer.EhApplication;
 import com.hippo.ehviewer.EhDB;
 import com.hippo.ehviewer.R;
+import com.hippo.ehviewer.client.EhUtils;
 import com.hippo.ehviewer.client.data.GalleryInfo;
 import com.hippo.ehviewer.client.data.wifi.WiFiDataHand;
 import com.hippo.ehviewer.client.wifi.ConnectThread;
+import com.hippo.ehviewer.client.wifi.GalleryTransferClient;
 import com.hippo.ehviewer.client.wifi.ListenerThread;
 import com.hippo.ehviewer.dao.DownloadInfo;
 import com.hippo.ehviewer.dao.QuickSearch;
@@ -254,6 +258,9 @@ public class WiFiClientActivity extends AppCompatActivity {
             case DATA_TYPE_FAVORITE_INFO:
                 dealWithFavoriteInfo(response);
                 break;
+            case DATA_TYPE_DOWNLOAD_FILES:
+                dealWithDownloadFiles(response);
+                break;
             default:
                 receiveMessage.setText(R.string.wifi_server_receive_message_unknown);
                 connectThread.dataProcessed(response);
@@ -290,6 +297,33 @@ public class WiFiClientActivity extends AppCompatActivity {
         }).start();
     }
 
+    private void dealWithDownloadFiles(WiFiDataHand response) {
+        JSONArray jsonArray = response.getData().getJSONArray(DOWNLOAD_INFO_DATA_KEY);
+        int port = response.getData().getIntValue(DOWNLOAD_FILES_PORT_KEY);
+        String host = getWifiRouteIPAddress(this);
+        DownloadManager manager = EhApplication.getDownloadManager();
+        new Thread(()->{
+            try {
+                for (int i = 0; i < jsonArray.size(); i++) {
+                    try {
+                        DownloadInfo info = DownloadInfo.downloadInfoFromJson(jsonArray.getJSONObject(i));
+                        manager.addDownloadInfo(info, info.label);
+                        updateReceiveMessage(getString(R.string.wifi_receive_download_files, EhUtils.getSuitableTitle(info)));
+                        GalleryTransferClient.receive(host, port, info, GalleryTransferClient.DEFAULT_STREAM_COUNT);
+                    } catch (IOException | RuntimeException e) {
+                        // Go on with the next gallery
+                        FirebaseCrashlytics.getInstance().recordException(e);
+                    }
+                }
+            } finally {
+                // The server waits for it
+                connectThread.dataProcessed(response);
+                updateReceiveMessage(getString(R.string.wifi_server_receive_message, response.toString()));
+                EventBus.getDefault().post(downloadInfoNeedRefresh());
+            }
+        }).start();
+    }
+
     private void dealWithDownloadLabel(WiFiDataHand response) {
         JSONArray jsonArray = response.getData().getJSONArray(DOWNLOAD_LABEL_KEY);
         DownloadManager manager = EhApplication.getDownloadManager();
@@ -346,7 +380,7 @@ public class WiFiClientActivity extends AppCompatActivity {
                     textState.setText(getString(R.string.wifi_server_send_fail, msg.getData().getString("MSG")));
                     break;
                 case GET_MSG:
-                    onReceiveMsg(new WiFiDataHand(msg.getData().getString("MSG")));
+                    onReceiveMsg((WiFiDataHand) msg.obj);
                     break;
                 default:
                     break;
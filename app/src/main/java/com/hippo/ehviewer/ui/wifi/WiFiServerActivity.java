@@ -1,11 +1,13 @@
 package com.hippo.ehviewer.ui.wifi;
 
+import static com.hippo.ehviewer.client.wifi.ConnectThread.DATA_TYPE_DOWNLOAD_FILES;
 import static com.hippo.ehviewer.client.wifi.ConnectThread.DATA_TYPE_DOWNLOAD_INFO;
 import static com.hippo.ehviewer.client.wifi.ConnectThread.DATA_TYPE_DOWNLOAD_LABEL;
 import static com.hippo.ehviewer.client.wifi.ConnectThread.DATA_TYPE_FAVORITE_INFO;
 import static com.hippo.ehviewer.client.wifi.ConnectThread.DATA_TYPE_QUICK_SEARCH;
 import static com.hippo.ehviewer.client.wifi.ConnectThread.DEVICE_CONNECTED;
 import static com.hippo.ehviewer.client.wifi.ConnectThread.DEVICE_CONNECTING;
+import static com.hippo.ehviewer.client.wifi.ConnectThread.DOWNLOAD_FILES_PORT_KEY;
 import static com.hippo.ehviewer.client.wifi.ConnectThread.DOWNLOAD_INFO_DATA_KEY;
 import static com.hippo.ehviewer.client.wifi.ConnectThread.DOWNLOAD_LABEL_KEY;
 import static com.hippo.ehviewer.client.wifi.ConnectThread.FAVORITE_INFO_DATA_KEY;
@@ -39,6 +41,7 @@ import com.hippo.ehviewer.R;
 import com.hippo.ehviewer.client.data.GalleryInfo;
 import com.hippo.ehviewer.client.data.wifi.WiFiDataHand;
 import com.hippo.ehviewer.client.wifi.ConnectThread;
+import com.hippo.ehviewer.client.wifi.GalleryTransferServer;
 import com.hippo.ehviewer.client.wifi.ListenerThread;
 import com.hippo.ehviewer.dao.DownloadInfo;
 import com.hippo.ehviewer.dao.DownloadLabel;
@@ -74,6 +77,16 @@ public class WiFiServerActivity extends ToolbarActivity implements AdapterView.O
      * 端口号
      */
     private static final int PORT = 54321;
+    private static final int TRANSFER_PORT = 54322;
+    // Records in one message
+    private static final int PAGE_SIZE = 100;
+    // Galleries in one message, receiver gets their files before reply
+    private static final int FILE_PAGE_SIZE = 5;
+
+    /**
+     * 文件传输线程
+     */
+    private GalleryTransferServer transferServer;
 
     private WiFiServerHandler handler;
 
@@ -192,7 +205,10 @@ public class WiFiServerActivity extends ToolbarActivity implements AdapterView.O
                     createFavoriteData();
                     break;
                 case 2:
-                    createDownloadData();
+                    createDownloadData(false);
+                    break;
+                case 3:
+                    createDownloadData(true);
                     break;
                 default:
                     break;
@@ -207,7 +223,7 @@ public class WiFiServerActivity extends ToolbarActivity implements AdapterView.O
         }
         List<GalleryInfo> list = EhDB.getAllLocalFavorites();
         new Thread(() -> {
-            int pageSize = 10;
+            int pageSize = PAGE_SIZE;
             int pageCount = totalPage(list.size(), pageSize);
 
             for (int i = 0; i < pageCount; i++) {
@@ -237,7 +253,7 @@ public class WiFiServerActivity extends ToolbarActivity implements AdapterView.O
         }
         List<QuickSearch> list = EhDB.getAllQuickSearch();
         new Thread(() -> {
-            int pageSize = 10;
+            int pageSize = PAGE_SIZE;
             int pageCount = totalPage(list.size(), pageSize);
 
             for (int i = 0; i < pageCount; i++) {
@@ -260,11 +276,16 @@ public class WiFiServerActivity extends ToolbarActivity implements AdapterView.O
         }).start();
     }
 
-    private void createDownloadData() {
+    private void createDownloadData(boolean withFiles) {
         if (sending) {
             Toast.makeText(mContext, R.string.wifi_sending, Toast.LENGTH_LONG).show();
             return;
         }
+        if (withFiles && transferServer == null) {
+            transferServer = new GalleryTransferServer(TRANSFER_PORT);
+            transferServer.start();
+        }
+        GalleryTransferServer server = transferServer;
         new Thread(() -> {
             List<DownloadLabel> labels = EhDB.getAllDownloadLabelList();
             WiFiDataHand dataHand = new WiFiDataHand(WiFiDataHand.SEND);
@@ -279,11 +300,11 @@ public class WiFiServerActivity extends ToolbarActivity implements AdapterView.O
 
             List<DownloadInfo> allInfo = EhDB.getAllDownloadInfo();
 
-            int pageSize = 10;
+            int pageSize = withFiles ? FILE_PAGE_SIZE : PAGE_SIZE;
             int pageCount = totalPage(allInfo.size(), pageSize);
             for (int i = 0; i < pageCount; i++) {
                 WiFiDataHand infoHand = new WiFiDataHand(WiFiDataHand.SEND);
-                infoHand.dataType = DATA_TYPE_DOWNLOAD_INFO;
+                infoHand.dataType = withFiles ? DATA_TYPE_DOWNLOAD_FILES : DATA_TYPE_DOWNLOAD_INFO;
                 infoHand.pageSize = pageCount;
                 infoHand.pageIndex = i + 1;
                 JSONArray infoArray = new JSONArray();
@@ -293,8 +314,14 @@ public class WiFiServerActivity extends ToolbarActivity implements AdapterView.O
                     }
                     DownloadInfo downloadInfo = allInfo.remove(0);
                     infoArray.add(downloadInfo.toJson());
+                    if (withFiles) {
+                        server.addGallery(downloadInfo);
+                    }
                 }
                 infoHand.addData(DOWNLOAD_INFO_DATA_KEY, infoArray);
+                if (withFiles) {
+                    infoHand.addData(DOWNLOAD_FILES_PORT_KEY, TRANSFER_PORT);
+                }
                 dataHands.add(infoHand);
             }
             sendNextPage();
@@ -391,6 +418,10 @@ public class WiFiServerActivity extends ToolbarActivity implements AdapterView.O
             listenerThread.closeConnect();
             listenerThread = null;
         }
+        if (transferServer != null) {
+            transferServer.closeConnect();
+            transferServer = null;
+        }
         super.onDestroy();
     }
 
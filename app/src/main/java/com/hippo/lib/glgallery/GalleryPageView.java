@@ -44,11 +44,12 @@ public class GalleryPageView extends GLFrameLayout {
 
     private int mIndex = INVALID_INDEX;
 
-    public GalleryPageView(ImageMovableTextTexture pageTextTexture,
+    public GalleryPageView(GalleryView galleryView, ImageMovableTextTexture pageTextTexture,
             int progressColor, int progressBgColor, int progressSize,
             int minHeight, int infoInterval) {
         // Add image
         mImage = new ImageView();
+        mImage.setOnMagnifyListener(() -> galleryView.onPageMagnify(this));
         GravityLayoutParams glp = new GravityLayoutParams(LayoutParams.MATCH_PARENT,
                 LayoutParams.MATCH_PARENT);
         addComponent(mImage, glp);
@@ -131,9 +132,22 @@ public class GalleryPageView extends GLFrameLayout {
     }
 
     public void setImage(ImageTexture imageTexture) {
+        setImage(imageTexture, 1);
+    }
+
+    /**
+     * Keep the scale and offset if an image is shown, see {@link ImageView#setImageTexture(ImageTexture, int)}.
+     */
+    public void setImage(ImageTexture imageTexture, int sampleSize) {
+        ImageTexture oldTexture = mImage.getImageTexture();
+        if (imageTexture != null && oldTexture != null) {
+            mImage.setImageTexture(imageTexture, sampleSize);
+            oldTexture.recycle();
+            return;
+        }
         unbindImage();
         if (imageTexture != null) {
-            mImage.setImageTexture(imageTexture);
+            mImage.setImageTexture(imageTexture, sampleSize);
         }
     }
 
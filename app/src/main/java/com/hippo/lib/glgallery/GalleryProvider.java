@@ -17,6 +17,7 @@
 package com.hippo.lib.glgallery;
 
 import android.util.LruCache;
+import android.util.SparseBooleanArray;
 
 import androidx.annotation.IntDef;
 import androidx.annotation.UiThread;
@@ -42,6 +43,9 @@ public abstract class GalleryProvider {
     private volatile GLRoot mGLRoot;
 
     private final ImageCache mImageCache = new ImageCache();
+    private final PageImageDecoder mImageDecoder = new PageImageDecoder();
+    // Pages decoding in full size, they keep the sampled image until it is done
+    private final SparseBooleanArray mUpgrading = new SparseBooleanArray();
 
     private boolean mStarted = false;
 
@@ -65,6 +69,24 @@ public abstract class GalleryProvider {
         mGLRoot = glRoot;
     }
 
+    /**
+     * Set the size pages need to fill, 0 for full size.
+     */
+    public void setTargetSize(int width, int height) {
+        mImageDecoder.setTargetSize(width, height);
+    }
+
+    /**
+     * Decoder for {@link #notifyPageSucceed(int, Image)}.
+     */
+    public PageImageDecoder getImageDecoder() {
+        return mImageDecoder;
+    }
+
+    public int getSampleSize(int index) {
+        return mImageDecoder.getSampleSize(index);
+    }
+
     /**
      * @return {@link #STATE_WAIT} for wait,
      *          {@link #STATE_ERROR} for error, {@link #getError()} to get error message,
@@ -85,6 +107,19 @@ public abstract class GalleryProvider {
         onForceRequest(index);
     }
 
+    /**
+     * Decode the page in full size if it is sampled now.
+     */
+    public final void requestFullSize(int index) {
+        if (mImageDecoder.requestFullSize(index)) {
+            synchronized (mUpgrading) {
+                mUpgrading.put(index, true);
+            }
+            mImageCache.remove(index);
+            onRequest(index);
+        }
+    }
+
     public void removeCache(int index) {
         mImageCache.remove(index);
     }
@@ -94,6 +129,10 @@ public abstract class GalleryProvider {
     protected abstract void onForceRequest(int index);
 
     public final void cancelRequest(int index) {
+        mImageDecoder.resetFullSize(index);
+        synchronized (mUpgrading) {
+            mUpgrading.delete(index);
+        }
         onCancelRequest(index);
     }
 
@@ -136,6 +175,21 @@ public abstract class GalleryProvider {
     }
 
     private void notify(@NotifyTask.Type int type, int index, float percent, ImageWrapper image, String error) {
+        if (type != NotifyTask.TYPE_DATA_CHANGED) {
+            synchronized (mUpgrading) {
+                if (mUpgrading.get(index)) {
+                    if (type == NotifyTask.TYPE_WAIT || type == NotifyTask.TYPE_PERCENT) {
+                        return;
+                    }
+                    mUpgrading.delete(index);
+                    if (type == NotifyTask.TYPE_FAILED) {
+                        // Keep the sampled image
+                        return;
+                    }
+                }
+            }
+        }
+
         Listener listener = mListener;
         if (listener == null) {
             return;
@@ -109,6 +109,8 @@ public final class GalleryView extends GLView implements GestureRecognizer.Liste
 
     private final Context mContext;
     private Adapter mAdapter;
+    // mAdapter is null when it is attached to layout manager
+    private final Adapter mPageAdapter;
     private final GestureRecognizer mGestureRecognizer;
     @Nullable
     private final Listener mListener;
@@ -307,6 +309,7 @@ public final class GalleryView extends GLView implements GestureRecognizer.Liste
         mContext = build.mContext;
         mAdapter = build.mAdapter;
         mAdapter.setGalleryView(this);
+        mPageAdapter = mAdapter;
         mListener = build.mListener;
         mGestureRecognizer = new GestureRecognizer(mContext, this);
         mEdgeView = new GLEdgeView(build.mEdgeColor);
@@ -652,6 +655,7 @@ public final class GalleryView extends GLView implements GestureRecognizer.Liste
         fill();
 
         if (changeSize) {
+            updateTargetSize();
             int width = right - left;
             int height = bottom - top;
             mLeftArea.set((int) (LEFT_AREA[0] * width), (int) (LEFT_AREA[1] * height),
@@ -811,6 +815,7 @@ public final class GalleryView extends GLView implements GestureRecognizer.Liste
             return;
         }
         mLayoutMode = layoutMode;
+        updateTargetSize();
 
         if (mLayoutManager == null) {
             return;
@@ -880,6 +885,29 @@ public final class GalleryView extends GLView implements GestureRecognizer.Liste
         if (mPagerLayoutManager != null) {
             mPagerLayoutManager.setScaleMode(scaleMode);
         }
+        updateTargetSize();
+    }
+
+    /**
+     * Pages only need to fill the view, unless they are shown in image pixels.
+     */
+    private void updateTargetSize() {
+        int width = getWidth();
+        int height = getHeight();
+        if (mLayoutMode != LAYOUT_TOP_TO_BOTTOM &&
+                (mScaleMode == ImageView.SCALE_ORIGIN || mScaleMode == ImageView.SCALE_FIXED)) {
+            width = 0;
+            height = 0;
+        }
+        mPageAdapter.onTargetSizeChanged(width, height);
+    }
+
+    @RenderThread
+    void onPageMagnify(GalleryPageView page) {
+        int index = page.getIndex();
+        if (index != GalleryPageView.INVALID_INDEX) {
+            mPageAdapter.onPageMagnify(index);
+        }
     }
 
     private void setStartPositionInternal(int startPosition) {
@@ -1053,7 +1081,7 @@ public final class GalleryView extends GLView implements GestureRecognizer.Liste
     GalleryPageView obtainPage() {
         GalleryPageView page = mGalleryPageViewPool.pop();
         if (page == null) {
-            page = new GalleryPageView(mPageTextTexture,
+            page = new GalleryPageView(this, mPageTextTexture,
                     mProgressColor, mBackgroundColor, mProgressSize,
                     mPageMinHeight, mPageInfoInterval);
         }
@@ -1152,6 +1180,18 @@ public final class GalleryView extends GLView implements GestureRecognizer.Liste
 
         public abstract void onUnbind(GalleryPageView view, int index);
 
+        /**
+         * Called when the size pages need to fill changes, 0 for full size.
+         */
+        public void onTargetSizeChanged(int width, int height) {
+        }
+
+        /**
+         * Called when the sampled image of the page is drawn larger than its pixels.
+         */
+        public void onPageMagnify(int index) {
+        }
+
         /**
          * @return Null for no error
          */
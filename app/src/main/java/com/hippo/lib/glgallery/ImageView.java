@@ -47,9 +47,20 @@ class ImageView extends GLView implements ImageTexture.Callback {
 
     private static final long ALPHA_ANIMATION_DURING = 300L;
 
+    // Sampled texture drawn larger than this is magnified
+    private static final float MAGNIFY_LIMIT = 1.1f;
+
+    interface OnMagnifyListener {
+        void onMagnify();
+    }
+
     private ImageTexture mImageTexture;
+    // Size of the image before sampling
     private int mTextureWidth;
     private int mTextureHeight;
+    private int mSampleSize = 1;
+    private boolean mMagnifyNotified;
+    private OnMagnifyListener mOnMagnifyListener;
 
     private final RectF mDst = new RectF();
     private final RectF mSrcActual = new RectF();
@@ -186,7 +197,23 @@ class ImageView extends GLView implements ImageTexture.Callback {
         Arrays.sort(scaleDefault);
     }
 
+    void setOnMagnifyListener(OnMagnifyListener listener) {
+        mOnMagnifyListener = listener;
+    }
+
     public void setImageTexture(ImageTexture imageTexture) {
+        setImageTexture(imageTexture, 1);
+    }
+
+    /**
+     * Replacing a texture with another one keeps the current scale and offset,
+     * it is how a sampled image is upgraded.
+     *
+     * @param sampleSize the image of the texture is 1/sampleSize of the origin
+     */
+    public void setImageTexture(ImageTexture imageTexture, int sampleSize) {
+        boolean replace = mImageTexture != null && imageTexture != null && !mScaleOffsetDirty;
+
         // Remove callback
         if (mImageTexture != null) {
             mImageTexture.setCallback(null);
@@ -197,11 +224,13 @@ class ImageView extends GLView implements ImageTexture.Callback {
         int oldTextureHeight = mTextureHeight;
 
         mImageTexture = imageTexture;
+        mSampleSize = Math.max(sampleSize, 1);
+        mMagnifyNotified = false;
 
         if (imageTexture != null) {
             imageTexture.setCallback(this);
-            mTextureWidth = imageTexture.getWidth();
-            mTextureHeight = imageTexture.getHeight();
+            mTextureWidth = imageTexture.getWidth() * mSampleSize;
+            mTextureHeight = imageTexture.getHeight() * mSampleSize;
             // Avoid zero and negative
             if (mTextureWidth <= 0) {
                 mTextureWidth = 1;
@@ -210,10 +239,12 @@ class ImageView extends GLView implements ImageTexture.Callback {
                 mTextureHeight = 1;
             }
 
-            // Start alpha animation, do not show animation for image has no valid rect
             getValidRect(mValidRect);
             if (!mValidRect.isEmpty()) {
-                startAnimation(mAlphaAnimation, true);
+                // Start alpha animation, do not show animation for image has no valid rect
+                if (!replace) {
+                    startAnimation(mAlphaAnimation, true);
+                }
                 mImageTexture.start();
             }
         } else {
@@ -221,7 +252,15 @@ class ImageView extends GLView implements ImageTexture.Callback {
             mTextureHeight = 1;
         }
 
-        mScaleOffsetDirty = true;
+        if (replace) {
+            RectF dst = mDst;
+            mScale = dst.width() / mTextureWidth;
+            dst.bottom = dst.top + mTextureHeight * mScale;
+            adjustPosition();
+            invalidate();
+        } else {
+            mScaleOffsetDirty = true;
+        }
         mPositionInRootDirty = true;
 
         if (oldTextureWidth != mTextureWidth || oldTextureHeight != mTextureHeight) {
@@ -540,8 +579,8 @@ class ImageView extends GLView implements ImageTexture.Callback {
         float left = (focusX - ((focusX - dst.left) * scale));
         float top = (focusY - ((focusY - dst.top) * scale));
         dst.set(left, top,
-                (left + (mImageTexture.getWidth() * newScale)),
-                (top + (mImageTexture.getHeight() * newScale)));
+                (left + (mTextureWidth * newScale)),
+                (top + (mTextureHeight * newScale)));
 
         // adjust position
         adjustPosition();
@@ -595,6 +634,13 @@ class ImageView extends GLView implements ImageTexture.Callback {
         if (!mSrcActual.isEmpty()) {
             texture.draw(canvas, mSrcActual, mDstActual);
         }
+
+        if (mSampleSize > 1 && !mMagnifyNotified && mScale * mSampleSize > MAGNIFY_LIMIT) {
+            mMagnifyNotified = true;
+            if (mOnMagnifyListener != null) {
+                mOnMagnifyListener.onMagnify();
+            }
+        }
     }
 
     @Override
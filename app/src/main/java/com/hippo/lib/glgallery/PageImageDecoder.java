@@ -0,0 +1,261 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.lib.glgallery;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseBooleanArray;
+import android.util.SparseIntArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.hippo.image.Image;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+
+/**
+ * Decodes pages no larger than the target size.
+ * <p>
+ * A page which is at least twice the target size in both dimensions is decoded
+ * with a power of two sample size by {@link BitmapFactory}, then handed to
+ * {@link Image} as a re-encoded copy, since Image can only decode streams.
+ * GIF is always decoded as it is. Once the page is shown magnified,
+ * {@link #requestFullSize(int)} makes the next decode of it full size.
+ * <p>
+ * The copy costs a second decode and an encode of the sampled bitmap, a quarter
+ * of the pixels at most, turn on {@link #DEBUG_LOG} to see the time of each step.
+ * It is JPEG of quality {@link #JPEG_QUALITY} if the page has no alpha, so it is
+ * lossy, but only shown unmagnified, a magnified page is always decoded from
+ * the original file.
+ */
+public final class PageImageDecoder {
+
+    private static final String TAG = PageImageDecoder.class.getSimpleName();
+    private static final boolean DEBUG_LOG = false;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int JPEG_QUALITY = 95;
+
+    private volatile int mTargetWidth;
+    private volatile int mTargetHeight;
+
+    // Sample size of the last decoded image of each page, missing for 1
+    private final SparseIntArray mSampleSizes = new SparseIntArray();
+    private final SparseBooleanArray mFullSize = new SparseBooleanArray();
+
+    /**
+     * @param width 0 for no limit
+     * @param height 0 for no limit
+     */
+    public void setTargetSize(int width, int height) {
+        mTargetWidth = width;
+        mTargetHeight = height;
+    }
+
+    public synchronized int getSampleSize(int index) {
+        return mSampleSizes.get(index, 1);
+    }
+
+    /**
+     * @return {@code true} if the last decoded image of the page is sampled,
+     *          it should be decoded again
+     */
+    public synchronized boolean requestFullSize(int index) {
+        if (mSampleSizes.get(index, 1) == 1 || mFullSize.get(index)) {
+            return false;
+        }
+        mFullSize.put(index, true);
+        return true;
+    }
+
+    /**
+     * Decode the page in target size again.
+     */
+    public synchronized void resetFullSize(int index) {
+        mFullSize.delete(index);
+    }
+
+    static int computeSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        if (width <= 0 || height <= 0 || targetWidth <= 0 || targetHeight <= 0) {
+            return sampleSize;
+        }
+        while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    @Nullable
+    public Image decode(int index, @NonNull InputStream is) {
+        int targetWidth = mTargetWidth;
+        int targetHeight = mTargetHeight;
+        boolean fullSize;
+        synchronized (this) {
+            fullSize = mFullSize.get(index);
+        }
+
+        int sampleSize = 1;
+        if (!fullSize && targetWidth > 0 && targetHeight > 0) {
+            // Not mark and reset, bounds decoding might read more than any mark limit
+            ReplayInputStream replay = new ReplayInputStream(is);
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeStream(replay, null, options);
+            is = replay.replay();
+            if (!"image/gif".equals(options.outMimeType)) {
+                sampleSize = computeSampleSize(options.outWidth, options.outHeight,
+                        targetWidth, targetHeight);
+            }
+        }
+
+        Image image;
+        if (sampleSize > 1) {
+            image = decodeSampled(is, sampleSize);
+        } else {
+            image = Image.decode(is, true);
+        }
+
+        if (image != null) {
+            synchronized (this) {
+                if (sampleSize > 1) {
+                    mSampleSizes.put(index, sampleSize);
+                } else {
+                    mSampleSizes.delete(index);
+                }
+            }
+        }
+        return image;
+    }
+
+    @Nullable
+    private static Image decodeSampled(InputStream is, int sampleSize) {
+        long start = SystemClock.elapsedRealtime();
+        long decoded;
+        byte[] data;
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize;
+            Bitmap bitmap = BitmapFactory.decodeStream(is, null, options);
+            if (bitmap == null) {
+                return null;
+            }
+            decoded = SystemClock.elapsedRealtime();
+            ByteArrayOutputStream os = new ByteArrayOutputStream(
+                    bitmap.getWidth() * bitmap.getHeight() / 2);
+            if (bitmap.hasAlpha()) {
+                bitmap.compress(Bitmap.CompressFormat.PNG, 100, os);
+            } else {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, os);
+            }
+            bitmap.recycle();
+            data = os.toByteArray();
+        } catch (OutOfMemoryError e) {
+            return null;
+        }
+        long encoded = SystemClock.elapsedRealtime();
+        Image image = Image.decode(new ByteArrayInputStream(data), true);
+        if (DEBUG_LOG) {
+            Log.d(TAG, "Sample size " + sampleSize + ": decode " + (decoded - start)
+                    + "ms, encode " + (encoded - decoded) + "ms to " + data.length
+                    + " bytes, image " + (SystemClock.elapsedRealtime() - encoded) + "ms");
+        }
+        return image;
+    }
+
+    /**
+     * Keeps the bytes read, then reads them again before the rest of the stream.
+     */
+    static final class ReplayInputStream extends FilterInputStream {
+
+        private final ByteArrayOutputStream mRecord = new ByteArrayOutputStream(BUFFER_SIZE);
+
+        ReplayInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                mRecord.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                mRecord.write(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (n <= 0) {
+                return 0;
+            }
+            // Skipped bytes are read again too
+            byte[] buffer = new byte[(int) Math.min(n, BUFFER_SIZE)];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+                if (read == -1) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            throw new IOException("Mark not supported");
+        }
+
+        @Override
+        public void close() {
+            // Closed by the stream of replay()
+        }
+
+        /**
+         * @return the stream from the beginning, this stream must not be read anymore
+         */
+        InputStream replay() {
+            return new SequenceInputStream(new ByteArrayInputStream(mRecord.toByteArray()), in);
+        }
+    }
+}
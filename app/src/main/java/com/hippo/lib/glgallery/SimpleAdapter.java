@@ -61,6 +61,16 @@ public class SimpleAdapter extends GalleryView.Adapter implements GalleryProvide
         view.setError(null, null);
     }
 
+    @Override
+    public void onTargetSizeChanged(int width, int height) {
+        mProvider.setTargetSize(width, height);
+    }
+
+    @Override
+    public void onPageMagnify(int index) {
+        mProvider.requestFullSize(index);
+    }
+
     @Override
     public String getError() {
         return mProvider.getError();
@@ -116,7 +126,7 @@ public class SimpleAdapter extends GalleryView.Adapter implements GalleryProvide
                 ImageTexture imageTexture = new ImageTexture(image);
                 mUploader.addTexture(imageTexture);
                 page.showImage();
-                page.setImage(imageTexture);
+                page.setImage(imageTexture, mProvider.getSampleSize(index));
                 if (mShowIndex) {
                     page.setPage(index + 1);
                 } else {
@@ -56,7 +56,7 @@ class CookieDatabase {
 
   private static final int DB_VERSION = VERSION_1;
 
-  private final Map<Cookie, Long> cookieIdMap = new HashMap<>();
+  private final Map<CookieSet.Key, Long> cookieIdMap = new HashMap<>();
   private final SQLiteOpenHelper helper;
   private final SQLiteDatabase db;
 
@@ -126,7 +126,7 @@ class CookieDatabase {
 
         if (cookie != null) {
           // Save id of the cookie in db
-          cookieIdMap.put(cookie, id);
+          cookieIdMap.put(new CookieSet.Key(cookie), id);
 
           // Put cookie to set
           CookieSet set = map.get(cookie.domain());
@@ -177,44 +177,62 @@ class CookieDatabase {
     return contentValues;
   }
 
-  public void add(Cookie cookie) {
+  /**
+   * Applies cookie changes in one transaction.
+   * A {@code null} value means removing the cookie with the key.
+   */
+  public void apply(Map<CookieSet.Key, Cookie> changes) {
+    if (changes.isEmpty()) {
+      return;
+    }
+    db.beginTransaction();
+    try {
+      for (Map.Entry<CookieSet.Key, Cookie> entry : changes.entrySet()) {
+        CookieSet.Key key = entry.getKey();
+        Cookie cookie = entry.getValue();
+        if (cookie == null) {
+          remove(key);
+        } else if (cookieIdMap.containsKey(key)) {
+          update(key, cookie);
+        } else {
+          add(key, cookie);
+        }
+      }
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+  }
+
+  private void add(CookieSet.Key key, Cookie cookie) {
     long id = db.insert(TABLE_COOKIE, null, toContentValues(cookie));
     if (id != -1L) {
-      Long oldId = cookieIdMap.put(cookie, id);
-      if (oldId != null) Log.e(LOG_TAG, "Add a duplicate cookie");
+      cookieIdMap.put(key, id);
     } else {
       Log.e(LOG_TAG, "An error occurred when insert a cookie");
     }
   }
 
-  public void update(Cookie from, Cookie to) {
-    Long id = cookieIdMap.get(from);
-    if (id == null) {
-      Log.e(LOG_TAG, "Can't get id when update the cookie");
-      return;
-    }
-    if (from.name().equals("igneous")){
+  private void update(CookieSet.Key key, Cookie cookie) {
+    Long id = cookieIdMap.get(key);
+    if (cookie.name().equals("igneous")){
       if (Settings.getLockCookieIgneous()){
         return;
       }
     }
-    ContentValues values = toContentValues(to);
+    ContentValues values = toContentValues(cookie);
     String whereClause = COLUMN_ID + " = ?";
     String[] whereArgs = { id.toString() };
     int count = db.update(TABLE_COOKIE, values, whereClause, whereArgs);
     if (count != 1) {
       Log.e(LOG_TAG, "Bad result when update cookie: " + count);
     }
-
-    // Update it in cookie-id map
-    cookieIdMap.remove(from);
-    cookieIdMap.put(to, id);
   }
 
-  public void remove(Cookie cookie) {
-    Long id = cookieIdMap.get(cookie);
+  private void remove(CookieSet.Key key) {
+    Long id = cookieIdMap.remove(key);
     if (id == null) {
-      Log.e(LOG_TAG, "Can't get id when remove the cookie");
+      // It is not in database
       return;
     }
 
@@ -224,9 +242,6 @@ class CookieDatabase {
     if (count != 1) {
       Log.e(LOG_TAG, "Bad result when remove cookie: " + count);
     }
-
-    // Remove it from cookie-id map
-    cookieIdMap.remove(cookie);
   }
 
   public void clear() {
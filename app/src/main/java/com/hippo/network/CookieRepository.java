@@ -21,10 +21,13 @@ package com.hippo.network;
  */
 
 import android.content.Context;
+import android.util.Log;
+import com.hippo.util.IoThreadPoolExecutor;
 import com.hippo.yorozuya.ObjectUtils;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -32,59 +35,159 @@ import okhttp3.Cookie;
 import okhttp3.CookieJar;
 import okhttp3.HttpUrl;
 
+/**
+ * Cookies are read from an immutable snapshot without locking.
+ * Changes are written to database in background, changes of the
+ * same cookie before writing are merged.
+ */
 public class CookieRepository implements CookieJar {
 
-  private CookieDatabase db;
-  private Map<String, CookieSet> map;
+  private static final String LOG_TAG = CookieRepository.class.getSimpleName();
+
+  private static final Comparator<Cookie> PATH_COMPARATOR = new Comparator<Cookie>() {
+    @Override
+    public int compare(Cookie o1, Cookie o2) {
+      return o2.path().length() - o1.path().length();
+    }
+  };
+
+  private final CookieDatabase db;
+  // Guarded by this
+  private final Map<String, CookieSet> map;
+  private volatile Snapshot snapshot;
+
+  // Cookie changes not written to database, null value for removing, guarded by this
+  private Map<CookieSet.Key, Cookie> journal = new LinkedHashMap<>();
+  private boolean clearJournal;
+  private boolean flushScheduled;
+  // Held when writing to database, keep the order of changes
+  private final Object dbLock = new Object();
+
+  private final Runnable flushTask = new Runnable() {
+    @Override
+    public void run() {
+      while (flush()) {
+        // Flush until nothing changes
+      }
+    }
+  };
 
   public CookieRepository(Context context, String name) {
     db = new CookieDatabase(context, name);
     map = db.getAllCookies();
+    snapshot = new Snapshot(map);
+  }
+
+  private static final class Snapshot {
+
+    final String[] domains;
+    final Cookie[][] cookies;
+
+    Snapshot(Map<String, CookieSet> map) {
+      List<String> domainList = new ArrayList<>(map.size());
+      List<Cookie[]> cookieList = new ArrayList<>(map.size());
+      for (Map.Entry<String, CookieSet> entry : map.entrySet()) {
+        if (!entry.getValue().isEmpty()) {
+          domainList.add(entry.getKey());
+          cookieList.add(entry.getValue().toArray());
+        }
+      }
+      domains = domainList.toArray(new String[domainList.size()]);
+      cookies = cookieList.toArray(new Cookie[cookieList.size()][]);
+    }
   }
 
-  public synchronized void addCookie(Cookie cookie) {
-    // For cookie database
-    Cookie toAdd = null;
-    Cookie toUpdate = null;
-    Cookie toRemove = null;
+  public void addCookie(Cookie cookie) {
+    synchronized (this) {
+      addCookieInternal(cookie);
+      commit();
+    }
+  }
 
+  // Must be called in synchronized block, call commit() after it
+  private void addCookieInternal(Cookie cookie) {
     CookieSet set = map.get(cookie.domain());
     if (set == null) {
       set = new CookieSet();
       map.put(cookie.domain(), set);
     }
 
+    // If the cookie is not persistent, it's not in database
+    CookieSet.Key key = new CookieSet.Key(cookie);
     if (cookie.expiresAt() <= System.currentTimeMillis()) {
-      toRemove = set.remove(cookie);
-      // If the cookie is not persistent, it's not in database
-      if (toRemove != null && !toRemove.persistent()) {
-        toRemove = null;
+      Cookie removed = set.remove(cookie);
+      if (removed != null && removed.persistent()) {
+        journal.put(key, null);
       }
     } else {
-      toAdd = cookie;
-      toUpdate = set.add(cookie);
-      // If the cookie is not persistent, it's not in database
-      if (!toAdd.persistent()) toAdd = null;
-      if (toUpdate != null && !toUpdate.persistent()) toUpdate = null;
-      // Remove the cookie if it updates to null
-      if (toAdd == null && toUpdate != null) {
-        toRemove = toUpdate;
-        toUpdate = null;
+      Cookie old = set.add(cookie);
+      if (cookie.persistent()) {
+        journal.put(key, cookie);
+      } else if (old != null && old.persistent()) {
+        // Remove the cookie if it updates to non-persistent
+        journal.put(key, null);
       }
     }
+  }
 
-    if (toRemove != null) {
-      db.remove(toRemove);
+  // Publish the changes to readers and schedule a flush, must be called in synchronized block
+  private void commit() {
+    snapshot = new Snapshot(map);
+    if (!flushScheduled && (clearJournal || !journal.isEmpty())) {
+      flushScheduled = true;
+      IoThreadPoolExecutor.getInstance().execute(flushTask);
     }
-    if (toAdd != null) {
-      if (toUpdate != null) {
-        db.update(toUpdate, toAdd);
-      } else {
-        db.add(toAdd);
+  }
+
+  /**
+   * Writes the journal to database. If it fails, the changes are put back
+   * to the journal, the next commit tries again.
+   *
+   * @return false if the journal is empty or the writing fails
+   */
+  private boolean flush() {
+    synchronized (dbLock) {
+      Map<CookieSet.Key, Cookie> changes;
+      boolean clear;
+      synchronized (this) {
+        if (!clearJournal && journal.isEmpty()) {
+          flushScheduled = false;
+          return false;
+        }
+        changes = journal;
+        clear = clearJournal;
+        journal = new LinkedHashMap<>();
+        clearJournal = false;
+      }
+      try {
+        if (clear) {
+          db.clear();
+        }
+        db.apply(changes);
+        return true;
+      } catch (RuntimeException e) {
+        Log.e(LOG_TAG, "Can't write cookies to database", e);
+        synchronized (this) {
+          restoreJournal(changes, clear);
+          flushScheduled = false;
+        }
+        return false;
       }
     }
   }
 
+  // Must be called in synchronized block
+  private void restoreJournal(Map<CookieSet.Key, Cookie> changes, boolean clear) {
+    if (clearJournal) {
+      // Cleared again, the changes are dropped too
+      return;
+    }
+    // Newer changes win
+    changes.putAll(journal);
+    journal = changes;
+    clearJournal = clear;
+  }
+
   public String getCookieHeader(HttpUrl url) {
     List<Cookie> cookies = getCookies(url);
     StringBuilder cookieHeader = new StringBuilder();
@@ -98,36 +201,50 @@ public class CookieRepository implements CookieJar {
     return cookieHeader.toString();
   }
 
-  public synchronized List<Cookie> getCookies(HttpUrl url) {
+  public List<Cookie> getCookies(HttpUrl url) {
+    Snapshot snapshot = this.snapshot;
+    long now = System.currentTimeMillis();
     List<Cookie> accepted = new ArrayList<>();
-    List<Cookie> expired = new ArrayList<>();
+    List<Cookie> expired = null;
 
-    for (Map.Entry<String, CookieSet> entry : map.entrySet()) {
-      String domain = entry.getKey();
-      CookieSet cookieSet = entry.getValue();
-      if (domainMatch(url, domain)) {
-        cookieSet.get(url, accepted, expired);
+    for (int i = 0, n = snapshot.domains.length; i < n; i++) {
+      if (!domainMatch(url, snapshot.domains[i])) {
+        continue;
+      }
+      for (Cookie cookie : snapshot.cookies[i]) {
+        if (cookie.expiresAt() <= now) {
+          if (expired == null) {
+            expired = new ArrayList<>();
+          }
+          expired.add(cookie);
+        } else if (cookie.matches(url)) {
+          accepted.add(cookie);
+        }
       }
     }
 
-    for (Cookie cookie : expired) {
-      if (cookie.persistent()) {
-        db.remove(cookie);
-      }
+    if (expired != null) {
+      removeExpired(expired);
     }
 
     // RFC 6265 Section-5.4 step 2, sort the cookie-list
     // Cookies with longer paths are listed before cookies with shorter paths.
     // Ignore creation-time, we don't store them.
-    Collections.sort(accepted, new Comparator<Cookie>() {
-      @Override
-      public int compare(Cookie o1, Cookie o2) {
-        return o2.path().length() - o1.path().length();
-      }
-    });
+    Collections.sort(accepted, PATH_COMPARATOR);
 
     return accepted;
   }
+
+  private synchronized void removeExpired(List<Cookie> expired) {
+    for (Cookie cookie : expired) {
+      CookieSet set = map.get(cookie.domain());
+      // It might be replaced after the snapshot is taken
+      if (set != null && set.removeIfSame(cookie) && cookie.persistent()) {
+        journal.put(new CookieSet.Key(cookie), null);
+      }
+    }
+    commit();
+  }
 //mystery
   public boolean contains(HttpUrl url, String name) {
     for (Cookie cookie : getCookies(url)) {
@@ -143,17 +260,30 @@ public class CookieRepository implements CookieJar {
    */
   public synchronized void clear() {
     map.clear();
-    db.clear();
+    journal.clear();
+    clearJournal = true;
+    commit();
   }
 
-  public synchronized void close() {
-    db.close();
+  /**
+   * Writes all changes to database and close it.
+   */
+  public void close() {
+    synchronized (dbLock) {
+      while (flush()) {
+        // Flush until nothing changes
+      }
+      db.close();
+    }
   }
 
   @Override
   public void saveFromResponse(HttpUrl httpUrl, List<Cookie> list) {
-    for (Cookie cookie : list) {
-      addCookie(cookie);
+    synchronized (this) {
+      for (Cookie cookie : list) {
+        addCookieInternal(cookie);
+      }
+      commit();
     }
   }
 
@@ -23,11 +23,8 @@ package com.hippo.network;
 import com.hippo.util.HashCodeUtils;
 import com.hippo.yorozuya.ObjectUtils;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import okhttp3.Cookie;
-import okhttp3.HttpUrl;
 
 class CookieSet {
 
@@ -52,20 +49,24 @@ class CookieSet {
   }
 
   /**
-   * Get cookies for the url. Fill {@code accepted} and {@code expired}.
+   * Removes the cookie if it is not replaced by another one.
+   * Returns {@code true} if it is removed.
    */
-  public void get(HttpUrl url, List<Cookie> accepted, List<Cookie> expired) {
-    long now = System.currentTimeMillis();
-    Iterator<Map.Entry<Key, Cookie>> iterator = map.entrySet().iterator();
-    while (iterator.hasNext()) {
-      Cookie cookie = iterator.next().getValue();
-      if (cookie.expiresAt() <= now) {
-        iterator.remove();
-        expired.add(cookie);
-      } else if (cookie.matches(url)) {
-        accepted.add(cookie);
-      }
+  public boolean removeIfSame(Cookie cookie) {
+    Key key = new Key(cookie);
+    if (map.get(key) == cookie) {
+      map.remove(key);
+      return true;
     }
+    return false;
+  }
+
+  public boolean isEmpty() {
+    return map.isEmpty();
+  }
+
+  public Cookie[] toArray() {
+    return map.values().toArray(new Cookie[map.size()]);
   }
 
   static class Key {
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Initializers with dependencies.
+ * <p>
+ * Background tasks start in executor as soon as their dependencies are done,
+ * independent ones run in parallel. Lazy tasks only run when someone awaits them
+ * or {@link #startLazy(String)} is called. Code which needs the result of a task
+ * calls {@link #await(String)} before using it.
+ */
+public final class StartupGraph {
+
+    public interface Listener {
+        /**
+         * @param error {@code null} if the task succeeded
+         */
+        void onTaskDone(@NonNull String name, @NonNull String thread, long durationNanos,
+                @Nullable Throwable error);
+    }
+
+    private final Executor mExecutor;
+    @Nullable
+    private final Listener mListener;
+    private final Map<String, Task> mTasks = new LinkedHashMap<>();
+    private boolean mStarted;
+
+    private final class Task implements Runnable {
+        final String name;
+        final String[] dependencies;
+        final boolean lazy;
+        final Runnable action;
+        final List<Task> dependents = new ArrayList<>();
+        final AtomicInteger pending = new AtomicInteger();
+        final AtomicBoolean started = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile Throwable error;
+        volatile Thread thread;
+        volatile long duration = -1;
+
+        Task(String name, String[] dependencies, boolean lazy, Runnable action) {
+            this.name = name;
+            this.dependencies = dependencies;
+            this.lazy = lazy;
+            this.action = action;
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            long start = System.nanoTime();
+            try {
+                for (String dependency : dependencies) {
+                    Task task = mTasks.get(dependency);
+                    // Lazy task waits dependencies here
+                    awaitTask(task);
+                    if (task.error != null) {
+                        throw new IllegalStateException("Dependency " + dependency + " failed", task.error);
+                    }
+                }
+                action.run();
+            } catch (Throwable e) {
+                error = e;
+            } finally {
+                duration = System.nanoTime() - start;
+                done.countDown();
+                thread = null;
+            }
+
+            if (mListener != null) {
+                mListener.onTaskDone(name, Thread.currentThread().getName(), duration, error);
+            }
+            for (Task dependent : dependents) {
+                if (dependent.pending.decrementAndGet() == 0) {
+                    submit(dependent);
+                }
+            }
+        }
+    }
+
+    public StartupGraph(@NonNull Executor executor, @Nullable Listener listener) {
+        mExecutor = executor;
+        mListener = listener;
+    }
+
+    /**
+     * Add a task which starts in background once its dependencies are done.
+     */
+    public synchronized StartupGraph add(@NonNull String name, @NonNull Runnable action,
+            @NonNull String... dependencies) {
+        return addTask(new Task(name, dependencies, false, action));
+    }
+
+    /**
+     * Add a task which only runs on first {@link #await(String)} or {@link #startLazy(String)}.
+     */
+    public synchronized StartupGraph addLazy(@NonNull String name, @NonNull Runnable action,
+            @NonNull String... dependencies) {
+        return addTask(new Task(name, dependencies, true, action));
+    }
+
+    private StartupGraph addTask(Task task) {
+        if (mStarted) {
+            throw new IllegalStateException("Already started");
+        }
+        if (mTasks.containsKey(task.name)) {
+            throw new IllegalStateException("Duplicate task: " + task.name);
+        }
+        mTasks.put(task.name, task);
+        return this;
+    }
+
+    /**
+     * Check the graph and start the background tasks without dependencies.
+     */
+    public void start() {
+        List<Task> ready = new ArrayList<>();
+        synchronized (this) {
+            if (mStarted) {
+                throw new IllegalStateException("Already started");
+            }
+            for (Task task : mTasks.values()) {
+                for (String dependency : task.dependencies) {
+                    Task dep = mTasks.get(dependency);
+                    if (dep == null) {
+                        throw new IllegalStateException(task.name + " depends on missing task " + dependency);
+                    }
+                    if (!task.lazy && dep.lazy) {
+                        throw new IllegalStateException(task.name + " depends on lazy task " + dependency);
+                    }
+                    if (!task.lazy) {
+                        dep.dependents.add(task);
+                        task.pending.incrementAndGet();
+                    }
+                }
+            }
+            checkCycle();
+            mStarted = true;
+            for (Task task : mTasks.values()) {
+                if (!task.lazy && task.pending.get() == 0) {
+                    ready.add(task);
+                }
+            }
+        }
+        for (Task task : ready) {
+            submit(task);
+        }
+    }
+
+    private void checkCycle() {
+        Set<String> visited = new HashSet<>();
+        for (String name : mTasks.keySet()) {
+            visit(name, visited, new HashSet<>());
+        }
+    }
+
+    private void visit(String name, Set<String> visited, Set<String> path) {
+        if (!path.add(name)) {
+            throw new IllegalStateException("Cycle at task " + name);
+        }
+        if (visited.add(name)) {
+            for (String dependency : mTasks.get(name).dependencies) {
+                visit(dependency, visited, path);
+            }
+        }
+        path.remove(name);
+    }
+
+    private void submit(Task task) {
+        if (task.started.compareAndSet(false, true)) {
+            mExecutor.execute(task);
+        }
+    }
+
+    @NonNull
+    private Task getTask(String name) {
+        Task task;
+        synchronized (this) {
+            if (!mStarted) {
+                throw new IllegalStateException("Not started");
+            }
+            task = mTasks.get(name);
+        }
+        if (task == null) {
+            throw new IllegalArgumentException("No such task: " + name);
+        }
+        return task;
+    }
+
+    /**
+     * Start the lazy task in background if it is not started.
+     */
+    public void startLazy(@NonNull String name) {
+        Task task = getTask(name);
+        if (task.lazy) {
+            submit(task);
+        }
+    }
+
+    /**
+     * Wait until the task is done. A lazy task which is not started runs in current thread.
+     *
+     * @throws IllegalStateException if the task failed
+     */
+    public void await(@NonNull String name) {
+        Task task = getTask(name);
+        awaitTask(task);
+        Throwable error = task.error;
+        if (error != null) {
+            throw new IllegalStateException("Startup task " + name + " failed", error);
+        }
+    }
+
+    private static void awaitTask(Task task) {
+        if (task.done.getCount() == 0) {
+            return;
+        }
+        if (task.lazy && task.started.compareAndSet(false, true)) {
+            task.run();
+            return;
+        }
+        if (task.thread == Thread.currentThread()) {
+            throw new IllegalStateException("Task " + task.name + " awaits itself");
+        }
+
+        boolean interrupted = false;
+        for (;;) {
+            try {
+                task.done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isDone(@NonNull String name) {
+        return getTask(name).done.getCount() == 0;
+    }
+
+    /**
+     * @return the duration of each finished task
+     */
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder("StartupGraph{");
+        boolean first = true;
+        for (Task task : mTasks.values()) {
+            if (!first) {
+                sb.append(", ");
+            }
+            first = false;
+            sb.append(task.name).append('=');
+            if (task.duration < 0) {
+                sb.append(task.started.get() ? "running" : "pending");
+            } else {
+                sb.append(String.format(Locale.US, "%.1fms", task.duration / 1000000.0f));
+                if (task.error != null) {
+                    sb.append("(failed)");
+                }
+            }
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -263,6 +263,23 @@ public class ContentLayout extends FrameLayout {
         private int mCurrentTaskType;
         private int mCurrentTaskPage;
 
+        /**
+         * Rows shown before the page of the task is done, see {@link #onGetPartialPageData(int, List)}.
+         * They start at <code>mPartialStart</code> in <code>mData</code> and are not in <code>mPageDivider</code>.
+         */
+        private final ArrayList<E> mPartialData = new ArrayList<>();
+        private boolean mHasPartial;
+        private int mPartialTaskId;
+        private int mPartialStart;
+        // Shown view before partial rows
+        private int mPartialShownView;
+        // Pages replaced by partial rows of refresh and somewhere, restored if the task fails
+        @Nullable
+        private ArrayList<E> mReplacedData;
+        private int[] mReplacedPageDivider;
+        private int mReplacedStartPage;
+        private int mReplacedEndPage;
+
         private int mNextPageScrollSize;
 
         private String mEmptyString = "No hint";
@@ -389,6 +406,10 @@ public class ContentLayout extends FrameLayout {
 
         protected abstract void notifyItemRangeInserted(int positionStart, int itemCount);
 
+        protected void notifyItemRangeChanged(int positionStart, int itemCount) {
+            notifyDataSetChanged();
+        }
+
         protected void onScrollToPosition(int postion) {
         }
 
@@ -531,6 +552,13 @@ public class ContentLayout extends FrameLayout {
 
         public void onGetPageData(int taskId, int pages, int nextPage, List<E> data) {
             if (mCurrentTaskId == taskId) {
+                if (mHasPartial) {
+                    if (mPartialTaskId == taskId) {
+                        onPartialPageDone(pages, nextPage, data);
+                        return;
+                    }
+                    rollbackPartialData();
+                }
 
                 switch (mCurrentTaskType) {
                     case TYPE_REFRESH:
@@ -554,6 +582,194 @@ public class ContentLayout extends FrameLayout {
             }
         }
 
+        private static boolean isReplaceType(int type) {
+            return type == TYPE_REFRESH || type == TYPE_SOMEWHERE;
+        }
+
+        /**
+         * Show some rows of the current task before the whole page is got.
+         * It works for refresh, somewhere and next page, other types ignore it.
+         * {@link #onGetPageData(int, int, int, List)} must be called later with
+         * the whole page, the shown rows are replaced with the rows in it which
+         * are duplicate, and removed if they are not in it.
+         */
+        public void onGetPartialPageData(int taskId, List<E> data) {
+            if (mCurrentTaskId != taskId) {
+                return;
+            }
+            if (mHasPartial && mPartialTaskId != taskId) {
+                rollbackPartialData();
+            }
+            int type = mCurrentTaskType;
+            if (!isReplaceType(type) && type != TYPE_NEXT_PAGE && type != TYPE_NEXT_PAGE_KEEP_POS) {
+                return;
+            }
+            if (data.isEmpty()) {
+                return;
+            }
+
+            data = new ArrayList<>(data);
+            boolean first = !mHasPartial;
+            if (first) {
+                mHasPartial = true;
+                mPartialTaskId = taskId;
+                mPartialShownView = mViewTransition.getShownViewIndex();
+                if (isReplaceType(type)) {
+                    // New rows are coming, keep the old pages until the task is done
+                    mReplacedData = new ArrayList<>(mData);
+                    mReplacedPageDivider = new int[mPageDivider.size()];
+                    for (int i = 0; i < mReplacedPageDivider.length; i++) {
+                        mReplacedPageDivider[i] = mPageDivider.get(i);
+                    }
+                    mReplacedStartPage = mStartPage;
+                    mReplacedEndPage = mEndPage;
+                    mData.clear();
+                    onClearData();
+                    mPageDivider.clear();
+                    mStartPage = mCurrentTaskPage;
+                    mEndPage = mCurrentTaskPage;
+                    notifyDataSetChanged();
+                    mPartialStart = 0;
+                } else {
+                    mPartialStart = mData.size();
+                }
+            }
+            removeDuplicateData(data, isReplaceType(type) ? 0 : mPartialStart - CHECK_DUPLICATE_RANGE, mData.size());
+            if (data.isEmpty()) {
+                return;
+            }
+
+            int start = mData.size();
+            mData.addAll(data);
+            mPartialData.addAll(data);
+            onAddData(data);
+            notifyItemRangeInserted(start, data.size());
+
+            if (!first) {
+                return;
+            }
+
+            // Ui change, show content, the page is still loading
+            showContent();
+            if (!mRefreshLayout.isRefreshing()) {
+                mRefreshLayout.setFooterRefreshing(true);
+            }
+
+            if (mRecyclerView.isAttachedToWindow()) {
+                // RecyclerView scroll, as the page is got
+                mRecyclerView.stopScroll();
+                if (type == TYPE_NEXT_PAGE_KEEP_POS) {
+                    mRecyclerView.smoothScrollBy(0, mNextPageScrollSize);
+                } else {
+                    RecyclerView.LayoutManager manager = mRecyclerView.getLayoutManager();
+                    if (manager == null) {
+                        return;
+                    }
+                    LayoutManagerUtils.scrollToPositionWithOffset(manager, start, 0);
+                    onScrollToPosition(start);
+                }
+            }
+        }
+
+        private void rollbackPartialData() {
+            ArrayList<E> replaced = mReplacedData;
+            if (replaced != null) {
+                // Bring back the old pages
+                mReplacedData = null;
+                mData.clear();
+                onClearData();
+                mData.addAll(replaced);
+                onAddData(replaced);
+                mPageDivider.clear();
+                for (int divider : mReplacedPageDivider) {
+                    mPageDivider.add(divider);
+                }
+                mReplacedPageDivider = null;
+                mStartPage = mReplacedStartPage;
+                mEndPage = mReplacedEndPage;
+                notifyDataSetChanged();
+                mPartialData.clear();
+                mHasPartial = false;
+                return;
+            }
+
+            int end = Math.min(mPartialStart + mPartialData.size(), mData.size());
+            if (mPartialStart < end) {
+                List<E> shown = mData.subList(mPartialStart, end);
+                List<E> removed = new ArrayList<>(shown);
+                shown.clear();
+                onRemoveData(removed);
+                notifyItemRangeRemoved(mPartialStart, removed.size());
+            }
+            mPartialData.clear();
+            mHasPartial = false;
+        }
+
+        private void onPartialPageDone(int pages, int nextPage, List<E> data) {
+            List<E> rest = new ArrayList<>(data);
+            // From the end, so the index of the rows before it are kept
+            for (int i = mPartialData.size() - 1; i >= 0; i--) {
+                int index = mPartialStart + i;
+                E old = mPartialData.get(i);
+                E replacement = null;
+                for (Iterator<E> iterator = rest.iterator(); iterator.hasNext(); ) {
+                    E d = iterator.next();
+                    if (isDuplicate(d, old)) {
+                        replacement = d;
+                        iterator.remove();
+                        break;
+                    }
+                }
+                onRemoveData(old);
+                if (replacement == null) {
+                    // Filtered out after partial data
+                    mData.remove(index);
+                    notifyItemRangeRemoved(index, 1);
+                } else {
+                    mData.set(index, replacement);
+                    onAddData(replacement);
+                    notifyItemRangeChanged(index, 1);
+                }
+            }
+            mPartialData.clear();
+            mHasPartial = false;
+            mReplacedData = null;
+            mReplacedPageDivider = null;
+
+            // Rows which are not published as partial data
+            removeDuplicateData(rest, isReplaceType(mCurrentTaskType) ? 0 : mPartialStart - CHECK_DUPLICATE_RANGE, mData.size());
+            if (!rest.isEmpty()) {
+                int start = mData.size();
+                mData.addAll(rest);
+                onAddData(rest);
+                notifyItemRangeInserted(start, rest.size());
+            }
+
+            if (isReplaceType(mCurrentTaskType)) {
+                mStartPage = mCurrentTaskPage;
+                mEndPage = mCurrentTaskPage + 1;
+                mPages = pages;
+                mNextPage = nextPage;
+                mPageDivider.clear();
+                mPageDivider.add(mData.size());
+            } else {
+                mPageDivider.add(mData.size());
+                if (nextPage > -1 || pages > -1) {
+                    mEndPage++;
+                    mNextPage = nextPage;
+                    mPages = Math.max(mEndPage, pages);
+                }
+            }
+
+            mRefreshLayout.setHeaderRefreshing(false);
+            mRefreshLayout.setFooterRefreshing(false);
+            if (mData.isEmpty()) {
+                showEmptyString();
+            } else {
+                showContent();
+            }
+        }
+
         private void onTypeRefreshPage(int pages, int nextPage, List<E> data) {
             if (mCurrentTaskPage < mStartPage || mCurrentTaskPage >= mEndPage) {
                 Log.e(TAG, "TYPE_REFRESH_PAGE, but mCurrentTaskPage = " + mCurrentTaskPage +
@@ -876,6 +1092,12 @@ public class ContentLayout extends FrameLayout {
 
         public void onGetException(int taskId, Exception e) {
             if (mCurrentTaskId == taskId) {
+                int shownView = mViewTransition.getShownViewIndex();
+                if (mHasPartial) {
+                    // Back to what it was before the task
+                    shownView = mPartialShownView;
+                    rollbackPartialData();
+                }
                 mRefreshLayout.setHeaderRefreshing(false);
                 mRefreshLayout.setFooterRefreshing(false);
 
@@ -887,7 +1109,7 @@ public class ContentLayout extends FrameLayout {
                     readableError = getContext().getString(R.string.error_unknown);
                 }
 
-                if (mViewTransition.getShownViewIndex() == 0) {
+                if (shownView == 0) {
                     Toast.makeText(getContext(), readableError, Toast.LENGTH_SHORT).show();
                 } else {
                     showText(readableError);
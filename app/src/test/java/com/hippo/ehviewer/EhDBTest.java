@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.hippo.ehviewer.client.data.GalleryInfo;
+import com.hippo.ehviewer.dao.DownloadDirname;
+import com.hippo.ehviewer.dao.DownloadInfo;
+import com.hippo.ehviewer.dao.HistoryInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.greenrobot.greendao.query.LazyList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class EhDBTest {
+
+  private int maxHistoryCount;
+
+  @Before
+  public void setUp() {
+    Settings.initialize(RuntimeEnvironment.application);
+    EhDB.initialize(RuntimeEnvironment.application);
+    maxHistoryCount = EhDB.MAX_HISTORY_COUNT;
+    EhDB.clearHistoryInfo();
+    EhDB.clearDownloadDirname();
+    for (GalleryInfo info : EhDB.getAllLocalFavorites()) {
+      EhDB.removeLocalFavorites(info.gid);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    EhDB.MAX_HISTORY_COUNT = maxHistoryCount;
+  }
+
+  private static GalleryInfo info(long gid) {
+    GalleryInfo info = new GalleryInfo();
+    info.gid = gid;
+    info.token = "token" + gid;
+    info.title = "title" + gid;
+    return info;
+  }
+
+  private static HistoryInfo history(long gid, long time) {
+    HistoryInfo info = new HistoryInfo(info(gid));
+    info.time = time;
+    return info;
+  }
+
+  private static List<Long> historyGids() {
+    LazyList<HistoryInfo> list = EhDB.getHistoryLazyList();
+    try {
+      List<Long> gids = new ArrayList<>();
+      for (HistoryInfo info : list) {
+        gids.add(info.gid);
+      }
+      return gids;
+    } finally {
+      list.close();
+    }
+  }
+
+  @Test
+  public void testPutLocalFavoritesMoreThanOneChunk() {
+    // More than the limit of sql variables in one query
+    EhDB.putLocalFavorite(info(5));
+    List<GalleryInfo> list = new ArrayList<>();
+    for (long gid = 1; gid <= 2500; gid++) {
+      list.add(info(gid));
+    }
+    // Duplicate in the list
+    list.add(info(2000));
+    EhDB.putLocalFavorites(list);
+
+    List<GalleryInfo> result = EhDB.getAllLocalFavorites();
+    assertEquals(2500, result.size());
+    Set<Long> gids = new HashSet<>();
+    for (GalleryInfo info : result) {
+      gids.add(info.gid);
+    }
+    assertEquals(2500, gids.size());
+
+    EhDB.removeLocalFavorites(new long[] {1, 2, 3});
+    assertEquals(2497, EhDB.getAllLocalFavorites().size());
+  }
+
+  @Test
+  public void testPutHistoryInfoTrim() {
+    EhDB.MAX_HISTORY_COUNT = 5;
+    EhDB.putHistoryInfo(Collections.singletonList(history(100, 100)));
+    List<HistoryInfo> list = new ArrayList<>();
+    for (long gid = 1; gid <= 8; gid++) {
+      list.add(history(gid, gid * 1000));
+    }
+    // Already in history, it is not changed
+    list.add(history(100, 100000));
+    EhDB.putHistoryInfo(list);
+
+    // Newest ones are kept
+    assertEquals(Arrays.asList(8L, 7L, 6L, 5L, 4L), historyGids());
+  }
+
+  @Test
+  public void testPutHistoryInfoUnlimited() {
+    EhDB.MAX_HISTORY_COUNT = -1;
+    List<HistoryInfo> list = new ArrayList<>();
+    for (long gid = 1; gid <= 1500; gid++) {
+      list.add(history(gid, gid));
+    }
+    EhDB.putHistoryInfo(list);
+    EhDB.putHistoryInfo(list);
+    assertEquals(1500, historyGids().size());
+  }
+
+  @Test
+  public void testDownloadDirname() {
+    List<DownloadDirname> dirnames = new ArrayList<>();
+    for (long gid = 1; gid <= 4; gid++) {
+      DownloadDirname dirname = new DownloadDirname();
+      dirname.setGid(gid);
+      dirname.setDirname("dir" + gid);
+      dirnames.add(dirname);
+    }
+    EhDB.putDownloadDirname(dirnames);
+    assertEquals("dir3", EhDB.getDownloadDirname(3));
+
+    // Replace
+    dirnames.get(2).setDirname("new3");
+    EhDB.putDownloadDirname(Collections.singletonList(dirnames.get(2)));
+    assertEquals("new3", EhDB.getDownloadDirname(3));
+
+    EhDB.removeDownloadDirname(Arrays.asList(1L, 3L, 10L));
+    assertNull(EhDB.getDownloadDirname(1));
+    assertEquals("dir2", EhDB.getDownloadDirname(2));
+    assertNull(EhDB.getDownloadDirname(3));
+    assertEquals("dir4", EhDB.getDownloadDirname(4));
+    EhDB.removeDownloadDirname(Collections.emptyList());
+  }
+
+  @Test
+  public void testDownloadInfo() {
+    List<DownloadInfo> list = new ArrayList<>();
+    for (long gid = 1; gid <= 3; gid++) {
+      DownloadInfo info = new DownloadInfo(info(gid));
+      info.state = DownloadInfo.STATE_NONE;
+      info.time = gid;
+      list.add(info);
+    }
+    EhDB.putDownloadInfo(list);
+    assertEquals(3, EhDB.getAllDownloadInfo().size());
+
+    EhDB.removeDownloadInfo(Arrays.asList(1L, 2L));
+    List<DownloadInfo> result = EhDB.getAllDownloadInfo();
+    assertEquals(1, result.size());
+    assertEquals(3, result.get(0).gid);
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.hippo.beerbelly.SimpleDiskCache;
+import com.hippo.ehviewer.client.data.GalleryComment;
+import com.hippo.ehviewer.client.data.GalleryCommentList;
+import com.hippo.ehviewer.client.data.GalleryDetail;
+import com.hippo.ehviewer.client.data.GalleryTagGroup;
+import com.hippo.ehviewer.client.data.NormalPreviewSet;
+import com.hippo.streampipe.OutputStreamPipe;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class GalleryDetailCacheTest {
+
+  private static final int MAGIC = 0x45484744;
+  private static final int MEMORY_SIZE = 1024 * 1024;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private SimpleDiskCache diskCache;
+
+  @Before
+  public void setUp() throws IOException {
+    diskCache = new SimpleDiskCache(folder.newFolder("gallery_detail"), 1024 * 1024);
+  }
+
+  private static GalleryDetail detail(long gid) {
+    GalleryDetail gd = new GalleryDetail();
+    gd.gid = gid;
+    gd.token = "0123456789";
+    gd.title = "title" + gid;
+    gd.apiUid = 42;
+    gd.apiKey = "apikey";
+    return gd;
+  }
+
+  private void writeHeader(long gid, int magic, int formatVersion, int versionCode) throws IOException {
+    OutputStreamPipe pipe = diskCache.getOutputStreamPipe(Long.toString(gid));
+    try {
+      pipe.obtain();
+      DataOutputStream dos = new DataOutputStream(pipe.open());
+      dos.writeInt(magic);
+      dos.writeInt(formatVersion);
+      dos.writeInt(versionCode);
+      dos.writeLong(System.currentTimeMillis());
+      dos.writeLong(0);
+      dos.writeBoolean(false);
+      dos.writeInt(0);
+      dos.flush();
+    } finally {
+      pipe.close();
+      pipe.release();
+    }
+  }
+
+  @Test
+  public void testEstimateSize() {
+    GalleryDetail gd = detail(1);
+    long base = GalleryDetailCache.estimateSize(gd);
+
+    GalleryTagGroup group = new GalleryTagGroup();
+    group.groupName = "female";
+    group.addTag("glasses");
+    group.addTag("twintails");
+    gd.tags = new GalleryTagGroup[] {group};
+    long withTags = GalleryDetailCache.estimateSize(gd);
+    assertTrue(withTags > base);
+
+    GalleryComment comment = new GalleryComment();
+    comment.user = "user";
+    comment.comment = "comment";
+    gd.comments = new GalleryCommentList(new GalleryComment[] {comment}, false);
+    long withComments = GalleryDetailCache.estimateSize(gd);
+    assertTrue(withComments > withTags);
+
+    NormalPreviewSet previewSet = new NormalPreviewSet();
+    for (int i = 0; i < 20; i++) {
+      previewSet.addItem(i, "https://ehgt.org/m/000/1-00.jpg", 0, 0, 100, 140,
+          "https://e-hentai.org/s/0123456789/1-" + i);
+    }
+    gd.previewSet = previewSet;
+    long withPreviews = GalleryDetailCache.estimateSize(gd);
+    assertTrue(withPreviews > withComments);
+
+    // Same preview set is counted once
+    gd.SpiderInfoPreviewSet = previewSet;
+    assertEquals(withPreviews, GalleryDetailCache.estimateSize(gd));
+  }
+
+  @Test
+  public void testMemoryTier() {
+    GalleryDetailCache cache = new GalleryDetailCache(MEMORY_SIZE, null);
+    GalleryDetail gd = detail(1);
+    cache.put(1, gd);
+    assertEquals(gd, cache.getIfPresent(1));
+    assertEquals(gd, cache.get(1));
+    cache.evictAll();
+    assertNull(cache.getIfPresent(1));
+    assertNull(cache.get(1));
+  }
+
+  @Test
+  public void testDiskTier() {
+    new GalleryDetailCache(MEMORY_SIZE, diskCache)
+        .writeToDisk(1, detail(1), System.currentTimeMillis());
+
+    // Like after process death
+    GalleryDetailCache cache = new GalleryDetailCache(MEMORY_SIZE, diskCache);
+    assertNull(cache.getIfPresent(1));
+    GalleryDetail gd = cache.get(1);
+    assertNotNull(gd);
+    assertEquals(1, gd.gid);
+    assertEquals("title1", gd.title);
+    assertEquals(42, gd.apiUid);
+    assertEquals("apikey", gd.apiKey);
+    // Put to memory tier
+    assertEquals(gd, cache.getIfPresent(1));
+  }
+
+  @Test
+  public void testDiskExpire() {
+    GalleryDetailCache cache = new GalleryDetailCache(MEMORY_SIZE, diskCache);
+    long now = System.currentTimeMillis();
+    cache.writeToDisk(1, detail(1), now - GalleryDetailCache.DISK_EXPIRE_TIME - 1000);
+    assertNull(cache.get(1));
+    // Clock changed
+    cache.writeToDisk(2, detail(2), now + GalleryDetailCache.DISK_EXPIRE_TIME);
+    assertNull(cache.get(2));
+    cache.writeToDisk(3, detail(3), now - GalleryDetailCache.DISK_EXPIRE_TIME / 2);
+    assertNotNull(cache.get(3));
+  }
+
+  @Test
+  public void testDiskHeader() throws IOException {
+    GalleryDetailCache cache = new GalleryDetailCache(MEMORY_SIZE, diskCache);
+    writeHeader(1, 0, 1, BuildConfig.VERSION_CODE);
+    assertNull(cache.get(1));
+    writeHeader(2, MAGIC, 2, BuildConfig.VERSION_CODE);
+    assertNull(cache.get(2));
+    // Parcel of other app version
+    writeHeader(3, MAGIC, 1, BuildConfig.VERSION_CODE + 1);
+    assertNull(cache.get(3));
+    // Empty data
+    writeHeader(4, MAGIC, 1, BuildConfig.VERSION_CODE);
+    assertNull(cache.get(4));
+  }
+
+  @Test
+  public void testDiskGidMismatch() {
+    GalleryDetailCache cache = new GalleryDetailCache(MEMORY_SIZE, diskCache);
+    cache.writeToDisk(2, detail(1), System.currentTimeMillis());
+    assertNull(cache.get(2));
+  }
+}
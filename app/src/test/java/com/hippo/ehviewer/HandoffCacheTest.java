@@ -0,0 +1,129 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HandoffCacheTest {
+
+  private static class TestHandoffCache extends HandoffCache {
+
+    TestHandoffCache(long maxSize) {
+      super(maxSize);
+    }
+
+    @Override
+    protected long sizeOf(Object value) {
+      return value instanceof Sized ? ((Sized) value).size : 1;
+    }
+  }
+
+  private static class Sized {
+    final long size;
+
+    Sized(long size) {
+      this.size = size;
+    }
+  }
+
+  @Test
+  public void testPutGet() {
+    HandoffCache cache = new TestHandoffCache(100);
+    Object value = new Sized(10);
+    cache.put("a", value);
+    assertSame(value, cache.get("a"));
+    assertTrue(cache.contains("a"));
+    assertNull(cache.get("b"));
+    assertFalse(cache.contains("b"));
+    assertEquals(10, cache.size());
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+
+    Object newValue = new Sized(20);
+    cache.put("a", newValue);
+    assertSame(newValue, cache.get("a"));
+    assertEquals(20, cache.size());
+
+    assertSame(newValue, cache.remove("a"));
+    assertFalse(cache.contains("a"));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testEvictLeastRecentlyUsed() {
+    HandoffCache cache = new TestHandoffCache(100);
+    Sized a = new Sized(40);
+    Sized b = new Sized(40);
+    Sized c = new Sized(40);
+    cache.put("a", a);
+    cache.put("b", b);
+    // Touch a, b is the eldest now
+    cache.get("a");
+    cache.put("c", c);
+    assertEquals(2, cache.count());
+    assertEquals(80, cache.size());
+    assertEquals(1, cache.getEvictionCount());
+
+    // b is still reachable, so it comes back from weak reference
+    assertSame(b, cache.get("b"));
+    assertEquals(2, cache.count());
+    assertEquals(80, cache.size());
+  }
+
+  @Test
+  public void testTrim() {
+    HandoffCache cache = new TestHandoffCache(100);
+    Sized a = new Sized(30);
+    Sized b = new Sized(30);
+    Sized c = new Sized(30);
+    cache.put("a", a);
+    cache.put("b", b);
+    cache.put("c", c);
+
+    cache.trim(0.5f);
+    assertEquals(30, cache.size());
+    assertEquals(1, cache.count());
+
+    cache.trim(0.0f);
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.count());
+    assertTrue(cache.contains("a"));
+
+    assertSame(a, cache.remove("a"));
+    assertFalse(cache.contains("a"));
+
+    cache.clear();
+    assertFalse(cache.contains("b"));
+    assertNull(cache.get("c"));
+  }
+
+  @Test
+  public void testTooLarge() {
+    HandoffCache cache = new TestHandoffCache(100);
+    Sized a = new Sized(200);
+    cache.put("a", a);
+    assertEquals(0, cache.size());
+    // Only weakly held
+    assertSame(a, cache.remove("a"));
+  }
+}
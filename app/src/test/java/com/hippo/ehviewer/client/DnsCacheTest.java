@@ -0,0 +1,205 @@
+/*
+ * Copyright 2018 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.Dns;
+import org.junit.Test;
+
+public class DnsCacheTest {
+
+  private static final long TTL = 1000;
+  private static final long STALE_TTL = 5000;
+  private static final long NEGATIVE_TTL = 100;
+
+  private static class TestDnsCache extends DnsCache {
+    final List<Runnable> tasks;
+    long time = 10000;
+
+    TestDnsCache() {
+      this(new ArrayList<>());
+    }
+
+    private TestDnsCache(List<Runnable> tasks) {
+      super(TTL, STALE_TTL, NEGATIVE_TTL, tasks::add);
+      this.tasks = tasks;
+    }
+
+    @Override
+    long now() {
+      return time;
+    }
+
+    void runTasks() {
+      for (Runnable task : tasks) {
+        task.run();
+      }
+      tasks.clear();
+    }
+  }
+
+  private static class CountingDns implements Dns {
+    final AtomicInteger count = new AtomicInteger();
+    volatile boolean fail;
+    volatile String ip = "1.2.3.4";
+
+    @Override
+    public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+      count.incrementAndGet();
+      if (fail) {
+        throw new UnknownHostException(hostname);
+      }
+      String[] parts = ip.split("\\.");
+      byte[] bytes = new byte[4];
+      for (int i = 0; i < 4; i++) {
+        bytes[i] = (byte) Integer.parseInt(parts[i]);
+      }
+      return Collections.singletonList(InetAddress.getByAddress(hostname, bytes));
+    }
+  }
+
+  @Test
+  public void testFreshAndStale() throws UnknownHostException {
+    TestDnsCache cache = new TestDnsCache();
+    CountingDns dns = new CountingDns();
+
+    List<InetAddress> first = cache.lookup("a.org", dns);
+    assertSame(first, cache.lookup("a.org", dns));
+    assertEquals(1, dns.count.get());
+
+    // Stale, return old result and refresh in background once
+    cache.time += TTL + 1;
+    dns.ip = "5.6.7.8";
+    assertSame(first, cache.lookup("a.org", dns));
+    assertSame(first, cache.lookup("a.org", dns));
+    assertEquals(1, cache.tasks.size());
+    cache.runTasks();
+    assertEquals(2, dns.count.get());
+    assertEquals("5.6.7.8", cache.lookup("a.org", dns).get(0).getHostAddress());
+
+    // Too old
+    cache.time += TTL + STALE_TTL;
+    cache.lookup("a.org", dns);
+    assertEquals(3, dns.count.get());
+    assertEquals(2, cache.getMissCount());
+  }
+
+  @Test
+  public void testNegative() {
+    TestDnsCache cache = new TestDnsCache();
+    CountingDns dns = new CountingDns();
+    dns.fail = true;
+
+    assertUnknown(cache, dns);
+    assertUnknown(cache, dns);
+    assertEquals(1, dns.count.get());
+
+    cache.time += NEGATIVE_TTL;
+    assertUnknown(cache, dns);
+    assertEquals(2, dns.count.get());
+  }
+
+  @Test
+  public void testKeepGoodResultOnFailure() throws UnknownHostException {
+    TestDnsCache cache = new TestDnsCache();
+    CountingDns dns = new CountingDns();
+
+    List<InetAddress> first = cache.lookup("a.org", dns);
+    cache.time += TTL + 1;
+    dns.fail = true;
+    assertSame(first, cache.lookup("a.org", dns));
+    cache.runTasks();
+    assertSame(first, cache.lookup("a.org", dns));
+  }
+
+  @Test
+  public void testClear() throws UnknownHostException {
+    TestDnsCache cache = new TestDnsCache();
+    CountingDns dns = new CountingDns();
+    cache.lookup("a.org", dns);
+    cache.clear();
+    cache.lookup("a.org", dns);
+    assertEquals(2, dns.count.get());
+  }
+
+  @Test
+  public void testPrefetch() throws UnknownHostException {
+    TestDnsCache cache = new TestDnsCache();
+    CountingDns dns = new CountingDns();
+    cache.prefetch(Arrays.asList("a.org", "b.org"), dns);
+    cache.runTasks();
+    assertEquals(2, dns.count.get());
+    cache.lookup("a.org", dns);
+    cache.lookup("b.org", dns);
+    assertEquals(2, dns.count.get());
+    assertEquals(1.0f, cache.getHitRate(), 0.0f);
+  }
+
+  @Test
+  public void testConcurrentMiss() throws InterruptedException {
+    TestDnsCache cache = new TestDnsCache();
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger count = new AtomicInteger();
+    Dns dns = hostname -> {
+      count.incrementAndGet();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new UnknownHostException();
+      }
+      return Collections.singletonList(InetAddress.getByAddress(hostname, new byte[] {1, 2, 3, 4}));
+    };
+
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(() -> {
+        try {
+          cache.lookup("a.org", dns);
+        } catch (UnknownHostException e) {
+          throw new RuntimeException(e);
+        }
+      });
+      threads[i].start();
+    }
+    Thread.sleep(100);
+    release.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(1, count.get());
+  }
+
+  private static void assertUnknown(DnsCache cache, Dns dns) {
+    try {
+      cache.lookup("a.org", dns);
+      fail();
+    } catch (UnknownHostException e) {
+      // Expected
+    }
+  }
+}
@@ -17,13 +17,23 @@
 package com.hippo.ehviewer.client;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import android.util.Pair;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import okio.BufferedSink;
 import okio.BufferedSource;
 import okio.Okio;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
@@ -32,6 +42,36 @@ import org.robolectric.annotation.Config;
 @RunWith(RobolectricTestRunner.class)
 public class EhTagDatabaseTest {
 
+  private static final byte[] SHA1 = new byte[20];
+  private static final byte[] OTHER_SHA1 = new byte[20];
+
+  static {
+    Arrays.fill(SHA1, (byte) 1);
+    Arrays.fill(OTHER_SHA1, (byte) 2);
+  }
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static void write(File file, byte[] bytes) throws IOException {
+    try (BufferedSink sink = Okio.buffer(Okio.sink(file))) {
+      sink.write(bytes);
+    }
+  }
+
+  private static byte[] readResource() throws IOException {
+    InputStream resource = EhTagDatabaseTest.class.getResourceAsStream("EhTagDatabaseTest");
+    try (BufferedSource source = Okio.buffer(Okio.source(resource))) {
+      return source.readByteArray();
+    }
+  }
+
+  private static void assertTranslation(EhTagDatabase db) {
+    assertEquals("abc", db.getTranslation("123"));
+    assertEquals("12", db.getTranslation("ab"));
+    assertNull(db.getTranslation("21"));
+  }
+
   @Test
   public void readTheList() throws IOException {
     InputStream resource = EhTagDatabaseTest.class.getResourceAsStream("EhTagDatabaseTest");
@@ -51,4 +91,81 @@ public class EhTagDatabaseTest {
     assertEquals("1234", db.getTranslation("abcd"));
     assertNull(db.getTranslation("21"));
   }
+
+  @Test
+  public void suggest() throws IOException {
+    InputStream resource = EhTagDatabaseTest.class.getResourceAsStream("EhTagDatabaseTest");
+
+    EhTagDatabase db;
+    try (BufferedSource source = Okio.buffer(Okio.source(resource))) {
+      db = new EhTagDatabase("EhTagDatabaseTest", source);
+    }
+
+    // Not ready
+    assertEquals(0, db.suggest("ab").size());
+
+    db.buildSuggestionIndex();
+    List<Pair<String, String>> result = db.suggest("ab");
+    assertEquals(6, result.size());
+    assertEquals("ab", result.get(0).first);
+    assertEquals("12", result.get(0).second);
+    assertEquals(0, db.suggest("21").size());
+  }
+
+  @Test
+  public void loadCompiled() throws IOException {
+    File sha1File = folder.newFile("sha1");
+    File dataFile = folder.newFile("data");
+    File compiledFile = new File(folder.getRoot(), "data.compiled");
+    write(sha1File, SHA1);
+    write(dataFile, readResource());
+
+    // Compiled at first
+    EhTagDatabase db = EhTagDatabase.load("data", sha1File, dataFile, compiledFile);
+    assertNotNull(db);
+    assertTrue(compiledFile.isFile());
+    assertTranslation(db);
+
+    // Mapped later, the data is not read
+    assertTrue(dataFile.delete());
+    db = EhTagDatabase.load("data", sha1File, dataFile, compiledFile);
+    assertNotNull(db);
+    assertTranslation(db);
+  }
+
+  @Test
+  public void openSha1Mismatch() throws IOException {
+    File sha1File = folder.newFile("sha1");
+    File dataFile = folder.newFile("data");
+    File compiledFile = new File(folder.getRoot(), "data.compiled");
+    write(sha1File, SHA1);
+    write(dataFile, readResource());
+    assertNotNull(EhTagDatabase.load("data", sha1File, dataFile, compiledFile));
+
+    assertNotNull(EhTagDatabase.open("data", compiledFile, SHA1));
+    assertNull(EhTagDatabase.open("data", compiledFile, OTHER_SHA1));
+
+    // New data, compiled again
+    write(sha1File, OTHER_SHA1);
+    EhTagDatabase db = EhTagDatabase.load("data", sha1File, dataFile, compiledFile);
+    assertNotNull(db);
+    assertTranslation(db);
+    assertNotNull(EhTagDatabase.open("data", compiledFile, OTHER_SHA1));
+    assertNull(EhTagDatabase.open("data", compiledFile, SHA1));
+  }
+
+  @Test
+  public void openBadFile() throws IOException {
+    File compiledFile = folder.newFile("data.compiled");
+    assertNull(EhTagDatabase.open("data", compiledFile, SHA1));
+    write(compiledFile, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+    assertNull(EhTagDatabase.open("data", compiledFile, SHA1));
+    assertNull(EhTagDatabase.open("data", new File(folder.getRoot(), "missing"), SHA1));
+
+    // Sha1 file is too short
+    File sha1File = folder.newFile("sha1");
+    write(sha1File, new byte[] {1, 2, 3});
+    assertNull(EhTagDatabase.load("data", sha1File, folder.newFile("data"), compiledFile));
+    assertFalse(new File(folder.getRoot(), "data.compiled.tmp").exists());
+  }
 }
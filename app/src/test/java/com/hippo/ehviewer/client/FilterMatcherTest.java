@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FilterMatcherTest {
+
+  @Test
+  public void testTitle() {
+    FilterMatcher matcher = new FilterMatcher.Builder()
+        .addTitle("he")
+        .addTitle("she")
+        .addTitle("his")
+        .addTitle("hers")
+        .addTitle("中文")
+        .build();
+    assertTrue(matcher.hasTitleFilter());
+    assertTrue(matcher.matchTitle("ushers"));
+    assertTrue(matcher.matchTitle("this"));
+    assertTrue(matcher.matchTitle("ahishers"));
+    assertTrue(matcher.matchTitle("[中文] title"));
+    assertFalse(matcher.matchTitle("hi s"));
+    assertFalse(matcher.matchTitle(""));
+    assertFalse(matcher.matchTitle(null));
+
+    // The match is found by fail link
+    matcher = new FilterMatcher.Builder()
+        .addTitle("abcd")
+        .addTitle("bc")
+        .build();
+    assertTrue(matcher.matchTitle("xabcx"));
+    assertFalse(matcher.matchTitle("abdc"));
+  }
+
+  @Test
+  public void testEmpty() {
+    FilterMatcher matcher = FilterMatcher.EMPTY;
+    assertFalse(matcher.hasTitleFilter());
+    assertFalse(matcher.hasTagFilter());
+    assertFalse(matcher.matchTitle("title"));
+    assertFalse(matcher.matchUploader("uploader"));
+    assertFalse(matcher.matchTag("female:tag"));
+    assertFalse(matcher.matchTagNamespace("female:tag"));
+  }
+
+  @Test
+  public void testUploader() {
+    FilterMatcher matcher = new FilterMatcher.Builder().addUploader("Someone").build();
+    assertTrue(matcher.matchUploader("Someone"));
+    assertFalse(matcher.matchUploader("someone"));
+    assertFalse(matcher.hasTagFilter());
+  }
+
+  @Test
+  public void testTag() {
+    FilterMatcher matcher = new FilterMatcher.Builder()
+        .addTag("female:big breasts")
+        .addTag("yaoi")
+        .build();
+    assertTrue(matcher.hasTagFilter());
+    assertTrue(matcher.matchTag("female:big breasts"));
+    assertTrue(matcher.matchTag("big breasts"));
+    assertFalse(matcher.matchTag("male:big breasts"));
+    assertTrue(matcher.matchTag("yaoi"));
+    assertTrue(matcher.matchTag("other:yaoi"));
+    assertFalse(matcher.matchTag("female:yuri"));
+  }
+
+  @Test
+  public void testTagNamespace() {
+    FilterMatcher matcher = new FilterMatcher.Builder().addTagNamespace("parody").build();
+    assertTrue(matcher.hasTagFilter());
+    assertTrue(matcher.matchTagNamespace("parody:original"));
+    assertFalse(matcher.matchTagNamespace("parody"));
+    assertFalse(matcher.matchTagNamespace("female:parody"));
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import com.hippo.ehviewer.client.data.GalleryInfo;
+import com.hippo.ehviewer.dao.Filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class GalleryListPublisherTest {
+
+  private final List<List<Long>> batches = new ArrayList<>();
+
+  private GalleryListPublisher publisher(Filter... filters) {
+    return new GalleryListPublisher(batch -> {
+      List<Long> gids = new ArrayList<>();
+      for (GalleryInfo info : batch) {
+        gids.add(info.gid);
+      }
+      batches.add(gids);
+    }, EhFilter.create(Arrays.asList(filters)));
+  }
+
+  private static GalleryInfo info(long gid, String... tags) {
+    GalleryInfo info = new GalleryInfo();
+    info.gid = gid;
+    info.title = "title" + gid;
+    info.uploader = "uploader" + gid;
+    info.thumb = "https://ehgt.org/t/00/00/thumb" + gid + "_250.jpg";
+    info.simpleTags = tags.length == 0 ? null : tags;
+    return info;
+  }
+
+  @Test
+  public void testFirstAtOnceThenBatches() {
+    GalleryListPublisher publisher = publisher();
+    for (long gid = 1; gid <= 7; gid++) {
+      publisher.onGalleryInfo(info(gid));
+    }
+    assertEquals(Arrays.asList(
+        Collections.singletonList(1L),
+        Arrays.asList(2L, 3L, 4L, 5L, 6L)), batches);
+    publisher.flush();
+    assertEquals(Collections.singletonList(7L), batches.get(2));
+    // Nothing left
+    publisher.flush();
+    assertEquals(3, batches.size());
+  }
+
+  @Test
+  public void testPublishCopy() {
+    List<GalleryInfo> published = new ArrayList<>();
+    GalleryListPublisher publisher = new GalleryListPublisher(published::addAll,
+        EhFilter.create(Collections.emptyList()));
+    GalleryInfo info = info(1);
+    publisher.onGalleryInfo(info);
+    assertEquals(1, published.size());
+    assertNotSame(info, published.get(0));
+    assertEquals(1, published.get(0).gid);
+  }
+
+  @Test
+  public void testTitleAndUploaderFilter() {
+    GalleryListPublisher publisher = publisher(
+        new Filter(null, EhFilter.MODE_TITLE, "Title2", true),
+        new Filter(null, EhFilter.MODE_UPLOADER, "uploader3", true));
+    publisher.publish(Arrays.asList(info(1), info(2), info(3), info(4)));
+    assertEquals(Collections.singletonList(Arrays.asList(1L, 4L)), batches);
+  }
+
+  @Test
+  public void testTagFilter() {
+    GalleryListPublisher publisher = publisher(
+        new Filter(null, EhFilter.MODE_TAG, "female:glasses", true),
+        new Filter(null, EhFilter.MODE_TAG_NAMESPACE, "parody", true));
+    publisher.publish(Arrays.asList(
+        info(1, "female:glasses"),
+        info(2, "parody:original"),
+        info(3, "male:glasses"),
+        // No tags until api fill
+        info(4)));
+    assertEquals(Collections.singletonList(Collections.singletonList(3L)), batches);
+  }
+
+  @Test
+  public void testNoTagsWithoutTagFilter() {
+    GalleryListPublisher publisher = publisher(
+        new Filter(null, EhFilter.MODE_TAG, "female:glasses", false),
+        new Filter(null, EhFilter.MODE_TITLE, "title2", true));
+    publisher.publish(Arrays.asList(info(1), info(2), info(3)));
+    assertEquals(Collections.singletonList(Arrays.asList(1L, 3L)), batches);
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TagSuggestionIndexTest {
+
+  private static TagSuggestionIndex newIndex() {
+    return new TagSuggestionIndex.Builder()
+        .add("female:big breasts", "巨乳")
+        .add("female:breast expansion", "乳房膨胀")
+        .add("male:big penis", "巨根")
+        .add("language:chinese", "汉语")
+        .add("parody:breast", "乳")
+        .add("misc:full color", "全彩")
+        .build();
+  }
+
+  private static String[] english(TagSuggestionIndex index, int[] entries) {
+    String[] result = new String[entries.length];
+    for (int i = 0; i < entries.length; i++) {
+      result[i] = index.getEnglish(entries[i]);
+    }
+    return result;
+  }
+
+  @Test
+  public void testGetter() {
+    TagSuggestionIndex index = newIndex();
+    assertEquals(6, index.size());
+    assertEquals("female:big breasts", index.getEnglish(0));
+    assertEquals("巨乳", index.getChinese(0));
+    assertEquals("misc:full color", index.getEnglish(5));
+    assertEquals("全彩", index.getChinese(5));
+  }
+
+  @Test
+  public void testRank() {
+    TagSuggestionIndex index = newIndex();
+    String[] result = english(index, index.search("breast", 40));
+    assertEquals(3, result.length);
+    // Exact first, then prefix of a word, shorter first
+    assertEquals("parody:breast", result[0]);
+    assertEquals("female:big breasts", result[1]);
+    assertEquals("female:breast expansion", result[2]);
+
+    result = english(index, index.search("reast", 40));
+    assertEquals(3, result.length);
+    // All of them are contain, shorter first
+    assertEquals("parody:breast", result[0]);
+
+    result = english(index, index.search("big", 40));
+    assertEquals(2, result.length);
+    assertEquals("male:big penis", result[0]);
+    assertEquals("female:big breasts", result[1]);
+  }
+
+  @Test
+  public void testChinese() {
+    TagSuggestionIndex index = newIndex();
+    String[] result = english(index, index.search("乳", 40));
+    assertEquals(3, result.length);
+    assertEquals("parody:breast", result[0]);
+
+    result = english(index, index.search("巨根", 40));
+    assertEquals(1, result.length);
+    assertEquals("male:big penis", result[0]);
+  }
+
+  @Test
+  public void testNoMatch() {
+    TagSuggestionIndex index = newIndex();
+    assertEquals(0, index.search("", 40).length);
+    assertEquals(0, index.search("zzz", 40).length);
+    // The gram crosses english and chinese
+    assertEquals(0, index.search("ts巨", 40).length);
+  }
+
+  @Test
+  public void testLimit() {
+    TagSuggestionIndex index = newIndex();
+    assertEquals(2, index.search("e", 2).length);
+    assertEquals(0, index.search("e", 0).length);
+  }
+}
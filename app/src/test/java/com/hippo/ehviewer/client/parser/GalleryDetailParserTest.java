@@ -0,0 +1,284 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.content.Context;
+import android.os.Parcel;
+import com.hippo.ehviewer.EhDB;
+import com.hippo.ehviewer.Settings;
+import com.hippo.ehviewer.client.EhConfig;
+import com.hippo.ehviewer.client.data.GalleryComment;
+import com.hippo.ehviewer.client.data.GalleryDetail;
+import com.hippo.ehviewer.client.data.GalleryTagGroup;
+import com.hippo.ehviewer.client.data.NormalPreviewSet;
+import com.hippo.ehviewer.client.data.PreviewSet;
+import com.hippo.ehviewer.client.exception.EhException;
+import com.hippo.ehviewer.client.exception.OffensiveException;
+import com.hippo.ehviewer.client.exception.ParseException;
+import com.hippo.ehviewer.client.exception.PiningException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class GalleryDetailParserTest {
+
+  @Before
+  public void setUp() {
+    // Parser looks up blacklist for comments
+    Context context = RuntimeEnvironment.application;
+    Settings.initialize(context);
+    EhDB.initialize(context);
+  }
+
+  private static byte[] marshall(PreviewSet previewSet) {
+    Parcel parcel = Parcel.obtain();
+    try {
+      previewSet.writeToParcel(parcel, 0);
+      return parcel.marshall();
+    } finally {
+      parcel.recycle();
+    }
+  }
+
+  private static void assertTagGroup(GalleryTagGroup group, String name, String... tags) {
+    assertEquals(name, group.groupName);
+    assertEquals(tags.length, group.size());
+    for (int i = 0; i < tags.length; i++) {
+      assertEquals(tags[i], group.getTagAt(i));
+    }
+  }
+
+  private static void assertPreview(PreviewSet previewSet, int index, int position, String pageUrl) {
+    assertEquals(position, previewSet.getPosition(index));
+    assertEquals(pageUrl, previewSet.getPageUrlAt(index));
+  }
+
+  private static void assertSpiderInfo(GalleryDetail gd, int pages, int previewPages, int previews) {
+    assertEquals(pages, gd.pages);
+    assertEquals(pages, gd.SpiderInfoPages);
+    assertEquals(previewPages, gd.previewPages);
+    assertEquals(previewPages, gd.SpiderInfoPreviewPages);
+    assertEquals(previews, gd.previewSet.size());
+    assertSame(gd.previewSet, gd.SpiderInfoPreviewSet);
+  }
+
+  /**
+   * The page is minified like the site serves it, so the body regexes which
+   * filled the spider info before still read it.
+   */
+  @Test
+  public void testSameSpiderInfoAsRegex() throws Exception {
+    String body = ParserBenchmark.read("oldPage.html");
+    GalleryDetail gd = GalleryDetailParser.parse(body);
+
+    assertEquals(GalleryDetailParser.parsePages(body), gd.SpiderInfoPages);
+    assertEquals(GalleryDetailParser.parsePreviewPages(body), gd.SpiderInfoPreviewPages);
+    PreviewSet expected = GalleryDetailParser.parsePreviewSet(body);
+    assertTrue(expected instanceof NormalPreviewSet);
+    assertTrue(gd.SpiderInfoPreviewSet instanceof NormalPreviewSet);
+    assertArrayEquals(marshall(expected), marshall(gd.SpiderInfoPreviewSet));
+    assertSpiderInfo(gd, 393, 10, 40);
+
+    assertEquals(2212832, gd.gid);
+    assertEquals("60fb4a81d0", gd.token);
+    assertEquals(4596468, gd.apiUid);
+    assertEquals("71ecdd05c929c7fdcd61", gd.apiKey);
+    assertEquals("https://e-hentai.org/gallerytorrents.php?gid=2212832&t=60fb4a81d0", gd.torrentUrl);
+    assertEquals(17, gd.torrentCount);
+    assertEquals("https://e-hentai.org/archiver.php?gid=2212832&token=60fb4a81d0&or=468590--8c8648639ab75380b148d0dee37f83c7c66b4d7b", gd.archiveUrl);
+    assertEquals("[Twitter] AkiyamaRyo (2019.11.09-2022.5.06)", gd.title);
+    assertEquals(EhConfig.MISC, gd.category);
+    assertEquals("AdamAbbott", gd.uploader);
+    assertEquals("2022-05-06 04:13", gd.posted);
+    assertEquals("https://e-hentai.org/g/2205333/fbae6de80f/", gd.parent);
+    assertEquals("No (Replaced)", gd.visible);
+    assertEquals("Japanese", gd.language);
+    assertEquals("840.3 MB", gd.size);
+    assertEquals(23177, gd.favoriteCount);
+    assertEquals(4.82f, gd.rating, 0.0f);
+    assertEquals(1195, gd.ratingCount);
+    assertEquals(52, gd.comments.comments.length);
+    assertTrue(gd.comments.hasMore);
+    assertEquals(82, gd.newVersions.length);
+  }
+
+  @Test
+  public void testGalleryDetail() throws Exception {
+    GalleryDetail gd = GalleryDetailParser.parse(ParserBenchmark.read("GalleryDetail.html"));
+
+    assertEquals(2212832, gd.gid);
+    assertEquals("60fb4a81d0", gd.token);
+    assertEquals(4596468, gd.apiUid);
+    assertEquals("71ecdd05c929c7fdcd61", gd.apiKey);
+    assertEquals("https://e-hentai.org/gallerytorrents.php?gid=2212832&t=60fb4a81d0", gd.torrentUrl);
+    assertEquals(19, gd.torrentCount);
+    assertEquals("https://e-hentai.org/archiver.php?gid=2212832&token=60fb4a81d0&or=468131--b86946f8c8fee8b36332da047f7c9ad8069c9f0a", gd.archiveUrl);
+    assertEquals("https://ehgt.org/8f/98/8f98b5c426408d12d454c93bda36ba3e1c1a05af-40271-1500-500-jpg_250.jpg", gd.thumb);
+    assertEquals("[Twitter] AkiyamaRyo (2019.11.09-2022.5.06)", gd.title);
+    assertEquals("", gd.titleJpn);
+    assertEquals(EhConfig.MISC, gd.category);
+    assertEquals("AdamAbbott", gd.uploader);
+    assertEquals("2022-05-06 04:13", gd.posted);
+    assertEquals("https://e-hentai.org/g/2205333/fbae6de80f/", gd.parent);
+    assertEquals("No (Replaced)", gd.visible);
+    assertEquals("Japanese", gd.language);
+    assertEquals("840.3 MB", gd.size);
+    assertEquals(22753, gd.favoriteCount);
+    assertTrue(gd.isFavorited);
+    assertEquals(4.82f, gd.rating, 0.0f);
+    assertEquals(1181, gd.ratingCount);
+
+    assertEquals(6, gd.tags.length);
+    assertTagGroup(gd.tags[0], "parody",
+        "dead or alive", "final fantasy vii", "king of fighters", "overwatch", "soulcalibur");
+    assertTagGroup(gd.tags[5], "other", "3d", "3d imageset", "animated", "uncensored");
+
+    assertEquals(50, gd.comments.comments.length);
+    assertTrue(gd.comments.hasMore);
+    GalleryComment comment = gd.comments.comments[2];
+    assertEquals(4404389, comment.id);
+    assertEquals("mluto", comment.user);
+    assertEquals(91, comment.score);
+    assertEquals(1627152240000L, comment.time);
+
+    assertEquals(79, gd.newVersions.length);
+
+    assertSpiderInfo(gd, 393, 10, 40);
+    assertTrue(gd.previewSet instanceof NormalPreviewSet);
+    assertPreview(gd.previewSet, 0, 0, "https://e-hentai.org/s/8f98b5c426/2212832-1");
+    assertPreview(gd.previewSet, 39, 39, "https://e-hentai.org/s/f895a97fdd/2212832-40");
+  }
+
+  @Test
+  public void testNewPage() throws Exception {
+    GalleryDetail gd = GalleryDetailParser.parse(ParserBenchmark.read("newPage.html"));
+
+    assertEquals(2217617, gd.gid);
+    assertEquals("36d9cc5391", gd.token);
+    assertEquals("https://e-hentai.org/gallerytorrents.php?gid=2217617&t=36d9cc5391", gd.torrentUrl);
+    assertEquals(17, gd.torrentCount);
+    assertEquals("https://e-hentai.org/archiver.php?gid=2217617&token=36d9cc5391&or=468590--51c2afe3295b9ddb4c7de89e410541aba3bbff90", gd.archiveUrl);
+    assertEquals("2022-05-11 05:24", gd.posted);
+    assertEquals("https://e-hentai.org/g/2212832/60fb4a81d0/", gd.parent);
+    assertEquals("840.5 MB", gd.size);
+    assertEquals(23177, gd.favoriteCount);
+    assertEquals(1195, gd.ratingCount);
+    assertEquals(52, gd.comments.comments.length);
+    assertEquals(81, gd.newVersions.length);
+
+    assertSpiderInfo(gd, 394, 10, 40);
+    assertPreview(gd.previewSet, 20, 20, "https://e-hentai.org/s/63ee1eff48/2217617-21");
+  }
+
+  @Test
+  public void testSpiderInfo() throws Exception {
+    GalleryDetail gd = GalleryDetailParser.parse(ParserBenchmark.read("spiderInfo.html"));
+
+    assertEquals(2564406, gd.gid);
+    assertEquals("475430af68", gd.token);
+    assertEquals("https://exhentai.org/gallerytorrents.php?gid=2564406&t=475430af68", gd.torrentUrl);
+    assertEquals(0, gd.torrentCount);
+    assertEquals("https://exhentai.org/archiver.php?gid=2564406&token=475430af68&or=468108--48060aa82a0e75d49600af0d9a18ea7be7dc3ac3", gd.archiveUrl);
+    assertEquals(EhConfig.ARTIST_CG, gd.category);
+    assertEquals("Pokom", gd.uploader);
+    assertEquals("Yes", gd.visible);
+    assertEquals("23.29 MB", gd.size);
+    assertFalse(gd.isFavorited);
+    assertEquals(1.17f, gd.rating, 0.0f);
+    assertEquals(3, gd.ratingCount);
+
+    assertEquals(3, gd.tags.length);
+    assertTagGroup(gd.tags[1], "female", "big breasts", "paizuri", "sole female");
+
+    assertEquals(1, gd.comments.comments.length);
+    assertFalse(gd.comments.hasMore);
+
+    assertSpiderInfo(gd, 8, 1, 8);
+    assertPreview(gd.previewSet, 7, 7, "https://exhentai.org/s/aa2c96c388/2564406-8");
+  }
+
+  @Test
+  public void testOutsideElements() throws Exception {
+    // Comments and previews are only read in #cdiv and #gdt
+    String body = ParserBenchmark.read("spiderInfo.html").replace("<body>", "<body>"
+        + "<div class=\"gdtm\"><div style=\"width:100px; height:72px; background:transparent"
+        + " url(https://s.exhentai.org/m/002564/2564406-00.jpg) -0px 0 no-repeat\">"
+        + "<a href=\"https://exhentai.org/s/0000000000/2564406-1\"><img alt=\"1\"/></a></div></div>"
+        + "<a name=\"c1\"></a><div class=\"c1\">"
+        + "<div class=\"c3\">Posted on 27 May 2023, 12:33 by: &nbsp; <a>ads</a></div>"
+        + "<div class=\"c6\">ads</div></div>");
+    GalleryDetail gd = GalleryDetailParser.parse(body);
+
+    assertEquals(1, gd.comments.comments.length);
+    assertEquals("Pokom", gd.comments.comments[0].user);
+    assertSpiderInfo(gd, 8, 1, 8);
+    assertPreview(gd.previewSet, 0, 0, "https://exhentai.org/s/580290279b/2564406-1");
+  }
+
+  @Test
+  public void testNotGallery() throws Exception {
+    try {
+      GalleryDetailParser.parse(ParserBenchmark.read("test.html"));
+      fail();
+    } catch (ParseException e) {
+      assertEquals("Can't parse gallery detail", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testErrorPage() throws Exception {
+    try {
+      GalleryDetailParser.parse("<html><body><div class=\"d\">\n"
+          + "<p>This gallery has been removed or is unavailable.</p></div></body></html>");
+      fail();
+    } catch (ParseException e) {
+      fail();
+    } catch (EhException e) {
+      assertEquals("This gallery has been removed or is unavailable.", e.getMessage());
+    }
+
+    try {
+      GalleryDetailParser.parse("<html><body><div class=\"d\">"
+          + "<p>(And if you choose to ignore this warning, you lose all rights to complain about it in the future.)</p>"
+          + "</div></body></html>");
+      fail();
+    } catch (OffensiveException e) {
+      assertNotNull(e.getMessage());
+    }
+
+    try {
+      GalleryDetailParser.parse("<html><body><div class=\"d\">"
+          + "<p>This gallery is pining for the fjords.</p></div></body></html>");
+      fail();
+    } catch (PiningException e) {
+      assertNotNull(e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import android.content.Context;
+import com.hippo.ehviewer.EhDB;
+import com.hippo.ehviewer.Settings;
+import com.hippo.ehviewer.client.data.GalleryInfo;
+import edu.emory.mathcs.backport.java.util.Arrays;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(ParameterizedRobolectricTestRunner.class)
+public class GalleryListParserStreamTest {
+
+  @ParameterizedRobolectricTestRunner.Parameters(name = "{index}-{0}")
+  public static List data() {
+    return Arrays.asList(new Object[][] {
+        { "GalleryListParserNew.html" },
+        { "GalleryListParserNew2.html" },
+        { "GalleryListParserNew3.html" },
+        { "GalleryListParserTestECompat.html" },
+        { "GalleryListParserTestEExtended.html" },
+        { "GalleryListParserTestEMinimal.html" },
+        { "GalleryListParserTestEThumbnail.html" },
+        { "GalleryListParserTestExExtended.html" },
+        { "GalleryListUploader.html" },
+        { "EmptyGalleryList.html" },
+    });
+  }
+
+  private String file;
+
+  public GalleryListParserStreamTest(String file) {
+    this.file = file;
+  }
+
+  @Before
+  public void setUp() {
+    // Parser looks up local favorites
+    Context context = RuntimeEnvironment.application;
+    Settings.initialize(context);
+    EhDB.initialize(context);
+  }
+
+  @Test
+  public void testSameAsString() throws Exception {
+    String body = ParserBenchmark.read(file);
+    GalleryListParser.Result expected = GalleryListParser.parse(body);
+
+    List<GalleryInfo> emitted = new ArrayList<>();
+    GalleryListParser.Result result = GalleryListParser.parse(new StringReader(body), emitted::add);
+
+    assertEquals(expected.pages, result.pages);
+    assertEquals(expected.nextPage, result.nextPage);
+    assertEquals(expected.resultCount, result.resultCount);
+    assertEquals(expected.firstHref, result.firstHref);
+    assertEquals(expected.prevHref, result.prevHref);
+    assertEquals(expected.nextHref, result.nextHref);
+    assertEquals(expected.lastHref, result.lastHref);
+    assertEquals(expected.galleryInfoList.size(), result.galleryInfoList.size());
+    assertEquals(result.galleryInfoList.size(), emitted.size());
+    for (int i = 0; i < expected.galleryInfoList.size(); i++) {
+      GalleryInfo e = expected.galleryInfoList.get(i);
+      GalleryInfo a = result.galleryInfoList.get(i);
+      assertSame(a, emitted.get(i));
+      assertEquals(e.gid, a.gid);
+      assertEquals(e.token, a.token);
+      assertEquals(e.title, a.title);
+      assertEquals(e.category, a.category);
+      assertEquals(e.thumb, a.thumb);
+      assertEquals(e.thumbWidth, a.thumbWidth);
+      assertEquals(e.thumbHeight, a.thumbHeight);
+      assertEquals(e.posted, a.posted);
+      assertEquals(e.uploader, a.uploader);
+      assertEquals(e.pages, a.pages);
+      assertEquals(e.rating, a.rating, 0.0f);
+      assertEquals(e.rated, a.rated);
+      assertEquals(e.favoriteSlot, a.favoriteSlot);
+      assertArrayEquals(e.simpleTags, a.simpleTags);
+      assertEquals(e.tgList, a.tgList);
+    }
+  }
+}
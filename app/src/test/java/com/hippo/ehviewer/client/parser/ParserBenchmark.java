@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client.parser;
+
+import com.alibaba.fastjson.JSON;
+import com.hippo.ehviewer.client.data.EhTopListDetail;
+import com.hippo.ehviewer.client.data.GalleryDetail;
+import com.hippo.ehviewer.client.data.GalleryInfo;
+import com.hippo.ehviewer.client.data.HomeDetail;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import okio.BufferedSource;
+import okio.Okio;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsers against the captured pages in test resources.
+ * It is run by {@link ParserBenchmarkTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ParserBenchmark {
+
+  static String read(String name) throws IOException {
+    InputStream resource = ParserBenchmark.class.getResourceAsStream(name);
+    if (resource == null) {
+      throw new IOException("No resource " + name);
+    }
+    try (BufferedSource source = Okio.buffer(Okio.source(resource))) {
+      return source.readUtf8();
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class ListPage {
+    @Param({
+        "GalleryListParserTestEMinimal.html",
+        "GalleryListParserTestEMinimalPlus.html",
+        "GalleryListParserTestECompat.html",
+        "GalleryListParserTestEExtended.html",
+        "GalleryListParserTestEThumbnail.html",
+    })
+    public String file;
+    String body;
+
+    @Setup
+    public void setup() throws IOException {
+      body = read(file);
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class DetailPage {
+    @Param({
+        "GalleryDetail.html",
+        "newPage.html",
+        "spiderInfo.html",
+    })
+    public String file;
+    String body;
+
+    @Setup
+    public void setup() throws IOException {
+      body = read(file);
+    }
+  }
+
+  private String topList;
+  private String home;
+  private String pageApi;
+  private String galleryApi;
+  private List<GalleryInfo> galleryApiList;
+
+  @Setup
+  public void setup() throws Exception {
+    topList = read("GalleryTopList.html");
+    home = read("HomePage.html");
+    pageApi = read("GalleryPageApiParserTest.json");
+
+    // No gdata response is captured, build one for the galleries in a captured list
+    galleryApiList = GalleryListParser.parse(read("GalleryListParserTestEExtended.html")).galleryInfoList;
+    List<Map<String, Object>> metadata = new ArrayList<>();
+    for (GalleryInfo gi : galleryApiList) {
+      Map<String, Object> map = new LinkedHashMap<>();
+      map.put("gid", gi.gid);
+      map.put("token", gi.token);
+      map.put("archiver_key", "468131--b86946f8c8fee8b36332da047f7c9ad8069c9f0a");
+      map.put("title", gi.title);
+      map.put("title_jpn", gi.title);
+      map.put("category", "Doujinshi");
+      map.put("thumb", gi.thumb);
+      map.put("uploader", gi.uploader);
+      map.put("posted", "1651810380");
+      map.put("filecount", Integer.toString(Math.max(gi.pages, 1)));
+      map.put("filesize", 881055743);
+      map.put("expunged", false);
+      map.put("rating", Float.toString(gi.rating));
+      map.put("torrentcount", "0");
+      List<String> tags = new ArrayList<>();
+      if (gi.simpleTags != null) {
+        Collections.addAll(tags, gi.simpleTags);
+      }
+      tags.add("language:japanese");
+      map.put("tags", tags);
+      metadata.add(map);
+    }
+    galleryApi = JSON.toJSONString(Collections.singletonMap("gmetadata", metadata));
+  }
+
+  @Benchmark
+  public GalleryListParser.Result galleryList(ListPage page) throws Exception {
+    return GalleryListParser.parse(page.body);
+  }
+
+  @Benchmark
+  public GalleryListParser.Result galleryListStream(ListPage page) throws Exception {
+    return GalleryListParser.parse(new StringReader(page.body), null);
+  }
+
+  @Benchmark
+  public GalleryDetail galleryDetail(DetailPage page) throws Exception {
+    return GalleryDetailParser.parse(page.body);
+  }
+
+  @Benchmark
+  public EhTopListDetail topList() throws Exception {
+    return TopListParser.parse(topList);
+  }
+
+  @Benchmark
+  public List<GalleryInfo> galleryApi() throws Exception {
+    return GalleryApiParser.parse(galleryApi, galleryApiList);
+  }
+
+  @Benchmark
+  public GalleryPageApiParser.Result galleryPageApi() throws Exception {
+    return GalleryPageApiParser.parse(pageApi);
+  }
+
+  @Benchmark
+  public HomeDetail home() throws Exception {
+    return EhHomeParser.parse(home);
+  }
+}
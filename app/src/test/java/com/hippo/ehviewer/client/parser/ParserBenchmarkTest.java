@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client.parser;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assume.assumeTrue;
+
+import android.content.Context;
+import com.hippo.ehviewer.EhDB;
+import com.hippo.ehviewer.Settings;
+import java.io.File;
+import java.util.Collection;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * Runs {@link ParserBenchmark}, it takes minutes so it is skipped unless
+ * the build is started with {@code -Pbenchmark}:
+ * <pre>
+ * ./gradlew :app:testAppCenterDebugUnitTest --tests '*ParserBenchmarkTest' -Pbenchmark
+ * </pre>
+ * Throughput is in ops/s, {@code gc.alloc.rate.norm} is bytes allocated per parse.
+ * The result is also written to {@code app/build/reports/benchmark/parser.json}.
+ */
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class ParserBenchmarkTest {
+
+  @Test
+  public void testBenchmark() throws Exception {
+    assumeTrue(Boolean.getBoolean("ehviewer.benchmark"));
+
+    // Parsers look up blacklist and local favorites
+    Context context = RuntimeEnvironment.application;
+    Settings.initialize(context);
+    EhDB.initialize(context);
+
+    File result = new File("build/reports/benchmark/parser.json");
+    result.getParentFile().mkdirs();
+
+    Options options = new OptionsBuilder()
+        .include(ParserBenchmark.class.getName())
+        // Android classes only exist in this sandbox, a forked JVM can't load them
+        .forks(0)
+        .addProfiler(GCProfiler.class)
+        .resultFormat(ResultFormatType.JSON)
+        .result(result.getPath())
+        .build();
+    Collection<RunResult> results = new Runner(options).run();
+    assertFalse(results.isEmpty());
+  }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client.wifi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.alibaba.fastjson.JSONArray;
+import com.hippo.ehviewer.spider.SpiderQueen;
+import com.hippo.unifile.UniFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class GalleryTransferTest {
+
+  private static final long GID = 1234;
+  private static final String HOST = "127.0.0.1";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private ServerSocketChannel serverChannel;
+  private int port;
+  private File serverDir;
+  private File clientDir;
+
+  @Before
+  public void setUp() throws IOException {
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.socket().bind(new InetSocketAddress(InetAddress.getByName(HOST), 0));
+    port = serverChannel.socket().getLocalPort();
+    serverDir = folder.newFolder("server");
+    clientDir = folder.newFolder("client");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    serverChannel.close();
+  }
+
+  private static byte[] write(File dir, String name, int size) throws IOException {
+    byte[] data = new byte[size];
+    new Random(size).nextBytes(data);
+    Files.write(new File(dir, name).toPath(), data);
+    return data;
+  }
+
+  private static byte[] read(File dir, String name) throws IOException {
+    return Files.readAllBytes(new File(dir, name).toPath());
+  }
+
+  // Serve the next connection with the server
+  private Thread serve(GalleryTransferServer server) {
+    Thread thread = new Thread(() -> {
+      try {
+        server.serve(serverChannel.accept());
+      } catch (IOException e) {
+        // Closed
+      }
+    });
+    thread.start();
+    return thread;
+  }
+
+  // Serve the next connection with the data
+  private Thread serve(byte[] response, boolean close) {
+    Thread thread = new Thread(() -> {
+      try (SocketChannel channel = serverChannel.accept()) {
+        WiFiFrame.read(Channels.newInputStream(channel));
+        GalleryTransfer.writeFully(channel, ByteBuffer.wrap(response));
+        if (!close) {
+          // Stall
+          Thread.sleep(5000);
+        }
+      } catch (IOException | InterruptedException e) {
+        // Closed
+      }
+    });
+    thread.start();
+    return thread;
+  }
+
+  @Test
+  public void testTransfer() throws Exception {
+    byte[] page0 = write(serverDir, "00000001.jpg", 1000);
+    byte[] page1 = write(serverDir, "00000002.png", 300 * 1024);
+    write(serverDir, "00000003.jpg", 10);
+    byte[] page3 = write(serverDir, "00000004.jpg", 0);
+    byte[] spiderInfo = write(serverDir, SpiderQueen.SPIDER_INFO_FILENAME, 100);
+    write(serverDir, "other.txt", 10);
+
+    GalleryTransferServer server = new GalleryTransferServer(0);
+    server.addGallery(GID, UniFile.fromFile(serverDir));
+    UniFile dir = UniFile.fromFile(clientDir);
+    // Page 2 is received
+    JSONArray exists = new JSONArray();
+    exists.add(2);
+
+    Thread thread = serve(server);
+    int count = GalleryTransferClient.receiveStream(HOST, port, dir,
+        GalleryTransferClient.createRequest(GID, 0, 2, exists, true));
+    thread.join();
+    // Spider info, page 0
+    assertEquals(2, count);
+
+    thread = serve(server);
+    count = GalleryTransferClient.receiveStream(HOST, port, dir,
+        GalleryTransferClient.createRequest(GID, 1, 2, exists, true));
+    thread.join();
+    // Page 1 and 3
+    assertEquals(2, count);
+
+    assertArrayEquals(spiderInfo, read(clientDir, SpiderQueen.SPIDER_INFO_FILENAME));
+    assertArrayEquals(page0, read(clientDir, "00000001.jpg"));
+    assertArrayEquals(page1, read(clientDir, "00000002.png"));
+    assertArrayEquals(page3, read(clientDir, "00000004.jpg"));
+    assertFalse(new File(clientDir, "00000003.jpg").exists());
+    assertFalse(new File(clientDir, "other.txt").exists());
+    assertEquals(4, clientDir.list().length);
+  }
+
+  @Test
+  public void testUnknownGallery() throws Exception {
+    GalleryTransferServer server = new GalleryTransferServer(0);
+    Thread thread = serve(server);
+    int count = GalleryTransferClient.receiveStream(HOST, port, UniFile.fromFile(clientDir),
+        GalleryTransferClient.createRequest(GID, 0, 1, new JSONArray(), true));
+    thread.join();
+    assertEquals(0, count);
+  }
+
+  private static byte[] header(byte type, int index, long length, String name) {
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer buffer = ByteBuffer.allocate(GalleryTransfer.HEADER_LENGTH + nameBytes.length);
+    buffer.put(type).putInt(index).putLong(length).putShort((short) nameBytes.length).put(nameBytes);
+    return buffer.array();
+  }
+
+  @Test
+  public void testBadEntry() throws Exception {
+    // Only pages and spider info are written
+    String[] names = {"../00000001.jpg", "00000002.jpg", "other.txt"};
+    for (String name : names) {
+      Thread thread = serve(header(GalleryTransfer.TYPE_PAGE, 0, 1, name), true);
+      try {
+        GalleryTransferClient.receiveStream(HOST, port, UniFile.fromFile(clientDir),
+            GalleryTransferClient.createRequest(GID, 0, 1, new JSONArray(), false));
+        fail(name);
+      } catch (IOException e) {
+        // Expected
+      }
+      thread.join();
+    }
+    assertEquals(0, clientDir.list().length);
+  }
+
+  @Test
+  public void testTruncatedFile() throws Exception {
+    // Connection closed in file data
+    byte[] header = header(GalleryTransfer.TYPE_PAGE, 0, 100, "00000001.jpg");
+    byte[] response = new byte[header.length + 10];
+    System.arraycopy(header, 0, response, 0, header.length);
+    Thread thread = serve(response, true);
+    try {
+      GalleryTransferClient.receiveStream(HOST, port, UniFile.fromFile(clientDir),
+          GalleryTransferClient.createRequest(GID, 0, 1, new JSONArray(), false));
+      fail();
+    } catch (IOException e) {
+      // Expected
+    }
+    thread.join();
+    // Broken file is not a page, and part file is removed
+    assertFalse(new File(clientDir, "00000001.jpg").exists());
+    assertEquals(0, clientDir.list().length);
+  }
+
+  @Test
+  public void testWatchdog() throws Exception {
+    Thread thread = serve(new byte[0], false);
+    try (SocketChannel channel = SocketChannel.open(new InetSocketAddress(HOST, port));
+         GalleryTransfer.Watchdog ignored = new GalleryTransfer.Watchdog(channel, 200)) {
+      WiFiFrame.write(Channels.newOutputStream(channel), new byte[] {1});
+      long start = System.nanoTime();
+      try {
+        GalleryTransfer.readFully(channel, ByteBuffer.allocate(1));
+        fail();
+      } catch (IOException e) {
+        // Closed by watchdog
+      }
+      assertTrue(System.nanoTime() - start < 4000L * 1000 * 1000);
+    }
+    thread.interrupt();
+    thread.join();
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client.wifi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class WiFiFrameTest {
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    byte[] small = "{\"messageType\":2}".getBytes(StandardCharsets.UTF_8);
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      sb.append("{\"gid\":").append(i).append(",\"title\":\"标题 title\"},");
+    }
+    byte[] large = sb.toString().getBytes(StandardCharsets.UTF_8);
+    byte[] random = new byte[WiFiFrame.COMPRESS_THRESHOLD * 2];
+    new Random(0).nextBytes(random);
+
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    WiFiFrame.write(os, small);
+    WiFiFrame.write(os, large);
+    WiFiFrame.write(os, random);
+    WiFiFrame.write(os, new byte[0]);
+    // Large text is compressed
+    assertTrue(os.size() < small.length + large.length / 2 + random.length + 64);
+
+    ByteArrayInputStream is = new ByteArrayInputStream(os.toByteArray());
+    assertArrayEquals(small, WiFiFrame.read(is));
+    assertArrayEquals(large, WiFiFrame.read(is));
+    assertArrayEquals(random, WiFiFrame.read(is));
+    assertArrayEquals(new byte[0], WiFiFrame.read(is));
+    assertNull(WiFiFrame.read(is));
+  }
+
+  @Test
+  public void testTruncated() throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    WiFiFrame.write(os, "hello".getBytes(StandardCharsets.UTF_8));
+    byte[] bytes = os.toByteArray();
+    try {
+      WiFiFrame.read(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 1)));
+      fail();
+    } catch (IOException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testBadHeader() throws IOException {
+    // Old text message
+    assertBad("{\"messageType\":2}:END".getBytes(StandardCharsets.UTF_8));
+
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    DataOutputStream dos = new DataOutputStream(os);
+    dos.writeInt(WiFiFrame.MAGIC);
+    dos.writeByte(0);
+    dos.writeInt(WiFiFrame.MAX_LENGTH + 1);
+    assertBad(os.toByteArray());
+  }
+
+  private static void assertBad(byte[] bytes) {
+    try {
+      WiFiFrame.read(new ByteArrayInputStream(bytes));
+      fail();
+    } catch (IOException e) {
+      assertEquals(IOException.class, e.getClass());
+    }
+  }
+}
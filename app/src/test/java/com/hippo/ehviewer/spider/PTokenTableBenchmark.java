@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.spider;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import androidx.collection.SparseArrayCompat;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Compares {@link PTokenTable} with the SparseArray it replaces.
+ * {@link SparseArrayCompat} has the same layout as {@link android.util.SparseArray}
+ * and runs on JVM.
+ * <p>
+ * Heap and timing depend on the JVM and GC, it is skipped unless the build is
+ * started with {@code -Pbenchmark}. Behavior is covered by {@link PTokenTableTest}.
+ */
+public class PTokenTableBenchmark {
+
+  private static final int PAGES = 2000;
+  // Several open galleries
+  private static final int TABLES = 20;
+  private static final int LOOKUPS = 1000000;
+
+  private static String[] newTokens() {
+    Random random = new Random(7);
+    String[] tokens = new String[PAGES];
+    for (int i = 0; i < PAGES; i++) {
+      tokens[i] = String.format(Locale.US, "%010x", random.nextLong() & 0xffffffffffL);
+    }
+    return tokens;
+  }
+
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 4; i++) {
+      System.gc();
+      try {
+        Thread.sleep(20);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static SparseArrayCompat<String> newSparseArray(String[] tokens) {
+    SparseArrayCompat<String> array = new SparseArrayCompat<>(PAGES);
+    for (int i = 0; i < PAGES; i++) {
+      // Each token is a new string as if it is parsed from html
+      array.put(i, new String(tokens[i].toCharArray()));
+    }
+    return array;
+  }
+
+  private static PTokenTable newTable(String[] tokens) {
+    PTokenTable table = new PTokenTable(PAGES);
+    for (int i = 0; i < PAGES; i++) {
+      table.put(i, tokens[i]);
+    }
+    return table;
+  }
+
+  @Test
+  public void testHeap() {
+    assumeTrue(Boolean.getBoolean("ehviewer.benchmark"));
+    String[] tokens = newTokens();
+
+    long start = usedMemory();
+    Object[] arrays = new Object[TABLES];
+    for (int i = 0; i < TABLES; i++) {
+      arrays[i] = newSparseArray(tokens);
+    }
+    long sparseArrayBytes = usedMemory() - start;
+
+    start = usedMemory();
+    Object[] tables = new Object[TABLES];
+    for (int i = 0; i < TABLES; i++) {
+      tables[i] = newTable(tokens);
+    }
+    long tableBytes = usedMemory() - start;
+
+    System.out.println(String.format(Locale.US,
+        "Heap of %d galleries with %d pages: SparseArray %d bytes (%.1f/page), PTokenTable %d bytes (%.1f/page)",
+        TABLES, PAGES, sparseArrayBytes, (float) sparseArrayBytes / (TABLES * PAGES),
+        tableBytes, (float) tableBytes / (TABLES * PAGES)));
+    // Keep them reachable until measured
+    assertTrue(arrays.length == tables.length);
+    assertTrue(tableBytes < sparseArrayBytes);
+  }
+
+  @Test
+  public void testLookup() {
+    assumeTrue(Boolean.getBoolean("ehviewer.benchmark"));
+    String[] tokens = newTokens();
+    SparseArrayCompat<String> array = newSparseArray(tokens);
+    PTokenTable table = newTable(tokens);
+    int[] keys = new int[LOOKUPS];
+    Random random = new Random(11);
+    for (int i = 0; i < LOOKUPS; i++) {
+      keys[i] = random.nextInt(PAGES);
+    }
+
+    long hash = 0;
+    // Warm up
+    for (int round = 0; round < 3; round++) {
+      for (int key : keys) {
+        hash += array.get(key).length();
+        hash += table.get(key).length();
+      }
+    }
+
+    long start = System.nanoTime();
+    for (int key : keys) {
+      hash += array.get(key).length();
+    }
+    long sparseArrayTime = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    for (int key : keys) {
+      hash += table.get(key).length();
+    }
+    long tableTime = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    for (int key : keys) {
+      hash += table.contains(key) ? 1 : 0;
+    }
+    long containsTime = System.nanoTime() - start;
+
+    System.out.println(String.format(Locale.US,
+        "%d lookups: SparseArray.get %.1fns, PTokenTable.get %.1fns, PTokenTable.contains %.1fns (%d)",
+        LOOKUPS, (float) sparseArrayTime / LOOKUPS, (float) tableTime / LOOKUPS,
+        (float) containsTime / LOOKUPS, hash));
+  }
+}
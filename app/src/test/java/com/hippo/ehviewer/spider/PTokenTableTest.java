@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.spider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PTokenTableTest {
+
+  @Test
+  public void testPack() {
+    String[] tokens = {"0123456789", "abcdef0000", "0000000000", "f", "ffffffffffffff"};
+    for (String token : tokens) {
+      assertEquals(token, PTokenTable.unpack(PTokenTable.pack(token)));
+    }
+  }
+
+  @Test
+  public void testPutGet() {
+    PTokenTable table = new PTokenTable(10);
+    assertEquals(0, table.size());
+    assertNull(table.get(3));
+    assertNull(table.get(100));
+
+    table.put(3, "0a1b2c3d4e");
+    table.put(1, SpiderInfo.TOKEN_FAILED);
+    // Not packed
+    table.put(5, "ABCDEF");
+    table.put(7, "0123456789abcdef");
+    // Grow
+    table.put(20, "0000000001");
+    assertEquals(5, table.size());
+    assertEquals("0a1b2c3d4e", table.get(3));
+    assertEquals(SpiderInfo.TOKEN_FAILED, table.get(1));
+    assertEquals("ABCDEF", table.get(5));
+    assertEquals("0123456789abcdef", table.get(7));
+    assertEquals("0000000001", table.get(20));
+
+    // Replace
+    table.put(5, "abcdef");
+    assertEquals("abcdef", table.get(5));
+    assertEquals(5, table.size());
+
+    table.remove(3);
+    assertFalse(table.contains(3));
+    assertNull(table.get(3));
+    assertEquals(4, table.size());
+  }
+
+  @Test
+  public void testIndex() {
+    PTokenTable table = new PTokenTable();
+    table.put(8, "88");
+    table.put(2, "22");
+    table.put(5, "55");
+    assertEquals(3, table.size());
+    assertEquals(2, table.keyAt(0));
+    assertEquals(5, table.keyAt(1));
+    assertEquals(8, table.keyAt(2));
+    assertEquals("55", table.valueAt(1));
+    assertEquals(2, table.indexOfKey(8));
+    assertTrue(table.indexOfKey(3) < 0);
+
+    table.removeAt(table.indexOfKey(5));
+    assertEquals(2, table.size());
+    assertEquals(8, table.keyAt(1));
+  }
+
+  @Test
+  public void testClone() {
+    PTokenTable table = new PTokenTable();
+    table.put(1, "11");
+    table.put(2, "XX");
+    PTokenTable clone = table.clone();
+    table.put(1, "33");
+    table.put(3, "YY");
+    table.remove(2);
+    assertEquals(2, clone.size());
+    assertEquals("11", clone.get(1));
+    assertEquals("XX", clone.get(2));
+    assertNull(clone.get(3));
+  }
+}
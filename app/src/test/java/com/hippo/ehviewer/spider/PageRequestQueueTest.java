@@ -0,0 +1,248 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.spider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class PageRequestQueueTest {
+
+  private static final int PAGES = 2000;
+  private static final int THREADS = 4;
+  private static final int OPERATIONS = 200000;
+
+  @Test
+  public void testOrder() {
+    PageRequestQueue queue = new PageRequestQueue();
+    assertTrue(queue.isEmpty());
+    for (int i = 0; i < 100; i++) {
+      assertTrue(queue.add(i));
+    }
+    assertEquals(100, queue.size());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i, queue.poll());
+    }
+    assertTrue(queue.isEmpty());
+    assertEquals(PageRequestQueue.INVALID_INDEX, queue.poll());
+  }
+
+  @Test
+  public void testDuplicate() {
+    PageRequestQueue queue = new PageRequestQueue();
+    assertTrue(queue.add(5));
+    assertFalse(queue.add(5));
+    assertTrue(queue.contains(5));
+    assertEquals(1, queue.size());
+    assertEquals(5, queue.poll());
+    assertFalse(queue.contains(5));
+    assertTrue(queue.add(5));
+  }
+
+  @Test
+  public void testRemove() {
+    PageRequestQueue queue = new PageRequestQueue();
+    queue.add(1);
+    queue.add(2);
+    queue.add(3);
+    assertTrue(queue.remove(2));
+    assertFalse(queue.remove(2));
+    assertFalse(queue.contains(2));
+    assertEquals(1, queue.poll());
+    assertEquals(3, queue.poll());
+    assertEquals(PageRequestQueue.INVALID_INDEX, queue.poll());
+
+    // Removed and added again
+    queue.add(7);
+    queue.remove(7);
+    queue.add(7);
+    assertEquals(7, queue.poll());
+    assertEquals(PageRequestQueue.INVALID_INDEX, queue.poll());
+  }
+
+  @Test
+  public void testClear() {
+    PageRequestQueue queue = new PageRequestQueue();
+    for (int i = 0; i < 50; i++) {
+      queue.add(i * 100);
+    }
+    queue.clear();
+    assertTrue(queue.isEmpty());
+    assertFalse(queue.contains(100));
+    assertEquals(PageRequestQueue.INVALID_INDEX, queue.poll());
+  }
+
+  @Test
+  public void testInvalid() {
+    PageRequestQueue queue = new PageRequestQueue();
+    assertFalse(queue.add(-1));
+    assertFalse(queue.add(PageRequestQueue.MAX_INDEX));
+    assertFalse(queue.contains(-1));
+    assertFalse(queue.remove(-1));
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  public void testConcurrentPollOnce() throws InterruptedException {
+    final PageRequestQueue queue = new PageRequestQueue();
+    final AtomicInteger[] polled = new AtomicInteger[PAGES];
+    for (int i = 0; i < PAGES; i++) {
+      polled[i] = new AtomicInteger();
+      queue.add(i);
+    }
+
+    runConcurrently(new Worker() {
+      @Override
+      public void run(int thread, Random random) {
+        int index;
+        while ((index = queue.poll()) != PageRequestQueue.INVALID_INDEX) {
+          polled[index].incrementAndGet();
+        }
+      }
+    });
+
+    for (int i = 0; i < PAGES; i++) {
+      assertEquals(1, polled[i].get());
+    }
+    assertTrue(queue.isEmpty());
+  }
+
+  /**
+   * Hammers the access pattern of SpiderQueen.request() and cancelRequest()
+   * with the old synchronized LinkedList and PageRequestQueue.
+   * Skipped unless the build is started with {@code -Pbenchmark}.
+   */
+  @Test
+  public void benchmarkRequestAndCancel() throws InterruptedException {
+    assumeTrue(Boolean.getBoolean("ehviewer.benchmark"));
+
+    final Queue<Integer> oldRequestQueue = new LinkedList<>();
+    final Queue<Integer> oldDecodeQueue = new LinkedList<>();
+    final PageRequestQueue requestQueue = new PageRequestQueue();
+    final PageRequestQueue decodeQueue = new PageRequestQueue();
+
+    Worker oldWorker = new Worker() {
+      @Override
+      public void run(int thread, Random random) {
+        for (int i = 0; i < OPERATIONS; i++) {
+          int index = random.nextInt(PAGES);
+          switch (i & 3) {
+            case 0:
+              synchronized (oldRequestQueue) {
+                oldRequestQueue.add(index);
+              }
+              break;
+            case 1:
+              synchronized (oldDecodeQueue) {
+                if (!oldDecodeQueue.contains(index)) {
+                  oldDecodeQueue.add(index);
+                }
+              }
+              break;
+            case 2:
+              synchronized (oldRequestQueue) {
+                oldRequestQueue.remove(index);
+              }
+              synchronized (oldDecodeQueue) {
+                oldDecodeQueue.remove(index);
+              }
+              break;
+            case 3:
+              synchronized (oldRequestQueue) {
+                oldRequestQueue.poll();
+              }
+              break;
+          }
+        }
+      }
+    };
+
+    Worker newWorker = new Worker() {
+      @Override
+      public void run(int thread, Random random) {
+        for (int i = 0; i < OPERATIONS; i++) {
+          int index = random.nextInt(PAGES);
+          switch (i & 3) {
+            case 0:
+              requestQueue.add(index);
+              break;
+            case 1:
+              decodeQueue.add(index);
+              break;
+            case 2:
+              requestQueue.remove(index);
+              decodeQueue.remove(index);
+              break;
+            case 3:
+              requestQueue.poll();
+              break;
+          }
+        }
+      }
+    };
+
+    // Warm up
+    runConcurrently(oldWorker);
+    runConcurrently(newWorker);
+
+    long oldTime = runConcurrently(oldWorker);
+    long newTime = runConcurrently(newWorker);
+
+    System.out.println("Synchronized LinkedList: " + oldTime / 1000000 + " ms, " +
+        "PageRequestQueue: " + newTime / 1000000 + " ms, " +
+        THREADS + " threads x " + OPERATIONS + " operations");
+  }
+
+  private interface Worker {
+    void run(int thread, Random random);
+  }
+
+  private static long runConcurrently(final Worker worker) throws InterruptedException {
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[THREADS];
+    for (int i = 0; i < THREADS; i++) {
+      final int thread = i;
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          worker.run(thread, new Random(thread));
+        }
+      };
+      threads[i].start();
+    }
+
+    long time = System.nanoTime();
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    return System.nanoTime() - time;
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.spider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.hippo.unifile.UniFile;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class SpiderInfoTest {
+
+  private static SpiderInfo newSpiderInfo(int pages) {
+    SpiderInfo info = new SpiderInfo();
+    info.startPage = 3;
+    info.gid = 1234567;
+    info.token = "0123456789";
+    info.pages = pages;
+    info.previewPages = 5;
+    info.previewPerPage = 40;
+    info.pTokenMap = new PTokenTable();
+    return info;
+  }
+
+  private static void assertSpiderInfo(SpiderInfo expected, SpiderInfo actual) {
+    assertNotNull(actual);
+    assertEquals(expected.startPage, actual.startPage);
+    assertEquals(expected.gid, actual.gid);
+    assertEquals(expected.token, actual.token);
+    assertEquals(expected.pages, actual.pages);
+    assertEquals(expected.previewPages, actual.previewPages);
+    assertEquals(expected.previewPerPage, actual.previewPerPage);
+    int count = 0;
+    for (int i = 0; i < expected.pTokenMap.size(); i++) {
+      String value = expected.pTokenMap.valueAt(i);
+      if (!SpiderInfo.TOKEN_FAILED.equals(value)) {
+        assertEquals(value, actual.pTokenMap.get(expected.pTokenMap.keyAt(i)));
+        count++;
+      }
+    }
+    assertEquals(count, actual.pTokenMap.size());
+  }
+
+  @Test
+  public void testWriteRead() {
+    SpiderInfo info = newSpiderInfo(100);
+    for (int i = 0; i < 100; i += 3) {
+      info.pTokenMap.put(i, String.format("%010x", i * 31L));
+    }
+    info.pTokenMap.put(1, SpiderInfo.TOKEN_FAILED);
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    info.write(baos);
+    assertSpiderInfo(info, SpiderInfo.read(new ByteArrayInputStream(baos.toByteArray())));
+  }
+
+  @Test
+  public void testReadLegacy() {
+    String text = "VERSION2\n00000003\n1234567\n0123456789\n1\n5\n40\n100\n0 aaaaaaaaaa\n7 bbbbbbbbbb\n";
+    SpiderInfo info = SpiderInfo.read(new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII)));
+    SpiderInfo expected = newSpiderInfo(100);
+    expected.pTokenMap.put(0, "aaaaaaaaaa");
+    expected.pTokenMap.put(7, "bbbbbbbbbb");
+    assertSpiderInfo(expected, info);
+  }
+
+  @Test
+  public void testAppend() throws IOException {
+    File file = File.createTempFile("spider_info", null);
+    file.deleteOnExit();
+    UniFile uniFile = UniFile.fromFile(file);
+
+    SpiderInfo info = newSpiderInfo(2000);
+    for (int i = 0; i < 40; i++) {
+      info.pTokenMap.put(i, String.format("%010x", i));
+    }
+    info.save(uniFile);
+    long fullLength = file.length();
+
+    // Only new records are appended
+    for (int i = 40; i < 80; i++) {
+      info.pTokenMap.put(i, String.format("%010x", i));
+    }
+    info.startPage = 50;
+    info.save(uniFile);
+    assertEquals(fullLength + 40 * 15, file.length());
+    assertSpiderInfo(info, SpiderInfo.read(uniFile));
+
+    // Continue appending after reading it back
+    SpiderInfo read = SpiderInfo.read(uniFile);
+    read.pTokenMap.put(100, "cccccccccc");
+    read.save(uniFile);
+    assertEquals(fullLength + 41 * 15, file.length());
+    assertSpiderInfo(read, SpiderInfo.read(uniFile));
+
+    // Broken tail is ignored
+    try (FileOutputStream fos = new FileOutputStream(file, true)) {
+      fos.write(new byte[] {0, 0, 0, 1, 10, 'a'});
+    }
+    assertSpiderInfo(read, SpiderInfo.read(uniFile));
+  }
+
+  @Test
+  public void testRewriteForOtherGallery() throws IOException {
+    File file = File.createTempFile("spider_info", null);
+    file.deleteOnExit();
+    UniFile uniFile = UniFile.fromFile(file);
+
+    SpiderInfo info = newSpiderInfo(100);
+    info.pTokenMap.put(0, "aaaaaaaaaa");
+    info.pTokenMap.put(1, "bbbbbbbbbb");
+    info.save(uniFile);
+
+    SpiderInfo other = newSpiderInfo(100);
+    other.gid = 7654321;
+    other.pTokenMap.put(2, "cccccccccc");
+    info.updateSpiderInfo(other);
+    info.save(uniFile);
+
+    SpiderInfo read = SpiderInfo.read(uniFile);
+    assertSpiderInfo(info, read);
+    assertTrue(read.pTokenMap.get(0) == null);
+  }
+}
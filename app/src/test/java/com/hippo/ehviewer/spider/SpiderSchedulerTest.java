@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.spider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class SpiderSchedulerTest {
+
+  private int running;
+  private int backgroundRunning;
+
+  private static SpiderScheduler.Slot slot(int priority, int maxCount) {
+    SpiderScheduler.Slot slot = new SpiderScheduler.Slot(null);
+    slot.priority = priority;
+    slot.maxCount = maxCount;
+    return slot;
+  }
+
+  // Same as SpiderScheduler.dispatch() without executor
+  private SpiderScheduler.Slot start(List<SpiderScheduler.Slot> slots, int limit) {
+    SpiderScheduler.Slot slot = SpiderScheduler.pick(slots, running, backgroundRunning, limit);
+    if (slot != null) {
+      slot.running++;
+      running++;
+      if (slot.priority <= SpiderScheduler.PRIORITY_READ_AHEAD) {
+        backgroundRunning++;
+      }
+    }
+    return slot;
+  }
+
+  private void end(SpiderScheduler.Slot slot) {
+    slot.running--;
+    running--;
+    if (slot.priority <= SpiderScheduler.PRIORITY_READ_AHEAD) {
+      backgroundRunning--;
+    }
+  }
+
+  @Test
+  public void testPriority() {
+    SpiderScheduler.Slot download = slot(SpiderScheduler.PRIORITY_DOWNLOAD, 10);
+    SpiderScheduler.Slot readAhead = slot(SpiderScheduler.PRIORITY_READ_AHEAD, 10);
+    SpiderScheduler.Slot read = slot(SpiderScheduler.PRIORITY_READ, 2);
+    SpiderScheduler.Slot forceRead = slot(SpiderScheduler.PRIORITY_FORCE_READ, 1);
+    List<SpiderScheduler.Slot> slots = Arrays.asList(download, readAhead, read, forceRead);
+
+    assertSame(forceRead, start(slots, 10));
+    assertSame(read, start(slots, 10));
+    assertSame(read, start(slots, 10));
+    assertSame(readAhead, start(slots, 10));
+    readAhead.priority = SpiderScheduler.PRIORITY_NONE;
+    assertSame(download, start(slots, 10));
+  }
+
+  @Test
+  public void testReservedReadWorkers() {
+    SpiderScheduler.Slot download1 = slot(SpiderScheduler.PRIORITY_DOWNLOAD, 10);
+    SpiderScheduler.Slot download2 = slot(SpiderScheduler.PRIORITY_DOWNLOAD, 10);
+    List<SpiderScheduler.Slot> slots = Arrays.asList(download1, download2);
+
+    // Background work stops at the limit
+    assertSame(download1, start(slots, 3));
+    assertSame(download2, start(slots, 3));
+    assertSame(download1, start(slots, 3));
+    assertNull(start(slots, 3));
+    assertEquals(3, backgroundRunning);
+
+    // Two more for reading
+    SpiderScheduler.Slot read = slot(SpiderScheduler.PRIORITY_READ, 10);
+    slots = Arrays.asList(download1, download2, read);
+    assertSame(read, start(slots, 3));
+    assertSame(read, start(slots, 3));
+    assertNull(start(slots, 3));
+    assertEquals(5, running);
+
+    // A finished read worker is not taken by background work
+    end(read);
+    read.priority = SpiderScheduler.PRIORITY_NONE;
+    assertNull(start(slots, 3));
+    end(download1);
+    assertSame(download1, start(slots, 3));
+  }
+
+  @Test
+  public void testScore() {
+    SpiderScheduler.Slot fast = slot(SpiderScheduler.PRIORITY_DOWNLOAD, 10);
+    fast.score = 3;
+    SpiderScheduler.Slot slow = slot(SpiderScheduler.PRIORITY_DOWNLOAD, 10);
+    List<SpiderScheduler.Slot> slots = Arrays.asList(fast, slow);
+
+    for (int i = 0; i < 8; i++) {
+      start(slots, 8);
+    }
+    assertEquals(6, fast.running);
+    assertEquals(2, slow.running);
+  }
+
+  @Test
+  public void testSkip() {
+    SpiderScheduler.Slot stalled = slot(SpiderScheduler.PRIORITY_FORCE_READ, 10);
+    stalled.stalled = true;
+    SpiderScheduler.Slot removed = slot(SpiderScheduler.PRIORITY_FORCE_READ, 10);
+    removed.removed = true;
+    SpiderScheduler.Slot full = slot(SpiderScheduler.PRIORITY_FORCE_READ, 1);
+    full.running = 1;
+    SpiderScheduler.Slot none = slot(SpiderScheduler.PRIORITY_NONE, 10);
+    SpiderScheduler.Slot download = slot(SpiderScheduler.PRIORITY_DOWNLOAD, 1);
+    List<SpiderScheduler.Slot> slots = Arrays.asList(stalled, removed, full, none, download);
+
+    assertSame(download, start(slots, 10));
+    assertNull(start(slots, 10));
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class GalleryTagsIndexTest {
+
+  private static void assertGids(long[] expected, long[] actual) {
+    assertEquals(Arrays.toString(expected), Arrays.toString(actual));
+  }
+
+  @Test
+  public void testSearch() {
+    GalleryTagsIndex index = new GalleryTagsIndex();
+    index.putInternal(3, Arrays.asList("female:a", "female:b", "language:chinese"));
+    index.putInternal(1, Arrays.asList("female:a", "language:chinese"));
+    index.putInternal(2, Arrays.asList("female:b", "language:chinese"));
+
+    assertGids(new long[]{1, 3}, index.searchInternal(new String[]{"female:a"}));
+    assertGids(new long[]{1, 2, 3}, index.searchInternal(new String[]{"language:chinese"}));
+    assertGids(new long[]{2, 3}, index.searchInternal(new String[]{"language:chinese", "female:b"}));
+    assertGids(new long[]{3}, index.searchInternal(new String[]{"female:a", "female:b"}));
+    assertGids(new long[0], index.searchInternal(new String[]{"female:a", "female:c"}));
+    assertGids(new long[0], index.searchInternal(new String[0]));
+    assertGids(new long[0], index.searchInternal(null));
+  }
+
+  @Test
+  public void testUpdate() {
+    GalleryTagsIndex index = new GalleryTagsIndex();
+    index.putInternal(1, Arrays.asList("female:a", "female:b"));
+    index.putInternal(2, Arrays.asList("female:a"));
+
+    index.putInternal(1, Arrays.asList("female:c"));
+    assertGids(new long[]{2}, index.searchInternal(new String[]{"female:a"}));
+    assertGids(new long[0], index.searchInternal(new String[]{"female:b"}));
+    assertGids(new long[]{1}, index.searchInternal(new String[]{"female:c"}));
+
+    index.putInternal(2, new ArrayList<>());
+    assertGids(new long[0], index.searchInternal(new String[]{"female:a"}));
+  }
+
+  @Test
+  public void testInvalidate() {
+    GalleryTagsIndex index = GalleryTagsIndex.getInstance();
+    assertSame(index, GalleryTagsIndex.getInstance());
+    GalleryTagsIndex.invalidate();
+    assertNotSame(index, GalleryTagsIndex.getInstance());
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.lib.glgallery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.hippo.yorozuya.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class PageImageDecoderTest {
+
+  @Test
+  public void testComputeSampleSize() {
+    // Both dimensions stay at least the target size
+    assertEquals(2, PageImageDecoder.computeSampleSize(6000, 9000, 1080, 2340));
+    assertEquals(4, PageImageDecoder.computeSampleSize(6000, 9000, 1080, 2000));
+    // Tall page is limited by width
+    assertEquals(1, PageImageDecoder.computeSampleSize(800, 20000, 1080, 2340));
+    assertEquals(1, PageImageDecoder.computeSampleSize(2000, 3000, 1080, 2340));
+    // No target or unknown bounds
+    assertEquals(1, PageImageDecoder.computeSampleSize(6000, 9000, 0, 0));
+    assertEquals(1, PageImageDecoder.computeSampleSize(-1, -1, 1080, 2340));
+  }
+
+  @Test
+  public void testRequestFullSizeOfUnsampledPage() {
+    PageImageDecoder decoder = new PageImageDecoder();
+    assertEquals(1, decoder.getSampleSize(3));
+    assertFalse(decoder.requestFullSize(3));
+  }
+
+  @Test
+  public void testReplay() throws IOException {
+    // Larger than any buffer
+    byte[] data = new byte[100 * 1024];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+    PageImageDecoder.ReplayInputStream is =
+        new PageImageDecoder.ReplayInputStream(new ByteArrayInputStream(data));
+    is.read();
+    is.skip(1000);
+    is.read(new byte[70 * 1024]);
+    InputStream replay = is.replay();
+    assertArrayEquals(data, IOUtils.getAllByte(replay));
+  }
+}
@@ -21,6 +21,7 @@ package com.hippo.network;
  */
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -152,6 +153,34 @@ public class CookieRepositoryTest {
     repository.close();
   }
 
+  @Test
+  public void testMergeUpdates() {
+    Context app = RuntimeEnvironment.application;
+
+    HttpUrl urlEh = HttpUrl.parse("http://www.ehviewer.com/");
+    CookieRepository repository = new CookieRepository(app, "cookie.db");
+    Cookie last = null;
+    for (int i = 0; i < 100; i++) {
+      last = new Cookie.Builder()
+          .name("level")
+          .value(Integer.toString(i))
+          .domain("www.ehviewer.com")
+          .path("/")
+          .expiresAt(System.currentTimeMillis() + 100000)
+          .build();
+      repository.saveFromResponse(urlEh, Collections.singletonList(last));
+      // Readers see the change at once
+      equals(Collections.singletonList(last), repository.loadForRequest(urlEh));
+    }
+    repository.close();
+
+    repository = new CookieRepository(app, "cookie.db");
+    Map<String, CookieSet> map = Reflect.on(repository).field("map").get();
+    assertEquals(1, map.size());
+    equals(map.get("www.ehviewer.com"), Collections.singletonList(last));
+    repository.close();
+  }
+
   @Test
   public void testRemoveByExpired() {
     Context app = RuntimeEnvironment.application;
@@ -293,6 +322,31 @@ public class CookieRepositoryTest {
     repository.close();
   }
 
+  @Test
+  public void testFlushFailure() {
+    Context app = RuntimeEnvironment.application;
+
+    Cookie cookie = new Cookie.Builder()
+        .name("user")
+        .value("1234567890")
+        .domain("ehviewer.com")
+        .path("/")
+        .expiresAt(System.currentTimeMillis() + 100000)
+        .build();
+
+    CookieRepository repository = new CookieRepository(app, "cookie.db");
+    Reflect.on(repository).field("db").call("close");
+    Map<CookieSet.Key, Cookie> journal = Reflect.on(repository).field("journal").get();
+    journal.put(new CookieSet.Key(cookie), cookie);
+    Reflect.on(repository).set("flushScheduled", true);
+
+    // The changes are kept for the next commit
+    assertFalse(Reflect.on(repository).call("flush").<Boolean>get());
+    journal = Reflect.on(repository).field("journal").get();
+    assertEquals(cookie, journal.get(new CookieSet.Key(cookie)));
+    assertFalse(Reflect.on(repository).field("flushScheduled").<Boolean>get());
+  }
+
   @Test
   public void testSort() {
     Context app = RuntimeEnvironment.application;
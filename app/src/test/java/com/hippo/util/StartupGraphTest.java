@@ -0,0 +1,154 @@
+/*
+ * Copyright 2018 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+
+public class StartupGraphTest {
+
+  @Test
+  public void testDependencyOrder() {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    List<String> done = Collections.synchronizedList(new ArrayList<>());
+    StartupGraph graph = new StartupGraph(executor,
+        (name, thread, duration, error) -> done.add(name));
+    graph.add("a", () -> order.add("a"))
+        .add("b", () -> order.add("b"), "a")
+        .add("c", () -> order.add("c"), "a")
+        .add("d", () -> order.add("d"), "b", "c");
+    graph.start();
+    graph.await("d");
+    executor.shutdown();
+
+    assertEquals(4, order.size());
+    assertEquals("a", order.get(0));
+    assertEquals("d", order.get(3));
+    assertTrue(graph.isDone("b"));
+    assertTrue(graph.isDone("c"));
+    assertTrue(done.contains("d"));
+  }
+
+  @Test
+  public void testParallel() throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    // Each task waits for the other one, they must run at the same time
+    CountDownLatch latch = new CountDownLatch(2);
+    Runnable action = () -> {
+      latch.countDown();
+      try {
+        latch.await();
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    };
+    StartupGraph graph = new StartupGraph(executor, null);
+    graph.add("a", action).add("b", action);
+    graph.start();
+    graph.await("a");
+    graph.await("b");
+    executor.shutdown();
+  }
+
+  @Test
+  public void testLazy() {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    StartupGraph graph = new StartupGraph(executor, null);
+    graph.add("a", () -> order.add("a"))
+        .addLazy("b", () -> order.add("b"), "a")
+        .addLazy("c", () -> order.add("c"), "b");
+    graph.start();
+    graph.await("a");
+    assertFalse(graph.isDone("b"));
+    assertFalse(graph.isDone("c"));
+
+    graph.await("c");
+    executor.shutdown();
+    assertEquals(3, order.size());
+    assertEquals("b", order.get(1));
+    assertEquals("c", order.get(2));
+
+    // Only run once
+    graph.await("b");
+    assertEquals(3, order.size());
+  }
+
+  @Test
+  public void testFailure() {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+    StartupGraph graph = new StartupGraph(executor, (name, thread, duration, error) -> {
+      if (error != null) {
+        errors.add(error);
+      }
+    });
+    graph.add("a", () -> {
+      throw new RuntimeException("a");
+    }).add("b", () -> {}, "a");
+    graph.start();
+    try {
+      graph.await("b");
+      fail();
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+    executor.shutdown();
+    assertEquals(2, errors.size());
+  }
+
+  @Test
+  public void testBadGraph() {
+    StartupGraph graph = new StartupGraph(Runnable::run, null);
+    graph.add("a", () -> {}, "b").add("b", () -> {}, "a");
+    try {
+      graph.start();
+      fail();
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+
+    graph = new StartupGraph(Runnable::run, null);
+    graph.addLazy("a", () -> {}).add("b", () -> {}, "a");
+    try {
+      graph.start();
+      fail();
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+
+    graph = new StartupGraph(Runnable::run, null);
+    graph.add("a", () -> {}, "missing");
+    try {
+      graph.start();
+      fail();
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.widget;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.view.ContextThemeWrapper;
+
+import com.hippo.ehviewer.R;
+import com.hippo.ehviewer.client.data.GalleryInfo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class ContentLayoutTest {
+
+  private Context context;
+  private Helper helper;
+
+  @Before
+  public void setUp() {
+    context = new ContextThemeWrapper(RuntimeEnvironment.application, R.style.AppTheme);
+    ContentLayout layout = new ContentLayout(context);
+    helper = new Helper();
+    layout.setHelper(helper);
+  }
+
+  private static GalleryInfo info(long gid) {
+    GalleryInfo info = new GalleryInfo();
+    info.gid = gid;
+    info.title = "title" + gid;
+    return info;
+  }
+
+  private static List<GalleryInfo> infos(long... gids) {
+    List<GalleryInfo> list = new ArrayList<>();
+    for (long gid : gids) {
+      list.add(info(gid));
+    }
+    return list;
+  }
+
+  private List<Long> gids() {
+    List<Long> list = new ArrayList<>();
+    for (GalleryInfo info : helper.getData()) {
+      list.add(info.gid);
+    }
+    return list;
+  }
+
+  private void loadFirstPage() {
+    helper.firstRefresh();
+    helper.onGetPageData(helper.taskId, 3, 1, infos(1, 2, 3));
+    assertEquals(Arrays.asList(1L, 2L, 3L), gids());
+  }
+
+  @Test
+  public void testPartialThenDone() {
+    helper.firstRefresh();
+    helper.onGetPartialPageData(helper.taskId, infos(1));
+    assertEquals(Arrays.asList(1L), gids());
+    assertEquals(0, helper.getShownViewIndex());
+    helper.onGetPartialPageData(helper.taskId, infos(2, 3));
+    assertEquals(Arrays.asList(1L, 2L, 3L), gids());
+
+    // Row 2 is filtered out after partial data, row 4 is not published
+    helper.onGetPageData(helper.taskId, 3, 1, infos(1, 3, 4));
+    assertEquals(Arrays.asList(1L, 3L, 4L), gids());
+    assertEquals(3, helper.getPages());
+  }
+
+  @Test
+  public void testPartialOfNextPage() {
+    loadFirstPage();
+    helper.nextPage();
+    helper.onGetPartialPageData(helper.taskId, infos(3, 4));
+    // Duplicate of the previous page is dropped
+    assertEquals(Arrays.asList(1L, 2L, 3L, 4L), gids());
+    helper.onGetPageData(helper.taskId, 3, 2, infos(4, 5));
+    assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), gids());
+  }
+
+  @Test
+  public void testPartialSuperseded() {
+    loadFirstPage();
+    helper.refresh();
+    int oldTaskId = helper.taskId;
+    helper.onGetPartialPageData(oldTaskId, infos(7, 8));
+    assertEquals(Arrays.asList(7L, 8L), gids());
+
+    helper.refresh();
+    // Rows of the old task are ignored
+    helper.onGetPartialPageData(oldTaskId, infos(9));
+    helper.onGetPageData(oldTaskId, 3, 1, infos(7, 8, 9));
+    assertEquals(Arrays.asList(7L, 8L), gids());
+
+    helper.onGetPartialPageData(helper.taskId, infos(10));
+    assertEquals(Arrays.asList(10L), gids());
+    helper.onGetPageData(helper.taskId, 3, 1, infos(10, 11));
+    assertEquals(Arrays.asList(10L, 11L), gids());
+  }
+
+  @Test
+  public void testPartialFailedRestoresOldPages() {
+    loadFirstPage();
+    helper.refresh();
+    helper.onGetPartialPageData(helper.taskId, infos(7, 8));
+    assertEquals(Arrays.asList(7L, 8L), gids());
+
+    helper.onGetException(helper.taskId, new IOException("failed"));
+    assertEquals(Arrays.asList(1L, 2L, 3L), gids());
+    assertEquals(3, helper.getPages());
+  }
+
+  @Test
+  public void testPartialFailedOnFirstLoad() {
+    helper.firstRefresh();
+    helper.onGetPartialPageData(helper.taskId, infos(1, 2));
+    helper.onGetException(helper.taskId, new IOException("failed"));
+    assertEquals(0, helper.size());
+    // Error is shown as tip, not over an empty list
+    assertEquals(2, helper.getShownViewIndex());
+  }
+
+  @Test
+  public void testPartialOfNextPageFailed() {
+    loadFirstPage();
+    helper.nextPage();
+    helper.onGetPartialPageData(helper.taskId, infos(4, 5));
+    helper.onGetException(helper.taskId, new IOException("failed"));
+    assertEquals(Arrays.asList(1L, 2L, 3L), gids());
+    assertEquals(0, helper.getShownViewIndex());
+  }
+
+  private class Helper extends ContentLayout.ContentHelper<GalleryInfo> {
+
+    int taskId;
+
+    void nextPage() {
+      // The page after the end page is got as next page
+      goTo(1);
+    }
+
+    @Override
+    protected void getPageData(int taskId, int type, int page) {
+      this.taskId = taskId;
+    }
+
+    @Override
+    protected void getExPageData(int pageAction, int taskId, int page) {
+      this.taskId = taskId;
+    }
+
+    @Override
+    protected Context getContext() {
+      return context;
+    }
+
+    @Override
+    protected void notifyDataSetChanged() {
+    }
+
+    @Override
+    protected void notifyItemRangeRemoved(int positionStart, int itemCount) {
+    }
+
+    @Override
+    protected void notifyItemRangeInserted(int positionStart, int itemCount) {
+    }
+
+    @Override
+    protected boolean isDuplicate(GalleryInfo d1, GalleryInfo d2) {
+      return d1.gid == d2.gid;
+    }
+  }
+}